@@ -33,6 +33,7 @@ import edu.vub.at.exceptions.XIllegalOperation;
 import edu.vub.at.objects.ATBoolean;
 import edu.vub.at.objects.ATClosure;
 import edu.vub.at.objects.ATNil;
+import edu.vub.at.objects.ATNumber;
 import edu.vub.at.objects.ATObject;
 import edu.vub.at.objects.ATTypeTag;
 import edu.vub.at.objects.ATTable;
@@ -72,6 +73,14 @@ public interface ATActorMirror extends ATObject {
 	 */
 	public ATAsyncMessage base_createMessage(ATSymbol selector, ATTable arguments, ATTable types) throws InterpreterException;
 	
+	/**
+	 * Creates a native future owned by this actor, together with the resolver by which
+	 * it is resolved or ruined. Messages sent to the future are buffered until it is resolved.
+	 * 
+	 * @return a table <tt>[future, resolver]</tt>
+	 */
+	public ATTable base_createFuture() throws InterpreterException;
+	
 	/**
 	 * Creates a mirror on the given object. This method serves as the 'mirror factory'
 	 * for the current actor.
@@ -120,6 +129,44 @@ public interface ATActorMirror extends ATObject {
 	 * It should take into account the possibility that the inbox is empty.
 	 */
 	public ATObject base_serve() throws InterpreterException;
+	
+	/**
+	 * Bounds the number of messages sent to this actor by other actors that may wait
+	 * to be served. When the mailbox is full, the policy determines what happens to
+	 * a message sent to this actor:
+	 * <ul>
+	 *  <li><tt>block</tt>: the sender's turn waits until there is room
+	 *  <li><tt>dropOldest</tt>: the oldest message not yet scheduled in the inbox is discarded
+	 *  <li><tt>dropNewest</tt>: the message sent is discarded
+	 *  <li><tt>raise</tt>: a <tt>MailboxFull</tt> exception is raised in the sender's turn
+	 * </ul>
+	 * 
+	 * @param capacity the maximum number of waiting messages, or zero to lift the limit
+	 * @param policy one of <tt>`block</tt>, <tt>`dropOldest</tt>, <tt>`dropNewest</tt> or <tt>`raise</tt>
+	 */
+	public ATNil base_limitMailbox(ATNumber capacity, ATSymbol policy) throws InterpreterException;
+	
+	/**
+	 * Bounds the number of letters that may wait in the outbox of each far reference
+	 * owned by this actor which was not given a limit of its own. The policies are those
+	 * of {@link #base_limitMailbox(ATNumber, ATSymbol)}, applied to the outbox.
+	 */
+	public ATNil base_limitOutboxes(ATNumber capacity, ATSymbol policy) throws InterpreterException;
+	
+	/**
+	 * Bounds the number of letters that may wait in the outbox of the given far reference.
+	 */
+	public ATNil base_limitOutbox(ATFarReference reference, ATNumber capacity, ATSymbol policy) throws InterpreterException;
+	
+	/**
+	 * @return the number of messages sent to this actor that have not been served yet
+	 */
+	public ATNumber base_mailboxSize() throws InterpreterException;
+	
+	/**
+	 * @return the number of letters waiting in the outbox of the given far reference
+	 */
+	public ATNumber base_outboxSize(ATFarReference reference) throws InterpreterException;
 
 	/**
 	 * This method provides access to a snapshot of the current published services of an actor.
@@ -27,6 +27,8 @@
  */
 package edu.vub.at.actors.eventloops;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /**
  * A BlockingFuture represents a synchronous, blocking future used by the AT/2 implementation
@@ -124,12 +126,35 @@ public final class BlockingFuture implements Future {
      * PRE: lock owned
      */
     private void waitFor() {
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+        	// a pooled event loop waiting for this future blocks a shared scheduler worker:
+        	// allow the pool to compensate by activating a spare worker
+        	try {
+        		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        			public boolean block() {
+        				waitOnce();
+        				return isDetermined();
+        			}
+        			public boolean isReleasable() {
+        				return isDetermined();
+        			}
+        		});
+        	} catch (InterruptedException e) { }
+        }
         while (!isDetermined()) {
-            try {
-				wait();
-			} catch (InterruptedException e) { }
+            waitOnce();
         }
     }
+    
+    /**
+     * Waits until notified.
+     * PRE: lock owned
+     */
+    private void waitOnce() {
+        try {
+			wait();
+		} catch (InterruptedException e) { }
+    }
 
     /**
      * Gets the result of the task.
@@ -42,14 +42,32 @@ public abstract class Event implements Serializable {
 	 */
 	private final String description_;
 	
+	/**
+	 * The object the event operates upon, if any, for debugging purposes only.
+	 * It is only printed when the event itself is printed.
+	 */
+	private final transient Object subject_;
+	
 	/** Default Constructor */
 	public Event() {
-		description_ = "anonymous event: " + this;
+		description_ = null;
+		subject_ = null;
 	}
 	
 	/** Constructor taking a descriptive String for debugging purposes */
 	public Event(String description) {
-		description_ = "event: " + description;
+		description_ = description;
+		subject_ = null;
+	}
+	
+	/**
+	 * Constructor taking the name of the operation performed by the event and the
+	 * object it operates upon, which are only combined into a description when the
+	 * event is printed.
+	 */
+	public Event(String operation, Object subject) {
+		description_ = operation;
+		subject_ = subject;
 	}
 	
 	/**
@@ -61,7 +79,13 @@ public abstract class Event implements Serializable {
 	public abstract void process(Object owner);
 	
 	public String toString() {
-		return description_;
+		if (description_ == null) {
+			return "anonymous event: " + super.toString();
+		} else if (subject_ == null) {
+			return "event: " + description_;
+		} else {
+			return "event: " + description_ + "(" + subject_ + ")";
+		}
 	}
 	
 }
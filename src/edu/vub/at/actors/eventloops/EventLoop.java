@@ -28,6 +28,9 @@
 package edu.vub.at.actors.eventloops;
 
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import edu.vub.at.util.logging.Logging;
 
@@ -44,6 +47,14 @@ import edu.vub.at.util.logging.Logging;
  * 
  * This is an abstract class. To be usable, subclasses have to provide a meaningful
  * implemementation strategy for handling events by overriding the handle method.
+ * 
+ * By default, each event loop owns a dedicated {@link EventProcessor} thread. When the
+ * VM is started with the system property <tt>AT_SCHEDULER</tt> set to <tt>pool</tt>,
+ * event loops instead share a single work-stealing pool of {@link SchedulerWorker} threads:
+ * whenever an event loop has pending events, one task is scheduled on the pool that
+ * processes a single event and then reschedules the event loop if more events are pending.
+ * At most one such task is scheduled per event loop at any time, such that events are still
+ * processed one at a time and in FIFO order.
  *
  * @author tvcutsem
  * @author smostinc
@@ -62,15 +73,55 @@ public abstract class EventLoop {
 	 * Each event loop has an event processor, which is a thread responsible
 	 * for perpetually dequeuing events from the event queue and passing them
 	 * on to this event loop's handle method.
+	 * 
+	 * This field is null if the event loop is scheduled on the shared scheduler pool.
 	 */
 	protected Thread processor_;
 	
 	protected volatile boolean askedToStop_;
 	
 	private final String name_;
+	
+	/**
+	 * For pooled event loops, indicates whether the event loop has been started.
+	 * Events received before the event loop is started are only processed after
+	 * {@link this#start()} has been invoked.
+	 */
+	private volatile boolean started_;
+	
+	/**
+	 * For pooled event loops, indicates whether a turn of this event loop is
+	 * currently scheduled on or running in the scheduler pool.
+	 */
+	private final AtomicBoolean scheduled_;
+	
+	/**
+	 * For pooled event loops, the task submitted to the scheduler pool to process
+	 * the next event of this event loop.
+	 */
+	private final Runnable turn_;
+	
+	/**
+	 * The values of the {@link EventLoopLocal} variables of this event loop, indexed by
+	 * variable. Only accessed while serving this event loop.
+	 */
+	private Object[] locals_ = new Object[0];
 
 	private static final String _ENV_AT_STACK_SIZE_ = "AT_STACK_SIZE";
 	
+	private static final String _ENV_AT_SCHEDULER_ = "AT_SCHEDULER";
+	
+	private static final String _ENV_AT_SCHEDULER_THREADS_ = "AT_SCHEDULER_THREADS";
+	
+	private static final String _POOLED_SCHEDULER_ = "pool";
+	
+	/**
+	 * Whether event loops are by default scheduled on the shared scheduler pool
+	 * rather than on a dedicated thread, as selected at VM startup by means of the
+	 * system property AT_SCHEDULER.
+	 */
+	public static final boolean _POOLED_ = _POOLED_SCHEDULER_.equals(System.getProperty(_ENV_AT_SCHEDULER_));
+	
 	/**
 	 * Constructs a new event loop with the default processing behaviour.
 	 * Note: the creator must explicitly call {@link this#start()} to start
@@ -79,24 +130,61 @@ public abstract class EventLoop {
 	 * @param name used for debugging purposes
 	 */
 	public EventLoop(String name) {
+		this(name, _POOLED_);
+	}
+	
+	/**
+	 * Constructs a new event loop which, if it is not scheduled on the shared scheduler
+	 * pool, is served by a thread with the given stack size. Pooled event loops run on
+	 * scheduler worker threads whose stack size is determined by the JVM.
+	 */
+	public EventLoop(String name, int stackSize) {
 		eventQueue_ = new EventQueue();
 		askedToStop_ = false;
 		name_ = name;
-		processor_ = new EventProcessor();
+		if (_POOLED_) {
+			scheduled_ = new AtomicBoolean(false);
+			turn_ = new Turn();
+		} else {
+			scheduled_ = null;
+			turn_ = null;
+			processor_ = new EventProcessor(stackSize);
+		}
 	}
 	
-	public EventLoop(String name, int stackSize) {
+	/**
+	 * Constructs a new event loop, explicitly choosing whether it is served by a dedicated
+	 * thread or scheduled on the shared scheduler pool, regardless of the VM-wide default.
+	 * 
+	 * @param name used for debugging purposes
+	 * @param pooled whether the event loop is scheduled on the shared scheduler pool
+	 */
+	protected EventLoop(String name, boolean pooled) {
 		eventQueue_ = new EventQueue();
 		askedToStop_ = false;
 		name_ = name;
-		processor_ = new EventProcessor(stackSize);
+		if (pooled) {
+			scheduled_ = new AtomicBoolean(false);
+			turn_ = new Turn();
+		} else {
+			scheduled_ = null;
+			turn_ = null;
+			processor_ = new EventProcessor();
+		}
 	}
 	
 	/**
 	 * Starts the execution of this event loop.
 	 */
 	public void start() {
-		processor_.start();
+		if (processor_ != null) {
+			processor_.start();
+		} else {
+			started_ = true;
+			if (!eventQueue_.isEmpty()) {
+				schedule();
+			}
+		}
 	}
 		
 	public String toString() {
@@ -112,13 +200,11 @@ public abstract class EventLoop {
 	 * @throws IllegalStateException when the cast failed.
 	 */
 	public static EventLoop toEventLoop(Thread t) throws IllegalStateException {
-		try {
-		  EventProcessor processor = (EventProcessor) t;
-	      return processor.serving();
-		} catch (ClassCastException e) {
-			e.printStackTrace();
+		EventLoop loop = servedBy(t);
+		if (loop == null) {
 			throw new IllegalStateException("Asked to transform a non-event loop thread to an event loop");
 		}
+		return loop;
 	}
 	
 	/**
@@ -127,13 +213,36 @@ public abstract class EventLoop {
 	 * @throws IllegalStateException if the current thread is not the thread of an event loop
 	 */
 	public static EventLoop currentEventLoop() throws IllegalStateException {
-		Thread current = Thread.currentThread();
-		try {
-		  EventProcessor processor = (EventProcessor) current;
-	      return processor.serving();
-		} catch (ClassCastException e) {
+		EventLoop loop = servedBy(Thread.currentThread());
+		if (loop == null) {
 			throw new IllegalStateException("Asked for current event loop when none was active");
 		}
+		return loop;
+	}
+	
+	/**
+	 * Allows access to the currently running event loop without raising an exception
+	 * if the current thread is not an event loop, for use on frequently executed paths.
+	 * @return the currently serving event loop, or null if the current thread is not the thread of an event loop
+	 */
+	public static EventLoop currentEventLoopOrNull() {
+		return servedBy(Thread.currentThread());
+	}
+	
+	/**
+	 * Returns the event loop the given thread is currently serving: either the event loop
+	 * owning a dedicated event processor thread, or the event loop whose turn a scheduler
+	 * worker thread is currently running.
+	 * @return the event loop served by t, or null if t is not serving any event loop
+	 */
+	public static EventLoop servedBy(Thread t) {
+		if (t instanceof EventProcessor) {
+			return ((EventProcessor) t).serving();
+		}
+		if (t instanceof SchedulerWorker) {
+			return ((SchedulerWorker) t).serving_;
+		}
+		return null;
 	}
 	
 	/**
@@ -145,7 +254,9 @@ public abstract class EventLoop {
 		askedToStop_ = true;
 		// explicitly interrupt my event processor because it
 		// may be blocked waiting on other events
-		processor_.interrupt();
+		if (processor_ != null) {
+			processor_.interrupt();
+		}
 	}
 	
 	/**
@@ -159,6 +270,9 @@ public abstract class EventLoop {
 	 */
 	protected final void receive(Event event) {
 		eventQueue_.enqueue(event);
+		if (processor_ == null) {
+			schedule();
+		}
 	}
 	
 	/**
@@ -197,13 +311,13 @@ public abstract class EventLoop {
 	}
 	
 	protected final BlockingFuture receiveAndReturnFuture(String description, final Callable callable) throws Exception {
-		if (Thread.currentThread() == processor_) {
-			throw new RuntimeException("Potential deadlock detected: "
-					+ processor_ + " tried to perform a synchronous operation on itself");
+		if (currentEventLoopOrNull() == this) {
+			throw new RuntimeException("Potential deadlock detected: Event Loop "
+					+ this + " tried to perform a synchronous operation on itself");
 		}
 		
 		BlockingFuture future = new BlockingFuture();
-		eventQueue_.enqueue(new FutureEvent(description, future) {
+		receive(new FutureEvent(description, future) {
 			private static final long serialVersionUID = 1672724382106164388L;
 
 			public Object execute(Object owner) throws Exception {
@@ -228,6 +342,9 @@ public abstract class EventLoop {
 	 */
 	protected final void receivePrioritized(Event event) {
 		eventQueue_.enqueueFirst(event);
+		if (processor_ == null) {
+			schedule();
+		}
 	}
 	
 	/**
@@ -261,6 +378,81 @@ public abstract class EventLoop {
 		}
 	}
 	
+	/**
+	 * Returns the value of the event loop local variable with the given index,
+	 * initializing it if it was not yet accessed by this event loop.
+	 */
+	final Object getLocal(int index, EventLoopLocal local) {
+		if (index >= locals_.length) {
+			growLocals(index);
+		}
+		Object value = locals_[index];
+		if (value == EventLoopLocal._UNINITIALIZED_) {
+			value = local.initialValue();
+			locals_[index] = value;
+		}
+		return value;
+	}
+	
+	final void setLocal(int index, Object value) {
+		if (index >= locals_.length) {
+			growLocals(index);
+		}
+		locals_[index] = value;
+	}
+	
+	private void growLocals(int index) {
+		Object[] locals = new Object[index + 1];
+		System.arraycopy(locals_, 0, locals, 0, locals_.length);
+		for (int i = locals_.length; i < locals.length; i++) {
+			locals[i] = EventLoopLocal._UNINITIALIZED_;
+		}
+		locals_ = locals;
+	}
+	
+	/**
+	 * Submits a turn of this pooled event loop to the scheduler pool, unless the
+	 * event loop is not yet started, was asked to stop or already has a turn scheduled.
+	 */
+	private void schedule() {
+		if (started_ && !askedToStop_ && scheduled_.compareAndSet(false, true)) {
+			SchedulerWorker._POOL_.execute(turn_);
+		}
+	}
+	
+	/**
+	 * A turn of a pooled event loop processes the next event of the event loop's queue
+	 * on a scheduler worker thread, after which the event loop is rescheduled if more
+	 * events are pending. Processing a single event per turn ensures that event loops
+	 * with long queues do not starve other event loops sharing the pool.
+	 */
+	private final class Turn implements Runnable {
+		
+		public void run() {
+			SchedulerWorker worker = (SchedulerWorker) Thread.currentThread();
+			worker.serving_ = owner();
+			try {
+				// like a dedicated event processor, a turn that was scheduled before the event
+				// loop was asked to stop still processes its event: stopping only prevents
+				// the event loop from being rescheduled
+				Event event = eventQueue_.poll();
+				if (event != null) {
+					Logging.EventLoop_LOG.debug(owner() + " is processing " + event);
+					
+					handle(event);
+				}
+			} finally {
+				worker.serving_ = null;
+				scheduled_.set(false);
+				// events received during this turn could not schedule a new turn
+				if (!eventQueue_.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+		
+	}
+	
 	/**
 	 * EventProcessor is a thread subclass whose primary goal is to keep a reference to the 
 	 * associated event loop, which is used to transform threads into the more manageable 
@@ -294,4 +486,36 @@ public abstract class EventLoop {
 		
 	}
 	
+	/**
+	 * SchedulerWorker is a thread of the shared scheduler pool on which pooled event loops
+	 * run their turns. It keeps a reference to the event loop whose turn it is currently
+	 * running, such that {@link EventLoop#currentEventLoop()} remains valid within a turn.
+	 */
+	public static final class SchedulerWorker extends ForkJoinWorkerThread {
+		
+		/**
+		 * The shared pool on which all pooled event loops are scheduled. Its parallelism
+		 * defaults to the number of available processors and can be overridden by means
+		 * of the system property AT_SCHEDULER_THREADS.
+		 */
+		private static final ForkJoinPool _POOL_ = new ForkJoinPool(
+				Integer.getInteger(_ENV_AT_SCHEDULER_THREADS_, Runtime.getRuntime().availableProcessors()).intValue(),
+				new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+					public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+						return new SchedulerWorker(pool);
+					}
+				},
+				null,
+				true); // FIFO scheduling of submitted turns
+		
+		private EventLoop serving_;
+		
+		protected SchedulerWorker(ForkJoinPool pool) {
+			super(pool);
+			// like dedicated event processors, workers keep the VM alive
+			setDaemon(false);
+		}
+		
+	}
+	
 }
@@ -0,0 +1,93 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.eventloops;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An EventLoopLocal is the event loop equivalent of a {@link ThreadLocal}: it assigns a
+ * separate value to each event loop accessing it. Event loops scheduled on the shared
+ * scheduler pool do not own a thread, such that per-actor state cannot be stored in
+ * thread-local variables.
+ * 
+ * When accessed from a thread which is not serving an event loop, the variable behaves
+ * as a normal thread-local variable.
+ * 
+ * Like subclasses of ThreadLocal, subclasses override {@link this#initialValue()} to
+ * compute the initial value of the variable for an event loop.
+ */
+public class EventLoopLocal {
+	
+	private static final AtomicInteger _NEXT_INDEX_ = new AtomicInteger(0);
+	
+	/**
+	 * The index of this variable in the locals of each event loop.
+	 */
+	private final int index_ = _NEXT_INDEX_.getAndIncrement();
+	
+	private final ThreadLocal threadLocal_ = new ThreadLocal() {
+		protected Object initialValue() {
+			return EventLoopLocal.this.initialValue();
+		}
+	};
+	
+	/**
+	 * @return the initial value of this variable for the current event loop or thread, null by default.
+	 */
+	protected Object initialValue() {
+		return null;
+	}
+	
+	/**
+	 * @return the value of this variable for the current event loop or thread.
+	 */
+	public Object get() {
+		EventLoop current = EventLoop.currentEventLoopOrNull();
+		if (current == null) {
+			return threadLocal_.get();
+		}
+		return current.getLocal(index_, this);
+	}
+	
+	/**
+	 * Sets the value of this variable for the current event loop or thread.
+	 */
+	public void set(Object value) {
+		EventLoop current = EventLoop.currentEventLoopOrNull();
+		if (current == null) {
+			threadLocal_.set(value);
+		} else {
+			current.setLocal(index_, value);
+		}
+	}
+	
+	/**
+	 * Sentinel marking a variable which has not yet been initialized for an event loop.
+	 */
+	static final Object _UNINITIALIZED_ = new Object();
+	
+}
@@ -28,44 +28,81 @@
 package edu.vub.at.actors.eventloops;
 
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * A simple synchronized blocking FIFO queue implementation.
- * The buffer will grow dynamically to accomodate more events when necessary.
+ * A lock-free, unbounded FIFO queue of events supporting multiple producers and a
+ * single consumer, namely the event loop owning the queue.
+ * 
+ * Events are kept in a linked list: producers append an event by atomically swapping
+ * the tail of the list, such that concurrent senders never contend on a lock. Prioritized
+ * events are pushed onto a separate lock-free stack which is always drained before the
+ * list, such that the most recently prioritized event is processed first.
+ * 
+ * The consumer methods {@link this#dequeue()}, {@link this#poll()}, {@link this#flush()}
+ * and {@link this#merge(Vector)} may only be invoked by the event loop owning the queue.
+ * An idle consumer blocked in dequeue is parked until a producer enqueues an event.
  *
  * @author tvcutsem
  */
 public final class EventQueue {
 
-	private static final int _DEFAULT_QUEUE_SIZE_ = 10;
+	private static final class Node {
+		Event event_;
+		volatile Node next_;
+		
+		Node(Event event) {
+			event_ = event;
+		}
+	}
 	
-	private final Vector elements_;
+	/**
+	 * The head of the list is a sentinel node whose successor holds the next event.
+	 * Only modified by the consumer.
+	 */
+	private volatile Node head_;
+	
+	/**
+	 * The last node of the list, swapped by producers.
+	 */
+	private final AtomicReference tail_;
+	
+	/**
+	 * The top of the stack of prioritized events.
+	 */
+	private final AtomicReference first_ = new AtomicReference(null);
+	
+	/**
+	 * The consumer thread parked waiting for an event, if any.
+	 */
+	private volatile Thread waiter_;
 	
 	/** Constructor which creates an empty EventQueue */
 	public EventQueue() {
-		elements_ = new Vector(_DEFAULT_QUEUE_SIZE_);
+		Node sentinel = new Node(null);
+		head_ = sentinel;
+		tail_ = new AtomicReference(sentinel);
 	}
 	
 	/**
 	 * Enqueue an event in the buffer. This method wakes up any
-	 * waiting consumer threads.
+	 * waiting consumer thread.
 	 */
 	public void enqueue(Event event) {
-		synchronized(this) {
-			elements_.add(event);
-			notifyAll();
-		}
+		Node node = new Node(event);
+		Node previous = (Node) tail_.getAndSet(node);
+		previous.next_ = node;
+		signal();
 	}
 	
 	/**
 	 * Enqueue an event as the first to be executed in the buffer. 
-	 * This method wakes up any waiting consumer threads.
+	 * This method wakes up any waiting consumer thread.
 	 */
 	public void enqueueFirst(Event event) {
-		synchronized(this) {
-			elements_.add(0, event);
-			notifyAll();
-		}
+		push(new Node(event));
+		signal();
 	}
 	
 	/**
@@ -76,12 +113,50 @@ public final class EventQueue {
 	 * @throws InterruptedException if the thread is interrupted while waiting on an empty buffer.
 	 */
 	public Event dequeue() throws InterruptedException {
-		synchronized(this) {
-			while(elements_.isEmpty()) {
-				wait();
+		Event event = poll();
+		while (event == null) {
+			waiter_ = Thread.currentThread();
+			// an event enqueued before waiter_ was published would not unpark us
+			if (isEmpty()) {
+				LockSupport.park(this);
 			}
-			return (Event) elements_.remove(0);
+			waiter_ = null;
+			event = poll();
+			// events enqueued before the interrupt are still handed out
+			if (event == null && Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		return event;
+	}
+	
+	/**
+	 * Dequeue an event from the buffer without blocking.
+	 * 
+	 * @return the dequeued event, or null if the buffer is empty.
+	 */
+	public Event poll() {
+		Node first = pop();
+		if (first != null) {
+			return first.event_;
+		}
+		Node head = head_;
+		Node next = head.next_;
+		if (next == null) {
+			if (tail_.get() == head) {
+				return null;
+			}
+			// a producer has swapped the tail but not yet linked its node
+			do {
+				Thread.yield();
+				next = head.next_;
+			} while (next == null);
 		}
+		Event event = next.event_;
+		// the dequeued node becomes the new sentinel
+		next.event_ = null;
+		head_ = next;
+		return event;
 	}
 	
 	/**
@@ -89,11 +164,13 @@ public final class EventQueue {
 	 * @return the buffer's content at the time it was flushed
 	 */
 	public Vector flush() {
-		synchronized(this) {
-			Vector copy = (Vector) elements_.clone();
-			elements_.clear();
-			return copy;
+		Vector copy = new Vector();
+		Event event = poll();
+		while (event != null) {
+			copy.add(event);
+			event = poll();
 		}
+		return copy;
 	}
 	
 	/**
@@ -101,8 +178,11 @@ public final class EventQueue {
 	 * the elements in contents in front of the buffer.
 	 */
 	public void merge(Vector contents) {
-		synchronized(this) {
-			elements_.addAll(0, contents);
+		for (int i = contents.size() - 1; i >= 0; i--) {
+			push(new Node((Event) contents.get(i)));
+		}
+		if (!contents.isEmpty()) {
+			signal();
 		}
 	}
 	
@@ -112,8 +192,32 @@ public final class EventQueue {
 	 * resource if necessary.
 	 */
 	public boolean isEmpty() {
-		synchronized (this) {
-			return elements_.isEmpty();
+		return first_.get() == null && tail_.get() == head_;
+	}
+	
+	private void push(Node node) {
+		Node top;
+		do {
+			top = (Node) first_.get();
+			node.next_ = top;
+		} while (!first_.compareAndSet(top, node));
+	}
+	
+	private Node pop() {
+		Node top;
+		do {
+			top = (Node) first_.get();
+			if (top == null) {
+				return null;
+			}
+		} while (!first_.compareAndSet(top, top.next_));
+		return top;
+	}
+	
+	private void signal() {
+		Thread waiter = waiter_;
+		if (waiter != null) {
+			LockSupport.unpark(waiter);
 		}
 	}
 	
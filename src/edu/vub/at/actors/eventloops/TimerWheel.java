@@ -0,0 +1,293 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.eventloops;
+
+import edu.vub.at.util.logging.Logging;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel which runs tasks after a delay with millisecond resolution.
+ * All timeouts are managed by a single daemon thread, regardless of how many are outstanding.
+ * 
+ * The wheel is an array of buckets, one per tick of one millisecond. A timeout is hashed
+ * into the bucket of the tick at which it expires, modulo the size of the wheel, such that
+ * every tick only visits the timeouts of a single bucket. Timeouts expiring after more than
+ * one revolution remain in their bucket until the revolution in which they are due.
+ * 
+ * The timer thread does not wake up at every tick: it parks until the tick of the next
+ * non-empty bucket, or indefinitely if the wheel is empty, and visits the buckets of all
+ * ticks that have elapsed when it wakes up. Hence, a few timeouts with long delays cost
+ * at most one wake-up per bucket and revolution rather than one per millisecond.
+ * 
+ * Scheduling and cancelling a timeout take constant time and may be done by any thread:
+ * new timeouts are handed to the timer thread through a lock-free queue, and a cancelled
+ * timeout is merely marked as such, to be unlinked by the timer thread when it next
+ * visits its bucket. The timer thread is only woken up by a new timeout that expires
+ * before the tick until which it is parked.
+ * 
+ * Tasks are run by the timer thread and must therefore be short: they should merely
+ * hand work to an event loop, e.g. by signalling an event.
+ */
+public final class TimerWheel {
+	
+	private static final int _PENDING_ = 0;
+	private static final int _CANCELLED_ = 1;
+	private static final int _EXPIRED_ = 2;
+	
+	/** the number of buckets, a power of two */
+	private static final int _WHEEL_SIZE_ = 512;
+	private static final int _WHEEL_MASK_ = _WHEEL_SIZE_ - 1;
+	
+	private static final long _TICK_NANOS_ = 1000000L;
+	
+	/** longer delays are truncated, such that deadlines cannot overflow (about 73 million years) */
+	private static final long _MAX_DELAY_ = Long.MAX_VALUE / 4;
+	
+	/**
+	 * A task scheduled on a timer wheel, which can be cancelled until it has been run.
+	 */
+	public static final class Timeout {
+		
+		private static final AtomicIntegerFieldUpdater _STATE_ =
+			AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state_");
+		
+		private final Runnable task_;
+		
+		/** the tick at which this timeout expires */
+		private final long deadline_;
+		
+		private volatile int state_ = _PENDING_;
+		
+		/** the next timeout in the same bucket, only accessed by the timer thread */
+		private Timeout next_;
+		
+		private Timeout(Runnable task, long deadline) {
+			task_ = task;
+			deadline_ = deadline;
+		}
+		
+		/**
+		 * Prevents the task from being run, unless it is already running.
+		 * @return whether the task was cancelled
+		 */
+		public boolean cancel() {
+			return _STATE_.compareAndSet(this, _PENDING_, _CANCELLED_);
+		}
+		
+		public boolean isCancelled() {
+			return state_ == _CANCELLED_;
+		}
+		
+		public boolean isExpired() {
+			return state_ == _EXPIRED_;
+		}
+		
+		private boolean expire() {
+			return _STATE_.compareAndSet(this, _PENDING_, _EXPIRED_);
+		}
+	}
+	
+	private final String name_;
+	
+	/** the first timeout of every bucket, only accessed by the timer thread */
+	private final Timeout[] buckets_ = new Timeout[_WHEEL_SIZE_];
+	
+	/** timeouts scheduled since the last tick */
+	private final ConcurrentLinkedQueue incoming_ = new ConcurrentLinkedQueue();
+	
+	/** the number of timeouts that are scheduled and not yet removed from the wheel */
+	private final AtomicInteger outstanding_ = new AtomicInteger(0);
+	
+	private final long startTime_ = System.nanoTime();
+	
+	private Thread timerThread_;
+	
+	/** the tick until which the timer thread is parked, Long.MAX_VALUE if the wheel is empty */
+	private volatile long wakeTick_ = Long.MAX_VALUE;
+	
+	/** the next tick to be processed, only accessed by the timer thread */
+	private long tick_;
+	
+	/** the number of times the timer thread has woken up */
+	private volatile long wakeups_ = 0;
+	
+	public TimerWheel(String name) {
+		name_ = name;
+	}
+	
+	/**
+	 * Schedules the given task to be run by the timer thread after the given delay.
+	 * @param delay the delay in milliseconds, non-positive delays expire at the next tick
+	 * @return a timeout by which the task can be cancelled
+	 */
+	public Timeout schedule(Runnable task, long delay) {
+		// round the current time up, such that the task never runs before the delay has elapsed
+		long deadline = (System.nanoTime() - startTime_ + _TICK_NANOS_ - 1) / _TICK_NANOS_
+		                + Math.min(Math.max(0, delay), _MAX_DELAY_);
+		Timeout timeout = new Timeout(task, deadline);
+		outstanding_.incrementAndGet();
+		incoming_.add(timeout);
+		Thread timer = startTimerThread();
+		if (deadline < wakeTick_) {
+			LockSupport.unpark(timer);
+		}
+		return timeout;
+	}
+	
+	/**
+	 * @return the number of timeouts which have been scheduled and have not expired,
+	 * including cancelled timeouts which have not yet been removed from the wheel
+	 */
+	public int getOutstanding() {
+		return outstanding_.get();
+	}
+	
+	/**
+	 * @return the number of times the timer thread has woken up to visit the wheel
+	 */
+	public long getWakeups() {
+		return wakeups_;
+	}
+	
+	private long currentTick() {
+		return (System.nanoTime() - startTime_) / _TICK_NANOS_;
+	}
+	
+	private synchronized Thread startTimerThread() {
+		if (timerThread_ == null) {
+			tick_ = currentTick();
+			timerThread_ = new Thread(new Runnable() {
+				public void run() {
+					runTimer();
+				}
+			}, name_);
+			timerThread_.setDaemon(true);
+			timerThread_.start();
+		}
+		return timerThread_;
+	}
+	
+	private void runTimer() {
+		boolean empty = true;
+		while (true) {
+			if (empty) {
+				// no timeouts were in the wheel while parked, so the elapsed ticks can be skipped
+				tick_ = Math.max(tick_, currentTick());
+			}
+			transferIncoming();
+			long now = currentTick();
+			while (tick_ <= now) {
+				expireBucket();
+				tick_++;
+			}
+			long next = nextOccupiedTick();
+			empty = (next == Long.MAX_VALUE);
+			wakeTick_ = next;
+			// re-check after publishing the wake-up tick, as a timeout scheduled
+			// in the meantime may not have seen it
+			if (!incoming_.isEmpty()) {
+				continue;
+			}
+			if (empty) {
+				LockSupport.park(this);
+			} else {
+				// parking may return early, in which case the loop merely finds no elapsed ticks
+				long delay = (next * _TICK_NANOS_) - (System.nanoTime() - startTime_);
+				if (delay > 0) {
+					LockSupport.parkNanos(this, delay);
+				}
+			}
+			wakeups_++;
+		}
+	}
+	
+	/**
+	 * @return the first tick, from the next tick to be processed on, whose bucket holds a timeout,
+	 * or Long.MAX_VALUE if the wheel is empty
+	 */
+	private long nextOccupiedTick() {
+		for (int i = 0; i < _WHEEL_SIZE_; i++) {
+			if (buckets_[(int) ((tick_ + i) & _WHEEL_MASK_)] != null) {
+				return tick_ + i;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+	
+	/**
+	 * Hashes the newly scheduled timeouts into their buckets. Timeouts that are already
+	 * due are put in the bucket of the current tick.
+	 */
+	private void transferIncoming() {
+		Timeout timeout;
+		while ((timeout = (Timeout) incoming_.poll()) != null) {
+			if (timeout.isCancelled()) {
+				outstanding_.decrementAndGet();
+				continue;
+			}
+			int index = (int) (Math.max(timeout.deadline_, tick_) & _WHEEL_MASK_);
+			timeout.next_ = buckets_[index];
+			buckets_[index] = timeout;
+		}
+	}
+	
+	/**
+	 * Runs the timeouts of the current bucket which are due, and removes cancelled timeouts.
+	 */
+	private void expireBucket() {
+		int index = (int) (tick_ & _WHEEL_MASK_);
+		Timeout previous = null;
+		Timeout timeout = buckets_[index];
+		while (timeout != null) {
+			Timeout next = timeout.next_;
+			if (timeout.isCancelled() || timeout.deadline_ <= tick_) {
+				if (previous == null) {
+					buckets_[index] = next;
+				} else {
+					previous.next_ = next;
+				}
+				timeout.next_ = null;
+				outstanding_.decrementAndGet();
+				if (timeout.expire()) {
+					try {
+						timeout.task_.run();
+					} catch (Throwable e) {
+						Logging.EventLoop_LOG.error(name_ + ": timer task failed:", e);
+					}
+				}
+			} else {
+				previous = timeout;
+			}
+			timeout = next;
+		}
+	}
+	
+}
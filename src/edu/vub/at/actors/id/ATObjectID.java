@@ -67,6 +67,16 @@ public class ATObjectID implements Serializable {
 		description_ = description;
 	}
 	
+	/**
+	 * Reconstructs an object identifier transmitted in binary form.
+	 */
+	public ATObjectID(VirtualMachineID vmId, ActorID actorId, long objectId, String description) {
+		virtualMachineId_ = vmId;
+		actorId_ = actorId;
+		objectId_ = objectId;
+		description_ = description;
+	}
+	
 	/*
 	 * Three cases to consider:
 	 *  an object can be:
@@ -94,6 +104,10 @@ public class ATObjectID implements Serializable {
 		return virtualMachineId_;
 	}
 	
+	public long getObjectId() {
+		return objectId_;
+	}
+	
 	public int hashCode() {
 		return virtualMachineId_.hashCode() |
 		       actorId_.hashCode() |
@@ -39,6 +39,8 @@ import java.util.Random;
  */
 public final class ActorID implements Serializable {
 
+	private static final long serialVersionUID = 7600589945459590886L;
+	
 	private static final Random generator_ = new Random(System.currentTimeMillis());
 	
 	private final int id_;
@@ -47,6 +49,17 @@ public final class ActorID implements Serializable {
 		id_ = generator_.nextInt();
 	}
 	
+	/**
+	 * Reconstructs the identity of an actor transmitted in binary form.
+	 */
+	public ActorID(int id) {
+		id_ = id;
+	}
+	
+	public int getID() {
+		return id_;
+	}
+	
 	public boolean equals(Object other) {
 		return ((other instanceof ActorID) && ((ActorID) other).id_ == id_);
 	}
@@ -47,6 +47,13 @@ public final class VirtualMachineID implements Serializable {
 		id_ = generator_.nextLong();
 	}
 	
+	/**
+	 * Reconstructs the identity of a virtual machine transmitted in binary form.
+	 */
+	public VirtualMachineID(long id) {
+		id_ = id;
+	}
+	
 	public boolean equals(Object other) {
 		return ((other instanceof VirtualMachineID) && ((VirtualMachineID) other).id_ == id_);
 	}
@@ -39,10 +39,12 @@ import edu.vub.at.actors.id.ATObjectID;
 import edu.vub.at.actors.id.ActorID;
 import edu.vub.at.actors.net.comm.Address;
 import edu.vub.at.eval.Evaluator;
+import edu.vub.at.eval.InvocationStack;
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.exceptions.XClassNotFound;
 import edu.vub.at.exceptions.XIOProblem;
 import edu.vub.at.exceptions.XIllegalOperation;
+import edu.vub.at.exceptions.XMailboxFull;
 import edu.vub.at.exceptions.XObjectOffline;
 import edu.vub.at.objects.ATAbstractGrammar;
 import edu.vub.at.objects.ATMethod;
@@ -50,17 +52,25 @@ import edu.vub.at.objects.ATObject;
 import edu.vub.at.objects.ATTable;
 import edu.vub.at.objects.ATTypeTag;
 import edu.vub.at.objects.coercion.Coercer;
+import edu.vub.at.objects.grammar.ATSymbol;
 import edu.vub.at.objects.mirrors.Reflection;
 import edu.vub.at.objects.natives.NATContext;
 import edu.vub.at.objects.natives.NATObject;
 import edu.vub.at.objects.natives.NATTable;
 import edu.vub.at.objects.natives.OBJLexicalRoot;
+import edu.vub.at.objects.natives.ScopeSnapshot;
 import edu.vub.at.objects.symbiosis.Symbiosis;
 import edu.vub.at.util.logging.Logging;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.EventListener;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An instance of the class ELActor represents a programmer-defined
@@ -117,8 +127,101 @@ public class ELActor extends EventLoop {
 		return (ELActor) _DEFAULT_ACTOR_.get();
 	}
 
+	private static final String _ENV_AT_SERVE_BATCH_ = "AT_SERVE_BATCH";
+	
+	/**
+	 * The maximum number of letters served at the end of a single event, as selected at
+	 * VM startup by means of the system property AT_SERVE_BATCH. Remaining letters are
+	 * served by a subsequent event, such that a busy inbox does not starve other events.
+	 */
+	private static final int _SERVE_BATCH_ = Math.max(1, Integer.getInteger(_ENV_AT_SERVE_BATCH_, 64).intValue());
+	
+	private static final String _ENV_AT_MAILBOX_CAPACITY_ = "AT_MAILBOX_CAPACITY";
+	private static final String _ENV_AT_MAILBOX_POLICY_ = "AT_MAILBOX_POLICY";
+	private static final String _ENV_AT_OUTBOX_CAPACITY_ = "AT_OUTBOX_CAPACITY";
+	private static final String _ENV_AT_OUTBOX_POLICY_ = "AT_OUTBOX_POLICY";
+	
+	/**
+	 * The default limits of the mailbox of an actor and of the outboxes of its far references,
+	 * as selected at VM startup by means of the system properties AT_MAILBOX_CAPACITY,
+	 * AT_MAILBOX_POLICY, AT_OUTBOX_CAPACITY and AT_OUTBOX_POLICY. By default, they are unbounded.
+	 */
+	private static final MailboxLimit _DEFAULT_MAILBOX_LIMIT_ = MailboxLimit.fromProperties(_ENV_AT_MAILBOX_CAPACITY_, _ENV_AT_MAILBOX_POLICY_);
+	private static final MailboxLimit _DEFAULT_OUTBOX_LIMIT_ = MailboxLimit.fromProperties(_ENV_AT_OUTBOX_CAPACITY_, _ENV_AT_OUTBOX_POLICY_);
+	
 	private ATActorMirror mirror_;
 	private final ActorID id_;
+	
+	/**
+	 * The number of letters scheduled in the inbox of this actor which still need to be served.
+	 * Letters scheduled while this actor processes an event are served when the event completes,
+	 * otherwise the thread which changes the count from zero signals a {@link #serveEvent_}.
+	 */
+	private final AtomicInteger pendingServes_ = new AtomicInteger(0);
+	
+	/**
+	 * The limit on the number of messages sent to this actor by other actors that have not yet been served.
+	 */
+	private volatile MailboxLimit mailboxLimit_ = _DEFAULT_MAILBOX_LIMIT_;
+	
+	/**
+	 * The limit applied to the outboxes of the far references owned by this actor, unless
+	 * a reference has a limit of its own.
+	 */
+	private volatile MailboxLimit outboxLimit_ = _DEFAULT_OUTBOX_LIMIT_;
+	
+	/**
+	 * The number of messages sent to this actor by other actors whose accept event is still queued.
+	 * Together with the {@link #pendingServes_} it determines the fill level of the mailbox.
+	 */
+	private final AtomicInteger acceptedMessages_ = new AtomicInteger(0);
+	
+	/**
+	 * The number of accepted messages that were dropped to make room for newer ones. Because
+	 * accept events are processed in order, the next accept events are the ones to be dropped.
+	 */
+	private final AtomicInteger droppedMessages_ = new AtomicInteger(0);
+	
+	/**
+	 * The lock on which senders wait for room in a full mailbox, with the number of waiting senders.
+	 */
+	private final Object mailboxLock_ = new Object();
+	private volatile int blockedSenders_ = 0;
+	
+	/**
+	 * Maps the address of a remote virtual machine to a pair of the number of messages it sent
+	 * to this actor which have been accepted or dropped but for which no credit has been returned
+	 * yet, and the number of messages after which that virtual machine expects credits.
+	 */
+	private final HashMap ungrantedCredits_ = new HashMap();
+	
+	/**
+	 * Whether credits owed to remote virtual machines are withheld because the mailbox is full
+	 * and its policy is to block senders, see {@link #grantCredit(Address, int)}.
+	 */
+	private volatile boolean creditsWithheld_ = false;
+	
+	/**
+	 * The event signalled to serve pending letters that could not be served at the end of an event.
+	 */
+	private final Event serveEvent_ = new Event("serve()") {
+		public void process(Object myActorMirror) {
+			serve();
+		}
+	};
+	
+	/**
+	 * The stack of method invocations and function applications currently active in this actor,
+	 * reachable from the actor such that it need not be looked up in a thread-local variable.
+	 */
+	private final InvocationStack invocationStack_ = new InvocationStack();
+	
+	/**
+	 * The number of operations performed by this actor whose effect is not confined to its
+	 * global scope, see {@link #noteExternalEffect()}. Only accessed by the actor itself.
+	 */
+	private int externalEffects_ = 0;
+	
 	protected final ELVirtualMachine host_;
 	protected final ReceptionistsSet receptionists_;
 	
@@ -162,12 +265,19 @@ public class ELActor extends EventLoop {
 	 */
 	public void handle(Event event) {
 		event.process(mirror_);
+		if (pendingServes_.get() > 0) {
+			serve();
+		}
 	}
 	
 	public ATActorMirror getImplicitActorMirror() { return mirror_; }
 
 	public void setActorMirror(ATActorMirror mirror) { mirror_ = mirror; }
 	
+	public InvocationStack getInvocationStack() {
+		return invocationStack_;
+	}
+	
 	public ELVirtualMachine getHost() {
 		return host_;
 	}
@@ -176,6 +286,9 @@ public class ELActor extends EventLoop {
 		return id_;
 	}
 	
+	/**
+	 * @return the thread dedicated to this actor, or null if the actor is scheduled on the shared scheduler pool.
+	 */
 	public Thread getExecutor() {
 		return processor_;
 	}
@@ -224,11 +337,28 @@ public class ELActor extends EventLoop {
 
 	/**
 	 * Initialises the root using the contents of the init.at file configured in
-	 * the hosting virtual machine.
+	 * the hosting virtual machine. Once an actor of the virtual machine has evaluated
+	 * the init.at file, it offers a snapshot of its global scope to the virtual machine,
+	 * from which subsequent actors copy their global scope instead.
 	 * 
 	 * @throws InterpreterException
 	 */
 	protected void initRootObject() throws InterpreterException {
+		ScopeSnapshot snapshot = host_.getScopeSnapshot();
+		if (snapshot != null && snapshot.instantiate()) {
+			return;
+		}
+		
+		if (host_.claimScopeSnapshot()) {
+			snapshot = new ScopeSnapshot(getSharedFieldNames());
+		} else {
+			snapshot = null;
+		}
+		// the init.at file should not affect the actor outside of its global scope
+		ATActorMirror mirror = mirror_;
+		int mailboxSize = getMailboxSize();
+		int externalEffects = externalEffects_;
+		
 		ATAbstractGrammar initialisationCode = host_.getInitialisationCode();
 		
 		// evaluate the initialization code in the context of the global scope
@@ -237,6 +367,37 @@ public class ELActor extends EventLoop {
 		
 		// note: the return value of the init.at file is ignored
 		initialisationCode.meta_eval(initCtx);
+		
+		if (snapshot != null) {
+			if (mirror != mirror_ || mailboxSize != getMailboxSize() || externalEffects != externalEffects_) {
+				Logging.Init_LOG.info("no snapshot of the global scope: the initialisation code affected " + this + " outside of its global scope");
+			} else if (snapshot.capture()) {
+				host_.offerScopeSnapshot(snapshot);
+			}
+		}
+	}
+	
+	/**
+	 * Records that the actor served by the current thread, if any, performs an operation whose
+	 * effect is not confined to its global scope: exporting an object, publishing or subscribing
+	 * to a service, scheduling a timer, creating an actor or invoking Java code symbiotically.
+	 * Such effects would not be repeated by actors copying a snapshot of the global scope,
+	 * hence no snapshot is taken if the initialisation code performs any of them.
+	 */
+	public static void noteExternalEffect() {
+		EventLoop loop = EventLoop.currentEventLoopOrNull();
+		if (loop instanceof ELActor) {
+			((ELActor) loop).externalEffects_++;
+		}
+	}
+	
+	private ATSymbol[] getSharedFieldNames() {
+		SharedActorField[] fields = host_.getFieldsToInitialize();
+		ATSymbol[] names = new ATSymbol[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			names[i] = fields[i].getName();
+		}
+		return names;
 	}
 	
 	/**
@@ -344,7 +505,7 @@ public class ELActor extends EventLoop {
 	 */
 	public void event_trigger(final ATObject closure, final ATTable arguments, final String type) {
 		final ELActor owner = this;
-		receive(new Event("trigger("+closure+")") {
+		receive(new Event("trigger", closure) {
 			public void process(Object myActorMirror) {
 				try {
 					owner.acceptSelfSend(closure, 
@@ -363,10 +524,25 @@ public class ELActor extends EventLoop {
 	 * by external sources.
 	 * @param sender address of the sending actor, used to notify when the receiver has gone offline.
 	 * @param serializedMessage the asynchronous AmbientTalk base-level message to enqueue
+	 * @param creditBatch the number of messages after which the sender expects credits to be returned,
+	 * or zero if the sender does not use credit-based flow control
 	 */
-	public void event_remoteAccept(final Address sender, final Packet serializedMessage) {
-		receive(new Event("remoteAccept("+serializedMessage+")") {
+	public void event_remoteAccept(final Address sender, final Packet serializedMessage, final int creditBatch) {
+		try {
+			if (!admitMessage(false, creditBatch > 0)) {
+				grantCredit(sender, creditBatch);
+				return;
+			}
+		} catch (XMailboxFull e) {
+			// cannot be raised for remote senders
+		}
+		receive(new Event("remoteAccept", serializedMessage) {
 			public void process(Object myActorMirror) {
+			  grantCredit(sender, creditBatch);
+			  if (!takeAcceptedMessage()) {
+				  Logging.Actor_LOG.warn(mirror_ + ": mailbox full, dropped " + serializedMessage);
+				  return;
+			  }
 			  try {
 				// receive a pair [receiver, message]
 				ATObject[] pair = serializedMessage.unpack().asNativeTable().elements_;
@@ -388,10 +564,18 @@ public class ELActor extends EventLoop {
 	 * by local actors.
 	 * @param ref the local reference of the sending actor, used to notify when the receiver has gone offline.
 	 * @param serializedMessage the asynchronous AmbientTalk base-level message to enqueue
+	 * @throws XMailboxFull if the mailbox of this actor is full and its policy is to raise an exception
 	 */
-	public void event_localAccept(final NATLocalFarRef ref, final Packet serializedMessage) {
-		receive(new Event("localAccept("+serializedMessage+")") {
+	public void event_localAccept(final NATLocalFarRef ref, final Packet serializedMessage) throws XMailboxFull {
+		if (!admitMessage(true, false)) {
+			return;
+		}
+		receive(new Event("localAccept", serializedMessage) {
 			public void process(Object myActorMirror) {
+			  if (!takeAcceptedMessage()) {
+				  Logging.Actor_LOG.warn(mirror_ + ": mailbox full, dropped " + serializedMessage);
+				  return;
+			  }
 			  try {
 				// receive a pair [receiver, message]
 				ATObject[] pair = serializedMessage.unpack().asNativeTable().elements_;
@@ -408,19 +592,293 @@ public class ELActor extends EventLoop {
 		});
 	}
 	
+	/**
+	 * Signals that a letter was scheduled in the inbox of this actor. Every signal
+	 * results in exactly one invocation of the actor mirror's <tt>serve</tt> method.
+	 * 
+	 * When signalled by the actor itself, the letter is served once the current event
+	 * has been processed, without allocating an event of its own.
+	 */
 	public void event_serve() {
-		receive(new Event("serve()") {
-			public void process(Object myActorMirror) {
-				try {
-					ATObject result = mirror_.base_serve();
-					Logging.Actor_LOG.debug(mirror_ + ": serve() returned " + result);
-				} catch (InterpreterException e) {
-					host_.getOutput().println(">>> Exception in actor " + myActorMirror + ": "+e.getMessage());
-					e.printAmbientTalkStackTrace(host_.getOutput());
-					Logging.Actor_LOG.error(mirror_ + ": serve() failed ", e);
+		if (pendingServes_.getAndIncrement() == 0 && currentEventLoopOrNull() != this) {
+			receive(serveEvent_);
+		}
+	}
+	
+	/**
+	 * Serves at most {@link #_SERVE_BATCH_} pending letters, and signals a new serve event
+	 * if more letters remain to be served.
+	 */
+	private void serve() {
+		for (int i = 0; i < _SERVE_BATCH_; i++) {
+			if (!takePendingServe()) {
+				return;
+			}
+			try {
+				ATObject result = mirror_.base_serve();
+				Logging.Actor_LOG.debug(mirror_ + ": serve() returned " + result);
+			} catch (InterpreterException e) {
+				host_.getOutput().println(">>> Exception in actor " + mirror_ + ": "+e.getMessage());
+				e.printAmbientTalkStackTrace(host_.getOutput());
+				Logging.Actor_LOG.error(mirror_ + ": serve() failed ", e);
+			}
+		}
+		if (pendingServes_.get() > 0) {
+			receive(serveEvent_);
+		}
+	}
+	
+	/**
+	 * Decrements the number of pending letters, unless there are none.
+	 * @return whether a pending letter should be served
+	 */
+	private boolean takePendingServe() {
+		int pending;
+		do {
+			pending = pendingServes_.get();
+			if (pending == 0) {
+				return false;
+			}
+		} while (!pendingServes_.compareAndSet(pending, pending - 1));
+		mailboxDrained();
+		return true;
+	}
+	
+	/**
+	 * Reserves room in the mailbox of this actor for a message sent by another actor or
+	 * by a remote virtual machine, applying the overflow policy of the mailbox if it is full.
+	 * Senders are never blocked by a full mailbox of their own actor.
+	 * 
+	 * Messages of remote virtual machines are accepted by the threads of the communication
+	 * layer, which must never block. If the policy is to block, a message of a remote virtual
+	 * machine that uses credit-based flow control is accepted nonetheless: the credits owed to
+	 * that virtual machine are withheld until the mailbox has room again, such that it stops
+	 * transmitting once it runs out of credits. Hence, the mailbox may exceed its capacity by
+	 * at most the credits of the remote senders. Messages of remote virtual machines that do not
+	 * use flow control are dropped, as they would be if the policy were to drop the newest message.
+	 * 
+	 * @param canRaise whether the sender's turn is still running, such that it can be interrupted
+	 * by an exception. If not, messages that should raise an exception are dropped instead.
+	 * @param remoteWithCredits whether the message was sent by a remote virtual machine that
+	 * uses credit-based flow control
+	 * @return whether the message may be accepted
+	 * @throws XMailboxFull if the mailbox is full and its policy is to raise an exception
+	 */
+	private boolean admitMessage(boolean canRaise, boolean remoteWithCredits) throws XMailboxFull {
+		MailboxLimit limit = mailboxLimit_;
+		if (!limit.isBounded()) {
+			acceptedMessages_.incrementAndGet();
+			return true;
+		}
+		if (reserveMessage(limit)) {
+			return true;
+		}
+		switch (limit.getPolicy()) {
+		case MailboxLimit._BLOCK_:
+			if (remoteWithCredits || currentEventLoopOrNull() == this) {
+				acceptedMessages_.incrementAndGet();
+				return true;
+			}
+			if (canRaise) {
+				// the turn of a local sender
+				awaitRoom();
+				return true;
+			}
+			break;
+		case MailboxLimit._DROP_OLDEST_:
+			// letters already scheduled in the inbox are never dropped
+			if (acceptedMessages_.get() > droppedMessages_.get()) {
+				droppedMessages_.incrementAndGet();
+				acceptedMessages_.incrementAndGet();
+				return true;
+			}
+			break;
+		case MailboxLimit._RAISE_:
+			if (canRaise) {
+				throw new XMailboxFull("Mailbox of " + this + " is full: " + limit);
+			}
+			break;
+		}
+		Logging.Actor_LOG.warn(this + ": mailbox full, dropped an incoming message");
+		return false;
+	}
+	
+	/**
+	 * Counts an incoming message if the mailbox has room for it.
+	 */
+	private boolean reserveMessage(MailboxLimit limit) {
+		int accepted;
+		do {
+			accepted = acceptedMessages_.get();
+			if (!limit.admits(accepted - droppedMessages_.get() + pendingServes_.get())) {
+				return false;
+			}
+		} while (!acceptedMessages_.compareAndSet(accepted, accepted + 1));
+		return true;
+	}
+	
+	/**
+	 * Makes the calling thread wait until the mailbox has room for a message, and reserves it.
+	 */
+	private void awaitRoom() {
+		synchronized (mailboxLock_) {
+			blockedSenders_++;
+			try {
+				RoomReservation reservation = new RoomReservation();
+				if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+					// a pooled event loop waiting for room blocks a shared scheduler worker:
+					// allow the pool to compensate by activating a spare worker
+					ForkJoinPool.managedBlock(reservation);
+				} else {
+					reservation.block();
 				}
+			} catch (InterruptedException e) {
+				// accept the message anyway, the sender is probably being stopped
+				acceptedMessages_.incrementAndGet();
+				Thread.currentThread().interrupt();
+			} finally {
+				blockedSenders_--;
 			}
-		});
+		}
+	}
+	
+	/**
+	 * Reserves room in the mailbox for a message as soon as there is room.
+	 * Both methods are invoked while holding the {@link #mailboxLock_}.
+	 */
+	private final class RoomReservation implements ForkJoinPool.ManagedBlocker {
+		
+		private boolean reserved_ = false;
+		
+		public boolean isReleasable() {
+			if (!reserved_) {
+				reserved_ = reserveMessage(mailboxLimit_);
+			}
+			return reserved_;
+		}
+		
+		public boolean block() throws InterruptedException {
+			while (!isReleasable()) {
+				mailboxLock_.wait();
+			}
+			return true;
+		}
+		
+	}
+	
+	/**
+	 * Invoked when the accept event of a message sent by another actor is processed.
+	 * @return false if the message was dropped to make room for a newer message
+	 */
+	private boolean takeAcceptedMessage() {
+		acceptedMessages_.decrementAndGet();
+		int dropped;
+		do {
+			dropped = droppedMessages_.get();
+			if (dropped == 0) {
+				mailboxDrained();
+				return true;
+			}
+		} while (!droppedMessages_.compareAndSet(dropped, dropped - 1));
+		return false;
+	}
+	
+	/**
+	 * Wakes up the senders waiting for room in the mailbox, if any, and
+	 * returns the credits withheld from remote senders if there is room.
+	 */
+	private void mailboxDrained() {
+		if (blockedSenders_ > 0) {
+			synchronized (mailboxLock_) {
+				mailboxLock_.notifyAll();
+			}
+		}
+		if (creditsWithheld_) {
+			releaseWithheldCredits();
+		}
+	}
+	
+	/**
+	 * Counts a message received from a remote virtual machine, and returns credits to that
+	 * virtual machine once it has sent creditBatch messages. A batch of zero indicates that
+	 * the sender does not use credit-based flow control. Credits are withheld while the
+	 * mailbox is full and its policy is to block senders.
+	 */
+	private void grantCredit(Address sender, int creditBatch) {
+		if (creditBatch <= 0) {
+			return;
+		}
+		synchronized (ungrantedCredits_) {
+			int[] ungranted = (int[]) ungrantedCredits_.get(sender);
+			if (ungranted == null) {
+				ungranted = new int[2];
+				ungrantedCredits_.put(sender, ungranted);
+			}
+			ungranted[1] = creditBatch;
+			if (++ungranted[0] >= creditBatch) {
+				if (mustWithholdCredits()) {
+					creditsWithheld_ = true;
+				} else {
+					host_.event_grantCredit(sender, id_, ungranted[0]);
+					ungranted[0] = 0;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the credits withheld from remote senders, unless the mailbox is still full.
+	 */
+	private void releaseWithheldCredits() {
+		synchronized (ungrantedCredits_) {
+			if (!creditsWithheld_ || mustWithholdCredits()) {
+				return;
+			}
+			creditsWithheld_ = false;
+			for (Iterator it = ungrantedCredits_.entrySet().iterator(); it.hasNext();) {
+				Map.Entry entry = (Map.Entry) it.next();
+				int[] ungranted = (int[]) entry.getValue();
+				if (ungranted[0] >= ungranted[1]) {
+					host_.event_grantCredit((Address) entry.getKey(), id_, ungranted[0]);
+					ungranted[0] = 0;
+				}
+			}
+		}
+	}
+	
+	private boolean mustWithholdCredits() {
+		MailboxLimit limit = mailboxLimit_;
+		return limit.getPolicy() == MailboxLimit._BLOCK_ && !limit.admits(getMailboxSize());
+	}
+	
+	/**
+	 * @return the number of messages sent to this actor which have not been served yet.
+	 */
+	public int getMailboxSize() {
+		return acceptedMessages_.get() - droppedMessages_.get() + pendingServes_.get();
+	}
+	
+	public MailboxLimit getMailboxLimit() {
+		return mailboxLimit_;
+	}
+	
+	public void setMailboxLimit(MailboxLimit limit) {
+		mailboxLimit_ = limit;
+		// a raised limit or a changed policy may release waiting senders
+		synchronized (mailboxLock_) {
+			mailboxLock_.notifyAll();
+		}
+		if (creditsWithheld_) {
+			releaseWithheldCredits();
+		}
+	}
+	
+	public MailboxLimit getOutboxLimit() {
+		return outboxLimit_;
+	}
+	
+	public void setOutboxLimit(MailboxLimit limit) {
+		outboxLimit_ = limit;
 	}
 	
 	private void performAccept(ATObject receiver, ATAsyncMessage msg) {
@@ -31,12 +31,14 @@ import edu.vub.at.actors.eventloops.BlockingFuture;
 import edu.vub.at.actors.eventloops.Callable;
 import edu.vub.at.actors.eventloops.Event;
 import edu.vub.at.actors.eventloops.EventLoop;
+import edu.vub.at.actors.eventloops.TimerWheel;
 import edu.vub.at.actors.id.ATObjectID;
 import edu.vub.at.actors.id.ActorID;
 import edu.vub.at.actors.id.VirtualMachineID;
 import edu.vub.at.actors.natives.DiscoveryManager.Subscription;
 import edu.vub.at.actors.net.ConnectionListenerManager;
 import edu.vub.at.actors.net.VMAddressBook;
+import edu.vub.at.actors.net.cmd.CMDGrantCredit;
 import edu.vub.at.actors.net.cmd.CMDHandshake;
 import edu.vub.at.actors.net.cmd.CMDObjectTakenOffline;
 import edu.vub.at.actors.net.cmd.CMDObjectDisconnected;
@@ -51,6 +53,7 @@ import edu.vub.at.objects.ATObject;
 import edu.vub.at.objects.natives.NATMethod;
 import edu.vub.at.objects.natives.NATNumber;
 import edu.vub.at.objects.natives.NATTable;
+import edu.vub.at.objects.natives.ScopeSnapshot;
 import edu.vub.at.objects.natives.grammar.AGBegin;
 import edu.vub.at.util.logging.Logging;
 
@@ -81,6 +84,15 @@ public final class ELVirtualMachine extends EventLoop {
 	/** startup parameter to the VM: the list of fields to be initialized in every hosted actor */
 	private final SharedActorField[] sharedFields_;
 	
+	/** the number of actors that may try to take a snapshot of their global scope, see {@link ScopeSnapshot} */
+	private static final int _SNAPSHOT_ATTEMPTS_ = 3;
+	
+	/** the snapshot of the global scope from which actors are initialised, null if not yet taken */
+	private ScopeSnapshot scopeSnapshot_;
+	
+	/** the number of actors that may still try to take a snapshot of their global scope */
+	private int snapshotAttempts_ = _SNAPSHOT_ATTEMPTS_;
+	
 	/** the VirtualMachineID of this VM */
 	private final VirtualMachineID vmId_;
 	
@@ -107,6 +119,9 @@ public final class ELVirtualMachine extends EventLoop {
 	
 	public final FarReferencesThreadPool farReferencesThreadPool_;
 	
+	/** the timer wheel on which the timeouts of this VM and of its actors are scheduled */
+	public final TimerWheel timerWheel_;
+	
 	private final PrintStream output_;
 
 	/**
@@ -129,6 +144,7 @@ public final class ELVirtualMachine extends EventLoop {
 		vmAddressBook_ = new VMAddressBook();
 
 		vmId_ = new VirtualMachineID();
+		timerWheel_ = new TimerWheel("timer wheel of " + vmId_);
 		localActors_ = new Hashtable();
 		discoveryActor_ = new ELDiscoveryActor(this);
 		// Initilization of the actor mirror must be done before the initialization of init.at file in the actor!
@@ -159,6 +175,36 @@ public final class ELVirtualMachine extends EventLoop {
 		return sharedFields_;
 	}
 	
+	/**
+	 * @return the snapshot of the global scope resulting from the initialisation code,
+	 * or null if no actor has taken such a snapshot (yet)
+	 */
+	public synchronized ScopeSnapshot getScopeSnapshot() {
+		return scopeSnapshot_;
+	}
+	
+	/**
+	 * Invoked by an actor before it evaluates the initialisation code.
+	 * @return whether the actor should try to take a snapshot of its global scope
+	 */
+	public synchronized boolean claimScopeSnapshot() {
+		if (!ScopeSnapshot._ENABLED_ || scopeSnapshot_ != null || snapshotAttempts_ == 0) {
+			return false;
+		}
+		snapshotAttempts_--;
+		return true;
+	}
+	
+	/**
+	 * Invoked by an actor that took a snapshot of its global scope, from which
+	 * subsequently created actors are initialised.
+	 */
+	public synchronized void offerScopeSnapshot(ScopeSnapshot snapshot) {
+		if (scopeSnapshot_ == null) {
+			scopeSnapshot_ = snapshot;
+		}
+	}
+	
 	public ELVirtualMachine getHost() { return this; }
 	
 	public PrintStream getOutput() {return output_;}
@@ -256,6 +302,9 @@ public final class ELVirtualMachine extends EventLoop {
 					
 					// properly (but synchronously) notify all remote references of a disconnection 
 					connectionManager_.notifyDisconnected(disconnected);
+					
+					// credits for messages in transit to the disconnected VM are lost
+					farReferencesThreadPool_.resetCredits(disconnected);
 				}
 			}
 		});
@@ -290,6 +339,18 @@ public final class ELVirtualMachine extends EventLoop {
 		 });
 	}
 	
+	/**
+	 * Event that returns credits to a remote VM for the messages one of the actors on
+	 * this VM accepted from it.
+	 */
+	public void event_grantCredit(final Address sender, final ActorID receiver, final int credits) {
+		this.receive(new Event("grantCredit", receiver) {
+			public void process(Object myself) {
+				new CMDGrantCredit(receiver, credits).send(communicationBus_, sender);
+			}
+		});
+	}
+	
 	/**
 	 * Event that signals the manual disconnect of a previously exported and 
 	 * object on this VM.
@@ -346,6 +407,7 @@ public final class ELVirtualMachine extends EventLoop {
 	 */
 	public NATLocalFarRef createActor(Packet parametersPkt,
 			                          Packet initcodePkt) throws InterpreterException {
+		ELActor.noteExternalEffect();
 		
 		BlockingFuture future = new BlockingFuture();
 		NATActorMirror mirror = new NATActorMirror(this);
@@ -411,6 +473,11 @@ public final class ELVirtualMachine extends EventLoop {
 					localActors_.put(discoveryActor_.getActorID(), discoveryActor_);
 					// reinitialize the init code used to initialize actors.
 					initialisationCode_ = initCode;
+					// the snapshot of the global scope stems from the old init code
+					synchronized (ELVirtualMachine.this) {
+						scopeSnapshot_ = null;
+						snapshotAttempts_ = _SNAPSHOT_ATTEMPTS_;
+					}
 					// reset the environment.
 					Evaluator.resetEnvironment();
 					// put the VM back online
@@ -27,24 +27,30 @@
 package edu.vub.at.actors.natives;
 
 import java.util.HashMap;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import edu.vub.at.actors.ATFarReference;
 import edu.vub.at.actors.ATLetter;
 import edu.vub.at.actors.eventloops.BlockingFuture;
 import edu.vub.at.actors.eventloops.Event;
 import edu.vub.at.actors.id.ATObjectID;
+import edu.vub.at.actors.id.ActorID;
+import edu.vub.at.actors.id.VirtualMachineID;
 import edu.vub.at.actors.net.cmd.CMDTransmitATMessage;
+import edu.vub.at.actors.net.cmd.CMDTransmitATMessages;
+import edu.vub.at.actors.net.cmd.VMCommand;
 import edu.vub.at.actors.net.comm.Address;
 import edu.vub.at.actors.net.comm.CommunicationBus;
 import edu.vub.at.actors.net.comm.NetworkException;
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.exceptions.XTypeMismatch;
-import edu.vub.at.objects.ATObject;
 import edu.vub.at.objects.ATTable;
-import edu.vub.at.objects.natives.NATNil;
 import edu.vub.at.util.logging.Logging;
 
 /**
@@ -59,18 +65,77 @@ import edu.vub.at.util.logging.Logging;
  *   -ELActor owner of the far reference enqueues a message to be transmitted in its outbox when
  *   calls NATFarReference.meta_receive().
  *   -This will trigger an event_serve in FarReferencesThreadPool and a thread on it will dequeue
- *   a letter from the outbox and transmits its message. 
- *   -After transmitting a message, event_serve() is called to check if there are other letters to be served.
+ *   letters from the outbox and transmits their messages. 
+ *   -After transmitting the letters, event_serve() is called to check if there are other letters to be served.
  *   -After a reconnect, event_serve() is also called to serve letters buffered by ELActor during a disconnection.
  *   
- *  This behaviour is similar to an EventLoop, just that it may not be the same thread
- *  removing from the outbox, but one of the thread pool. 
+ *  The events for all references to actors hosted by the same remote VM are processed in order,
+ *  one at a time, by the {@link Lane} of that VM. Lanes are run by a fixed number of threads,
+ *  such that sending to many references does not spawn as many threads. A reference has at most
+ *  one serve event pending, and at most one batch of letters in transmission, such that its letters
+ *  are transmitted in the order of its outbox. References to the same VM take turns.
+ *  
  *  Removals from the NATFarReference outbox will be always executed by a thread of the pool 
  *  while additions can be executed either by ELActor owner (due to meta_receive) 
  *  or a thread of the pool if the message transmission failed and needs to be put back to the outbox.
+ *  A transmission that times out is retried after an exponentially increasing delay, during which
+ *  the lane holds back the other events for the same VM.
  */
 public final class FarReferencesThreadPool {
 	
+	private static final String _ENV_AT_REMOTE_CREDITS_ = "AT_REMOTE_CREDITS";
+	
+	/**
+	 * The number of messages that may be transmitted to a remote actor before that actor
+	 * has accepted them, as selected at VM startup by means of the system property
+	 * AT_REMOTE_CREDITS. Zero disables credit-based flow control, which is required to
+	 * communicate with VMs that do not return credits.
+	 */
+	static final int _CREDIT_WINDOW_ = Math.max(0, Integer.getInteger(_ENV_AT_REMOTE_CREDITS_, 64).intValue());
+	
+	/**
+	 * The number of accepted messages after which a receiving actor returns credits.
+	 * It must not exceed the window, lest the sender waits for credits that are never returned.
+	 */
+	private static final int _CREDIT_BATCH_ = (_CREDIT_WINDOW_ == 0) ? 0 : Math.max(1, _CREDIT_WINDOW_ / 4);
+	
+	private static final String _ENV_AT_OUTBOX_BATCH_ = "AT_OUTBOX_BATCH";
+	
+	/**
+	 * The maximum number of letters taken from an outbox and transmitted together, with a
+	 * single flush, as selected at VM startup by means of the system property AT_OUTBOX_BATCH.
+	 * One transmits every letter by itself, which is required to communicate with VMs that
+	 * do not understand {@link CMDTransmitATMessages}.
+	 */
+	private static final int _OUTBOX_BATCH_ = Math.max(1, Integer.getInteger(_ENV_AT_OUTBOX_BATCH_, 32).intValue());
+	
+	/** the number of payload bytes beyond which no further letters are added to a batch */
+	private static final int _OUTBOX_BATCH_BYTES_ = 256 * 1024;
+	
+	private static final String _ENV_AT_SENDER_THREADS_ = "AT_SENDER_THREADS";
+	
+	/**
+	 * The number of threads that transmit messages to remote actors, as selected at VM
+	 * startup by means of the system property AT_SENDER_THREADS. Threads are started on
+	 * demand and stop when they have been idle for a while.
+	 */
+	static final int _SENDER_THREADS_ = Math.max(1, Integer.getInteger(_ENV_AT_SENDER_THREADS_, 4).intValue());
+	
+	/** the delay in milliseconds before a failed transmission is first retried */
+	static final long _MIN_RETRY_DELAY_ = 50;
+	
+	/** the maximum delay in milliseconds between retries of a failed transmission */
+	private static final long _MAX_RETRY_DELAY_ = 5000;
+	
+	/**
+	 * The credits for transmitting messages to a single remote actor, together with
+	 * the references waiting for credits to transmit their next message.
+	 */
+	private static final class Credits {
+		int available_ = _CREDIT_WINDOW_;
+		Vector waiting_ = new Vector();
+	}
+	
 	
 	/**
 	 * The virtual machine to which this far ref pool belongs.
@@ -82,210 +147,439 @@ public final class FarReferencesThreadPool {
 	private final CommunicationBus dispatcher_;
 	
 	/** the pool of threads**/
-	private final ExecutorService pool;
+	private final ThreadPoolExecutor pool;
 	
+	/**
+	 * maps the id of a remote VM to the {@link Lane} processing the events for references to its actors.
+	 * Lanes are removed once they are idle. All lane state is guarded by this map.
+	 */
+	private final HashMap<VirtualMachineID, Lane> lanes_;
+	
+	/** the largest number of events that were pending in a lane, see {@link #getPeakLaneDepth()} */
+	private int peakLaneDepth_;
+	
+	/**
+	 * maps the id of a remote VM to a map from the id of each of its actors to the {@link Credits}
+	 * for transmitting messages to it. Actor ids are only unique within their VM.
+	 */
+	private final HashMap<VirtualMachineID, HashMap<ActorID, Credits>> credits_;
 	
 	/**
-	 *  map of reference (NATRemoteFarREf) -> future for retract requests (BlockingFuture) 
-	 *  to be able to synchronize a thread performing a retract operation, and 
-	 *  a thread transmitting a message when the request is processed.
-	 *  See {@link sync_event_retractUnsentMessages}
+	 * maps a reference with a batch of letters in transmission to the future on which its
+	 * owner waits to retract the letters left in its outbox, see {@link #sync_event_retractUnsentMessages}
 	 */
-	private final HashMap<ATFarReference, BlockingFuture>  retractFutures_;
+	private final HashMap<NATRemoteFarRef, BlockingFuture> retractFutures_;
 	
 
 	public FarReferencesThreadPool(ELVirtualMachine host) {
+		this(host, host.communicationBus_);
+	}
+	
+	/**
+	 * Creates a pool that transmits messages by means of the given dispatcher
+	 * instead of the communication bus of its virtual machine.
+	 */
+	FarReferencesThreadPool(ELVirtualMachine host, CommunicationBus dispatcher) {
 		host_ = host;
-		dispatcher_ = host_.communicationBus_;
-		pool = Executors.newCachedThreadPool();
+		dispatcher_ = dispatcher;
+		pool = new ThreadPoolExecutor(_SENDER_THREADS_, _SENDER_THREADS_, 60, TimeUnit.SECONDS, new LinkedBlockingQueue());
+		pool.allowCoreThreadTimeOut(true);
+		lanes_ = new HashMap();
+		credits_ = new HashMap();
 		retractFutures_ = new HashMap();
 	}
-			
-	protected final void receive(Event event) {
-		Handle h = new Handle(event);
-	   	pool.execute( h);
-	}
 	
-	// helper class to wrap the AT event to be
-	// processed.
-	class Handle implements Runnable{
-		private Event event_;
-		public Handle( Event event){
-			event_ = event;
+	/**
+	 * A lane processes the events for references to the actors of a single remote VM in
+	 * the order in which they were received, one at a time, on a thread of the pool.
+	 * After each event, the lane is put back at the end of the queue of the pool, such
+	 * that lanes share the threads fairly.
+	 */
+	private final class Lane implements Runnable {
+		private final VirtualMachineID destination_;
+		
+		/** the pending events */
+		private final LinkedList events_ = new LinkedList();
+		
+		/** the references that have a serve event pending in this lane */
+		private final HashSet serving_ = new HashSet();
+		
+		/** whether this lane is queued in the pool or run by one of its threads */
+		private boolean scheduled_ = false;
+		
+		/** whether this lane waits for a failed transmission to be retried */
+		private boolean suspended_ = false;
+		
+		/** the number of consecutive failed attempts to transmit to the remote VM */
+		private int failures_ = 0;
+		
+		Lane(VirtualMachineID destination) {
+			destination_ = destination;
 		}
+		
+		/** to be invoked while holding the lock on {@link FarReferencesThreadPool#lanes_} */
+		private void add(Event event) {
+			events_.add(event);
+			peakLaneDepth_ = Math.max(peakLaneDepth_, events_.size());
+			if (!scheduled_ && !suspended_) {
+				scheduled_ = true;
+				pool.execute(this);
+			}
+		}
+		
 		public void run() {
-			event_.process(host_);
-		}	
+			Event next;
+			synchronized (lanes_) {
+				next = (Event) events_.removeFirst();
+				if (next instanceof ServeEvent) {
+					serving_.remove(((ServeEvent) next).reference_);
+				}
+			}
+			try {
+				next.process(host_);
+			} finally {
+				synchronized (lanes_) {
+					if (suspended_ || events_.isEmpty()) {
+						scheduled_ = false;
+						if (!suspended_) {
+							lanes_.remove(destination_);
+						}
+					} else {
+						pool.execute(this);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Puts back a transmission that timed out at the head of this lane, which is
+		 * resumed after a delay that doubles with every consecutive failure.
+		 */
+		void retry(TransmissionEvent transmission) {
+			long delay;
+			synchronized (lanes_) {
+				failures_++;
+				delay = Math.min(_MAX_RETRY_DELAY_, _MIN_RETRY_DELAY_ << Math.min(failures_ - 1, 16));
+				events_.addFirst(transmission);
+				suspended_ = true;
+			}
+			host_.timerWheel_.schedule(new Runnable() {
+				public void run() {
+					synchronized (lanes_) {
+						suspended_ = false;
+						if (!scheduled_ && !events_.isEmpty()) {
+							scheduled_ = true;
+							pool.execute(Lane.this);
+						}
+					}
+				}
+			}, delay);
+		}
+		
+		void transmitted() {
+			synchronized (lanes_) {
+				failures_ = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the lane for the VM hosting the given object, creating it if needed.
+	 * To be invoked while holding the lock on {@link #lanes_}.
+	 */
+	private Lane laneFor(ATObjectID destination) {
+		Lane lane = lanes_.get(destination.getVirtualMachineId());
+		if (lane == null) {
+			lane = new Lane(destination.getVirtualMachineId());
+			lanes_.put(destination.getVirtualMachineId(), lane);
+		}
+		return lane;
+	}
+	
+	/**
+	 * @return the number of remote VMs for which events are pending or being processed
+	 */
+	public int getLaneCount() {
+		synchronized (lanes_) {
+			return lanes_.size();
+		}
+	}
+	
+	/**
+	 * @return the number of events pending in the lane of the given remote VM,
+	 * excluding an event that is being processed
+	 */
+	public int getLaneDepth(VirtualMachineID host) {
+		synchronized (lanes_) {
+			Lane lane = lanes_.get(host);
+			return (lane == null) ? 0 : lane.events_.size();
+		}
+	}
+	
+	/**
+	 * @return the largest number of events that were pending in any lane at once
+	 */
+	public int getPeakLaneDepth() {
+		synchronized (lanes_) {
+			return peakLaneDepth_;
+		}
+	}
+	
+	/**
+	 * @return the number of threads of the pool, which never exceeds AT_SENDER_THREADS
+	 */
+	public int getSenderThreadCount() {
+		return pool.getPoolSize();
 	}
 	
 
 	/**
-	 * This is a named subclass of event, which allows access to the letter
-	 * that is being transmitted. The constructor is executed by:
+	 * This is a named subclass of event, which allows access to the letters
+	 * that are being transmitted. The constructor is executed by:
 	 * ELActor sending the message when reference is connected, or
 	 * a thread in the pool that schedules this transmission event after a reconnection.  
 	 */
 	class TransmissionEvent extends Event{
-		/** the letter containing the serialized and original message */	
-		public final ATLetter letter_;
-		/** the <i>wire representation</i> of the remote receiver of this message */
+		/** the letters containing the serialized and original messages, in the order in which they were sent */	
+		public final Vector letters_;
+		/** the <i>wire representation</i> of the remote receiver of these messages */
 		public final ATObjectID destination_;
-		/* the first-class AT reference sending this message */
-		public final ATFarReference reference_;
+		/* the first-class AT reference sending these messages */
+		public final NATRemoteFarRef reference_;
+		/** the lane of the destination VM, which processes this event */
+		private final Lane lane_;
 		
-		public TransmissionEvent(ATFarReference reference, ATLetter letter) throws InterpreterException {
-			super ("transmit( ["+ letter.base_receiver().asFarReference() + ","+ letter.base_message().asAsyncMessage() +"])");
-			letter_ = letter;
+		public TransmissionEvent(NATRemoteFarRef reference, Vector letters, Lane lane) {
+			super ("transmit( ["+ reference + ","+ letters.size() +" letters])");
+			letters_ = letters;
 			reference_ = reference;
-			destination_ =  reference_.asNativeFarReference().impl_getObjectId();
+			destination_ =  reference_.impl_getObjectId();
+			lane_ = lane;
 		}
 		public void process(Object owner){
 			Address destAddress = getDestinationVMAddress();
 			if (destAddress != null) {
 				try {		
-					new CMDTransmitATMessage(destination_.getActorId(), letter_.asNativeOutboxLetter().impl_getSerializedMessage()).send(
-							dispatcher_, destAddress);
-					// getting here means the message was succesfully transmitted
-					reference_.asNativeRemoteFarReference().setTransmitting(false);
+					dispatcher_.sendSynchronousUnicast(createCommand(), destAddress);
+					// getting here means the messages were succesfully transmitted
+					lane_.transmitted();
 					// check if 1) there is a retract request for this reference
 					// and afterwards 2) if another message to be transmitted.
-					// Needed now because pool is not an event loop.
-					handleRetractRequest(reference_);
-					reference_.asNativeRemoteFarReference().impl_transmit();
+					transmissionFinished(reference_);
+					reference_.impl_transmit();
 				} catch (NetworkException e) {
-					// TODO: the message MAY have been transmitted! (i.e. an orphan might have
+					// TODO: the messages MAY have been transmitted! (i.e. an orphan might have
 					// been created: should make this more explicit to the AT programmer)
 					// To solve this add message ids, and check you don't process twice the same message.
 					Logging.RemoteRef_LOG.warn(reference_
-							+ ": timeout while trying to transmit message, retrying");
-					// try to send it again, if the remote VM went offline, 
-					// next time this message is processed destAddress == null.
-					this.process(owner);
-				} catch (XTypeMismatch e) {
-					Logging.RemoteRef_LOG.warn(reference_
-							+ ": unexpected type mismatch: " + e.getMessage());
-					e.printStackTrace();
+							+ ": timeout while trying to transmit messages, retrying");
+					// try to send them again after a delay, if the remote VM went offline, 
+					// next time these messages are processed destAddress == null.
+					lane_.retry(this);
 				} catch (InterpreterException e) {
 					Logging.RemoteRef_LOG.warn(reference_
-							+ ": unexpected error while handling retract request after a successful transmission: " + e.getMessage());
+							+ ": unexpected error while transmitting messages: " + e.getMessage());
 					e.printStackTrace();
+					// the letters are lost, do not keep a retract request waiting for them
+					transmissionFinished(reference_);
 				} 
 			} else {
 				Logging.RemoteRef_LOG.info(reference_ + ": suspected a disconnection from " +
 						destination_ + " because destination VM ID was not found in address book");
 				// destAddress is null is because it was removed from a event_memberLeft();	
-				try {
-					reference_.asNativeRemoteFarReference().impl_transmitFailed(letter_);
-					handleRetractRequest(reference_); 
-				} catch (XTypeMismatch e) {
-					Logging.RemoteRef_LOG.warn(reference_
-							+ ": unexpected type mismatch: " + e.getMessage());
-					e.printStackTrace();
-				} catch (InterpreterException e) {
-					Logging.RemoteRef_LOG.warn(reference_
-							+ ": unexpected error while handling retract request after transmission failed: " + e.getMessage());
-					e.printStackTrace();
-				}					
+				reference_.impl_transmitFailed(letters_);
+				releaseCredits(destination_, letters_.size());
+				lane_.transmitted();
+				transmissionFinished(reference_);
+			}
+		}
+		/**
+		 * A single letter is transmitted as before, such that batching costs nothing
+		 * when messages are sent one at a time.
+		 */
+		private VMCommand createCommand() throws InterpreterException {
+			if (letters_.size() == 1) {
+				return new CMDTransmitATMessage(destination_.getActorId(),
+						((ATLetter) letters_.firstElement()).asNativeOutboxLetter().impl_getSerializedMessage(), _CREDIT_BATCH_);
+			}
+			Packet[] messages = new Packet[letters_.size()];
+			for (int i = 0; i < messages.length; i++) {
+				messages[i] = ((ATLetter) letters_.get(i)).asNativeOutboxLetter().impl_getSerializedMessage();
 			}
+			return new CMDTransmitATMessages(destination_.getActorId(), messages, _CREDIT_BATCH_);
 		}
 		private Address getDestinationVMAddress() {
 			return host_.vmAddressBook_.getAddressOf(destination_.getVirtualMachineId());
 		}
 	}
+	/**
+	 * An event that transmits the letters queued in the outbox of a reference, up to a batch.
+	 * A lane holds at most one serve event per reference.
+	 */
+	private final class ServeEvent extends Event {
+		private final NATRemoteFarRef reference_;
+		private final Lane lane_;
+		
+		ServeEvent(NATRemoteFarRef reference, Lane lane) {
+			super("serve()");
+			reference_ = reference;
+			lane_ = lane;
+		}
+		
+		public void process(Object owner) {
+			int credits = acquireCredits(reference_, _OUTBOX_BATCH_);
+			if (credits > 0) {
+				Vector letters = reference_.impl_serve(credits, _OUTBOX_BATCH_BYTES_);
+				releaseCredits(reference_.impl_getObjectId(), credits - letters.size());
+				// do not span a new thread to transmit, try to transmit it itself. 
+				if (!letters.isEmpty()) {
+					new TransmissionEvent(reference_, letters, lane_).process(owner);
+				}
+			} else {
+				// the reference is served again once credits are returned
+			}
+		}
+	}
+	
 	/** transmitting is embedded first in another Event so that only 
 	  * a thread from this thread pool will dequeue messages from the mailbox.
-	  * 
+	  * All letters that are queued by the time the event is processed, up to a batch,
+	  * are transmitted together. The event is not added if the reference is already
+	  * waiting to be served, as it will then transmit the new letters as well.
 	  */
 	public void event_serve(final ATFarReference reference) {
-		receive(new Event("serve()") {
-			public void process(Object owner) {
-				try {
-					synchronized (this) {
-						if ( reference.asNativeRemoteFarReference().getTransmitting()){
-								// if it is transmitting don't do anything and next time it will dequeue the ref.
-						} else{
-							ATObject result = reference.asNativeRemoteFarReference().impl_serve();
-							// do not span a new thread to transmit, try to transmit it itself. 
-							// Not comparing to Evaluator.getNil() because it will return a different instance.
-							if (!( result instanceof NATNil)) {
-								TransmissionEvent transmit = new TransmissionEvent(reference, result.asNativeOutboxLetter());
-								transmit.process(owner);
-							}
-						}
-					}	
-				} catch (InterpreterException e) {
-					Logging.RemoteRef_LOG.warn(this + ": serve() failed ", e);
+		try {
+			NATRemoteFarRef remote = reference.asNativeRemoteFarReference();
+			synchronized (lanes_) {
+				Lane lane = laneFor(remote.impl_getObjectId());
+				if (lane.serving_.add(remote)) {
+					lane.add(new ServeEvent(remote, lane));
 				}
 			}
-		} );
+		} catch (XTypeMismatch e) {
+			Logging.RemoteRef_LOG.warn(reference + ": serve() failed ", e);
+		}
+	}
+	
+	/**
+	 * Takes up to the given number of credits for transmitting messages to the actor denoted
+	 * by the given reference. If no credits are left, the reference is served again once
+	 * credits are returned.
+	 * @return the number of messages that may be transmitted
+	 */
+	private int acquireCredits(NATRemoteFarRef reference, int wanted) {
+		if (_CREDIT_WINDOW_ == 0) {
+			return wanted;
+		}
+		ATObjectID destination = reference.impl_getObjectId();
+		synchronized (credits_) {
+			HashMap<ActorID, Credits> actors = credits_.get(destination.getVirtualMachineId());
+			if (actors == null) {
+				actors = new HashMap();
+				credits_.put(destination.getVirtualMachineId(), actors);
+			}
+			Credits credits = actors.get(destination.getActorId());
+			if (credits == null) {
+				credits = new Credits();
+				actors.put(destination.getActorId(), credits);
+			}
+			if (credits.available_ > 0) {
+				int taken = Math.min(wanted, credits.available_);
+				credits.available_ -= taken;
+				return taken;
+			}
+			if (!credits.waiting_.contains(reference)) {
+				credits.waiting_.add(reference);
+			}
+			return 0;
+		}
+	}
+	
+	/**
+	 * Returns the credits taken for messages that were not transmitted after all.
+	 */
+	private void releaseCredits(ATObjectID destination, int amount) {
+		if (_CREDIT_WINDOW_ != 0 && amount > 0) {
+			grantCredit(destination.getVirtualMachineId(), destination.getActorId(), amount);
+		}
+	}
+	
+	/**
+	 * Invoked when the given actor of the given remote VM has accepted a number of messages
+	 * transmitted by this VM, such that more messages may be transmitted to it.
+	 */
+	public void grantCredit(VirtualMachineID host, ActorID receiver, int amount) {
+		Vector waiting;
+		synchronized (credits_) {
+			HashMap<ActorID, Credits> actors = credits_.get(host);
+			Credits credits = (actors == null) ? null : actors.get(receiver);
+			if (credits == null) {
+				// credits were reset because of a disconnection
+				return;
+			}
+			credits.available_ = Math.min(_CREDIT_WINDOW_, credits.available_ + amount);
+			waiting = credits.waiting_;
+			credits.waiting_ = new Vector();
+		}
+		for (Iterator i = waiting.iterator(); i.hasNext();) {
+			((NATRemoteFarRef) i.next()).impl_transmit();
+		}
 	}
 	
 	/**
-	 * Signals that the owning actor of a far reference has requested to retract unsent
-	 * messages. The request will be handled as soon as the transmission of the current
-	 * letter has finished.
-	 * 
-	 * Note that it cannot happen that two consecutives retracts requests arrive for the
-	 * same reference since the ELActor is blocked on a future waiting for the request 
-	 * to be processed.
-	 * 
-	 * @return a blocking future the ELActor thread can wait on.
+	 * Forgets the credits for all actors hosted by the given VM, which has disconnected:
+	 * credits for messages that were in transit are never returned.
 	 */
-	private BlockingFuture setRetractingFuture(ATFarReference reference) {
-		// first assign future to a local variable to avoid race conditions on writing to the outboxFuture_ variable!
-		final BlockingFuture future = new BlockingFuture();
-		synchronized(this) { 
-			// synchronized access because different thread in the pool could
-			// be processing retractUnsentMessages requests for different references.  
-			retractFutures_.put(reference, future);
+	public void resetCredits(VirtualMachineID host) {
+		synchronized (credits_) {
+			credits_.remove(host);
 		}
-		return future;
 	}
 	
 	/**
-	 * Checks in the {@link #retractFutures_} for pending retractUnsentMessages request 
-	 * for a given reference.
-	 * 
-	 * After handling the retract request, the entry in the {@link #retractFutures_} for 
-	 * the given reference is removed. This is extremely important because it signifies
-	 * that there is no more pending retract request for this reference.
+	 * Invoked when the batch of letters in transmission for the given reference has either
+	 * been transmitted or put back in its outbox. A pending retract request of its owner is
+	 * handled now, before the reference is served again.
 	 */
-	private synchronized void handleRetractRequest(ATFarReference reference) throws XTypeMismatch, InterpreterException{	
-		BlockingFuture retractFuture = retractFutures_.remove(reference);
+	private void transmissionFinished(NATRemoteFarRef reference) {
+		BlockingFuture retractFuture;
+		// clearing the flag and taking the request is atomic with respect to sync_event_retractUnsentMessages
+		synchronized (reference) {
+			reference.setTransmitting(false);
+			synchronized (retractFutures_) {
+				retractFuture = retractFutures_.remove(reference);
+			}
+		}
 		if (retractFuture != null) {
-			retractFuture.resolve(reference.asNativeRemoteFarReference().impl_retractOutgoingLetters());
+			try {
+				retractFuture.resolve(reference.impl_retractOutgoingLetters());
+			} catch (InterpreterException e) {
+				retractFuture.ruin(e);
+			}
 		}
 	}
 	
+	/**
+	 * Retracts the letters from the outbox of a far reference on behalf of its owning actor.
+	 * The letters are retracted at once, unless a batch of letters already taken from the outbox
+	 * is in transmission. The owner then blocks until that batch has been transmitted or put back,
+	 * such that the letters are either transmitted or retracted. The request does not wait for
+	 * the events of other references to the same VM.
+	 */
 	public ATTable sync_event_retractUnsentMessages(final ATFarReference reference) throws InterpreterException {
+		NATRemoteFarRef remote = reference.asNativeRemoteFarReference();
+		BlockingFuture future;
+		synchronized (remote) {
+			if (!remote.getTransmitting()) {
+				return remote.impl_retractOutgoingLetters();
+			}
+			future = new BlockingFuture();
+			synchronized (retractFutures_) {
+				retractFutures_.put(remote, future);
+			}
+		}
 		try {
-			return (ATTable) pool.submit(new Callable() {
-				public Object call() throws Exception {
-					/** we need to synchronize the whole block to  make sure that getTransmitting and 
-					 * adding the retract future to the map is done atomically to avoid that the
-					 * ELActor is block till the next transmission event because the transmission
-					 * thread didn't see the request because:
-					 * 		Transmission -thread 1		Retract Request - thread 2
-					 *	T1									getTransmit() -> true
-					 *	T2   	setTransmit(false)	
-					 *	T3		handleRetractRequest()
-					 *	T4									setRetractingFuture(reference);
-					 * 
-					*/
-					synchronized (this) {
-						if ( reference.asNativeRemoteFarReference().getTransmitting()){
-							// if there is a thread transmitting a message for this reference:
-							// resolve the future with a BlockingFuture to wait for the result of the transmission.
-							BlockingFuture future = setRetractingFuture(reference);
-							return future.get();
-						} else {
-							// if there is no thread transmitting a message for this reference:
-							// resolve the future immediately with the content of its oubox.
-							return reference.asNativeRemoteFarReference().impl_retractOutgoingLetters();
-						}
-					}
-				}
-			}).get();
+			return (ATTable) future.get();
 		} catch (Exception e) {
 			if (e instanceof InterpreterException) {
 				throw (InterpreterException) e;
@@ -295,4 +589,4 @@ public final class FarReferencesThreadPool {
 			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,870 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import edu.vub.at.actors.id.ATObjectID;
+import edu.vub.at.actors.id.ActorID;
+import edu.vub.at.actors.id.VirtualMachineID;
+import edu.vub.at.actors.net.SerializationException;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.exceptions.XIOProblem;
+import edu.vub.at.exceptions.XIllegalOperation;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.mirrors.NATMirrorRoot;
+import edu.vub.at.objects.natives.FieldMap;
+import edu.vub.at.objects.natives.NATBoolean;
+import edu.vub.at.objects.natives.NATNil;
+import edu.vub.at.objects.natives.NATNumeric;
+import edu.vub.at.objects.natives.NATObject;
+import edu.vub.at.objects.natives.NATTable;
+import edu.vub.at.objects.natives.NATText;
+import edu.vub.at.objects.natives.NATTypeTag;
+import edu.vub.at.objects.natives.NativeATObject;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+import edu.vub.at.util.logging.Logging;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamException;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A local packet is the in-memory counterpart of a {@link Packet}, used to pass messages
+ * in between actors hosted by the same virtual machine. Rather than serializing an object
+ * graph into a byte array and deserializing it again in the receiving actor, a local packet
+ * copies the graph directly, following the rules of Java serialization:
+ * <ul>
+ *  <li>When the packet is created, by the sending actor, objects are replaced by the result of
+ *  their <tt>writeReplace</tt> method. Hence, AmbientTalk objects are passed via meta_pass:
+ *  by-reference objects become far references and isolates are copied field by field.
+ *  Transient fields are not copied.
+ *  <li>When the packet is unpacked, by the receiving actor, the copied objects are completed
+ *  bottom-up and replaced by the result of their <tt>readResolve</tt> method. Hence, AmbientTalk
+ *  objects are resolved via meta_resolve.
+ * </ul>
+ * Immutable values (numbers, text, symbols, type tags, field maps, identifiers, Java strings
+ * and boxed primitives) are not copied but shared by both actors. They are resolved nonetheless.
+ * 
+ * Objects whose serialized form cannot be reproduced by copying their fields (i.e. Java objects
+ * that are not serializable, that define custom writeObject or readObject methods or that are
+ * proxies, such as coercers) make the packet fall back to a serialized {@link Packet}. Objects
+ * that were already passed while copying are not passed a second time by that packet.
+ * 
+ * A local packet can be unpacked only once. Local packets can be disabled by setting the
+ * system property AT_NO_LOCAL_COPY, such that all messages between local actors are serialized.
+ */
+public final class LocalPacket extends Packet {
+	
+	private static final String _ENV_AT_NO_LOCAL_COPY_ = "AT_NO_LOCAL_COPY";
+	
+	/**
+	 * Whether messages between local actors are copied into local packets. Copying objects
+	 * without invoking their constructor requires the reflection factory of the Sun JVM.
+	 */
+	public static final boolean _ENABLED_;
+	
+	/** the reflection factory of the Sun JVM, and its method to create serialization constructors */
+	private static final Object _REFLECTION_FACTORY_;
+	private static final Method _NEW_CONSTRUCTOR_;
+	
+	static {
+		Object factory = null;
+		Method newConstructor = null;
+		try {
+			Class c = Class.forName("sun.reflect.ReflectionFactory");
+			factory = c.getMethod("getReflectionFactory", new Class[0]).invoke(null, (Object[]) null);
+			newConstructor = c.getMethod("newConstructorForSerialization", new Class[] { Class.class });
+		} catch (Exception e) {
+			Logging.Actor_LOG.info("local packets disabled: " + e);
+		}
+		_REFLECTION_FACTORY_ = factory;
+		_NEW_CONSTRUCTOR_ = newConstructor;
+		_ENABLED_ = !Boolean.getBoolean(_ENV_AT_NO_LOCAL_COPY_) && (newConstructor != null);
+	}
+	
+	/**
+	 * The objects already passed by the local packet that is falling back to serialization
+	 * in the current thread, mapped to the result of their writeReplace method.
+	 */
+	private static final ThreadLocal _REPLACEMENTS_ = new ThreadLocal();
+	
+	/** the copied object graph, or null if the packet fell back to serialization */
+	private final Object snapshot_;
+	
+	private final Packet fallback_;
+	
+	private boolean unpacked_ = false;
+	
+	public LocalPacket(String description, ATObject object) throws InterpreterException {
+		super(description);
+		Copier copier = new Copier();
+		Object snapshot;
+		Packet fallback;
+		try {
+			snapshot = copier.copy(object);
+			fallback = null;
+		} catch (Unsupported e) {
+			snapshot = null;
+			fallback = copier.serialize(description, object);
+		}
+		snapshot_ = snapshot;
+		fallback_ = fallback;
+	}
+	
+	public LocalPacket(ATObject object) throws InterpreterException {
+		this(object.toString(), object);
+	}
+	
+	/**
+	 * Completes the copied object graph in the current actor.
+	 */
+	public ATObject unpack() throws InterpreterException {
+		if (fallback_ != null) {
+			return fallback_.unpack();
+		}
+		synchronized (this) {
+			if (unpacked_) {
+				throw new XIllegalOperation("Cannot unpack a local packet twice: " + this);
+			}
+			unpacked_ = true;
+		}
+		return (ATObject) new Resolver().resolve(snapshot_);
+	}
+	
+	/** a local packet does not load any classes */
+	public ATObject unpackUsingClassLoader(ClassLoader cld) throws InterpreterException {
+		if (fallback_ != null) {
+			return fallback_.unpackUsingClassLoader(cld);
+		}
+		return unpack();
+	}
+	
+	public boolean equals(Object other) {
+		return this == other;
+	}
+	
+	public int hashCode() { return System.identityHashCode(this); }
+	
+	/**
+	 * Invoked by {@link NativeATObject#writeReplace()} such that objects are passed only once
+	 * when a local packet falls back to serialization.
+	 * 
+	 * @return the object replacing the given object, or null if it was not passed before.
+	 */
+	public static Object replacementOf(Object object) {
+		Map replacements = (Map) _REPLACEMENTS_.get();
+		return (replacements == null) ? null : replacements.get(object);
+	}
+	
+	/**
+	 * Signals that an object in the graph cannot be copied without serializing it.
+	 */
+	private static final class Unsupported extends Exception {
+		private static final long serialVersionUID = 1L;
+		public Throwable fillInStackTrace() { return this; }
+	}
+	
+	private static final Unsupported _UNSUPPORTED_ = new Unsupported();
+	
+	/** marks an object replaced by null */
+	private static final Object _NULL_ = new Object();
+	
+	/**
+	 * Copies an object graph in the sending actor, using a copy table akin to the
+	 * handle table of an ObjectOutputStream to preserve sharing and cycles.
+	 */
+	private static final class Copier {
+		
+		/** maps copied and replaced objects to their snapshot */
+		private final IdentityHashMap copies_ = new IdentityHashMap();
+		
+		/** maps objects whose writeReplace method was invoked to its result */
+		private final IdentityHashMap replacements_ = new IdentityHashMap();
+		
+		Object copy(Object obj) throws InterpreterException, Unsupported {
+			if (obj == null) {
+				return null;
+			}
+			Object copy = copies_.get(obj);
+			if (copy != null) {
+				return (copy == _NULL_) ? null : copy;
+			}
+			ClassInfo info = ClassInfo.of(obj.getClass());
+			if (info.isShared(obj)) {
+				return obj;
+			}
+			if (info.writeReplace_ != null) {
+				Object orig = obj;
+				obj = replace(info, obj);
+				if (obj != orig) {
+					if (obj == null) {
+						copies_.put(orig, _NULL_);
+						return null;
+					}
+					copy = copies_.get(obj);
+					if (copy == null) {
+						info = ClassInfo.of(obj.getClass());
+						copy = info.isShared(obj) ? obj : copyNew(info, obj);
+					}
+					copies_.put(orig, copy);
+					return (copy == _NULL_) ? null : copy;
+				}
+			}
+			return copyNew(info, obj);
+		}
+		
+		/**
+		 * Invokes writeReplace until the class of the replacement no longer changes,
+		 * as an ObjectOutputStream would.
+		 */
+		private Object replace(ClassInfo info, Object obj) throws InterpreterException {
+			while (true) {
+				Object rep = info.invokeWriteReplace(obj);
+				replacements_.put(obj, rep);
+				if (rep == null || rep.getClass() == obj.getClass()) {
+					return rep;
+				}
+				obj = rep;
+				info = ClassInfo.of(rep.getClass());
+				if (info.writeReplace_ == null) {
+					return rep;
+				}
+			}
+		}
+		
+		private Object copyNew(ClassInfo info, Object obj) throws InterpreterException, Unsupported {
+			switch (info.kind_) {
+			  case ClassInfo._OBJECT_:
+			  case ClassInfo._TYPE_TAG_: {
+				  ObjectRecord record = new ObjectRecord(info, info.newInstance());
+				  copies_.put(obj, record);
+				  record.copyFields(this, obj);
+				  return record;
+			  }
+			  case ClassInfo._ARRAY_: {
+				  Object[] array = (Object[]) obj;
+				  ArrayRecord record = new ArrayRecord(
+						  (Object[]) Array.newInstance(array.getClass().getComponentType(), array.length));
+				  copies_.put(obj, record);
+				  for (int i = 0; i < array.length; i++) {
+					  record.elements_[i] = copy(array[i]);
+				  }
+				  return record;
+			  }
+			  case ClassInfo._PRIMITIVE_ARRAY_: {
+				  int length = Array.getLength(obj);
+				  Object array = Array.newInstance(obj.getClass().getComponentType(), length);
+				  System.arraycopy(obj, 0, array, 0, length);
+				  copies_.put(obj, array);
+				  return array;
+			  }
+			  case ClassInfo._LIST_:
+			  case ClassInfo._SET_: {
+				  Object[] elements = ((Collection) obj).toArray();
+				  CollectionRecord record = new CollectionRecord(info.kind_, obj.getClass(), elements);
+				  copies_.put(obj, record);
+				  for (int i = 0; i < elements.length; i++) {
+					  elements[i] = copy(elements[i]);
+				  }
+				  return record;
+			  }
+			  case ClassInfo._MAP_: {
+				  Map map = (Map) obj;
+				  Object[] entries = new Object[2 * map.size()];
+				  int i = 0;
+				  for (Iterator it = map.entrySet().iterator(); it.hasNext(); i += 2) {
+					  Map.Entry entry = (Map.Entry) it.next();
+					  entries[i] = entry.getKey();
+					  entries[i+1] = entry.getValue();
+				  }
+				  CollectionRecord record = new CollectionRecord(info.kind_, obj.getClass(), entries);
+				  copies_.put(obj, record);
+				  for (i = 0; i < entries.length; i++) {
+					  entries[i] = copy(entries[i]);
+				  }
+				  return record;
+			  }
+			  default:
+				  throw _UNSUPPORTED_;
+			}
+		}
+		
+		/**
+		 * Serializes the given object such that the objects passed so far are not passed again.
+		 */
+		Packet serialize(String description, ATObject object) throws InterpreterException {
+			_REPLACEMENTS_.set(replacements_);
+			try {
+				return new Packet(description, object);
+			} finally {
+				_REPLACEMENTS_.remove();
+			}
+		}
+		
+	}
+	
+	/**
+	 * Completes a copied object graph in the receiving actor. Shared values
+	 * are resolved only once, like objects read from an ObjectInputStream.
+	 */
+	private static final class Resolver {
+		
+		private final IdentityHashMap resolved_ = new IdentityHashMap();
+		
+		Object resolve(Object snapshot) throws InterpreterException {
+			if (snapshot == null) {
+				return null;
+			}
+			if (snapshot instanceof Record) {
+				return ((Record) snapshot).complete(this);
+			}
+			ClassInfo info = ClassInfo.of(snapshot.getClass());
+			if (info.readResolve_ == null) {
+				return snapshot;
+			}
+			Object result = resolved_.get(snapshot);
+			if (result == null) {
+				result = info.invokeReadResolve(snapshot);
+				resolved_.put(snapshot, result);
+			}
+			return result;
+		}
+		
+	}
+	
+	/**
+	 * A copied object that is completed when the packet is unpacked. While it is being
+	 * completed, cyclic references to the object denote the object itself rather than
+	 * the result of resolving it.
+	 */
+	private static abstract class Record {
+		
+		private boolean started_ = false;
+		private Object result_;
+		
+		final Object complete(Resolver resolver) throws InterpreterException {
+			if (!started_) {
+				started_ = true;
+				result_ = allocate();
+				result_ = fill(resolver, result_);
+			}
+			return result_;
+		}
+		
+		protected abstract Object allocate();
+		
+		/** @return the result of resolving the filled object */
+		protected abstract Object fill(Resolver resolver, Object object) throws InterpreterException;
+		
+	}
+	
+	private static final class ObjectRecord extends Record {
+		
+		private final ClassInfo info_;
+		private final Object instance_;
+		private final Object[] values_;
+		
+		ObjectRecord(ClassInfo info, Object instance) {
+			info_ = info;
+			instance_ = instance;
+			values_ = new Object[info.objectFields_.length];
+		}
+		
+		void copyFields(Copier copier, Object original) throws InterpreterException, Unsupported {
+			try {
+				Field[] primitives = info_.primitiveFields_;
+				for (int i = 0; i < primitives.length; i++) {
+					primitives[i].set(instance_, primitives[i].get(original));
+				}
+				Field[] fields = info_.objectFields_;
+				for (int i = 0; i < fields.length; i++) {
+					values_[i] = copier.copy(fields[i].get(original));
+				}
+			} catch (IllegalAccessException e) {
+				throw _UNSUPPORTED_;
+			}
+		}
+		
+		protected Object allocate() {
+			return instance_;
+		}
+		
+		protected Object fill(Resolver resolver, Object object) throws InterpreterException {
+			Field[] fields = info_.objectFields_;
+			Object[] values = new Object[values_.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = resolver.resolve(values_[i]);
+			}
+			for (int i = 0; i < values.length; i++) {
+				try {
+					fields[i].set(object, values[i]);
+				} catch (IllegalArgumentException e) {
+					throw wrongType(e);
+				} catch (IllegalAccessException e) {
+					throw new XIOProblem(new IOException(e.getMessage()));
+				}
+			}
+			return (info_.readResolve_ == null) ? object : info_.invokeReadResolve(object);
+		}
+		
+	}
+	
+	private static final class ArrayRecord extends Record {
+		
+		private final Object[] array_;
+		private final Object[] elements_;
+		
+		ArrayRecord(Object[] array) {
+			array_ = array;
+			elements_ = new Object[array.length];
+		}
+		
+		protected Object allocate() {
+			return array_;
+		}
+		
+		protected Object fill(Resolver resolver, Object object) throws InterpreterException {
+			for (int i = 0; i < elements_.length; i++) {
+				try {
+					array_[i] = resolver.resolve(elements_[i]);
+				} catch (ArrayStoreException e) {
+					throw wrongType(e);
+				}
+			}
+			return array_;
+		}
+		
+	}
+	
+	/**
+	 * A copied list, set or map. Hashed collections are rebuilt from their resolved
+	 * elements, as their readObject method does.
+	 */
+	private static final class CollectionRecord extends Record {
+		
+		private final int kind_;
+		private final Class class_;
+		private final Object[] elements_;
+		
+		CollectionRecord(int kind, Class c, Object[] elements) {
+			kind_ = kind;
+			class_ = c;
+			elements_ = elements;
+		}
+		
+		protected Object allocate() {
+			// sized as by HashMap's readObject method
+			int size = (kind_ == ClassInfo._MAP_) ? elements_.length / 2 : elements_.length;
+			int capacity = Math.max((int) (size / 0.75f + 1.0f), 16);
+			if (class_ == HashMap.class) {
+				return new HashMap(capacity);
+			} else if (class_ == HashSet.class) {
+				return new HashSet(capacity);
+			} else if (class_ == Vector.class) {
+				return new Vector(size);
+			} else if (class_ == ArrayList.class) {
+				return new ArrayList(size);
+			} else {
+				return new LinkedList();
+			}
+		}
+		
+		protected Object fill(Resolver resolver, Object object) throws InterpreterException {
+			Object[] elements = new Object[elements_.length];
+			for (int i = 0; i < elements.length; i++) {
+				elements[i] = resolver.resolve(elements_[i]);
+			}
+			if (kind_ == ClassInfo._MAP_) {
+				Map map = (Map) object;
+				for (int i = 0; i < elements.length; i += 2) {
+					map.put(elements[i], elements[i+1]);
+				}
+			} else {
+				Collection collection = (Collection) object;
+				for (int i = 0; i < elements.length; i++) {
+					collection.add(elements[i]);
+				}
+			}
+			return object;
+		}
+		
+	}
+	
+	private static XIOProblem wrongType(RuntimeException e) {
+		return new XIOProblem(new IOException("Object deserialized as wrong type: " + e.getMessage()
+				+ ". Did you forget to make a type tag object an isolate?"));
+	}
+	
+	/**
+	 * Describes how instances of a class are copied. Equivalent to the
+	 * {@link ObjectStreamClass} of the class for serialization purposes.
+	 */
+	private static final class ClassInfo {
+		
+		static final int _SHARED_ = 0;
+		static final int _TYPE_TAG_ = 1;
+		static final int _OBJECT_ = 2;
+		static final int _ARRAY_ = 3;
+		static final int _PRIMITIVE_ARRAY_ = 4;
+		static final int _LIST_ = 5;
+		static final int _SET_ = 6;
+		static final int _MAP_ = 7;
+		static final int _SERIALIZED_ = 8;
+		static final int _UNMODIFIABLE_SET_ = 9;
+		
+		private static final ConcurrentHashMap _INFOS_ = new ConcurrentHashMap();
+		
+		/** immutable classes whose instances are shared, subclasses excluded */
+		private static final Class[] _SHARED_CLASSES_ = {
+			String.class, Class.class, Boolean.class, Character.class, Byte.class, Short.class,
+			Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class,
+			NATNil.class, ActorID.class, ATObjectID.class, VirtualMachineID.class
+		};
+		
+		/** immutable classes whose instances are shared, subclasses included */
+		private static final Class[] _SHARED_SUPERCLASSES_ = {
+			Enum.class, NATNumeric.class, NATText.class, AGSymbol.class, NATBoolean.class, FieldMap.class
+		};
+		
+		/** classes whose writeObject and readObject methods only invoke the default mechanism */
+		private static final Class[] _DEFAULT_HOOKS_ = {
+			NativeATObject.class, NATObject.class, NATMirrorRoot.class
+		};
+		
+		/** the class of unmodifiable sets, such as the cached free variables of abstract grammar */
+		private static final Class _UNMODIFIABLE_SET_CLASS_ = Collections.unmodifiableSet(new HashSet()).getClass();
+		
+		private static final Field[] _NO_FIELDS_ = new Field[0];
+		
+		final int kind_;
+		final Method writeReplace_;
+		final Method readResolve_;
+		final Field[] primitiveFields_;
+		final Field[] objectFields_;
+		private final Constructor constructor_;
+		
+		/** whether a serialization method could not be made accessible, e.g. because its module is not open */
+		private boolean inaccessibleMethod_ = false;
+		
+		static ClassInfo of(Class c) {
+			ClassInfo info = (ClassInfo) _INFOS_.get(c);
+			if (info == null) {
+				info = new ClassInfo(c);
+				_INFOS_.put(c, info);
+			}
+			return info;
+		}
+		
+		private ClassInfo(Class c) {
+			boolean serializable = Serializable.class.isAssignableFrom(c);
+			writeReplace_ = serializable ? inheritableMethod(c, "writeReplace") : null;
+			readResolve_ = serializable ? inheritableMethod(c, "readResolve") : null;
+			
+			Constructor constructor = null;
+			Field[] primitiveFields = _NO_FIELDS_;
+			Field[] objectFields = _NO_FIELDS_;
+			int kind;
+			if (c.isArray()) {
+				kind = c.getComponentType().isPrimitive() ? _PRIMITIVE_ARRAY_ : _ARRAY_;
+			} else if (isSharedClass(c)) {
+				kind = _SHARED_;
+			} else if (c == HashMap.class) {
+				kind = _MAP_;
+			} else if (c == HashSet.class) {
+				kind = _SET_;
+			} else if (c == _UNMODIFIABLE_SET_CLASS_) {
+				kind = _UNMODIFIABLE_SET_;
+			} else if (c == Vector.class || c == ArrayList.class || c == LinkedList.class) {
+				kind = _LIST_;
+			} else if (!serializable || inaccessibleMethod_ || Externalizable.class.isAssignableFrom(c)
+					     || Proxy.isProxyClass(c) || hasCustomSerialization(c)) {
+				kind = _SERIALIZED_;
+			} else {
+				constructor = serializationConstructor(c);
+				ArrayList primitives = new ArrayList();
+				ArrayList objects = new ArrayList();
+				if (constructor != null && collectFields(c, primitives, objects)) {
+					kind = NATTypeTag.class.isAssignableFrom(c) ? _TYPE_TAG_ : _OBJECT_;
+					primitiveFields = (Field[]) primitives.toArray(_NO_FIELDS_);
+					objectFields = (Field[]) objects.toArray(_NO_FIELDS_);
+				} else {
+					kind = _SERIALIZED_;
+				}
+			}
+			kind_ = kind;
+			constructor_ = constructor;
+			primitiveFields_ = primitiveFields;
+			objectFields_ = objectFields;
+		}
+		
+		/**
+		 * Type tags are shared if they cannot refer to mutable objects, i.e. if their
+		 * supertypes are shared type tags.
+		 */
+		boolean isShared(Object obj) throws InterpreterException {
+			return (kind_ == _SHARED_) || (kind_ == _TYPE_TAG_ && isSharedTypeTag((NATTypeTag) obj))
+				|| (kind_ == _UNMODIFIABLE_SET_ && hasSharedElements((Collection) obj));
+		}
+		
+		/**
+		 * Unmodifiable sets are shared if their elements are, otherwise the packet is serialized.
+		 */
+		private static boolean hasSharedElements(Collection collection) throws InterpreterException {
+			for (Iterator it = collection.iterator(); it.hasNext();) {
+				Object element = it.next();
+				if (element != null && !of(element.getClass()).isShared(element)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		private static boolean isSharedTypeTag(NATTypeTag tag) throws InterpreterException {
+			if (!(tag.base_typeName() instanceof AGSymbol)) {
+				return false;
+			}
+			ATTable parents = tag.base_superTypes();
+			if (!(parents instanceof NATTable)) {
+				return false;
+			}
+			ATObject[] elements = ((NATTable) parents).elements_;
+			for (int i = 0; i < elements.length; i++) {
+				if (!(elements[i] instanceof NATTypeTag) || !isSharedTypeTag((NATTypeTag) elements[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		Object newInstance() throws Unsupported {
+			try {
+				return constructor_.newInstance((Object[]) null);
+			} catch (Exception e) {
+				throw _UNSUPPORTED_;
+			}
+		}
+		
+		Object invokeWriteReplace(Object obj) throws InterpreterException {
+			try {
+				return writeReplace_.invoke(obj, (Object[]) null);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof ObjectStreamException) {
+					throw new XIOProblem((ObjectStreamException) cause);
+				}
+				throw rethrow(cause);
+			} catch (IllegalAccessException e) {
+				throw new XIOProblem(new IOException(e.getMessage()));
+			}
+		}
+		
+		Object invokeReadResolve(Object obj) throws InterpreterException {
+			try {
+				return readResolve_.invoke(obj, (Object[]) null);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof SerializationException) {
+					throw ((SerializationException) cause).getWrappedException();
+				} else if (cause instanceof ObjectStreamException) {
+					throw new XIOProblem((ObjectStreamException) cause);
+				}
+				throw rethrow(cause);
+			} catch (IllegalAccessException e) {
+				throw new XIOProblem(new IOException(e.getMessage()));
+			}
+		}
+		
+		private static XIOProblem rethrow(Throwable cause) {
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			IOException e = new IOException("unexpected exception type");
+			e.initCause(cause);
+			return new XIOProblem(e);
+		}
+		
+		/**
+		 * @return a constructor that invokes the no-argument constructor of the first
+		 * non-serializable superclass, as an ObjectInputStream does, or null.
+		 */
+		private static Constructor serializationConstructor(Class c) {
+			try {
+				return (Constructor) _NEW_CONSTRUCTOR_.invoke(_REFLECTION_FACTORY_, new Object[] { c });
+			} catch (Exception e) {
+				return null;
+			}
+		}
+		
+		private static boolean isSharedClass(Class c) {
+			for (int i = 0; i < _SHARED_CLASSES_.length; i++) {
+				if (_SHARED_CLASSES_[i] == c) {
+					return true;
+				}
+			}
+			for (int i = 0; i < _SHARED_SUPERCLASSES_.length; i++) {
+				if (_SHARED_SUPERCLASSES_[i].isAssignableFrom(c)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private static boolean hasCustomSerialization(Class c) {
+			for (Class k = c; k != null && Serializable.class.isAssignableFrom(k); k = k.getSuperclass()) {
+				if (hasDefaultHooks(k)) {
+					continue;
+				}
+				if (hasPrivateMethod(k, "writeObject", ObjectOutputStream.class)
+						|| hasPrivateMethod(k, "readObject", ObjectInputStream.class)
+						|| hasPrivateMethod(k, "readObjectNoData", null)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private static boolean hasDefaultHooks(Class c) {
+			for (int i = 0; i < _DEFAULT_HOOKS_.length; i++) {
+				if (_DEFAULT_HOOKS_[i] == c) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private static boolean hasPrivateMethod(Class c, String name, Class argType) {
+			try {
+				Method m = (argType == null) ? c.getDeclaredMethod(name, new Class[0])
+						                     : c.getDeclaredMethod(name, new Class[] { argType });
+				int mods = m.getModifiers();
+				return Modifier.isPrivate(mods) && !Modifier.isStatic(mods);
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+		
+		/**
+		 * Collects the serializable fields of the given class and its serializable superclasses,
+		 * starting with the topmost superclass, in the order in which they are serialized.
+		 * 
+		 * @return false if a serializable field does not correspond to a declared field.
+		 */
+		private static boolean collectFields(Class c, ArrayList primitives, ArrayList objects) {
+			Class sup = c.getSuperclass();
+			if (sup != null && Serializable.class.isAssignableFrom(sup)) {
+				if (!collectFields(sup, primitives, objects)) {
+					return false;
+				}
+			}
+			ObjectStreamField[] fields = ObjectStreamClass.lookup(c).getFields();
+			for (int i = 0; i < fields.length; i++) {
+				try {
+					Field f = c.getDeclaredField(fields[i].getName());
+					f.setAccessible(true);
+					if (fields[i].isPrimitive()) {
+						primitives.add(f);
+					} else {
+						objects.add(f);
+					}
+				} catch (NoSuchFieldException e) {
+					return false;
+				} catch (RuntimeException e) {
+					// a SecurityException, or an InaccessibleObjectException for a class of a module that is not open
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * Looks up a serialization method like writeReplace or readResolve, which
+		 * may be inherited from a superclass, as an ObjectStreamClass would.
+		 * If the method cannot be made accessible, the class is serialized instead.
+		 */
+		private Method inheritableMethod(Class c, String name) {
+			for (Class k = c; k != null; k = k.getSuperclass()) {
+				try {
+					Method m = k.getDeclaredMethod(name, new Class[0]);
+					int mods = m.getModifiers();
+					if (m.getReturnType() != Object.class || Modifier.isStatic(mods) || Modifier.isAbstract(mods)) {
+						return null;
+					} else if (Modifier.isPrivate(mods) && k != c) {
+						return null;
+					} else if (!Modifier.isPublic(mods) && !Modifier.isProtected(mods) && !Modifier.isPrivate(mods)
+							    && !samePackage(c, k)) {
+						return null;
+					}
+					m.setAccessible(true);
+					return m;
+				} catch (NoSuchMethodException e) {
+					continue;
+				} catch (RuntimeException e) {
+					// a SecurityException, or an InaccessibleObjectException for a class of a module that is not open
+					inaccessibleMethod_ = true;
+					return null;
+				}
+			}
+			return null;
+		}
+		
+		private static boolean samePackage(Class c1, Class c2) {
+			String n1 = c1.getName();
+			String n2 = c2.getName();
+			return c1.getClassLoader() == c2.getClassLoader()
+			    && n1.substring(0, Math.max(0, n1.lastIndexOf('.'))).equals(n2.substring(0, Math.max(0, n2.lastIndexOf('.'))));
+		}
+		
+	}
+
+}
@@ -0,0 +1,134 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.exceptions.XIllegalArgument;
+import edu.vub.at.objects.ATNumber;
+import edu.vub.at.objects.grammar.ATSymbol;
+import edu.vub.at.objects.natives.NATNumber;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+import edu.vub.at.util.logging.Logging;
+
+/**
+ * A MailboxLimit bounds the number of messages that can wait in the mailbox of an actor
+ * or in the outbox of a far reference, and determines what happens to a message sent
+ * when the limit is reached. The overflow policies are:
+ * <ul>
+ *  <li><tt>block</tt>: the sender waits until there is room for the message
+ *  <li><tt>dropOldest</tt>: the oldest waiting message is discarded to make room
+ *  <li><tt>dropNewest</tt>: the message sent is discarded
+ *  <li><tt>raise</tt>: an {@link edu.vub.at.exceptions.XMailboxFull} exception is raised in the sender's turn
+ * </ul>
+ * 
+ * Limits are immutable, such that they can be read by sending threads without locking.
+ */
+public final class MailboxLimit {
+	
+	public static final int _BLOCK_ = 0;
+	public static final int _DROP_OLDEST_ = 1;
+	public static final int _DROP_NEWEST_ = 2;
+	public static final int _RAISE_ = 3;
+	
+	private static final AGSymbol[] _POLICY_NAMES_ = new AGSymbol[] {
+		AGSymbol.jAlloc("block"),
+		AGSymbol.jAlloc("dropOldest"),
+		AGSymbol.jAlloc("dropNewest"),
+		AGSymbol.jAlloc("raise")
+	};
+	
+	/** A limit which never refuses any message. */
+	public static final MailboxLimit _UNBOUNDED_ = new MailboxLimit(Integer.MAX_VALUE, _BLOCK_);
+	
+	private final int capacity_;
+	
+	private final int policy_;
+	
+	private MailboxLimit(int capacity, int policy) {
+		capacity_ = capacity;
+		policy_ = policy;
+	}
+	
+	/**
+	 * Creates a limit from its AmbientTalk representation.
+	 * @param capacity the maximum number of waiting messages, a non-positive number or a number
+	 * that does not fit in a Java int means unbounded
+	 * @throws XIllegalArgument if the capacity does not fit in a Java long or the policy is unknown
+	 * @param policy one of the symbols <tt>block</tt>, <tt>dropOldest</tt>, <tt>dropNewest</tt> or <tt>raise</tt>
+	 */
+	public static MailboxLimit atValue(ATNumber capacity, ATSymbol policy) throws InterpreterException {
+		long cap = capacity.asNativeNumber().asLong();
+		for (int i = 0; i < _POLICY_NAMES_.length; i++) {
+			if (_POLICY_NAMES_[i] == policy) {
+				return (cap <= 0 || cap >= Integer.MAX_VALUE) ? _UNBOUNDED_ : new MailboxLimit((int) cap, i);
+			}
+		}
+		throw new XIllegalArgument("Unknown mailbox overflow policy: " + policy);
+	}
+	
+	/**
+	 * Creates a limit from the given system properties, which hold the capacity and the
+	 * name of the overflow policy. Invalid values are logged and result in an unbounded limit.
+	 */
+	public static MailboxLimit fromProperties(String capacityProperty, String policyProperty) {
+		Integer capacity = Integer.getInteger(capacityProperty);
+		if (capacity == null) {
+			return _UNBOUNDED_;
+		}
+		String policy = System.getProperty(policyProperty, "block");
+		try {
+			return atValue(NATNumber.atValue(capacity.intValue()), AGSymbol.jAlloc(policy));
+		} catch (InterpreterException e) {
+			Logging.Actor_LOG.error("Ignoring invalid value of " + policyProperty + ": " + policy);
+			return _UNBOUNDED_;
+		}
+	}
+	
+	public boolean isBounded() {
+		return capacity_ != Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * @return whether a mailbox holding the given number of messages has room for another one
+	 */
+	public boolean admits(int size) {
+		return size < capacity_;
+	}
+	
+	public int getCapacity() {
+		return capacity_;
+	}
+	
+	public int getPolicy() {
+		return policy_;
+	}
+	
+	public String toString() {
+		return isBounded() ? ("<limit:" + capacity_ + "," + _POLICY_NAMES_[policy_] + ">") : "<unbounded>";
+	}
+	
+}
@@ -29,6 +29,7 @@ package edu.vub.at.actors.natives;
 
 import edu.vub.at.actors.ATActorMirror;
 import edu.vub.at.actors.ATAsyncMessage;
+import edu.vub.at.actors.ATFarReference;
 import edu.vub.at.actors.ATLetter;
 import edu.vub.at.actors.natives.DiscoveryManager.Publication;
 import edu.vub.at.actors.natives.DiscoveryManager.Subscription;
@@ -41,6 +42,7 @@ import edu.vub.at.objects.ATBoolean;
 import edu.vub.at.objects.ATClosure;
 import edu.vub.at.objects.ATContext;
 import edu.vub.at.objects.ATNil;
+import edu.vub.at.objects.ATNumber;
 import edu.vub.at.objects.ATObject;
 import edu.vub.at.objects.ATTable;
 import edu.vub.at.objects.ATTypeTag;
@@ -49,16 +51,21 @@ import edu.vub.at.objects.grammar.ATSymbol;
 import edu.vub.at.objects.mirrors.NATIntrospectiveMirror;
 import edu.vub.at.objects.mirrors.NativeClosure;
 import edu.vub.at.objects.mirrors.PrimitiveMethod;
+import edu.vub.at.objects.natives.FieldMap;
+import edu.vub.at.objects.natives.MethodDictionary;
 import edu.vub.at.objects.natives.NATByRef;
+import edu.vub.at.objects.natives.NATMethod;
 import edu.vub.at.objects.natives.NATMethodInvocation;
 import edu.vub.at.objects.natives.NATNumber;
 import edu.vub.at.objects.natives.NATObject;
 import edu.vub.at.objects.natives.NATTable;
 import edu.vub.at.objects.natives.NATText;
 import edu.vub.at.objects.natives.OBJLexicalRoot;
+import edu.vub.at.objects.natives.SharedMethodDictionary;
 import edu.vub.at.objects.natives.grammar.AGSymbol;
 
 import java.util.LinkedList;
+import java.util.Set;
 
 /**
  * The NATActorMirror class implements the concurrency model of ambienttalk. It continually
@@ -119,6 +126,11 @@ public class NATActorMirror extends NATByRef implements ATActorMirror {
 		return NATIntrospectiveMirror.atValue(reflectee);
 	}
 	
+	public ATTable base_createFuture() throws InterpreterException {
+		NATFuture future = new NATFuture(myActor_);
+		return NATTable.of(future, new NATFutureResolver(future));
+	}
+	
 	/**
 	 * A publication object is defined as:
 	 * object: {
@@ -138,7 +150,7 @@ public class NATActorMirror extends NATByRef implements ATActorMirror {
 			meta_defineField(_SERVICE_, service);
 			meta_addMethod(new PrimitiveMethod(_CANCEL_, NATTable.EMPTY) {
 			      public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-						int arity = arguments.base_length().asNativeNumber().javaValue;
+						int arity = arguments.base_length().asNativeNumber().asInt();
 						if (arity != 0) {
 							throw new XArityMismatch("cancel", 0, arity);
 						}
@@ -171,7 +183,7 @@ public class NATActorMirror extends NATByRef implements ATActorMirror {
 			meta_defineField(_HANDLER_, handler);
 			meta_addMethod(new PrimitiveMethod(_CANCEL_, NATTable.EMPTY) {
 			      public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-						int arity = arguments.base_length().asNativeNumber().javaValue;
+						int arity = arguments.base_length().asNativeNumber().asInt();
 						if (arity != 0) {
 							throw new XArityMismatch("cancel", 0, arity);
 						}
@@ -186,6 +198,7 @@ public class NATActorMirror extends NATByRef implements ATActorMirror {
 	}
 	
 	public ATObject base_provide(final ATTypeTag topic, final ATObject service) throws InterpreterException {
+		ELActor.noteExternalEffect();
 		Publication pub = new Publication(myActor_,
 				new Packet(topic),
 				new Packet(service),
@@ -195,6 +208,7 @@ public class NATActorMirror extends NATByRef implements ATActorMirror {
 	}
 	
 	public ATObject base_require(final ATTypeTag topic, final ATClosure handler, ATBoolean isPermanent) throws InterpreterException {
+		ELActor.noteExternalEffect();
 		Subscription sub = new Subscription(myActor_,
 				                            new Packet(topic),
 				                            new Packet(handler),
@@ -244,7 +258,7 @@ public class NATActorMirror extends NATByRef implements ATActorMirror {
      *  => same effect as evaluating 'actor: closure'
      */
 	public ATObject meta_newInstance(ATTable initargs) throws InterpreterException {
-		int length = initargs.base_length().asNativeNumber().javaValue;
+		int length = initargs.base_length().asNativeNumber().asInt();
 		if(length != 1)
 			throw new XArityMismatch("newInstance", 1, length);
 		
@@ -376,25 +390,77 @@ public class NATActorMirror extends NATByRef implements ATActorMirror {
 		private static final AGSymbol _RCVR_ = AGSymbol.jAlloc("receiver");
 		private static final AGSymbol _MSG_ = AGSymbol.jAlloc("message");
 		private static final AGSymbol _CANCEL_ = AGSymbol.jAlloc("cancel");
-		public NATLetter(final LinkedList mailbox, ATObject receiver, ATObject message) throws InterpreterException {
-			super(new ATTypeTag[] { NativeTypeTags._LETTER_ });
-			meta_defineField(_RCVR_, receiver);
-			meta_defineField(_MSG_, message);
-			final NATLetter thisLetter = this;
-			meta_addMethod(new PrimitiveMethod(_CANCEL_, NATTable.EMPTY) {
-			      public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-						int arity = arguments.base_length().asNativeNumber().javaValue;
-						if (arity != 0) {
-							throw new XArityMismatch("cancel", 0, arity);
-						}
-						// Note: if the receiver and message fields are changed by an AmbientTalk program
-						// canceling the letter will still remove the original letter, not a letter that corresponds
-						// to the new receiver and message.
-						mailbox.remove(thisLetter);
-						return Evaluator.getNil();
-			      }
-			});
+		
+		private static final ATTypeTag[] _TAGS_ = new ATTypeTag[] { NativeTypeTags._LETTER_ };
+		
+		private static final FieldMap _FIELDS_ = FieldMap.EMPTY.withField(_SUPER_NAME_).withField(_RCVR_).withField(_MSG_);
+		
+		/** def cancel() { nil } */
+		private static final PrimitiveMethod _PRIM_CANCEL_ = new PrimitiveMethod(_CANCEL_, NATTable.EMPTY) {
+			public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
+				int arity = arguments.base_length().asNativeNumber().asInt();
+				if (arity != 0) {
+					throw new XArityMismatch("cancel", 0, arity);
+				}
+				ATObject scope = ctx.base_lexicalScope();
+				if (!(scope instanceof NATLetter)) {
+					throw new XTypeMismatch(NATLetter.class, scope);
+				}
+				// Note: if the receiver and message fields are changed by an AmbientTalk program
+				// canceling the letter will still remove the original letter, not a letter that corresponds
+				// to the new receiver and message.
+				NATLetter letter = (NATLetter) scope;
+				letter.mailbox_.remove(letter.original_);
+				return Evaluator.getNil();
+			}
+		};
+		
+		private static final SharedMethodDictionary _METHODS_ =
+			new SharedMethodDictionary(NATLetter.class, "_METHODS_", new NATMethod[] { _PRIM_CANCEL_ });
+		
+		/** the inbox in which the letter was scheduled */
+		private final LinkedList mailbox_;
+		
+		/** the letter to remove from the inbox upon cancellation, clones cancel their original */
+		private final NATLetter original_;
+		
+		public NATLetter(LinkedList mailbox, ATObject receiver, ATObject message) {
+			super(_FIELDS_, new ATObject[] { null, receiver, message }, _METHODS_, _TAGS_);
+			mailbox_ = mailbox;
+			original_ = this;
+		}
+		
+		/**
+		 * Copy constructor.
+		 */
+		private NATLetter(NATLetter original,
+				FieldMap map,
+				ATObject[] state,
+				LinkedList originalCustomFields,
+				MethodDictionary methodDict,
+				ATObject dynamicParent,
+				ATObject lexicalParent,
+				byte flags,
+				ATTypeTag[] types,
+				Set freeVars) throws InterpreterException {
+			super(map, state, originalCustomFields, methodDict, dynamicParent, lexicalParent, flags, types, freeVars);
+			mailbox_ = original.mailbox_;
+			original_ = original.original_;
+		}
+		
+		protected NATObject createClone(FieldMap map,
+				ATObject[] state,
+				LinkedList originalCustomFields,
+				MethodDictionary methodDict,
+				ATObject dynamicParent,
+				ATObject lexicalParent,
+				byte flags,
+				ATTypeTag[] types,
+				Set freeVars) throws InterpreterException {
+			return new NATLetter(this, map, state, originalCustomFields, methodDict,
+					dynamicParent, lexicalParent, flags, types, freeVars);
 		}
+		
 		public NATText meta_print() throws InterpreterException {
 			return NATText.atValue("<letter:"+impl_invokeAccessor(this, _MSG_, NATTable.EMPTY)+">");
 		}
@@ -430,6 +496,29 @@ public class NATActorMirror extends NATByRef implements ATActorMirror {
 		return letter;
 	}
 
+	public ATNil base_limitMailbox(ATNumber capacity, ATSymbol policy) throws InterpreterException {
+		myActor_.setMailboxLimit(MailboxLimit.atValue(capacity, policy));
+		return Evaluator.getNil();
+	}
+	
+	public ATNil base_limitOutboxes(ATNumber capacity, ATSymbol policy) throws InterpreterException {
+		myActor_.setOutboxLimit(MailboxLimit.atValue(capacity, policy));
+		return Evaluator.getNil();
+	}
+	
+	public ATNil base_limitOutbox(ATFarReference reference, ATNumber capacity, ATSymbol policy) throws InterpreterException {
+		reference.asNativeFarReference().setOutboxLimit(MailboxLimit.atValue(capacity, policy));
+		return Evaluator.getNil();
+	}
+	
+	public ATNumber base_mailboxSize() throws InterpreterException {
+		return NATNumber.atValue(myActor_.getMailboxSize());
+	}
+	
+	public ATNumber base_outboxSize(ATFarReference reference) throws InterpreterException {
+		return NATNumber.atValue(reference.asNativeFarReference().getOutboxSize());
+	}
+	
 	/**
 	 * Fetches the next letter from the actor's inbox, if any, and processes it.
 	 */
@@ -45,18 +45,19 @@ import edu.vub.at.objects.mirrors.PrimitiveMethod;
 import edu.vub.at.objects.natives.FieldMap;
 import edu.vub.at.objects.natives.MethodDictionary;
 import edu.vub.at.objects.natives.NATMessage;
+import edu.vub.at.objects.natives.NATMethod;
 import edu.vub.at.objects.natives.NATMethodInvocation;
 import edu.vub.at.objects.natives.NATNumber;
 import edu.vub.at.objects.natives.NATObject;
 import edu.vub.at.objects.natives.NATTable;
 import edu.vub.at.objects.natives.NATText;
+import edu.vub.at.objects.natives.SharedMethodDictionary;
 import edu.vub.at.objects.natives.grammar.AGSymbol;
 import edu.vub.at.parser.SourceLocation;
 import edu.vub.util.TempFieldGenerator;
 
 import java.util.LinkedList;
 import java.util.Set;
-import java.util.Vector;
 
 /**
  * Instances of the class NATAsyncMessage represent first-class asynchronous messages.
@@ -74,7 +75,7 @@ public class NATAsyncMessage extends NATMessage implements ATAsyncMessage {
 	    private static final long serialVersionUID = -1307795172754072220L;
 
 		public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-			int arity = arguments.base_length().asNativeNumber().javaValue;
+			int arity = arguments.base_length().asNativeNumber().asInt();
 			if (arity != 1) {
 				throw new XArityMismatch("process", 1, arity);
 			}
@@ -89,7 +90,7 @@ public class NATAsyncMessage extends NATMessage implements ATAsyncMessage {
 			AGSymbol.jAlloc("getLocationLine"), NATTable.EMPTY) {
 
 		public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-			int arity = arguments.base_length().asNativeNumber().javaValue;
+			int arity = arguments.base_length().asNativeNumber().asInt();
 			if (arity != 0) {
 				throw new XArityMismatch("getLocationLine", 0, arity);
 			}
@@ -102,7 +103,7 @@ public class NATAsyncMessage extends NATMessage implements ATAsyncMessage {
 		AGSymbol.jAlloc("getLocationFilename"), NATTable.EMPTY) {
 
 		public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-			int arity = arguments.base_length().asNativeNumber().javaValue;
+			int arity = arguments.base_length().asNativeNumber().asInt();
 			if (arity != 0) {
 				throw new XArityMismatch("getLocationFilename", 0, arity);
 			}
@@ -110,6 +111,12 @@ public class NATAsyncMessage extends NATMessage implements ATAsyncMessage {
 		}
 	};
 	
+	/**
+	 * The primitive methods shared by all native asynchronous messages.
+	 */
+	private static final SharedMethodDictionary _ASYNC_METHODS_ = NATMessage._METHODS_.extend(
+			NATAsyncMessage.class, "_ASYNC_METHODS_", new NATMethod[] { _PRIM_PRO_, _PRIM_LINE_, _PRIM_FILE_ });
+	
     /**
      * Create a new asynchronous message.
      * @param sel the selector of the asynchronous message
@@ -117,10 +124,7 @@ public class NATAsyncMessage extends NATMessage implements ATAsyncMessage {
      * @param types the types for the message. Isolate and AsyncMessage types are automatically added.
      */
     public NATAsyncMessage(ATSymbol sel, ATTable arg, ATTable types) throws InterpreterException {
-    	super(sel, arg, types, NativeTypeTags._ASYNCMSG_);
-        super.meta_addMethod(_PRIM_PRO_);
-		super.meta_addMethod(_PRIM_LINE_);
-		super.meta_addMethod(_PRIM_FILE_);
+    	super(sel, arg, types, NativeTypeTags._ASYNCMSG_, _ASYNC_METHODS_);
     }
     
     public static NATAsyncMessage createExternalAsyncMessage(ATSymbol sel, ATTable args, ATTable types) throws InterpreterException{
@@ -139,7 +143,7 @@ public class NATAsyncMessage extends NATMessage implements ATAsyncMessage {
      * Copy constructor.
      */
     private NATAsyncMessage(FieldMap map,
-            Vector state,
+            ATObject[] state,
             LinkedList originalCustomFields,
             MethodDictionary methodDict,
             ATObject dynamicParent,
@@ -156,7 +160,7 @@ public class NATAsyncMessage extends NATMessage implements ATAsyncMessage {
      * of prim_sendTo!
      */
     protected NATObject createClone(FieldMap map,
-    		                        Vector state,
+    		                        ATObject[] state,
     		                        LinkedList originalCustomFields,
     		                        MethodDictionary methodDict,
     		                        ATObject dynamicParent,
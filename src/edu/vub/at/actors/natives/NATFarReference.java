@@ -30,6 +30,8 @@ package edu.vub.at.actors.natives;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 import edu.vub.at.actors.ATAsyncMessage;
 import edu.vub.at.actors.ATFarReference;
@@ -41,6 +43,7 @@ import edu.vub.at.eval.Evaluator;
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.exceptions.XArityMismatch;
 import edu.vub.at.exceptions.XIllegalOperation;
+import edu.vub.at.exceptions.XMailboxFull;
 import edu.vub.at.exceptions.XObjectOffline;
 import edu.vub.at.exceptions.XSelectorNotFound;
 import edu.vub.at.exceptions.XTypeMismatch;
@@ -121,6 +124,12 @@ public abstract class NATFarReference extends NATByCopy implements ATFarReferenc
 	 *  -the owner ELActor and a thread of FarReferencesThreadPool in case of remote far references.
      */
     protected transient LinkedList outbox_ = new LinkedList(); //outbox is not serialized.
+    
+    /**
+     * The limit on the number of letters in the outbox of this reference, or null if the
+     * outbox limit of the owning actor applies.
+     */
+    private transient volatile MailboxLimit outboxLimit_;
 	
 	protected NATFarReference(ATObjectID objectId, ATTypeTag[] types, ELActor owner, boolean isConnected) {
 		int size = types.length;
@@ -297,6 +306,96 @@ public abstract class NATFarReference extends NATByCopy implements ATFarReferenc
 	}
 	
 	protected abstract void transmit(ATLetter letter) throws InterpreterException;
+	
+	/**
+	 * Adds a letter to the outbox, applying the overflow policy of the outbox if it is full.
+	 * The caller must hold the lock of this reference, which is released while waiting
+	 * for room in the outbox.
+	 * 
+	 * @return whether the letter was added to the outbox
+	 * @throws XMailboxFull if the outbox is full and its policy is to raise an exception
+	 */
+	protected boolean addToOutbox(ATLetter letter) throws XMailboxFull {
+		MailboxLimit limit = getOutboxLimit();
+		while (!limit.admits(outbox_.size())) {
+			switch (limit.getPolicy()) {
+			case MailboxLimit._BLOCK_:
+				try {
+					awaitOutboxDrained();
+				} catch (InterruptedException e) {
+					// add the letter anyway, the owner is probably being stopped
+					Thread.currentThread().interrupt();
+					outbox_.addLast(letter);
+					return true;
+				}
+				break;
+			case MailboxLimit._DROP_OLDEST_:
+				Logging.RemoteRef_LOG.warn(this + ": outbox full, dropped " + outbox_.removeFirst());
+				break;
+			case MailboxLimit._DROP_NEWEST_:
+				Logging.RemoteRef_LOG.warn(this + ": outbox full, dropped " + letter);
+				return false;
+			default:
+				throw new XMailboxFull("Outbox of " + this + " is full: " + limit);
+			}
+			limit = getOutboxLimit();
+		}
+		outbox_.addLast(letter);
+		return true;
+	}
+	
+	/**
+	 * Waits until the outbox has room or its limit is changed.
+	 * The caller must hold the lock of this reference.
+	 */
+	private void awaitOutboxDrained() throws InterruptedException {
+		if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+			// a pooled event loop waiting for room blocks a shared scheduler worker:
+			// allow the pool to compensate by activating a spare worker
+			final NATFarReference ref = this;
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				public boolean block() throws InterruptedException {
+					ref.wait();
+					return true;
+				}
+				public boolean isReleasable() {
+					return getOutboxLimit().admits(outbox_.size());
+				}
+			});
+		} else {
+			this.wait();
+		}
+	}
+	
+	/**
+	 * Wakes up the owner of this reference if it is waiting for room in the outbox.
+	 * The caller must hold the lock of this reference.
+	 */
+	protected void outboxDrained() {
+		this.notifyAll();
+	}
+	
+	public MailboxLimit getOutboxLimit() {
+		MailboxLimit limit = outboxLimit_;
+		return (limit != null) ? limit : owner_.getOutboxLimit();
+	}
+	
+	public synchronized void setOutboxLimit(MailboxLimit limit) {
+		outboxLimit_ = limit;
+		outboxDrained();
+	}
+	
+	public synchronized int getOutboxSize() {
+		return outbox_.size();
+	}
+	
+	/**
+	 * Serializes a message to be transmitted via this far reference, together with
+	 * this far reference as the receiver of the message.
+	 */
+	protected Packet serializeMessage(ATObject message) throws InterpreterException {
+		return new Packet(message.toString(), NATTable.of(this, message));
+	}
 
 	/**
 	 * The only operation that is allowed to be synchronously invoked on far references is '=='
@@ -515,7 +614,7 @@ public abstract class NATFarReference extends NATByCopy implements ATFarReferenc
 			this.meta_defineField(_HANDLER_, handler);
 			this.meta_addMethod(new PrimitiveMethod(_CANCEL_, NATTable.EMPTY) {
 			      public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-						int arity = arguments.base_length().asNativeNumber().javaValue;
+						int arity = arguments.base_length().asNativeNumber().asInt();
 						if (arity != 0) {
 							throw new XArityMismatch("cancel", 0, arity);
 						}
@@ -544,7 +643,7 @@ public abstract class NATFarReference extends NATByCopy implements ATFarReferenc
 			this.meta_defineField(_HANDLER_, handler);
 			this.meta_addMethod(new PrimitiveMethod(_CANCEL_, NATTable.EMPTY) {
 			      public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-						int arity = arguments.base_length().asNativeNumber().javaValue;
+						int arity = arguments.base_length().asNativeNumber().asInt();
 						if (arity != 0) {
 							throw new XArityMismatch("cancel", 0, arity);
 						}
@@ -573,7 +672,7 @@ public abstract class NATFarReference extends NATByCopy implements ATFarReferenc
 			this.meta_defineField(_HANDLER_, handler);
 			this.meta_addMethod(new PrimitiveMethod(_CANCEL_, NATTable.EMPTY) {
 			      public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-						int arity = arguments.base_length().asNativeNumber().javaValue;
+						int arity = arguments.base_length().asNativeNumber().asInt();
 						if (arity != 0) {
 							throw new XArityMismatch("cancel", 0, arity);
 						}
@@ -606,10 +705,10 @@ public abstract class NATFarReference extends NATByCopy implements ATFarReferenc
 		 * serialization/desearialization because sometimes o != resolve(pass(o))
 		 */
 		private final Packet serializedMessage_;
-		public NATOutboxLetter(LinkedList outbox, ATObject receiver,
+		public NATOutboxLetter(LinkedList outbox, NATFarReference receiver,
 				ATObject message) throws InterpreterException {
 			super(outbox, receiver, message);
-			serializedMessage_ = new Packet(message.toString(),NATTable.of(receiver, message));	
+			serializedMessage_ = receiver.serializeMessage(message);
 		}		
 		public ATLetter asLetter() { return this; }
 		public NATOutboxLetter asNativeOutboxLetter() { return this; }
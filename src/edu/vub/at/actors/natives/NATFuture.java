@@ -0,0 +1,315 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import edu.vub.at.actors.ATActorMirror;
+import edu.vub.at.actors.ATAsyncMessage;
+import edu.vub.at.actors.eventloops.BlockingFuture;
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.ATTypeTag;
+import edu.vub.at.objects.coercion.NativeTypeTags;
+import edu.vub.at.objects.natives.NATByRef;
+import edu.vub.at.objects.natives.NATTable;
+import edu.vub.at.objects.natives.NATText;
+import edu.vub.at.objects.natives.NATTypeTag;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+import edu.vub.at.objects.symbiosis.Symbiosis;
+import edu.vub.at.util.logging.Logging;
+
+import java.util.LinkedList;
+import java.util.Vector;
+
+/**
+ * A NATFuture is the native implementation of an AmbientTalk future: a placeholder for the
+ * value of an asynchronous computation. Messages sent to an unresolved future are buffered
+ * and forwarded to its value, in the order in which they were sent, once the future is resolved.
+ * Messages sent to a ruined future are discarded.
+ * 
+ * Resolution listeners follow the protocol of the futures library: they are notified by means
+ * of an asynchronous <tt>notifyResolved(value)</tt> or <tt>notifyRuined(exception)</tt> message,
+ * which is scheduled directly in the inbox of the owning actor. A listener is registered by sending
+ * the future an <tt>addResolutionListener(listener)</tt> message annotated as a <tt>MetaMessage</tt>.
+ * 
+ * A future is owned by the actor that created it and is only accessed by that actor's event loop.
+ * Other actors refer to it by means of a far reference, such that messages they send to the future
+ * are forwarded to its value as well. A future is resolved or ruined by means of its
+ * {@link NATFutureResolver}, which is equally passed by far reference.
+ */
+public final class NATFuture extends NATByRef {
+	
+	private static final AGSymbol _NOTIFYRESOLVED_ = AGSymbol.jAlloc("notifyResolved");
+	private static final AGSymbol _NOTIFYRUINED_ = AGSymbol.jAlloc("notifyRuined");
+	private static final ATTypeTag _METAMESSAGE_ = NATTypeTag.atValue("MetaMessage");
+	
+	private static final int _UNRESOLVED_ = 0;
+	private static final int _RESOLVED_ = 1;
+	private static final int _RUINED_ = 2;
+	
+	/**
+	 * A listener notified when a future is resolved or ruined. Listeners are notified in
+	 * the event loop of the actor owning the future, at the time of resolution.
+	 */
+	private static abstract class Listener {
+		abstract void resolved(ATObject value) throws InterpreterException;
+		abstract void ruined(ATObject exception) throws InterpreterException;
+	}
+	
+	/**
+	 * A listener implemented by an AmbientTalk object, which is notified asynchronously.
+	 */
+	private static final class ObjectListener extends Listener {
+		private final ELActor owner_;
+		private final ATObject listener_;
+		ObjectListener(ELActor owner, ATObject listener) {
+			owner_ = owner;
+			listener_ = listener;
+		}
+		void resolved(ATObject value) throws InterpreterException {
+			notify(_NOTIFYRESOLVED_, value);
+		}
+		void ruined(ATObject exception) throws InterpreterException {
+			notify(_NOTIFYRUINED_, exception);
+		}
+		private void notify(AGSymbol selector, ATObject argument) throws InterpreterException {
+			ATAsyncMessage msg = NATAsyncMessage.createExternalAsyncMessage(selector, NATTable.of(argument), NATTable.EMPTY);
+			if (listener_.isNativeFarReference()) {
+				listener_.meta_receive(msg);
+			} else {
+				owner_.acceptSelfSend(listener_, msg);
+			}
+		}
+	}
+	
+	/**
+	 * A listener which resolves a Java future, for Java threads waiting on the outcome of a
+	 * symbiotic invocation. It is notified immediately, as the Java thread is not an actor.
+	 */
+	private static final class JavaListener extends Listener {
+		private final BlockingFuture future_;
+		private final Class targetType_;
+		JavaListener(BlockingFuture future, Class targetType) {
+			future_ = future;
+			targetType_ = targetType;
+		}
+		void resolved(ATObject value) {
+			try {
+				future_.resolve(Symbiosis.ambientTalkToJava(value, targetType_));
+			} catch (InterpreterException e) {
+				future_.ruin(e);
+			}
+		}
+		void ruined(ATObject exception) throws InterpreterException {
+			future_.ruin(Evaluator.asJavaException(exception));
+		}
+	}
+	
+	/**
+	 * A listener which passes the outcome of a future on to another future that was resolved with it.
+	 */
+	private static final class ChainListener extends Listener {
+		private final NATFuture future_;
+		ChainListener(NATFuture future) {
+			future_ = future;
+		}
+		void resolved(ATObject value) throws InterpreterException {
+			future_.chained_ = false;
+			future_.resolve(value);
+		}
+		void ruined(ATObject exception) throws InterpreterException {
+			future_.chained_ = false;
+			future_.ruin(exception);
+		}
+	}
+	
+	private final transient ELActor owner_;
+	
+	private int state_ = _UNRESOLVED_;
+	
+	/** the value or exception with which this future was resolved or ruined */
+	private ATObject outcome_;
+	
+	/** the messages sent to this future while it was unresolved, lazily initialized */
+	private LinkedList pendingMessages_;
+	
+	/** the listeners registered while this future was unresolved, lazily initialized */
+	private Vector listeners_;
+	
+	/** set when this future was resolved with another future which is not yet resolved */
+	private boolean chained_ = false;
+	
+	public NATFuture(ELActor owner) {
+		owner_ = owner;
+	}
+	
+	/**
+	 * Messages annotated as meta messages are processed by the future itself. Other messages
+	 * are buffered until the future is resolved, and forwarded to its value afterwards.
+	 */
+	public ATObject meta_receive(ATAsyncMessage message) throws InterpreterException {
+		if (message.meta_isTaggedAs(_METAMESSAGE_).asNativeBoolean().javaValue) {
+			return message.base_process(this);
+		}
+		switch (state_) {
+		case _RESOLVED_:
+			return owner_.getImplicitActorMirror().base_send(outcome_, message);
+		case _RUINED_:
+			Logging.Actor_LOG.debug(this + ": dropped " + message + " sent to a ruined future");
+			return Evaluator.getNil();
+		default:
+			if (pendingMessages_ == null) {
+				pendingMessages_ = new LinkedList();
+			}
+			pendingMessages_.addLast(message);
+			return Evaluator.getNil();
+		}
+	}
+	
+	/**
+	 * Registers an AmbientTalk resolution listener. If the future is already resolved or ruined,
+	 * the listener is notified immediately, by means of an asynchronous message.
+	 */
+	public ATObject base_addResolutionListener(ATObject listener) throws InterpreterException {
+		addListener(new ObjectListener(owner_, listener));
+		return Evaluator.getNil();
+	}
+	
+	/**
+	 * Returns a Java future which is resolved with the value of this future, converted to
+	 * the given Java type, such that a Java thread can wait for the outcome of this future.
+	 */
+	public BlockingFuture asBlockingFuture(Class targetType) throws InterpreterException {
+		BlockingFuture future = new BlockingFuture();
+		addListener(new JavaListener(future, targetType));
+		return future;
+	}
+	
+	public boolean isResolved() {
+		return state_ == _RESOLVED_;
+	}
+	
+	public boolean isRuined() {
+		return state_ == _RUINED_;
+	}
+	
+	/**
+	 * Resolves this future with the given value. Buffered messages are forwarded to the value
+	 * and listeners are notified. If the value is itself a future of this actor, this future
+	 * is resolved with its outcome once that future is resolved.
+	 * Futures that were already resolved, ruined or chained to another future are left untouched.
+	 */
+	public void resolve(ATObject value) throws InterpreterException {
+		if (state_ != _UNRESOLVED_ || chained_) {
+			Logging.Actor_LOG.debug(this + ": ignored resolution with " + value);
+			return;
+		}
+		if (value instanceof NATFuture && value != this) {
+			chained_ = true;
+			((NATFuture) value).addListener(new ChainListener(this));
+			return;
+		}
+		state_ = _RESOLVED_;
+		outcome_ = value;
+		LinkedList pending = pendingMessages_;
+		Vector listeners = listeners_;
+		pendingMessages_ = null;
+		listeners_ = null;
+		if (pending != null) {
+			ATActorMirror mirror = owner_.getImplicitActorMirror();
+			while (!pending.isEmpty()) {
+				mirror.base_send(value, (ATAsyncMessage) pending.removeFirst());
+			}
+		}
+		if (listeners != null) {
+			for (int i = 0; i < listeners.size(); i++) {
+				((Listener) listeners.get(i)).resolved(value);
+			}
+		}
+	}
+	
+	/**
+	 * Ruins this future with the given exception. Buffered messages are discarded
+	 * and listeners are notified.
+	 */
+	public void ruin(ATObject exception) throws InterpreterException {
+		if (state_ != _UNRESOLVED_ || chained_) {
+			Logging.Actor_LOG.debug(this + ": ignored ruin with " + exception);
+			return;
+		}
+		state_ = _RUINED_;
+		outcome_ = exception;
+		Vector listeners = listeners_;
+		if (pendingMessages_ != null) {
+			Logging.Actor_LOG.debug(this + ": dropped " + pendingMessages_.size() + " messages sent to a ruined future");
+		}
+		pendingMessages_ = null;
+		listeners_ = null;
+		if (listeners != null) {
+			for (int i = 0; i < listeners.size(); i++) {
+				((Listener) listeners.get(i)).ruined(exception);
+			}
+		}
+	}
+	
+	private void addListener(Listener listener) throws InterpreterException {
+		switch (state_) {
+		case _RESOLVED_:
+			listener.resolved(outcome_);
+			break;
+		case _RUINED_:
+			listener.ruined(outcome_);
+			break;
+		default:
+			if (listeners_ == null) {
+				listeners_ = new Vector(1);
+			}
+			listeners_.add(listener);
+		}
+	}
+	
+	public ATTable meta_typeTags() throws InterpreterException {
+		return NATTable.of(NativeTypeTags._FUTURE_);
+	}
+	
+	public ATObject meta_clone() throws InterpreterException {
+		return this;
+	}
+	
+	public NATText meta_print() throws InterpreterException {
+		switch (state_) {
+		case _RESOLVED_:
+			return NATText.atValue("<resolved future:" + outcome_.meta_print().javaValue + ">");
+		case _RUINED_:
+			return NATText.atValue("<ruined future:" + outcome_.meta_print().javaValue + ">");
+		default:
+			return NATText.atValue("<unresolved future>");
+		}
+	}
+	
+}
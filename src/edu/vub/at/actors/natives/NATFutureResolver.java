@@ -0,0 +1,68 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.natives.NATByRef;
+import edu.vub.at.objects.natives.NATText;
+
+/**
+ * A NATFutureResolver is the object by which a {@link NATFuture} is resolved or ruined.
+ * Like the future, it is passed by reference: an actor computing the value of a future
+ * owned by another actor resolves it by sending <tt>resolve(value)</tt> or
+ * <tt>ruin(exception)</tt> to a far reference to the resolver, such that the future
+ * is always resolved in the event loop of its owner.
+ */
+public final class NATFutureResolver extends NATByRef {
+
+	private final NATFuture future_;
+	
+	public NATFutureResolver(NATFuture future) {
+		future_ = future;
+	}
+	
+	public ATObject base_resolve(ATObject value) throws InterpreterException {
+		future_.resolve(value);
+		return Evaluator.getNil();
+	}
+	
+	public ATObject base_ruin(ATObject exception) throws InterpreterException {
+		future_.ruin(exception);
+		return Evaluator.getNil();
+	}
+	
+	public ATObject meta_clone() throws InterpreterException {
+		return this;
+	}
+	
+	public NATText meta_print() throws InterpreterException {
+		return NATText.atValue("<resolver of " + future_.meta_print().javaValue + ">");
+	}
+	
+}
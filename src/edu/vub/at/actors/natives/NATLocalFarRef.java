@@ -37,6 +37,7 @@ import edu.vub.at.actors.natives.NATActorMirror.NATLetter;
 import edu.vub.at.actors.natives.NATFarReference.NATOutboxLetter;
 import edu.vub.at.eval.Evaluator;
 import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.exceptions.XMailboxFull;
 import edu.vub.at.exceptions.XTypeMismatch;
 import edu.vub.at.objects.ATObject;
 import edu.vub.at.objects.ATTable;
@@ -63,10 +64,21 @@ public class NATLocalFarRef extends NATFarReference {
 		farObjectHost_ = farObjectHost;
 	}
 	
+	/**
+	 * Messages sent to an object hosted by a local actor are copied rather than
+	 * serialized, see {@link LocalPacket}.
+	 */
+	protected Packet serializeMessage(ATObject message) throws InterpreterException {
+		if (LocalPacket._ENABLED_) {
+			return new LocalPacket(message.toString(), NATTable.of(this, message));
+		}
+		return super.serializeMessage(message);
+	}
+	
 	protected void transmit(ATLetter letter) throws InterpreterException {
 		synchronized (this) {
 			if (!connected_) {
-				outbox_.addLast(letter);
+				addToOutbox(letter);
 			} else{
 				// the far reference itself is the receiver of the asynchronous message
 				farObjectHost_.event_localAccept(this, letter.asNativeOutboxLetter().impl_getSerializedMessage());
@@ -87,10 +99,14 @@ public class NATLocalFarRef extends NATFarReference {
 				} catch (XTypeMismatch e) {
 					Logging.RemoteRef_LOG.info(this + ": unexpected type mismatch: " + e.getMessage());
 					e.printStackTrace();
+				} catch (XMailboxFull e) {
+					// the sender's turn has ended, so the message is dropped instead
+					Logging.RemoteRef_LOG.warn(this + ": " + e.getMessage() + ", dropped buffered message");
 				}
 			  }
 			  // empty the outbox
 			  outbox_.clear();
+			  outboxDrained();
 		  }
 		}
 	}
@@ -121,6 +137,7 @@ public class NATLocalFarRef extends NATFarReference {
 					i = i + 1;
 				}
 				outbox_.clear(); // empty the outbox
+				outboxDrained();
 				return NATTable.atValue(messages);	
 			}
 		}
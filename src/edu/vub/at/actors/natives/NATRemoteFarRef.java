@@ -30,7 +30,6 @@ package edu.vub.at.actors.natives;
 import edu.vub.at.actors.ATLetter;
 import edu.vub.at.actors.eventloops.BlockingFuture;
 import edu.vub.at.actors.id.ATObjectID;
-import edu.vub.at.eval.Evaluator;
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.exceptions.XTypeMismatch;
 import edu.vub.at.objects.ATObject;
@@ -39,6 +38,8 @@ import edu.vub.at.objects.ATTypeTag;
 import edu.vub.at.objects.mirrors.NativeClosure;
 import edu.vub.at.objects.natives.NATTable;
 
+import java.util.Vector;
+
 /**
  * Instances of NATRemoteFarRef represent far references to physically remote actors.
  * By 'physically remote', we mean in a separate address space.
@@ -55,14 +56,22 @@ public class NATRemoteFarRef extends NATFarReference {
 	private transient final FarReferencesThreadPool sendLoop_;
 	
 	/** boolean that keeps track if there is a thread of the FarReferencesThreadPool
-	 *  currently transmitting a message. It is used to make meta_retract() wait  
-	 *  for the success/failure of the message currently being sent.
+	 *  currently transmitting letters taken from the outbox. meta_retract() waits for 
+	 *  the success/failure of these letters.
 	 */
     private transient boolean transmitting_;
     
 	public NATRemoteFarRef(ATObjectID objectId, ELActor hostActor, ATTypeTag[] types, boolean isConnected) {
+		this(objectId, hostActor, types, isConnected, hostActor.getHost().farReferencesThreadPool_);
+	}
+	
+	/**
+	 * Creates a far reference that transmits its messages by means of the given pool
+	 * instead of the pool of the virtual machine of its host actor.
+	 */
+	NATRemoteFarRef(ATObjectID objectId, ELActor hostActor, ATTypeTag[] types, boolean isConnected, FarReferencesThreadPool sendLoop) {
 		super(objectId, types, hostActor, isConnected);
-		sendLoop_ = hostActor.getHost().farReferencesThreadPool_; 
+		sendLoop_ = sendLoop; 
 		transmitting_ = false;
 	}
 	
@@ -73,7 +82,9 @@ public class NATRemoteFarRef extends NATFarReference {
 	 */
 	protected void transmit(ATLetter letter) throws InterpreterException {
 		synchronized(this){
-			 outbox_.addLast(letter);
+			 if (!addToOutbox(letter)) {
+				 return;
+			 }
 		}
 		impl_transmit();
 	}
@@ -108,6 +119,7 @@ public class NATRemoteFarRef extends NATFarReference {
 			if (outbox_.size() > 0 ) {
 				ATObject[] outgoing = (ATObject[]) outbox_.toArray(new ATObject[outbox_.size()]);
 				outbox_.clear(); // empty the outbox
+				outboxDrained();
 				return NATTable.atValue(outgoing);	
 			}
 		}
@@ -124,16 +136,32 @@ public class NATRemoteFarRef extends NATFarReference {
 
 	/* Following methods are called by a thread within FarReferencesThreadPool */
 	
-	public ATObject impl_serve() throws InterpreterException{
+	/**
+	 * Removes the letters to be transmitted next from the outbox, in order: at most maxLetters
+	 * letters, and no more letters than fit in maxBytes, except that the first letter is
+	 * always taken.
+	 * @return the removed letters, which is empty if this reference is disconnected
+	 */
+	public Vector impl_serve(int maxLetters, int maxBytes) {
+		Vector letters = new Vector();
 		synchronized(this) {
 			if (outbox_.size() > 0 && connected_) {
-				NATOutboxLetter next = (NATOutboxLetter) outbox_.removeFirst();
+				int bytes = 0;
+				while (!outbox_.isEmpty() && letters.size() < maxLetters) {
+					NATOutboxLetter next = (NATOutboxLetter) outbox_.getFirst();
+					byte[] payload = next.impl_getSerializedMessage().getPayload();
+					bytes += (payload == null) ? 0 : payload.length;
+					if (bytes > maxBytes && !letters.isEmpty()) {
+						break;
+					}
+					letters.add(outbox_.removeFirst());
+				}
+				outboxDrained();
 				//setTransmitting(true);
 				transmitting_ = true;
-				return next;
 			}
 		}
-		return Evaluator.getNil();
+		return letters;
 	}
     
 	// called from a FarReferencesThreadPool#TransmissionEvent 
@@ -144,14 +172,14 @@ public class NATRemoteFarRef extends NATFarReference {
 		sendLoop_.event_serve(this);
 	}	
 	// called from a FarReferencesThreadPool#TransmissionEvent 
-	// after the message being transmitted failed.
-	public void impl_transmitFailed(ATLetter letter) {
+	// after the letters being transmitted failed.
+	public void impl_transmitFailed(Vector letters) {
 		disconnected();
-		// add the message back to the outbox.
-		// it cannot happen that this event_transmit is followed by an event_transmit for another message, 
+		// add the letters back to the front of the outbox, in their original order.
+		// it cannot happen that this event_transmit is followed by an event_transmit for other messages, 
 		// so the order will be preserved.
 		synchronized(this){
-		  outbox_.addFirst(letter);
+		  outbox_.addAll(0, letters);
 		}
 		setTransmitting(false);
 	}
@@ -0,0 +1,81 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import edu.vub.at.actors.eventloops.TimerWheel;
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.exceptions.XArityMismatch;
+import edu.vub.at.objects.ATClosure;
+import edu.vub.at.objects.ATContext;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.mirrors.PrimitiveMethod;
+import edu.vub.at.objects.natives.NATObject;
+import edu.vub.at.objects.natives.NATTable;
+import edu.vub.at.objects.natives.NATText;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+
+/**
+ * The subscription returned by the <tt>when: milliseconds elapsed: closure</tt> construct.
+ * Its <tt>cancel</tt> method cancels the timeout, such that the closure is not triggered.
+ */
+public class NATTimerSubscription extends NATObject {
+	
+	private static final AGSymbol _HANDLER_ = AGSymbol.jAlloc("handler");
+	private static final AGSymbol _CANCEL_ = AGSymbol.jAlloc("cancel");
+	
+	private final TimerWheel.Timeout timeout_;
+	
+	/**
+	 * Schedules the given closure to be triggered by the given actor after the given delay.
+	 */
+	public NATTimerSubscription(final ELActor owner, final ATClosure handler, long delay) throws InterpreterException {
+		ELActor.noteExternalEffect();
+		timeout_ = owner.getHost().timerWheel_.schedule(new Runnable() {
+			public void run() {
+				owner.event_trigger(handler, NATTable.EMPTY, "when:elapsed:");
+			}
+		}, delay);
+		this.meta_defineField(_HANDLER_, handler);
+		this.meta_addMethod(new PrimitiveMethod(_CANCEL_, NATTable.EMPTY) {
+			public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
+				int arity = arguments.base_length().asNativeNumber().asInt();
+				if (arity != 0) {
+					throw new XArityMismatch("cancel", 0, arity);
+				}
+				timeout_.cancel();
+				return Evaluator.getNil();
+			}
+		});
+	}
+	
+	public NATText meta_print() throws InterpreterException {
+		return NATText.atValue("<timer subscription:" + this.impl_callField(_HANDLER_) + ">");
+	}
+	
+}
@@ -52,6 +52,8 @@ import java.lang.reflect.Proxy;
  */
 public class Packet implements Serializable {
 	
+	private static final long serialVersionUID = 1535573301985119530L;
+	
     private final byte[]	payload_;
 	private final String	description_;
 
@@ -68,6 +70,26 @@ public class Packet implements Serializable {
 		this(object.toString(), object);
 	}
 	
+	/**
+	 * Reconstructs a packet whose payload was transmitted as raw bytes.
+	 */
+	public Packet(String description, byte[] payload) {
+		description_ = description;
+		payload_ = payload;
+	}
+	
+	public String getDescription() {
+		return description_;
+	}
+	
+	/**
+	 * Used by subclasses that do not represent their object in serialized form.
+	 */
+	protected Packet(String description) {
+		description_ = description;
+		payload_ = null;
+	}
+	
 	public byte[] getPayload() {
 		return payload_;
 	}
@@ -121,6 +143,9 @@ public class Packet implements Serializable {
 	public String toString() { return "packet["+description_+"]"; }
 	
 	private static byte[] serialize(Object o) throws IOException {
+		if (PacketCodec._ENABLED_) {
+			return PacketCodec.serialize(o);
+		}
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		ObjectOutputStream stream = new ObjectOutputStream(out);
 		stream.writeObject(o);
@@ -140,7 +165,7 @@ public class Packet implements Serializable {
 	 * that class's facility to define additional sources to look for classes
 	 * that are read from the input stream.
 	 */
-	private static class HookedObjectInputStream extends ObjectInputStream {
+	static class HookedObjectInputStream extends ObjectInputStream {
 		private final ClassLoader loader_;
 		protected HookedObjectInputStream(ClassLoader cld, InputStream is) throws IOException, SecurityException {
 			super(is);
@@ -174,7 +199,11 @@ public class Packet implements Serializable {
 	}
 	
 	// deserialize and use the given class loader to try and load any missing classes
+	// payloads are decoded according to their format, regardless of whether the codec is enabled
 	private static Object deserialize(byte[] b, ClassLoader cld) throws IOException, ClassNotFoundException {
+		if (PacketCodec.isEncoded(b)) {
+			return PacketCodec.deserialize(b, cld);
+		}
 		ByteArrayInputStream in = new ByteArrayInputStream(b);
 		ObjectInputStream instream = new HookedObjectInputStream(cld, in);
 		return instream.readObject();
@@ -0,0 +1,373 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.objects.coercion.NativeTypeTags;
+import edu.vub.at.objects.natives.NATBoolean;
+import edu.vub.at.objects.natives.NATNil;
+import edu.vub.at.objects.natives.NATTable;
+import edu.vub.at.objects.natives.NATTypeTag;
+import edu.vub.at.objects.natives.OBJLexicalRoot;
+import edu.vub.at.util.logging.Logging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamException;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+/**
+ * The packet codec writes the payload of a {@link Packet} in a more compact form than
+ * plain Java serialization, while remaining a serialization stream: objects are still
+ * passed and resolved by means of <tt>writeReplace</tt> and <tt>readResolve</tt>, such
+ * that the <tt>meta_pass</tt> and <tt>meta_resolve</tt> hooks of AmbientTalk objects keep
+ * working, and objects reachable along several paths are still written only once. Two
+ * things are encoded differently:
+ * <ul>
+ *  <li>The descriptors of the classes that make up most AmbientTalk object graphs (objects,
+ *  tables, numbers, texts, symbols, AST nodes, field maps, method dictionaries, identifiers,
+ *  ...) are written as a one-byte index into a table of such classes, rather than as their
+ *  name, serial version UID and field names and types.
+ *  <li>Objects that resolve to a singleton of the receiving VM, such as <tt>nil</tt>, the
+ *  booleans, the lexical root, the empty table and the native type tags, are written as an
+ *  index rather than as their entire state. In particular, <tt>nil</tt> used to drag along
+ *  all of its primitive methods in every message.
+ * </ul>
+ * The stream header identifies the codec and carries a fingerprint of both tables,
+ * covering the names, serial version UIDs and fields of the classes, such that a VM whose
+ * tables differ rejects the packet rather than misreading it. {@link Packet} decodes plain
+ * serialization streams as before, so packets of VMs that predate the codec are still read.
+ * The codec can be disabled by setting the system property AT_NO_PACKET_CODEC, which is
+ * required to exchange packets with such VMs.
+ */
+final class PacketCodec {
+	
+	private static final String _ENV_AT_NO_PACKET_CODEC_ = "AT_NO_PACKET_CODEC";
+	
+	static final boolean _ENABLED_ = !Boolean.getBoolean(_ENV_AT_NO_PACKET_CODEC_);
+	
+	/** the first bytes of an encoded packet, distinct from the magic number of a serialization stream */
+	private static final short _MAGIC_ = (short) 0xA7C0;
+	
+	/**
+	 * The classes whose descriptors are abbreviated. New classes must be appended, as the
+	 * position of a class is its index in the stream. Classes that do not exist or are
+	 * not serializable are skipped, but still count for the fingerprint.
+	 */
+	private static final String[] _CLASS_NAMES_ = {
+		"[Ledu.vub.at.objects.ATObject;",
+		"[Ledu.vub.at.objects.ATTypeTag;",
+		"[Ledu.vub.at.objects.grammar.ATSymbol;",
+		"[Ledu.vub.at.objects.grammar.ATExpression;",
+		"[Ledu.vub.at.objects.grammar.ATStatement;",
+		"[Ledu.vub.at.objects.grammar.ATDefinition;",
+		"edu.vub.at.objects.natives.NativeATObject",
+		"edu.vub.at.objects.natives.NATByCopy",
+		"edu.vub.at.objects.natives.NATByRef",
+		"edu.vub.at.objects.natives.NATCallframe",
+		"edu.vub.at.objects.natives.NATObject",
+		"edu.vub.at.objects.natives.NATNumeric",
+		"edu.vub.at.objects.natives.NATNumber",
+		"edu.vub.at.objects.natives.NATFraction",
+		"edu.vub.at.objects.natives.NATText",
+		"edu.vub.at.objects.natives.NATTable",
+		"edu.vub.at.objects.natives.NATTypeTag",
+		"edu.vub.at.objects.natives.NATMethod",
+		"edu.vub.at.objects.natives.NATClosure",
+		"edu.vub.at.objects.natives.NATContext",
+		"edu.vub.at.objects.natives.NATMessage",
+		"edu.vub.at.objects.natives.NATMethodInvocation",
+		"edu.vub.at.objects.natives.FieldMap",
+		"edu.vub.at.objects.natives.MethodDictionary",
+		"edu.vub.at.objects.natives.SharedMethodDictionary$Reference",
+		"edu.vub.at.actors.natives.NATAsyncMessage",
+		"edu.vub.at.actors.natives.NATFarReference",
+		"edu.vub.at.actors.natives.NATLocalFarRef",
+		"edu.vub.at.actors.natives.NATRemoteFarRef",
+		"edu.vub.at.actors.id.ATObjectID",
+		"edu.vub.at.actors.id.ActorID",
+		"edu.vub.at.actors.id.VirtualMachineID",
+		"edu.vub.at.objects.natives.grammar.NATAbstractGrammar",
+		"edu.vub.at.objects.natives.grammar.AGExpression",
+		"edu.vub.at.objects.natives.grammar.AGDefinition",
+		"edu.vub.at.objects.natives.grammar.AGSymbol",
+		"edu.vub.at.objects.natives.grammar.AGAssignmentSymbol",
+		"edu.vub.at.objects.natives.grammar.AGApplication",
+		"edu.vub.at.objects.natives.grammar.AGAssignField",
+		"edu.vub.at.objects.natives.grammar.AGAssignTable",
+		"edu.vub.at.objects.natives.grammar.AGAssignVariable",
+		"edu.vub.at.objects.natives.grammar.AGAsyncMessageCreation",
+		"edu.vub.at.objects.natives.grammar.AGBegin",
+		"edu.vub.at.objects.natives.grammar.AGClosureLiteral",
+		"edu.vub.at.objects.natives.grammar.AGDefExternalField",
+		"edu.vub.at.objects.natives.grammar.AGDefExternalMethod",
+		"edu.vub.at.objects.natives.grammar.AGDefField",
+		"edu.vub.at.objects.natives.grammar.AGDefFunction",
+		"edu.vub.at.objects.natives.grammar.AGDefTable",
+		"edu.vub.at.objects.natives.grammar.AGDefType",
+		"edu.vub.at.objects.natives.grammar.AGDelegationCreation",
+		"edu.vub.at.objects.natives.grammar.AGFieldSelectionCreation",
+		"edu.vub.at.objects.natives.grammar.AGImport",
+		"edu.vub.at.objects.natives.grammar.AGLocalVariable",
+		"edu.vub.at.objects.natives.grammar.AGLookup",
+		"edu.vub.at.objects.natives.grammar.AGMessageCreation",
+		"edu.vub.at.objects.natives.grammar.AGMessageSend",
+		"edu.vub.at.objects.natives.grammar.AGMethodInvocationCreation",
+		"edu.vub.at.objects.natives.grammar.AGMultiAssignment",
+		"edu.vub.at.objects.natives.grammar.AGMultiDefinition",
+		"edu.vub.at.objects.natives.grammar.AGQuote",
+		"edu.vub.at.objects.natives.grammar.AGSelection",
+		"edu.vub.at.objects.natives.grammar.AGSelf",
+		"edu.vub.at.objects.natives.grammar.AGSplice",
+		"edu.vub.at.objects.natives.grammar.AGTabulation",
+		"edu.vub.at.objects.natives.grammar.AGUnquote",
+		"edu.vub.at.objects.natives.grammar.AGUnquoteSplice",
+		"edu.vub.at.objects.natives.grammar.AGUnquoteSymbol",
+		"edu.vub.at.parser.SourceLocation",
+		"edu.vub.at.actors.natives.PacketCodec$WellKnown",
+		"java.util.HashMap",
+		"java.util.HashSet",
+		"java.util.Vector",
+		"java.lang.Number",
+		"java.lang.Integer",
+		"java.lang.Long",
+		"java.lang.Double",
+		"[Ljava.lang.Object;",
+		"[Ljava.lang.String;",
+	};
+	
+	/** the descriptors of the abbreviated classes, indexed by their position (null if skipped) */
+	private static final ObjectStreamClass[] _DESCRIPTORS_;
+	
+	/** maps the classes of {@link #_DESCRIPTORS_} to their index plus one */
+	private static final IdentityHashMap _CLASS_INDICES_ = new IdentityHashMap();
+	
+	/** the number of singletons preceding the native type tags in the table of well-known objects */
+	private static final int _FIXED_SINGLETONS_ = 6;
+	
+	private static final int _NIL_ = 0;
+	
+	/** the native type tags, sorted by the name of the field that holds them */
+	private static final Object[] _NATIVE_TYPE_TAGS_;
+	
+	/** maps well-known objects, except for nil which is actor-local, to the token that stands in for them */
+	private static final IdentityHashMap _WELL_KNOWN_ = new IdentityHashMap();
+	
+	/** shared tokens, such that repeated occurrences of a well-known object are written as back references */
+	private static final WellKnown[] _TOKENS_;
+	
+	private static final int _FINGERPRINT_;
+	
+	static {
+		StringBuffer signature = new StringBuffer();
+		
+		_DESCRIPTORS_ = new ObjectStreamClass[_CLASS_NAMES_.length];
+		for (int i = 0; i < _CLASS_NAMES_.length; i++) {
+			signature.append(_CLASS_NAMES_[i]);
+			try {
+				Class c = Class.forName(_CLASS_NAMES_[i], false, PacketCodec.class.getClassLoader());
+				ObjectStreamClass desc = ObjectStreamClass.lookup(c);
+				if (desc != null) {
+					_DESCRIPTORS_[i] = desc;
+					_CLASS_INDICES_.put(c, new Integer(i + 1));
+					signature.append(':').append(desc.getSerialVersionUID());
+					ObjectStreamField[] fields = desc.getFields();
+					for (int j = 0; j < fields.length; j++) {
+						signature.append(',').append(fields[j].getName()).append(fields[j].getTypeString() == null ? String.valueOf(fields[j].getTypeCode()) : fields[j].getTypeString());
+					}
+				}
+			} catch (ClassNotFoundException e) {
+				Logging.Actor_LOG.info("packet codec does not abbreviate unknown class " + _CLASS_NAMES_[i]);
+			}
+			signature.append(';');
+		}
+		
+		Field[] fields = NativeTypeTags.class.getFields();
+		Vector tags = new Vector();
+		String[] names = new String[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			names[i] = fields[i].getName();
+		}
+		Arrays.sort(names);
+		for (int i = 0; i < names.length; i++) {
+			try {
+				Field f = NativeTypeTags.class.getField(names[i]);
+				if (Modifier.isStatic(f.getModifiers()) && f.get(null) instanceof NATTypeTag) {
+					tags.add(f.get(null));
+					signature.append(names[i]).append(';');
+				}
+			} catch (Exception e) {
+				// the field is not a native type tag
+			}
+		}
+		_NATIVE_TYPE_TAGS_ = tags.toArray();
+		
+		_TOKENS_ = new WellKnown[_FIXED_SINGLETONS_ + _NATIVE_TYPE_TAGS_.length];
+		for (int i = 0; i < _TOKENS_.length; i++) {
+			_TOKENS_[i] = new WellKnown(i);
+		}
+		_WELL_KNOWN_.put(NATBoolean.NATTrue._INSTANCE_, _TOKENS_[1]);
+		_WELL_KNOWN_.put(NATBoolean.NATFalse._INSTANCE_, _TOKENS_[2]);
+		_WELL_KNOWN_.put(OBJLexicalRoot._INSTANCE_, _TOKENS_[3]);
+		_WELL_KNOWN_.put(NATTypeTag.OBJRootType._INSTANCE_, _TOKENS_[4]);
+		_WELL_KNOWN_.put(NATTable.EMPTY, _TOKENS_[5]);
+		for (int i = 0; i < _NATIVE_TYPE_TAGS_.length; i++) {
+			_WELL_KNOWN_.put(_NATIVE_TYPE_TAGS_[i], _TOKENS_[_FIXED_SINGLETONS_ + i]);
+		}
+		
+		_FINGERPRINT_ = signature.toString().hashCode();
+	}
+	
+	private PacketCodec() { }
+	
+	/**
+	 * Whether the given payload was written by this codec rather than by plain serialization.
+	 */
+	static boolean isEncoded(byte[] payload) {
+		return payload.length >= 2 && (short) (((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF)) == _MAGIC_;
+	}
+	
+	static byte[] serialize(Object o) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+		Output stream = new Output(out);
+		stream.writeObject(o);
+		stream.close();
+		return out.toByteArray();
+	}
+	
+	static Object deserialize(byte[] payload, ClassLoader cld) throws IOException, ClassNotFoundException {
+		return new Input(cld, new ByteArrayInputStream(payload)).readObject();
+	}
+	
+	/**
+	 * Stands in for a well-known object, and resolves to the corresponding object of
+	 * the VM and actor that deserializes it.
+	 */
+	private static final class WellKnown implements Serializable {
+		
+		private static final long serialVersionUID = 4209113744185027071L;
+		
+		private final int index_;
+		
+		WellKnown(int index) {
+			index_ = index;
+		}
+		
+		private Object readResolve() throws ObjectStreamException {
+			switch (index_) {
+				case _NIL_: return Evaluator.getNil();
+				case 1: return NATBoolean.NATTrue._INSTANCE_;
+				case 2: return NATBoolean.NATFalse._INSTANCE_;
+				case 3: return OBJLexicalRoot._INSTANCE_;
+				case 4: return NATTypeTag.OBJRootType._INSTANCE_;
+				case 5: return NATTable.EMPTY;
+				default:
+					int tag = index_ - _FIXED_SINGLETONS_;
+					if (tag < 0 || tag >= _NATIVE_TYPE_TAGS_.length) {
+						throw new StreamCorruptedException("unknown well-known object " + index_);
+					}
+					return _NATIVE_TYPE_TAGS_[tag];
+			}
+		}
+	}
+	
+	private static final class Output extends ObjectOutputStream {
+		
+		Output(OutputStream out) throws IOException {
+			super(out);
+			enableReplaceObject(true);
+		}
+		
+		protected void writeStreamHeader() throws IOException {
+			writeShort(_MAGIC_);
+			writeInt(_FINGERPRINT_);
+		}
+		
+		protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+			Integer index = (Integer) _CLASS_INDICES_.get(desc.forClass());
+			if (index == null) {
+				writeByte(0);
+				super.writeClassDescriptor(desc);
+			} else {
+				writeByte(index.intValue());
+			}
+		}
+		
+		/**
+		 * Invoked with the result of <tt>writeReplace</tt>, i.e. after the object was passed.
+		 */
+		protected Object replaceObject(Object obj) throws IOException {
+			if (obj.getClass() == NATNil.class) {
+				// nil resolves to the nil of the receiving actor, whatever its state
+				return _TOKENS_[_NIL_];
+			}
+			Object token = _WELL_KNOWN_.get(obj);
+			return (token == null) ? obj : token;
+		}
+	}
+	
+	private static final class Input extends Packet.HookedObjectInputStream {
+		
+		Input(ClassLoader cld, InputStream in) throws IOException {
+			super(cld, in);
+		}
+		
+		protected void readStreamHeader() throws IOException {
+			if (readShort() != _MAGIC_) {
+				throw new StreamCorruptedException("not an encoded packet");
+			}
+			int fingerprint = readInt();
+			if (fingerprint != _FINGERPRINT_) {
+				throw new StreamCorruptedException("packet encoded by an incompatible version of the packet codec");
+			}
+		}
+		
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+			int index = readUnsignedByte();
+			if (index == 0) {
+				return super.readClassDescriptor();
+			}
+			if (index > _DESCRIPTORS_.length || _DESCRIPTORS_[index - 1] == null) {
+				throw new StreamCorruptedException("unknown class index " + index);
+			}
+			return _DESCRIPTORS_[index - 1];
+		}
+	}
+	
+}
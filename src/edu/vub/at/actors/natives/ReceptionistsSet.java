@@ -136,7 +136,7 @@ public class ReceptionistsSet {
 		if (object.isNativeFarReference()) {
 			throw new XIllegalOperation("Cannot export a far reference to " + object);
 		}
-		
+		ELActor.noteExternalEffect();
 
 		ATObjectID objId = null;
 
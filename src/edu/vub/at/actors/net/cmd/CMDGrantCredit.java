@@ -0,0 +1,93 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.net.cmd;
+
+import edu.vub.at.actors.id.ActorID;
+import edu.vub.at.actors.id.VirtualMachineID;
+import edu.vub.at.actors.natives.ELVirtualMachine;
+import edu.vub.at.actors.net.comm.Address;
+import edu.vub.at.actors.net.comm.CommunicationBus;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A CMDGrantCredit command is sent by a VM to return credits to a VM that transmitted
+ * messages to one of its actors, once those messages have been accepted by the actor.
+ * A VM only transmits messages to a remote actor as long as it has credits for that actor,
+ * such that a fast sender cannot overrun a slow receiver.
+ * 
+ * SENDER: the VM hosting the actor that accepted the messages
+ * RECEIVER: the VM that transmitted the messages
+ * MODE: ASYNCHRONOUS, UNICAST
+ * PROPERTIES: id of the actor that accepted the messages, number of credits returned.
+ *  The VM hosting that actor is identified by the address of the sender.
+ * REPLY: none
+ */
+public class CMDGrantCredit extends VMCommand {
+	
+	private static final long serialVersionUID = 5470863394236184409L;
+
+	private final ActorID receiverActorId_;
+	
+	private final int credits_;
+	
+	public CMDGrantCredit(ActorID receiverActorId, int credits) {
+		super("grantCredit(" + receiverActorId + "," + credits + ")");
+		receiverActorId_ = receiverActorId;
+		credits_ = credits;
+	}
+	
+	public void send(CommunicationBus dispatcher, Address recipient) {
+		dispatcher.sendAsyncUnicast(this, recipient);
+	}
+	
+	public void uponReceiptBy(ELVirtualMachine remoteHost, Address senderAddress) {
+		// actor ids are only unique within a VM, so the credits are granted by the actor of the sending VM
+		VirtualMachineID grantingVM = remoteHost.vmAddressBook_.getGUIDOf(senderAddress);
+		if (grantingVM != null) {
+			remoteHost.farReferencesThreadPool_.grantCredit(grantingVM, receiverActorId_, credits_);
+		} else {
+			// the sending VM has disconnected, such that its credits were reset
+		}
+	}
+	
+	int getOpcode() {
+		return WireFormat._OP_GRANT_CREDIT_;
+	}
+	
+	void writeFields(DataOutput out) throws IOException {
+		WireFormat.writeActorID(out, receiverActorId_);
+		out.writeInt(credits_);
+	}
+	
+	static CMDGrantCredit readFields(DataInputStream in) throws IOException {
+		ActorID receiverActorId = WireFormat.readActorID(in);
+		return new CMDGrantCredit(receiverActorId, in.readInt());
+	}
+}
@@ -32,16 +32,20 @@ import edu.vub.at.actors.natives.ELVirtualMachine;
 import edu.vub.at.actors.net.comm.Address;
 import edu.vub.at.actors.net.comm.CommunicationBus;
 
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * A handshake command is sent when a VM discovers another VM in its environment.
  * It sends its own VirtualMachineID to the newly discovered VM, which can then add this VirtualMachineID
- * to its VM address book.
+ * to its VM address book. It also announces the version of the {@link WireFormat} that the
+ * sender understands, such that both VMs can switch from Java serialization to that format.
  *
  * SENDER: the discovering VM
  * RECEIVER: the discovered VM
  * MODE: ASYNCHRONOUS, UNICAST
- * PROPERTIES: VirtualMachineID of sender
+ * PROPERTIES: VirtualMachineID of sender, wire format version of sender
  * REPLY: none
  * 
  * @author tvcutsem
@@ -52,9 +56,17 @@ public class CMDHandshake extends VMCommand {
 	
 	private final VirtualMachineID senderVMId_;
 	
+	/** zero if the sender only understands Java serialization, e.g. because it predates the wire format */
+	private final int wireVersion_;
+	
 	public CMDHandshake(VirtualMachineID senderVMId) {
+		this(senderVMId, WireFormat._ANNOUNCED_VERSION_);
+	}
+	
+	private CMDHandshake(VirtualMachineID senderVMId, int wireVersion) {
 		super("handshake");
 		senderVMId_ = senderVMId;
+		wireVersion_ = wireVersion;
 	}
 	
 	public void send(CommunicationBus dispatcher, Address recipientVM) {
@@ -62,6 +74,7 @@ public class CMDHandshake extends VMCommand {
 	}
 	
 	public void uponReceiptBy(ELVirtualMachine remoteHost, Address senderAddress) {
+		remoteHost.communicationBus_.setWireVersion(senderAddress, WireFormat.negotiate(wireVersion_));
 		remoteHost.vmAddressBook_.addEntry(senderVMId_, senderAddress);
 		// ask my discovery actor to send outstanding subscriptions to the newcomer
 		remoteHost.discoveryActor_.event_sendAllSubscriptionsTo(senderAddress);
@@ -69,4 +82,18 @@ public class CMDHandshake extends VMCommand {
 		remoteHost.connectionManager_.notifyConnected(senderVMId_);
 	}
 	
+	int getOpcode() {
+		return WireFormat._OP_HANDSHAKE_;
+	}
+	
+	void writeFields(DataOutput out) throws IOException {
+		WireFormat.writeVirtualMachineID(out, senderVMId_);
+		out.writeByte(wireVersion_);
+	}
+	
+	static CMDHandshake readFields(DataInputStream in) throws IOException {
+		VirtualMachineID senderVMId = WireFormat.readVirtualMachineID(in);
+		return new CMDHandshake(senderVMId, in.readUnsignedByte());
+	}
+	
 }
@@ -32,6 +32,9 @@ import edu.vub.at.actors.natives.ELVirtualMachine;
 import edu.vub.at.actors.net.comm.Address;
 import edu.vub.at.actors.net.comm.CommunicationBus;
 
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * A CMDObjectTakenOfflineSoft command is sent asynchronously to all connected VMs when 
  * an actor on the sender VM takes one of its objects offline. Connected VMs are notified
@@ -67,4 +70,12 @@ public class CMDObjectReconnected extends VMCommand{
 	public void uponReceiptBy(ELVirtualMachine remoteHost, Address senderAddress) {
 		remoteHost.connectionManager_.notifyObjectReconnected(senderObjectId_);
 	}
+	
+	int getOpcode() {
+		return WireFormat._OP_OBJECT_RECONNECTED_;
+	}
+	
+	void writeFields(DataOutput out) throws IOException {
+		WireFormat.writeObjectID(out, senderObjectId_);
+	}
 }
@@ -32,6 +32,10 @@ import edu.vub.at.actors.natives.Packet;
 import edu.vub.at.actors.net.comm.Address;
 import edu.vub.at.actors.net.comm.CommunicationBus;
 
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * A CMDProvideService message is sent asynchronously to all connected VMs when
  * an actor on the sender VM provided a new publication. Connected VMs are notified
@@ -71,4 +75,18 @@ public class CMDProvideService extends VMCommand {
 		remoteHost.discoveryActor_.event_remotePublication(serializedTopic_, serializedService_);
 	}
 	
+	int getOpcode() {
+		return WireFormat._OP_PROVIDE_SERVICE_;
+	}
+	
+	void writeFields(DataOutput out) throws IOException {
+		WireFormat.writePacket(out, serializedTopic_);
+		WireFormat.writePacket(out, serializedService_);
+	}
+	
+	static CMDProvideService readFields(DataInputStream in) throws IOException {
+		Packet topic = WireFormat.readPacket(in);
+		return new CMDProvideService(topic, WireFormat.readPacket(in));
+	}
+	
 }
\ No newline at end of file
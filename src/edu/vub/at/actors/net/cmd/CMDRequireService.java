@@ -32,6 +32,9 @@ import edu.vub.at.actors.natives.Packet;
 import edu.vub.at.actors.net.comm.Address;
 import edu.vub.at.actors.net.comm.CommunicationBus;
 
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * A CMDRequireService message is sent asynchronously to all connected VMs when an actor
  * on the sender VM has issued a new subscription. This command is sent to all VMs to ask
@@ -70,4 +73,12 @@ public class CMDRequireService extends VMCommand {
     	remoteHost.discoveryActor_.event_remoteSubscription(serializedTopic_, senderAddress);
 	}
 	
+	int getOpcode() {
+		return WireFormat._OP_REQUIRE_SERVICE_;
+	}
+	
+	void writeFields(DataOutput out) throws IOException {
+		WireFormat.writePacket(out, serializedTopic_);
+	}
+	
 }
@@ -34,6 +34,10 @@ import edu.vub.at.actors.net.comm.Address;
 import edu.vub.at.actors.net.comm.CommunicationBus;
 import edu.vub.at.actors.net.comm.NetworkException;
 
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+
 
 /**
  * A CMDTransmitATMessage message encapsulates an AmbientTalk message being sent
@@ -44,8 +48,10 @@ import edu.vub.at.actors.net.comm.NetworkException;
  * MODE: SYNCHRONOUS, UNICAST
  * PROPERTIES:
  *  - Packet representing serialized AT message,
- *  - id of the actor that should unserialize and process the message
- * REPLY: no other VM command, but should return synchronous acknowledgement
+ *  - id of the actor that should unserialize and process the message,
+ *  - number of messages after which the sender expects credits to be returned
+ * REPLY: no other VM command, but should return synchronous acknowledgement.
+ *  Once the recipient actor has accepted a batch of messages, a {@link CMDGrantCredit} is returned.
  * 
  * @author tvcutsem
  */
@@ -56,10 +62,14 @@ public class CMDTransmitATMessage extends VMCommand {
 	private final Packet serializedATMessage_;
 	private final ActorID destinationActorId_;
 	
-	public CMDTransmitATMessage(ActorID destinationActorId, Packet atMessage) {
+	/** zero if the sender does not use credit-based flow control, e.g. because it predates it */
+	private final int creditBatch_;
+	
+	public CMDTransmitATMessage(ActorID destinationActorId, Packet atMessage, int creditBatch) {
 		super("transmitATMessage("+atMessage+")");
 		serializedATMessage_ = atMessage;
 		destinationActorId_ = destinationActorId;
+		creditBatch_ = creditBatch;
 	}
 	
 	public void send(CommunicationBus dispatcher, Address recipientVM) throws NetworkException {
@@ -67,7 +77,7 @@ public class CMDTransmitATMessage extends VMCommand {
 	}
 	
 	public void uponReceiptBy(ELVirtualMachine remoteHost, Address senderAddress) {
-		remoteHost.getActor(destinationActorId_).event_remoteAccept(senderAddress, serializedATMessage_);
+		remoteHost.getActor(destinationActorId_).event_remoteAccept(senderAddress, serializedATMessage_, creditBatch_);
 		// we do not need to send an explicit acknowledgement to the sender: if the transmission over
 		// its socket was successful, it knows that the message has at least arrived without failure.
 		// TODO: this may not be the case... JDK 1.5 documentation for flush() says:
@@ -76,4 +86,20 @@ public class CMDTransmitATMessage extends VMCommand {
 		// to the stream are passed to the operating system for writing; it does not guarantee that they are
 		// actually written to a physical device such as a disk drive.
 	}
+	
+	int getOpcode() {
+		return WireFormat._OP_TRANSMIT_AT_MESSAGE_;
+	}
+	
+	void writeFields(DataOutput out) throws IOException {
+		WireFormat.writeActorID(out, destinationActorId_);
+		out.writeInt(creditBatch_);
+		WireFormat.writePacket(out, serializedATMessage_);
+	}
+	
+	static CMDTransmitATMessage readFields(DataInputStream in) throws IOException {
+		ActorID destinationActorId = WireFormat.readActorID(in);
+		int creditBatch = in.readInt();
+		return new CMDTransmitATMessage(destinationActorId, WireFormat.readPacket(in), creditBatch);
+	}
 }
\ No newline at end of file
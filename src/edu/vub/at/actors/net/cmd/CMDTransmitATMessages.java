@@ -0,0 +1,111 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.net.cmd;
+
+import edu.vub.at.actors.id.ActorID;
+import edu.vub.at.actors.natives.ELActor;
+import edu.vub.at.actors.natives.ELVirtualMachine;
+import edu.vub.at.actors.natives.Packet;
+import edu.vub.at.actors.net.comm.Address;
+import edu.vub.at.actors.net.comm.CommunicationBus;
+import edu.vub.at.actors.net.comm.NetworkException;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/**
+ * A CMDTransmitATMessages message encapsulates a batch of AmbientTalk messages sent
+ * by one far reference to the same recipient actor, in the order in which they were sent.
+ * It is transmitted and acknowledged as a whole, instead of transmitting one
+ * {@link CMDTransmitATMessage} per message.
+ * 
+ * SENDER: a remote far reference
+ * RECEIVER: the VM hosting the object that the far reference denotes
+ * MODE: SYNCHRONOUS, UNICAST
+ * PROPERTIES:
+ *  - Packets representing the serialized AT messages,
+ *  - id of the actor that should unserialize and process the messages,
+ *  - number of messages after which the sender expects credits to be returned
+ * REPLY: no other VM command, but should return synchronous acknowledgement.
+ *  As for {@link CMDTransmitATMessage}, each message counts as one credit.
+ */
+public class CMDTransmitATMessages extends VMCommand {
+
+	private static final long serialVersionUID = 2893617043302174651L;
+	
+	private final Packet[] serializedATMessages_;
+	private final ActorID destinationActorId_;
+	private final int creditBatch_;
+	
+	public CMDTransmitATMessages(ActorID destinationActorId, Packet[] atMessages, int creditBatch) {
+		super("transmitATMessages("+atMessages.length+" messages)");
+		serializedATMessages_ = atMessages;
+		destinationActorId_ = destinationActorId;
+		creditBatch_ = creditBatch;
+	}
+	
+	public void send(CommunicationBus dispatcher, Address recipientVM) throws NetworkException {
+		dispatcher.sendSynchronousUnicast(this, recipientVM);
+	}
+	
+	public void uponReceiptBy(ELVirtualMachine remoteHost, Address senderAddress) {
+		ELActor destination = remoteHost.getActor(destinationActorId_);
+		for (int i = 0; i < serializedATMessages_.length; i++) {
+			destination.event_remoteAccept(senderAddress, serializedATMessages_[i], creditBatch_);
+		}
+	}
+	
+	int getOpcode() {
+		return WireFormat._OP_TRANSMIT_AT_MESSAGES_;
+	}
+	
+	void writeFields(DataOutput out) throws IOException {
+		WireFormat.writeActorID(out, destinationActorId_);
+		out.writeInt(creditBatch_);
+		out.writeInt(serializedATMessages_.length);
+		for (int i = 0; i < serializedATMessages_.length; i++) {
+			WireFormat.writePacket(out, serializedATMessages_[i]);
+		}
+	}
+	
+	static CMDTransmitATMessages readFields(DataInputStream in) throws IOException {
+		ActorID destinationActorId = WireFormat.readActorID(in);
+		int creditBatch = in.readInt();
+		int count = in.readInt();
+		// every packet takes at least eight bytes
+		if (count < 0 || count > in.available() / 8) {
+			throw new IOException("invalid number of messages: " + count);
+		}
+		Packet[] atMessages = new Packet[count];
+		for (int i = 0; i < atMessages.length; i++) {
+			atMessages[i] = WireFormat.readPacket(in);
+		}
+		return new CMDTransmitATMessages(destinationActorId, atMessages, creditBatch);
+	}
+}
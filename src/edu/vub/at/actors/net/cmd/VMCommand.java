@@ -30,6 +30,8 @@ package edu.vub.at.actors.net.cmd;
 import edu.vub.at.actors.natives.ELVirtualMachine;
 import edu.vub.at.actors.net.comm.Address;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -68,4 +70,21 @@ public abstract class VMCommand implements Serializable {
 	 */
 	public abstract void uponReceiptBy(ELVirtualMachine remoteHost, Address senderAddress);
 	
+	/**
+	 * To be overridden by commands that have a dedicated representation in the
+	 * binary {@link WireFormat}. Other commands are embedded in serialized form.
+	 */
+	int getOpcode() {
+		return WireFormat._OP_SERIALIZED_;
+	}
+	
+	/**
+	 * Writes the fields of a command that has a dedicated opcode. Such commands
+	 * define a static <tt>readFields</tt> method that reads them back, unless
+	 * {@link WireFormat#decode} can invoke their constructor directly.
+	 */
+	void writeFields(DataOutput out) throws IOException {
+		throw new IOException(this + " has no binary representation");
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.net.cmd;
+
+import edu.vub.at.actors.id.ATObjectID;
+import edu.vub.at.actors.id.ActorID;
+import edu.vub.at.actors.id.VirtualMachineID;
+import edu.vub.at.actors.natives.Packet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * The binary wire format in which VMs transmit {@link VMCommand} objects to one another
+ * once both VMs have announced support for it in their {@link CMDHandshake}. Until then,
+ * and towards VMs that predate this format, commands are transmitted by means of Java
+ * serialization.
+ * <p>
+ * An encoded command consists of the format version and an opcode, each a single byte,
+ * followed by the fields of the command. Actor and object identifiers are written as
+ * fixed-width ints and longs, and packets as their description followed by their raw
+ * payload, such that the payload of an AmbientTalk message is copied once rather than
+ * serialized a second time, and is only deserialized by its destination actor.
+ * Commands without a dedicated opcode are embedded in Java-serialized form.
+ * <p>
+ * The binary format can be disabled by setting the system property AT_NO_BINARY_WIRE_FORMAT,
+ * in which case this VM announces version {@link #_SERIALIZED_} in its handshakes.
+ * It can still decode binary commands sent by other VMs.
+ */
+public final class WireFormat {
+
+	private static final String _ENV_AT_NO_BINARY_WIRE_FORMAT_ = "AT_NO_BINARY_WIRE_FORMAT";
+	
+	/** the version announced by VMs that only transmit commands by means of Java serialization */
+	public static final int _SERIALIZED_ = 0;
+	
+	/** the version of the binary wire format written by this VM */
+	public static final int _VERSION_ = 1;
+	
+	/** the version this VM announces in its handshakes */
+	public static final int _ANNOUNCED_VERSION_ = Boolean.getBoolean(_ENV_AT_NO_BINARY_WIRE_FORMAT_) ? _SERIALIZED_ : _VERSION_;
+	
+	static final int _OP_SERIALIZED_ = 0;
+	static final int _OP_TRANSMIT_AT_MESSAGE_ = 1;
+	static final int _OP_GRANT_CREDIT_ = 2;
+	static final int _OP_HANDSHAKE_ = 3;
+	static final int _OP_OBJECT_TAKEN_OFFLINE_ = 4;
+	static final int _OP_OBJECT_DISCONNECTED_ = 5;
+	static final int _OP_OBJECT_RECONNECTED_ = 6;
+	static final int _OP_PROVIDE_SERVICE_ = 7;
+	static final int _OP_REQUIRE_SERVICE_ = 8;
+	static final int _OP_TRANSMIT_AT_MESSAGES_ = 9;
+	
+	private WireFormat() { }
+	
+	/**
+	 * Returns the version in which two VMs exchange commands, given the version
+	 * announced by the remote VM.
+	 */
+	public static int negotiate(int announcedVersion) {
+		return Math.min(_ANNOUNCED_VERSION_, announcedVersion);
+	}
+	
+	public static byte[] encode(VMCommand cmd) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+		int opcode = cmd.getOpcode();
+		out.writeByte(_VERSION_);
+		out.writeByte(opcode);
+		if (opcode == _OP_SERIALIZED_) {
+			ObjectOutputStream serialized = new ObjectOutputStream(out);
+			serialized.writeObject(cmd);
+			serialized.flush();
+		} else {
+			cmd.writeFields(out);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * @throws IOException if the bytes are not a command encoded in a version of the
+	 * wire format understood by this VM
+	 */
+	public static VMCommand decode(byte[] encoded) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+		int version = in.readUnsignedByte();
+		if (version != _VERSION_) {
+			throw new IOException("unsupported wire format version: " + version);
+		}
+		int opcode = in.readUnsignedByte();
+		switch (opcode) {
+			case _OP_SERIALIZED_: {
+				try {
+					return (VMCommand) new ObjectInputStream(in).readObject();
+				} catch (ClassNotFoundException e) {
+					throw new IOException("could not decode command: " + e.getMessage());
+				}
+			}
+			case _OP_TRANSMIT_AT_MESSAGE_: return CMDTransmitATMessage.readFields(in);
+			case _OP_GRANT_CREDIT_: return CMDGrantCredit.readFields(in);
+			case _OP_HANDSHAKE_: return CMDHandshake.readFields(in);
+			case _OP_OBJECT_TAKEN_OFFLINE_: return new CMDObjectTakenOffline(readObjectID(in));
+			case _OP_OBJECT_DISCONNECTED_: return new CMDObjectDisconnected(readObjectID(in));
+			case _OP_OBJECT_RECONNECTED_: return new CMDObjectReconnected(readObjectID(in));
+			case _OP_PROVIDE_SERVICE_: return CMDProvideService.readFields(in);
+			case _OP_REQUIRE_SERVICE_: return new CMDRequireService(readPacket(in));
+			case _OP_TRANSMIT_AT_MESSAGES_: return CMDTransmitATMessages.readFields(in);
+			default:
+				throw new IOException("unknown command opcode: " + opcode);
+		}
+	}
+	
+	static void writeActorID(DataOutput out, ActorID id) throws IOException {
+		out.writeInt(id.getID());
+	}
+	
+	static ActorID readActorID(DataInputStream in) throws IOException {
+		return new ActorID(in.readInt());
+	}
+	
+	static void writeVirtualMachineID(DataOutput out, VirtualMachineID id) throws IOException {
+		out.writeLong(id.getID());
+	}
+	
+	static VirtualMachineID readVirtualMachineID(DataInputStream in) throws IOException {
+		return new VirtualMachineID(in.readLong());
+	}
+	
+	static void writeObjectID(DataOutput out, ATObjectID id) throws IOException {
+		writeVirtualMachineID(out, id.getVirtualMachineId());
+		writeActorID(out, id.getActorId());
+		out.writeLong(id.getObjectId());
+		writeString(out, id.getDescription());
+	}
+	
+	static ATObjectID readObjectID(DataInputStream in) throws IOException {
+		VirtualMachineID vmId = readVirtualMachineID(in);
+		ActorID actorId = readActorID(in);
+		long objectId = in.readLong();
+		return new ATObjectID(vmId, actorId, objectId, readString(in));
+	}
+	
+	static void writePacket(DataOutput out, Packet packet) throws IOException {
+		byte[] payload = packet.getPayload();
+		if (payload == null) {
+			throw new IOException("cannot transmit " + packet + ": it has no serialized payload");
+		}
+		writeString(out, packet.getDescription());
+		out.writeInt(payload.length);
+		out.write(payload);
+	}
+	
+	static Packet readPacket(DataInputStream in) throws IOException {
+		String description = readString(in);
+		byte[] payload = new byte[checkLength(in, in.readInt())];
+		in.readFully(payload);
+		return new Packet(description, payload);
+	}
+	
+	/**
+	 * Writes a possibly null string of arbitrary length, unlike {@link DataOutput#writeUTF}.
+	 */
+	static void writeString(DataOutput out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] utf8 = string.getBytes("UTF-8");
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		}
+	}
+	
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		byte[] utf8 = new byte[checkLength(in, length)];
+		in.readFully(utf8);
+		return new String(utf8, "UTF-8");
+	}
+	
+	/**
+	 * Guards against allocating arrays for lengths that exceed the encoded command.
+	 */
+	private static int checkLength(DataInputStream in, int length) throws IOException {
+		if (length < 0 || length > in.available()) {
+			throw new IOException("invalid length: " + length);
+		}
+		return length;
+	}
+	
+}
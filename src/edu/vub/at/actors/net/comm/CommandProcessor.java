@@ -28,10 +28,12 @@
 package edu.vub.at.actors.net.comm;
 
 import edu.vub.at.actors.net.cmd.VMCommand;
+import edu.vub.at.actors.net.cmd.WireFormat;
 import edu.vub.at.util.logging.Logging;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.OptionalDataException;
 import java.net.Socket;
 
 /**
@@ -87,7 +89,7 @@ public class CommandProcessor extends Thread {
 	public void run() {
 		try {
 			while (true) {
-				VMCommand cmd = (VMCommand) inputStream_.readObject();
+				VMCommand cmd = readCommand();
 				Logging.VirtualMachine_LOG.info("CommandProcessor for " + remoteVM_ + " handling incoming command: " + cmd);
 			    // allow the command to execute itself
 			    cmd.uponReceiptBy(communicationBus_.host_, remoteVM_);
@@ -100,6 +102,29 @@ public class CommandProcessor extends Thread {
 		}
 	}
 	
+	/**
+	 * Reads the next command, which is either a serialized object or, once the remote VM
+	 * has switched to the {@link WireFormat}, a length-prefixed encoded command written
+	 * as primitive data.
+	 */
+	private VMCommand readCommand() throws IOException, ClassNotFoundException {
+		try {
+			return (VMCommand) inputStream_.readObject();
+		} catch (OptionalDataException e) {
+			if (e.eof) {
+				throw e;
+			}
+			// the stream is positioned at the primitive data
+			int length = inputStream_.readInt();
+			if (length < 0 || length > NIOTransport._MAX_FRAME_SIZE_) {
+				throw new IOException("invalid command length: " + length);
+			}
+			byte[] encoded = new byte[length];
+			inputStream_.readFully(encoded);
+			return WireFormat.decode(encoded);
+		}
+	}
+	
 	public String toString() {
 		return super.getName();
 	}
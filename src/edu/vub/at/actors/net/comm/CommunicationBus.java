@@ -27,8 +27,10 @@
  */
 package edu.vub.at.actors.net.comm;
 
+import edu.vub.at.actors.eventloops.TimerWheel;
 import edu.vub.at.actors.natives.ELVirtualMachine;
 import edu.vub.at.actors.net.cmd.VMCommand;
+import edu.vub.at.actors.net.cmd.WireFormat;
 import edu.vub.at.util.logging.Logging;
 
 import java.io.BufferedInputStream;
@@ -41,8 +43,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 
 /**
  * For each AmbientTalk virtual machine, there exists one communication bus instance.
@@ -97,6 +97,11 @@ import java.util.TimerTask;
  * 
  * It is always the output stream of either socket that is used for sending messages to the other VM.
  * It is always the input stream of either socket that is used for receiving messages from the other VM.
+ * <p>
+ * By default, each connection is served by a dedicated {@link CommandProcessor} thread that reads
+ * command objects from an object stream. When the system property AT_TRANSPORT is set to
+ * <tt>nio</tt>, all connections are instead multiplexed onto the single I/O thread of a
+ * {@link NIOTransport}. The connection set-up by master and slave is the same in both modes.
  * 
  * @author tvcutsem
  */
@@ -134,32 +139,64 @@ public class CommunicationBus {
 	 */
 	private final HashMap addressToConnection_;
 	
-	/**
-	 * The timer used for checking 'stale' (i.e. timed out) connections
-	 * in the connection table.
-	 */
-	private final Timer timeoutDetectorTimer_;
-	
 	/**
 	 * The timer task used for removing timed out connections
 	 * from the connections table.
 	 */
 	private TimeoutDetectorTask timeoutDetector_;
 	
+	/**
+	 * If non-null, the connections of this bus are served by this transport rather
+	 * than by a {@link CommandProcessor} per connection. Only set while connected.
+	 */
+	private volatile NIOTransport transport_;
+	
 	/**
 	 * Bookkeeping datastructure to store connection-related information
 	 * of a connected VM. A connection entry is uniquely identified by
 	 * means of the {@link Address} of its VM.
 	 */
-	private static class Connection {
+	static abstract class Connection {
 		public final Socket socket_;
 		/** this value is updated as new heartbeats are received */
 		public long lastSeenAtTime_;
-		public final ObjectOutputStream outgoing_;
-		public final ObjectInputStream incoming_;
-		public Connection(Socket s, long lastSeenAt) throws IOException {
+		/**
+		 * the {@link WireFormat} version in which commands are sent, negotiated by means
+		 * of the handshake of the remote VM. Until then, commands are Java-serialized.
+		 */
+		public volatile int wireVersion_ = WireFormat._SERIALIZED_;
+		protected Connection(Socket s, long lastSeenAt) {
 			socket_ = s;
 			lastSeenAtTime_ = lastSeenAt;
+		}
+		
+		/**
+		 * Closes the underlying socket. This will eventually cause this connection
+		 * to be removed from the table, either by the command processor tied to
+		 * this connection or by the transport serving it.
+		 */
+		public abstract void close();
+		
+		public abstract void send(VMCommand msg) throws IOException;
+		
+		/**
+		 * Sends the message and only returns once it has been handed to the
+		 * underlying socket.
+		 */
+		public void sendSynchronously(VMCommand msg) throws IOException {
+			send(msg);
+		}
+	}
+	
+	/**
+	 * A connection on which command objects are exchanged by means of object streams.
+	 * Incoming commands are read by a dedicated {@link CommandProcessor}.
+	 */
+	private static class StreamConnection extends Connection {
+		public final ObjectOutputStream outgoing_;
+		public final ObjectInputStream incoming_;
+		public StreamConnection(Socket s, long lastSeenAt) throws IOException {
+			super(s, lastSeenAt);
 			// NOTE: apparently it is highly important that the ObjectOutputStream on the socket.getOutputStream() is
 			// created BEFORE trying to create an ObjectInputStream on the socket.getInputStream()
 			// switching the below two statements causes the master and the slave to deadlock!
@@ -170,11 +207,6 @@ public class CommunicationBus {
 			incoming_ = new ObjectInputStream(new BufferedInputStream(s.getInputStream()));
 		}
 		
-		/**
-		 * Closes the underlying socket. This will eventually trigger the command processor
-		 * tied to this connection, which will cause this connection to be removed
-		 * from the table.
-		 */
 		public synchronized void close() {
 			try {
 				socket_.close();
@@ -182,16 +214,26 @@ public class CommunicationBus {
 		}
 		
 		public synchronized void send(VMCommand msg) throws IOException{
-			outgoing_.writeObject(msg);
+			if (wireVersion_ == WireFormat._SERIALIZED_) {
+				outgoing_.writeObject(msg);
+				// forget the objects written so far, otherwise the stream retains every command ever sent
+				outgoing_.reset();
+			} else {
+				// written as primitive data, which the command processor distinguishes from objects
+				byte[] encoded = WireFormat.encode(msg);
+				outgoing_.writeInt(encoded.length);
+				outgoing_.write(encoded);
+			}
 			outgoing_.flush();
 		}
 	}
 	
 	/**
 	 * The timer task used for removing timed out connections
-	 * from the connection table.
+	 * from the connection table. It is scheduled on the timer wheel
+	 * of the VM, and reschedules itself until it is cancelled.
 	 */
-	private class TimeoutDetectorTask extends TimerTask {
+	private class TimeoutDetectorTask implements Runnable {
 		
 		/**
 		 * the maximum amount of time that a remote VM gets to send a new
@@ -204,8 +246,24 @@ public class CommunicationBus {
 		 */
 		public static final int DETECTION_RATE = 4000; // in milliseconds
 		
+		private TimerWheel.Timeout timeout_;
+		
+		private boolean cancelled_ = false;
+		
+		public synchronized void schedule(long delay) {
+			if (!cancelled_) {
+				timeout_ = host_.timerWheel_.schedule(this, delay);
+			}
+		}
+		
+		public synchronized void cancel() {
+			cancelled_ = true;
+			timeout_.cancel();
+		}
+		
 		public void run() {
 			closeConnectionOfMembersNotSeenIn(MAX_RESPONSE_DELAY);
+			schedule(DETECTION_RATE);
 		}
 		
 	}
@@ -215,7 +273,6 @@ public class CommunicationBus {
 		groupName_ = ambientTalkNetworkName;
 		ipAddress_ = ipAddress;
 		addressToConnection_ = new HashMap();
-		timeoutDetectorTimer_ = new Timer(true); // create a daemon timer
 	}
 	
 	public String getIpAddress() {
@@ -237,11 +294,25 @@ public class CommunicationBus {
 			return networkAddress_; // if the bus is already connected, there is no need to connect it again
 		}
 		
+		// the transport must be in place before the first slave can connect
+		if (NIOTransport._ENABLED_) {
+			try {
+				transport_ = new NIOTransport(this);
+			} catch (IOException e) {
+				throw new NetworkException("Could not open network transport:", e);
+			}
+			transport_.start();
+		}
+		
 		masterConnectionThread_ = new MasterConnectionThread(this);
 		try {
 			networkAddress_ = masterConnectionThread_.startServing();
 		} catch (IOException e) {
 			masterConnectionThread_ = null;
+			if (transport_ != null) {
+				transport_.stopTransport();
+				transport_ = null;
+			}
 			throw new NetworkException("Could not connect to network:", e);
 		}
 		mcListener_ = new MulticastListenerThread(this, networkAddress_);
@@ -251,7 +322,7 @@ public class CommunicationBus {
 		
 		// start detecting timed out VMs
 		timeoutDetector_ = new TimeoutDetectorTask();
-		timeoutDetectorTimer_.scheduleAtFixedRate(timeoutDetector_, 0, TimeoutDetectorTask.DETECTION_RATE);
+		timeoutDetector_.schedule(0);
 		
 		return networkAddress_;
 	}
@@ -282,6 +353,11 @@ public class CommunicationBus {
 		timeoutDetector_ = null;
 		
 		closeConnectionOfAllMembers();
+		
+		if (transport_ != null) {
+			transport_.stopTransport();
+			transport_ = null;
+		}
 	}
 	
 	/**
@@ -304,6 +380,19 @@ public class CommunicationBus {
 		}
 	}
 	
+	/**
+	 * Sets the version of the {@link WireFormat} in which commands are sent to the given
+	 * virtual machine. Invoked upon receipt of the handshake of that VM.
+	 */
+	public void setWireVersion(Address member, int version) {
+		synchronized (addressToConnection_) {
+			Connection conn = (Connection) addressToConnection_.get(member);
+			if (conn != null) {
+				conn.wireVersion_ = version;
+			}
+		}
+	}
+	
 	/**
 	 * Registers a new virtual machine connection for the given address.
 	 * If this VM was a slave in the discovery process, this method is
@@ -314,7 +403,8 @@ public class CommunicationBus {
 	 * The socket's output stream will be stored in the connection table and is used
 	 * for transmitting VM Commands to this VM. The socket's input stream will be
 	 * coupled to a dedicated {@link CommandProcessor} which is responsible for
-	 * processing incoming VM command objects.
+	 * processing incoming VM command objects. If the bus uses the {@link NIOTransport},
+	 * the socket's channel is registered with that transport instead.
 	 * 
 	 * Calling this method implicitly also triggers a memberJoined event on this VM
 	 * 
@@ -328,11 +418,21 @@ public class CommunicationBus {
 			return; // the bus has been disconnected, do not accept any new connections
 		}
 		
-		// create a new connection object that can be used to send command objects to this member
-		Connection registeredConnection = new Connection(conn, System.currentTimeMillis());
+		NIOTransport transport = transport_;
+		NIOTransport.ChannelConnection channelConnection = null;
+		CommandProcessor processor = null;
 		
-		// spawn a new command processor dedicated for handling the command objects received from this member
-		CommandProcessor processor = new CommandProcessor(newMember, conn, registeredConnection.incoming_, this);
+		// create a new connection object that can be used to send command objects to this member
+		Connection registeredConnection;
+		if (transport != null) {
+			channelConnection = transport.createConnection(newMember, conn);
+			registeredConnection = channelConnection;
+		} else {
+			StreamConnection streamConnection = new StreamConnection(conn, System.currentTimeMillis());
+			registeredConnection = streamConnection;
+			// spawn a new command processor dedicated for handling the command objects received from this member
+			processor = new CommandProcessor(newMember, conn, streamConnection.incoming_, this);
+		}
 
 		synchronized (addressToConnection_) {
 			// first check whether a connection for this member already exists
@@ -354,15 +454,20 @@ public class CommunicationBus {
 			addressToConnection_.put(newMember, registeredConnection);
 		}
 		
-		// only start the processor if the member is properly registered
-		processor.start();
+		// only start processing incoming commands if the member is properly registered
+		if (processor != null) {
+			processor.start();
+		} else {
+			transport.register(channelConnection);
+		}
 		
 		Logging.Network_LOG.debug("successfully registered connection to " + newMember);
 	}
 	
 	/**
 	 * It is the responsibility of the {@link CommandProcessor} tied to the given VM
-	 * to invoke this method when its connection has failed.
+	 * (or of the {@link NIOTransport} serving its connection) to invoke this method
+	 * when its connection has failed.
 	 * 
 	 * This is the <b>only</b> method responsible for removing entries from the
 	 * connection table.
@@ -497,7 +602,7 @@ public class CommunicationBus {
 		}
 		
 		try {
-			conn.send(msg);
+			conn.sendSynchronously(msg);
 		} catch (IOException e) {
 			// it is the sender's responsibility to close the connection's socket if something goes wrong
 			// the corresponding CommandProcessor registered on this socket will remove the member from
@@ -70,7 +70,7 @@ public class MasterConnectionThread extends Thread {
 	 */
 	public Address startServing() throws IOException { 
 		InetAddress myAddress = InetAddress.getByName(getCurrentEnvironmentNetworkIp(communicationBus_.getIpAddress()));
-		listenSocket_ = new ServerSocket(0, 50, myAddress); // create a socket that will listen on any free port
+		listenSocket_ = NIOTransport.createServerSocket(myAddress, 50); // create a socket that will listen on any free port
 		this.start();
 		return new Address(myAddress, listenSocket_.getLocalPort(), communicationBus_.getGroupName());
 	}
@@ -103,7 +103,7 @@ public class MasterConnectionThread extends Thread {
 					DataInputStream din = new DataInputStream(slave.getInputStream());
 					int addressLength = din.readInt();
 					byte[] address = new byte[addressLength];
-					din.read(address);
+					din.readFully(address);
 					
 					Address slaveAddress = Address.fromBytes(address);
 					
@@ -198,7 +198,7 @@ public class MulticastListenerThread extends Thread {
 		
 		try {
 			// connect to the master
-			master = new Socket(masterIp, masterPort);
+			master = NIOTransport.createSocket(masterIp, masterPort);
 			
 			// send my own address
 			DataOutputStream dout = new DataOutputStream(master.getOutputStream());
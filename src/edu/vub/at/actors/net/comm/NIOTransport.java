@@ -0,0 +1,610 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.net.comm;
+
+import edu.vub.at.actors.net.cmd.VMCommand;
+import edu.vub.at.actors.net.cmd.WireFormat;
+import edu.vub.at.util.logging.Logging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * The NIO transport multiplexes all connections of a {@link CommunicationBus} onto a
+ * single I/O thread that waits on a {@link Selector}, rather than dedicating a
+ * {@link CommandProcessor} thread and a pair of object streams to every connected VM.
+ * It is selected at VM startup by setting the system property AT_TRANSPORT to
+ * <tt>nio</tt>. Because the wire format differs from the default stream-based transport,
+ * all VMs in an overlay network must use the same transport.
+ * <p>
+ * Connections are still set up by the {@link MasterConnectionThread} and the
+ * {@link MulticastListenerThread}: in NIO mode, these create their sockets by means of
+ * {@link #createServerSocket(InetAddress, int)} and {@link #createSocket(InetAddress, int)},
+ * such that the connected sockets are backed by a {@link SocketChannel}. Once the
+ * slave has sent its address, the channel is switched to non-blocking mode and
+ * handed to this transport.
+ * <p>
+ * Each {@link VMCommand} is transmitted as a frame: a four-byte length followed by the
+ * command, either serialized or, once negotiated, encoded in the {@link WireFormat}. Frames are serialized by the sending thread and appended to a
+ * per-connection write queue, which blocks the sender while it is full. The sender immediately tries to write the queue; whatever
+ * the socket does not accept is written by the I/O thread when the channel becomes
+ * writable, using gathering writes. Incoming frames are decoded by the I/O thread and
+ * handed to the host VM by means of {@link VMCommand#uponReceiptBy}, which only
+ * schedules events on the VM's event loops.
+ * <p>
+ * The I/O thread is the only thread that registers channels with the selector,
+ * changes interest sets and removes connections from the communication bus. Other
+ * threads post their requests and wake up the selector.
+ */
+public final class NIOTransport extends Thread {
+	
+	private static final String _ENV_AT_TRANSPORT_ = "AT_TRANSPORT";
+	
+	private static final String _NIO_TRANSPORT_ = "nio";
+	
+	/**
+	 * Whether communication buses use the NIO transport, as selected at VM startup
+	 * by means of the system property AT_TRANSPORT.
+	 */
+	public static final boolean _ENABLED_ = _NIO_TRANSPORT_.equals(System.getProperty(_ENV_AT_TRANSPORT_));
+	
+	/** frames or commands announcing a larger length are considered corrupt and fatal for the connection */
+	static final int _MAX_FRAME_SIZE_ = 64 * 1024 * 1024;
+	
+	/** the maximum number of frames handed to a single gathering write */
+	private static final int _MAX_GATHER_ = 64;
+	
+	private static final int _READ_BUFFER_SIZE_ = 64 * 1024;
+	
+	private static final String _ENV_AT_NIO_QUEUE_BYTES_ = "AT_NIO_QUEUE_BYTES";
+	
+	/**
+	 * The number of bytes that may be queued for a connection before senders are blocked,
+	 * as selected at VM startup by means of the system property AT_NIO_QUEUE_BYTES. A frame
+	 * is always admitted into an empty queue, such that larger frames can still be sent.
+	 */
+	static final int _MAX_QUEUED_BYTES_ = Math.max(1, Integer.getInteger(_ENV_AT_NIO_QUEUE_BYTES_, 4 * 1024 * 1024).intValue());
+	
+	private final CommunicationBus communicationBus_;
+	
+	private final Selector selector_;
+	
+	/** reused for every read, only accessed by the I/O thread */
+	private final ByteBuffer readBuffer_ = ByteBuffer.allocate(_READ_BUFFER_SIZE_);
+	
+	private volatile boolean isActive_ = true;
+	
+	/**
+	 * Requests posted by other threads, processed by the I/O thread after every select.
+	 * All three lists and {@link #running_} are guarded by {@link #pendingRegistrations_}.
+	 */
+	private final LinkedList pendingRegistrations_ = new LinkedList();
+	private final LinkedList pendingWrites_ = new LinkedList();
+	private final LinkedList pendingRemovals_ = new LinkedList();
+	
+	/** false once the I/O thread has stopped accepting requests */
+	private boolean running_ = true;
+	
+	/**
+	 * @throws IOException if no selector can be opened. It is guaranteed that, if this
+	 * exception is raised, no thread has been started.
+	 */
+	public NIOTransport(CommunicationBus owner) throws IOException {
+		super("NIOTransport for " + owner);
+		communicationBus_ = owner;
+		selector_ = Selector.open();
+		setDaemon(true);
+	}
+	
+	/**
+	 * Creates the server socket on which the {@link MasterConnectionThread} accepts slaves.
+	 * In NIO mode, the accepted sockets are backed by a channel.
+	 */
+	public static ServerSocket createServerSocket(InetAddress bindAddress, int backlog) throws IOException {
+		if (!_ENABLED_) {
+			return new ServerSocket(0, backlog, bindAddress); // listen on any free port
+		}
+		ServerSocket socket = ServerSocketChannel.open().socket();
+		try {
+			socket.bind(new InetSocketAddress(bindAddress, 0), backlog);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		return socket;
+	}
+	
+	/**
+	 * Creates the socket with which the {@link MulticastListenerThread} connects to a master.
+	 * In NIO mode, the socket is backed by a channel.
+	 */
+	public static Socket createSocket(InetAddress address, int port) throws IOException {
+		if (!_ENABLED_) {
+			return new Socket(address, port);
+		}
+		return SocketChannel.open(new InetSocketAddress(address, port)).socket();
+	}
+	
+	/**
+	 * Switches the channel of the given socket to non-blocking mode and wraps it in a
+	 * connection. The connection only starts receiving once it is passed to
+	 * {@link #register(ChannelConnection)}, but it can be used for sending right away.
+	 * 
+	 * @throws IOException if the socket was not created by this transport
+	 */
+	ChannelConnection createConnection(Address remoteVM, Socket socket) throws IOException {
+		SocketChannel channel = socket.getChannel();
+		if (channel == null) {
+			throw new IOException("socket to " + remoteVM + " is not backed by a channel");
+		}
+		channel.configureBlocking(false);
+		return new ChannelConnection(remoteVM, socket, channel);
+	}
+	
+	/**
+	 * Asks the I/O thread to start reading from the given connection. If the transport
+	 * has already stopped, the connection is closed and removed immediately.
+	 */
+	void register(ChannelConnection conn) {
+		synchronized (pendingRegistrations_) {
+			if (running_) {
+				pendingRegistrations_.add(conn);
+				selector_.wakeup();
+				return;
+			}
+		}
+		conn.close();
+		communicationBus_.removeConnection(conn.remoteVM_, conn.socket_);
+	}
+	
+	/**
+	 * Gracefully shut down the thread. All connections that are still registered
+	 * are closed and removed from the communication bus.
+	 */
+	public void stopTransport() {
+		isActive_ = false;
+		selector_.wakeup();
+	}
+	
+	public void run() {
+		try {
+			while (isActive_) {
+				selector_.select();
+				processPendingRequests();
+				Iterator keys = selector_.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = (SelectionKey) keys.next();
+					keys.remove();
+					ChannelConnection conn = (ChannelConnection) key.attachment();
+					try {
+						if (key.isValid() && key.isReadable()) {
+							handleRead(conn);
+						}
+						if (key.isValid() && key.isWritable()) {
+							handleWrite(conn, key);
+						}
+					} catch (Exception e) {
+						Logging.Network_LOG.debug(toString() + ": closing connection to " + conn.remoteVM_ + " because of:", e);
+						conn.close(); // posts a removal request
+					}
+				}
+			}
+		} catch (IOException e) {
+			Logging.Network_LOG.error(toString() + ": selector failed", e);
+		} finally {
+			shutdown();
+			Logging.Network_LOG.debug(toString() + " shutting down");
+		}
+	}
+	
+	private void handleRead(ChannelConnection conn) throws IOException {
+		readBuffer_.clear();
+		int read = conn.channel_.read(readBuffer_);
+		if (read < 0) {
+			throw new IOException("connection closed by " + conn.remoteVM_);
+		}
+		readBuffer_.flip();
+		// every command is handled as soon as it is decoded, such that the commands
+		// preceding a corrupt frame are handled before the connection is closed
+		VMCommand cmd;
+		while ((cmd = conn.reader_.next(readBuffer_)) != null) {
+			Logging.VirtualMachine_LOG.info(toString() + " handling incoming command from " + conn.remoteVM_ + ": " + cmd);
+			// allow the command to execute itself
+			cmd.uponReceiptBy(communicationBus_.host_, conn.remoteVM_);
+		}
+	}
+	
+	private void handleWrite(ChannelConnection conn, SelectionKey key) throws IOException {
+		synchronized (conn) {
+			if (conn.flushQueue()) {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+	}
+	
+	private void processPendingRequests() {
+		Object[] registrations, writes, removals;
+		synchronized (pendingRegistrations_) {
+			registrations = pendingRegistrations_.toArray();
+			writes = pendingWrites_.toArray();
+			removals = pendingRemovals_.toArray();
+			pendingRegistrations_.clear();
+			pendingWrites_.clear();
+			pendingRemovals_.clear();
+		}
+		for (int i = 0; i < registrations.length; i++) {
+			ChannelConnection conn = (ChannelConnection) registrations[i];
+			try {
+				conn.channel_.register(selector_, SelectionKey.OP_READ | (conn.hasQueuedFrames() ? SelectionKey.OP_WRITE : 0), conn);
+			} catch (ClosedChannelException e) {
+				// the connection was closed before it was registered, so no removal request
+				// will have been posted for it: remove it now
+				conn.close();
+				communicationBus_.removeConnection(conn.remoteVM_, conn.socket_);
+			}
+		}
+		for (int i = 0; i < writes.length; i++) {
+			SelectionKey key = ((ChannelConnection) writes[i]).channel_.keyFor(selector_);
+			if (key != null && key.isValid()) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+		for (int i = 0; i < removals.length; i++) {
+			ChannelConnection conn = (ChannelConnection) removals[i];
+			communicationBus_.removeConnection(conn.remoteVM_, conn.socket_);
+		}
+	}
+	
+	/**
+	 * Closes and removes all connections that are still registered or that have
+	 * requests pending. Requests posted after this method has started are no longer
+	 * accepted, see {@link #register(ChannelConnection)}.
+	 */
+	private void shutdown() {
+		Vector connections = new Vector();
+		synchronized (pendingRegistrations_) {
+			running_ = false;
+			connections.addAll(pendingRegistrations_);
+			connections.addAll(pendingRemovals_);
+			pendingRegistrations_.clear();
+			pendingWrites_.clear();
+			pendingRemovals_.clear();
+		}
+		try {
+			for (Iterator keys = selector_.keys().iterator(); keys.hasNext();) {
+				connections.add(((SelectionKey) keys.next()).attachment());
+			}
+		} catch (RuntimeException e) {
+			Logging.Network_LOG.warn(toString() + ": could not enumerate connections: " + e.getMessage());
+		}
+		for (Iterator iter = connections.iterator(); iter.hasNext();) {
+			ChannelConnection conn = (ChannelConnection) iter.next();
+			conn.close();
+			communicationBus_.removeConnection(conn.remoteVM_, conn.socket_);
+		}
+		try {
+			selector_.close();
+		} catch (IOException e) { }
+	}
+	
+	/** Posts a request for the I/O thread; ignored once the transport has stopped. */
+	private void post(LinkedList requests, ChannelConnection conn) {
+		synchronized (pendingRegistrations_) {
+			if (running_) {
+				requests.add(conn);
+				selector_.wakeup();
+			}
+		}
+	}
+	
+	/**
+	 * Encodes the given command into a frame in the given wire format version,
+	 * ready to be written to a channel.
+	 */
+	static ByteBuffer encodeFrame(VMCommand msg, int wireVersion) throws IOException {
+		if (wireVersion != WireFormat._SERIALIZED_) {
+			byte[] encoded = WireFormat.encode(msg);
+			ByteBuffer frame = ByteBuffer.allocate(4 + encoded.length);
+			frame.putInt(encoded.length);
+			frame.put(encoded);
+			frame.flip();
+			return frame;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(new byte[4]); // placeholder for the length
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(msg);
+		out.close();
+		ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+		frame.putInt(0, frame.remaining() - 4);
+		return frame;
+	}
+	
+	/**
+	 * Decodes the body of a frame. Serialized commands are recognised by the magic
+	 * number with which every serialization stream starts.
+	 */
+	static VMCommand decodeFrame(byte[] body) throws IOException {
+		if (body.length > 0 && body[0] != (byte) (ObjectStreamConstants.STREAM_MAGIC >>> 8)) {
+			return WireFormat.decode(body);
+		}
+		try {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(body));
+			return (VMCommand) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("could not decode command: " + e.getMessage());
+		} catch (ClassCastException e) {
+			throw new IOException("frame does not contain a command: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Reassembles frames from the chunks read from a channel.
+	 * Only accessed by the I/O thread.
+	 */
+	static final class FrameReader {
+		
+		private final ByteBuffer header_ = ByteBuffer.allocate(4);
+		
+		/** the body of the frame being read, or null while reading its header */
+		private ByteBuffer body_;
+		
+		/**
+		 * Consumes the bytes of the given buffer up to the end of the next frame.
+		 * 
+		 * @return the command of the frame completed by the consumed bytes, or null
+		 * if all bytes were consumed without completing a frame
+		 * @throws IOException if a frame is corrupt, in which case the connection is unusable
+		 */
+		VMCommand next(ByteBuffer in) throws IOException {
+			while (true) {
+				if (body_ == null) {
+					transfer(in, header_);
+					if (header_.hasRemaining()) {
+						return null;
+					}
+					header_.flip();
+					int length = header_.getInt();
+					header_.clear();
+					if (length < 0 || length > _MAX_FRAME_SIZE_) {
+						throw new IOException("invalid frame length: " + length);
+					}
+					body_ = ByteBuffer.allocate(length);
+				}
+				transfer(in, body_);
+				if (body_.hasRemaining()) {
+					return null;
+				}
+				byte[] body = body_.array();
+				body_ = null;
+				return decodeFrame(body);
+			}
+		}
+		
+		private static void transfer(ByteBuffer from, ByteBuffer to) {
+			int count = Math.min(from.remaining(), to.remaining());
+			int limit = from.limit();
+			from.limit(from.position() + count);
+			to.put(from);
+			from.limit(limit);
+		}
+	}
+	
+	/**
+	 * A connection whose socket is backed by a non-blocking channel. Outgoing frames
+	 * are queued and written by whichever thread gets to them first; the queue, the frame
+	 * counters and the closed flag are guarded by the connection itself. Senders block
+	 * while the queue holds {@link #_MAX_QUEUED_BYTES_}, as they would when writing to a
+	 * blocking socket whose buffer is full.
+	 */
+	final class ChannelConnection extends CommunicationBus.Connection {
+		
+		final Address remoteVM_;
+		final SocketChannel channel_;
+		final FrameReader reader_ = new FrameReader();
+		
+		private final LinkedList writeQueue_ = new LinkedList();
+		
+		/** the number of frames ever enqueued, and the number of frames fully written */
+		private long enqueued_ = 0;
+		private long written_ = 0;
+		
+		/** the total size of the frames in the write queue */
+		private long queuedBytes_ = 0;
+		
+		private boolean closed_ = false;
+		
+		ChannelConnection(Address remoteVM, Socket socket, SocketChannel channel) {
+			super(socket, System.currentTimeMillis());
+			remoteVM_ = remoteVM;
+			channel_ = channel;
+		}
+		
+		/**
+		 * Closes the channel and asks the I/O thread to remove this connection from
+		 * the communication bus. Closing an already closed connection has no effect.
+		 */
+		public void close() {
+			synchronized (this) {
+				if (closed_) {
+					return;
+				}
+				closed_ = true;
+				writeQueue_.clear();
+				queuedBytes_ = 0;
+				notifyAll();
+			}
+			try {
+				channel_.close();
+			} catch (IOException e) { }
+			post(pendingRemovals_, this);
+		}
+		
+		public void send(VMCommand msg) throws IOException {
+			enqueue(encodeFrame(msg, wireVersion_));
+		}
+		
+		/**
+		 * Only returns once the frame has been handed to the operating system,
+		 * which is the guarantee that flushing an object stream gives.
+		 */
+		public void sendSynchronously(VMCommand msg) throws IOException {
+			long frame = enqueue(encodeFrame(msg, wireVersion_));
+			synchronized (this) {
+				while (written_ < frame && !closed_) {
+					try {
+						awaitWrite();
+					} catch (InterruptedException e) {
+						throw new IOException("interrupted while sending " + msg);
+					}
+				}
+				if (written_ < frame) {
+					throw new IOException("connection to " + remoteVM_ + " closed while sending " + msg);
+				}
+			}
+		}
+		
+		/**
+		 * Appends the frame to the write queue, once the queue has room for it. If the
+		 * queue was empty, the frame is written right away by the calling thread; the
+		 * I/O thread is only involved when the socket does not accept all of it.
+		 * @return the sequence number of the frame
+		 */
+		private long enqueue(ByteBuffer frame) throws IOException {
+			boolean needsWriter;
+			long sequenceNumber;
+			synchronized (this) {
+				// the I/O thread never waits, as it is the one that drains the queue
+				while (!closed_ && queuedBytes_ > 0 && queuedBytes_ + frame.limit() > _MAX_QUEUED_BYTES_
+						&& Thread.currentThread() != NIOTransport.this) {
+					try {
+						awaitWrite();
+					} catch (InterruptedException e) {
+						throw new IOException("interrupted while waiting to send to " + remoteVM_);
+					}
+				}
+				if (closed_) {
+					throw new IOException("connection to " + remoteVM_ + " is closed");
+				}
+				writeQueue_.add(frame);
+				queuedBytes_ += frame.limit();
+				sequenceNumber = ++enqueued_;
+				// if other frames were waiting, the I/O thread is already interested in writing
+				needsWriter = (writeQueue_.size() == 1) && !flushQueue();
+			}
+			if (needsWriter) {
+				post(pendingWrites_, this);
+			}
+			return sequenceNumber;
+		}
+		
+		synchronized boolean hasQueuedFrames() {
+			return !writeQueue_.isEmpty();
+		}
+		
+		synchronized long getQueuedBytes() {
+			return queuedBytes_;
+		}
+		
+		/**
+		 * Waits until frames have been written or the connection is closed.
+		 * Must be called while holding the lock on this connection.
+		 */
+		private void awaitWrite() throws InterruptedException {
+			if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+				// a pooled event loop waiting for the socket blocks a shared scheduler worker:
+				// allow the pool to compensate by activating a spare worker
+				final ChannelConnection conn = this;
+				final long written = written_;
+				ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+					public boolean block() throws InterruptedException {
+						conn.wait();
+						return true;
+					}
+					public boolean isReleasable() {
+						return written_ != written || closed_;
+					}
+				});
+			} else {
+				wait();
+			}
+		}
+		
+		/**
+		 * Writes as many queued frames as the socket accepts, using gathering writes.
+		 * Must be called while holding the lock on this connection.
+		 * @return true if the write queue is empty
+		 */
+		boolean flushQueue() throws IOException {
+			long written = written_;
+			while (!writeQueue_.isEmpty()) {
+				ByteBuffer[] frames = new ByteBuffer[Math.min(writeQueue_.size(), _MAX_GATHER_)];
+				Iterator iter = writeQueue_.iterator();
+				for (int i = 0; i < frames.length; i++) {
+					frames[i] = (ByteBuffer) iter.next();
+				}
+				long count = channel_.write(frames);
+				while (!writeQueue_.isEmpty() && !((ByteBuffer) writeQueue_.getFirst()).hasRemaining()) {
+					queuedBytes_ -= ((ByteBuffer) writeQueue_.removeFirst()).limit();
+					written_++;
+				}
+				if (count == 0) {
+					break;
+				}
+			}
+			if (written_ != written) {
+				notifyAll();
+			}
+			return writeQueue_.isEmpty();
+		}
+		
+	}
+	
+	public String toString() {
+		return super.getName();
+	}
+	
+}
@@ -32,11 +32,11 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import edu.vub.at.actors.ATFarReference;
+import edu.vub.at.actors.eventloops.EventLoopLocal;
 import edu.vub.at.actors.natives.ELActor;
 import edu.vub.at.actors.natives.NATAsyncMessage;
 import edu.vub.at.exceptions.InterpreterException;
@@ -80,57 +80,57 @@ public final class Evaluator {
 	public static final AGSymbol _HASHC_NAME_    = AGSymbol.jAlloc("hashCode");
 
 	/**
-	 * A thread-local variable is used to assign a unique global scope to
+	 * An event loop local variable is used to assign a unique global scope to
 	 * each separate actor. Each actor that invokes the getGlobalLexicalScope
 	 * method receives its own separate copy of the global scope
 	 */
-	private static final ThreadLocal _GLOBAL_SCOPE_ = new ThreadLocal() {
+	private static final EventLoopLocal _GLOBAL_SCOPE_ = new EventLoopLocal() {
 	    protected synchronized Object initialValue() {
 	        return createGlobalLexicalScope();
 	    }
 	};
 	
 	/**
-	 * A thread-local variable is used to assign a unique lobby namespace to
+	 * An event loop local variable is used to assign a unique lobby namespace to
 	 * each separate actor. Each actor that invokes the getLobby()
 	 * method receives its own separate copy of the lobby namespace
 	 */
-	private static final ThreadLocal _LOBBY_NAMESPACE_ = new ThreadLocal() {
+	private static final EventLoopLocal _LOBBY_NAMESPACE_ = new EventLoopLocal() {
 	    protected synchronized Object initialValue() {
 	        return createLobbyNamespace();
 	    }
 	};
 	
 	/**
-	 * A thread-local variable is used to assign a unique jlobby root to
+	 * An event loop local variable is used to assign a unique jlobby root to
 	 * each separate actor. The jlobby root is the root JavaPackage from
 	 * which other Java packages can be loaded. Each actor that invokes the getJLobbyRoot()
 	 * method receives its own separate copy of the jlobby root
 	 */
-	private static final ThreadLocal _JLOBBY_ROOT_ = new ThreadLocal() {
+	private static final EventLoopLocal _JLOBBY_ROOT_ = new EventLoopLocal() {
 	    protected synchronized Object initialValue() {
 	        return createJLobbyRoot();
 	    }
 	};
 	
 	/**
-	 * A thread-local variable is used to assign a unique mirror root to
+	 * An event loop local variable is used to assign a unique mirror root to
 	 * each separate actor. The mirror root encapsulates the default semantics
 	 * for AmbientTalk objects and is the parent of most interecessive custom mirrors
 	 * defined by AmbientTalk programmers themselves.
 	 */
-	private static final ThreadLocal _MIRROR_ROOT_ = new ThreadLocal() {
+	private static final EventLoopLocal _MIRROR_ROOT_ = new EventLoopLocal() {
 	    protected synchronized Object initialValue() {
 	        return createMirrorRoot();
 	    }
 	};
 	
 	/**
-	 * A thread-local variable is used to assign a unique nil object to
+	 * An event loop local variable is used to assign a unique nil object to
 	 * each separate actor. This object is the root of the delegation
 	 * chain of all objects owned by that actor.
 	 */
-	private static final ThreadLocal _NIL_ = new ThreadLocal() {
+	private static final EventLoopLocal _NIL_ = new EventLoopLocal() {
 	    protected synchronized Object initialValue() {
 	        return createNil();
 	    }
@@ -224,24 +224,83 @@ public final class Evaluator {
 	 * TODO(coercers) currently does not work for user-defined tables
 	 */
 	public static final NATTable evaluateArguments(NATTable args, ATContext ctx) throws InterpreterException {
-		if (args == NATTable.EMPTY) return NATTable.EMPTY;
-		
+		if (containsSplice(args)) {
+			return evaluateSplicedArguments(args, ctx);
+		} else {
+			return evaluateUnsplicedArguments(args, ctx);
+		}
+	}
+	
+	/**
+	 * @return whether one of the given argument expressions is a spliced expression (i.e. <tt>@exp</tt>).
+	 * AST nodes call this method only once and remember the outcome, such that they can
+	 * subsequently evaluate their arguments without checking for splices.
+	 */
+	public static final boolean containsSplice(NATTable args) throws InterpreterException {
 		ATObject[] els = args.elements_;
-		
-		LinkedList result = new LinkedList();
+		for (int i = 0; i < els.length; i++) {
+			if (els[i].isSplice()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Evaluates argument expressions that are known not to contain any splices straight into
+	 * a table of the same size. Calls with up to three arguments, which are by far the most
+	 * common ones, are evaluated without looping.
+	 */
+	public static final NATTable evaluateUnsplicedArguments(NATTable args, ATContext ctx) throws InterpreterException {
+		ATObject[] els = args.elements_;
+		switch (els.length) {
+		case 0:
+			return NATTable.EMPTY;
+		case 1:
+			return NATTable.atValue(new ATObject[] { els[0].meta_eval(ctx) });
+		case 2:
+			// array initializers are evaluated from left to right
+			return NATTable.atValue(new ATObject[] { els[0].meta_eval(ctx), els[1].meta_eval(ctx) });
+		case 3:
+			return NATTable.atValue(new ATObject[] { els[0].meta_eval(ctx), els[1].meta_eval(ctx), els[2].meta_eval(ctx) });
+		default:
+			ATObject[] result = new ATObject[els.length];
+			for (int i = 0; i < els.length; i++) {
+				result[i] = els[i].meta_eval(ctx);
+			}
+			return NATTable.atValue(result);
+		}
+	}
+	
+	/**
+	 * Evaluates argument expressions, some of which are spliced expressions whose
+	 * value is a table whose elements are all passed as separate arguments.
+	 */
+	public static final NATTable evaluateSplicedArguments(NATTable args, ATContext ctx) throws InterpreterException {
+		ATObject[] els = args.elements_;
+		// first evaluate all arguments to determine the size of the result
+		ATObject[] values = new ATObject[els.length];
+		ATObject[][] spliced = new ATObject[els.length][];
 		int siz = els.length;
 		for (int i = 0; i < els.length; i++) {
 			if (els[i].isSplice()) {
-				ATObject[] tbl = els[i].asSplice().base_expression().meta_eval(ctx).asNativeTable().elements_;
-				for (int j = 0; j < tbl.length; j++) {
-					result.add(tbl[j]);
-				}
-				siz += (tbl.length - 1); // -1 because we replace one element by a table of elements
+				spliced[i] = els[i].asSplice().base_expression().meta_eval(ctx).asNativeTable().elements_;
+				siz += (spliced[i].length - 1); // -1 because we replace one element by a table of elements
+			} else {
+				values[i] = els[i].meta_eval(ctx);
+			}
+		}
+		ATObject[] result = new ATObject[siz];
+		int idx = 0;
+		for (int i = 0; i < els.length; i++) {
+			if (spliced[i] != null) {
+				System.arraycopy(spliced[i], 0, result, idx, spliced[i].length);
+				idx += spliced[i].length;
 			} else {
-				result.add(els[i].meta_eval(ctx));
+				result[idx++] = values[i];
 			}
 		}
-		return NATTable.atValue((ATObject[]) result.toArray(new ATObject[siz]));
+		return NATTable.atValue(result);
 	}
 	
 	/**
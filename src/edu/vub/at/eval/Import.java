@@ -396,6 +396,18 @@ public final class Import {
 			delegate_ = delegate;
 		}
 		
+		/**
+		 * @return the object to which this method delegates
+		 */
+		public ATObject getDelegate() { return delegate_; }
+		
+		/**
+		 * @return a delegate method with the same name that delegates to the given object instead
+		 */
+		public DelegateMethod withDelegate(ATObject delegate) throws InterpreterException {
+			return new DelegateMethod(super.base_name(), origMethodName_, delegate);
+		}
+		
 		public boolean isNativeDelegateMethod() { return true; }
 		public DelegateMethod asNativeDelegateMethod() { return this; }
 		
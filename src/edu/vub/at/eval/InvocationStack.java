@@ -27,6 +27,9 @@
  */
 package edu.vub.at.eval;
 
+import edu.vub.at.actors.eventloops.EventLoop;
+import edu.vub.at.actors.eventloops.EventLoopLocal;
+import edu.vub.at.actors.natives.ELActor;
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.objects.ATAbstractGrammar;
 import edu.vub.at.objects.ATClosure;
@@ -40,9 +43,7 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.Iterator;
-import java.util.ListIterator;
 import java.util.Set;
-import java.util.Stack;
 import java.util.Vector;
 
 /**
@@ -50,22 +51,47 @@ import java.util.Vector;
  * that are currently activated in an actor's thread. It is mainly used for debugging purposes
  * (e.g. generating stack trace information)
  * 
+ * A live invocation stack records invocations in reusable slots of parallel arrays, such that
+ * calls do not allocate. Invocations are only materialized into frame objects when the stack
+ * is captured, i.e. when an {@link InterpreterException} is created.
+ * 
  * @author tvc
  */
 public final class InvocationStack implements Cloneable, Serializable {
 
 	/**
-	 * A thread-local variable is used to assign a unique invocation stack to
-	 * each separate actor. Each actor that invokes the getInvocationStack()
-	 * method receives its own separate copy of the invocation stack
+	 * Setting this system property to true disables the recording of invocations.
+	 * Stack traces of AmbientTalk exceptions are then empty.
+	 */
+	private static final String _ENV_AT_NO_INVOCATION_STACK_ = "AT_NO_INVOCATION_STACK";
+	
+	private static final boolean _ENABLED_ = !Boolean.getBoolean(_ENV_AT_NO_INVOCATION_STACK_);
+	
+	/**
+	 * The stack returned to all threads if the recording of invocations is disabled.
+	 */
+	private static final InvocationStack _DISABLED_ = new InvocationStack(new InvocationFrame[0]);
+	
+	private static final int _INITIAL_DEPTH_ = 32;
+	
+	/**
+	 * An event loop local variable is used to assign a unique invocation stack to
+	 * each separate event loop or thread that is not an actor. Actors store their own invocation stack.
 	 */
-	private static final ThreadLocal _INVOCATION_STACK_ = new ThreadLocal() {
+	private static final EventLoopLocal _INVOCATION_STACK_ = new EventLoopLocal() {
 	    protected synchronized Object initialValue() {
 	        return new InvocationStack();
 	    }
 	};
 	
 	public static final InvocationStack getInvocationStack() {
+		if (!_ENABLED_) {
+			return _DISABLED_;
+		}
+		EventLoop current = EventLoop.currentEventLoopOrNull();
+		if (current instanceof ELActor) {
+			return ((ELActor) current).getInvocationStack();
+		}
 		return (InvocationStack) _INVOCATION_STACK_.get();
 	}
 	
@@ -91,66 +117,131 @@ public final class InvocationStack implements Cloneable, Serializable {
 		}
 	}
 	
-	private final Stack invocationStack_;
+	// the slots of a live stack, the top of the stack is at index size_ - 1
+	private transient ATAbstractGrammar[] invocations_;
+	private transient ATObject[] receivers_;
+	private transient ATTable[] arguments_;
+	private transient int size_;
+	
+	/**
+	 * The frames of a captured stack, ordered from bottom to top, or null for a live stack.
+	 */
+	private final InvocationFrame[] frames_;
 	
-	protected InvocationStack() {
-		invocationStack_ = new Stack();
+	public InvocationStack() {
+		invocations_ = new ATAbstractGrammar[_INITIAL_DEPTH_];
+		receivers_ = new ATObject[_INITIAL_DEPTH_];
+		arguments_ = new ATTable[_INITIAL_DEPTH_];
+		size_ = 0;
+		frames_ = null;
 	}
 	
-	private InvocationStack(Stack initstack) {
-		invocationStack_ = initstack;
+	private InvocationStack(InvocationFrame[] frames) {
+		frames_ = frames;
 	}
 	
 	public void methodInvoked(ATAbstractGrammar methodInvocation, ATObject receiver, ATTable args) throws InterpreterException {
-		invocationStack_.push(new InvocationFrame(methodInvocation, receiver, args));
+		push(methodInvocation, receiver, args);
 	}
 	
 	public void functionCalled(ATAbstractGrammar funCall, ATClosure fun, ATTable evaluatedArgs) {
-		invocationStack_.push(new InvocationFrame(funCall, fun, evaluatedArgs));
+		push(funCall, fun, evaluatedArgs);
 	}
 	
 	/**
 	 * @param result if null, the method invocation was aborted via an exception
 	 */
 	public void methodReturned(ATObject result) {
-		invocationStack_.pop();
+		pop();
 	}
 	
 	/**
 	 * @param result if null, the function call was aborted via an exception
 	 */
 	public void funcallReturned(ATObject result) {
-		invocationStack_.pop();
+		pop();
+	}
+	
+	private void push(ATAbstractGrammar invocation, ATObject receiver, ATTable args) {
+		if (frames_ != null) {
+			return; // captured or disabled stacks do not record invocations
+		}
+		int top = size_;
+		if (top == invocations_.length) {
+			grow();
+		}
+		invocations_[top] = invocation;
+		receivers_[top] = receiver;
+		arguments_[top] = args;
+		size_ = top + 1;
+	}
+	
+	private void pop() {
+		if (frames_ != null) {
+			return;
+		}
+		int top = --size_;
+		// clear the slot such that it does not keep the receiver and arguments alive
+		invocations_[top] = null;
+		receivers_[top] = null;
+		arguments_[top] = null;
+	}
+	
+	private void grow() {
+		int len = invocations_.length * 2;
+		ATAbstractGrammar[] invocations = new ATAbstractGrammar[len];
+		ATObject[] receivers = new ATObject[len];
+		ATTable[] arguments = new ATTable[len];
+		System.arraycopy(invocations_, 0, invocations, 0, size_);
+		System.arraycopy(receivers_, 0, receivers, 0, size_);
+		System.arraycopy(arguments_, 0, arguments, 0, size_);
+		invocations_ = invocations;
+		receivers_ = receivers;
+		arguments_ = arguments;
+	}
+	
+	/**
+	 * @return the frames of this stack, ordered from bottom to top
+	 */
+	private InvocationFrame[] frames() {
+		if (frames_ != null) {
+			return frames_;
+		}
+		InvocationFrame[] frames = new InvocationFrame[size_];
+		for (int i = 0; i < frames.length; i++) {
+			frames[i] = new InvocationFrame(invocations_[i], receivers_[i], arguments_[i]);
+		}
+		return frames;
 	}
 	
 	public void printStackTrace(PrintStream s) {
-		if(!invocationStack_.isEmpty()) {
+		InvocationFrame[] frames = frames();
+		if (frames.length > 0) {
 			s.println("origin:");
-			// iterator loops from bottom to top by default
-			ListIterator i = invocationStack_.listIterator();
-			while (i.hasNext()) { i.next(); } // skip to last element
-			while(i.hasPrevious()) { // traverse stack top to bottom
-				InvocationFrame frame = (InvocationFrame) i.previous();
-				s.println("at "+frame);
+			for (int i = frames.length - 1; i >= 0; i--) { // traverse stack top to bottom
+				s.println("at "+frames[i]);
 			}
 		}
 	}
 	
 	public void printStackTrace(PrintWriter s) {
-		if(!invocationStack_.isEmpty()) {
+		InvocationFrame[] frames = frames();
+		if (frames.length > 0) {
 			s.println("origin:");
-			// iterator loops from bottom to top by default
-			ListIterator i = invocationStack_.listIterator();
-			while (i.hasNext()) { i.next(); } // skip to last element
-			while(i.hasPrevious()) { // traverse stack top to bottom
-				InvocationFrame frame = (InvocationFrame) i.previous();
-				s.println("at "+frame);
+			for (int i = frames.length - 1; i >= 0; i--) { // traverse stack top to bottom
+				s.println("at "+frames[i]);
 			}
 		}
 	}
 	
+	/**
+	 * @return a captured copy of this stack, which is not affected by subsequent invocations
+	 */
 	public Object clone() {
-		return new InvocationStack((Stack) invocationStack_.clone());
+		if (frames_ != null) {
+			return this; // captured stacks are immutable
+		}
+		return new InvocationStack(frames());
 	}
 	
 	/**
@@ -158,13 +249,11 @@ public final class InvocationStack implements Cloneable, Serializable {
 	 * debugger such as Causeway.
 	 */
 	public Trace generateTrace(Set sourceFilter) {
-		Vector callsites = new Vector(invocationStack_.size());
-		// iterator loops from bottom to top by default
-		ListIterator i = invocationStack_.listIterator();
+		InvocationFrame[] frames = frames();
+		Vector callsites = new Vector(frames.length);
 		
-		while (i.hasNext()) { i.next(); } // skip to last element
-		Loop: while(i.hasPrevious()) { // traverse stack top to bottom
-			InvocationFrame frame = (InvocationFrame) i.previous();
+		Loop: for (int i = frames.length - 1; i >= 0; i--) { // traverse stack top to bottom
+			InvocationFrame frame = frames[i];
 			SourceLocation loc = frame.invocation.impl_getLocation();
 			String source = null;
 			int[][] span = null;
@@ -90,18 +90,27 @@ public abstract class PartialBinder implements Serializable {
 		public void bindParamToArg(ATObject inScope, ATSymbol param, ATObject arg) throws InterpreterException;
 	}
 	
+	// the binder closures are stateless, so they are shared rather than allocated upon each binding
+	
+	private static final BindClosure _DEFINE_ = new BindClosure() {
+		public void bindParamToArg(ATObject scope, ATSymbol param, ATObject arg) throws InterpreterException {
+			scope.meta_defineField(param, arg);
+		}
+	};
+	
+	private static final BindClosure _ASSIGN_ = new BindClosure() {
+		public void bindParamToArg(ATObject scope, ATSymbol param, ATObject arg) throws InterpreterException {
+			scope.impl_call(param.asAssignmentSymbol(), NATTable.of(arg));
+			// scope.meta_assignVariable(param, arg);
+		}
+	};
+	
 	/**
 	 * Bind all of the given parameters as newly defined slots in the given scope to the given arguments.
 	 * The scope is defined as the lexical scope of the given context.
 	 */
 	public static final void defineParamsForArgs(PartialBinder residual, ATContext context, ATTable arguments) throws InterpreterException {
-		residual.bind(arguments.asNativeTable().elements_, context, new BindClosure() {
-          private static final long serialVersionUID = -2475956316807558569L;
-
-			public void bindParamToArg(ATObject scope, ATSymbol param, ATObject arg) throws InterpreterException {
-				scope.meta_defineField(param, arg);
-			}
-		});
+		residual.bind(arguments.asNativeTable().elements_, context, _DEFINE_);
 	}
 	
 	/**
@@ -109,14 +118,7 @@ public abstract class PartialBinder implements Serializable {
 	 * The scope is defined as the lexical scope of the given context.
 	 */
 	public static final void assignArgsToParams(PartialBinder residual, ATContext context, ATTable arguments) throws InterpreterException {
-		residual.bind(arguments.asNativeTable().elements_, context, new BindClosure() {
-		    private static final long serialVersionUID = -247595631680755870L;
-
-			public void bindParamToArg(ATObject scope, ATSymbol param, ATObject arg) throws InterpreterException {
-				scope.impl_call(param.asAssignmentSymbol(), NATTable.of(arg));
-				// scope.meta_assignVariable(param, arg);
-			}
-		});
+		residual.bind(arguments.asNativeTable().elements_, context, _ASSIGN_);
 	}
 	
 	/**
@@ -29,7 +29,6 @@ package edu.vub.at.objects.coercion;
 
 import edu.vub.at.actors.eventloops.BlockingFuture;
 import edu.vub.at.actors.eventloops.EventLoop;
-import edu.vub.at.actors.eventloops.EventLoop.EventProcessor;
 import edu.vub.at.actors.natives.ELActor;
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.exceptions.XIllegalOperation;
@@ -74,9 +73,14 @@ public final class Coercer implements InvocationHandler, Serializable {
 	// we have to remember which thread owned the principal
 	private transient Thread wrappingThread_;
 	
-	private Coercer(ATObject principal, Thread owningThread) {
+	// and which event loop that thread was serving, if any: event loops scheduled
+	// on the shared scheduler pool do not own their thread
+	private transient EventLoop wrappingLoop_;
+	
+	private Coercer(ATObject principal, Thread owningThread, EventLoop owningLoop) {
 		principal_ = principal;
 		wrappingThread_ = owningThread;
+		wrappingLoop_ = owningLoop;
 	}
 	
 	public String toString() {
@@ -97,7 +101,7 @@ public final class Coercer implements InvocationHandler, Serializable {
 	 * @throws XTypeMismatch if the coercion fails
 	 */
 	public static final Object coerce(ATObject object, Class type) throws XTypeMismatch {
-		return coerce(object, type, Thread.currentThread());
+		return coerce(object, type, Thread.currentThread(), EventLoop.currentEventLoopOrNull());
 	}
 
 	/**
@@ -115,6 +119,10 @@ public final class Coercer implements InvocationHandler, Serializable {
 	 * @throws XTypeMismatch if the coercion fails
 	 */
 	public static final Object coerce(ATObject object, Class type, Thread owningThread) throws XTypeMismatch {
+		return coerce(object, type, owningThread, EventLoop.servedBy(owningThread));
+	}
+	
+	private static final Object coerce(ATObject object, Class type, Thread owningThread, EventLoop owningLoop) throws XTypeMismatch {
 		if (type.isInstance(object)) { // object instanceof type
 			return object; // no need to coerce
 		} else if (type.isInterface()) {
@@ -134,7 +142,7 @@ public final class Coercer implements InvocationHandler, Serializable {
 			// and the Symbiotic object marker interface to identify it as a wrapper
 			return Proxy.newProxyInstance(loader,
                     new Class[] { type, ATObject.class },
-                    new Coercer(object, owningThread));	
+                    new Coercer(object, owningThread, owningLoop));	
 		} else {
 			throw new XTypeMismatch(type, object);
 		}
@@ -146,14 +154,14 @@ public final class Coercer implements InvocationHandler, Serializable {
 		// similarly, handle any native AT methods by simply forwarding them to the native AT object
 		if (methodImplementor == Object.class || methodImplementor == ATObject.class) {
 			// invoke these methods on the principal rather than on the proxy
-			if (Thread.currentThread() != wrappingThread_) {
-				if (Thread.currentThread() instanceof EventProcessor) {
+			if (!isOwnerThread()) {
+				if (EventLoop.currentEventLoopOrNull() != null) {
 					// another event loop has direct access to this object, this means
 					// an AT object has been shared between actors via Java, signal an error
 					throw new XIllegalOperation("Detected illegal invocation of "+method.getName()+": sharing via Java level of object " + principal_);
 				}
 				
-				ELActor owningActor = (ELActor) EventLoop.toEventLoop(wrappingThread_);
+				ELActor owningActor = (ELActor) owningEventLoop();
 				
 				// synchronous symbiotic invocation
 				BlockingFuture future = owningActor.sync_event_symbioticForwardInvocation(principal_, method, arguments);
@@ -171,14 +179,14 @@ public final class Coercer implements InvocationHandler, Serializable {
 			// if the current thread is not an actor thread, treat the Java invocation
 			// as a message send instead and enqueue it in my actor's thread
 			
-			if (Thread.currentThread() != wrappingThread_) {
-				if (Thread.currentThread() instanceof EventProcessor) {
+			if (!isOwnerThread()) {
+				if (EventLoop.currentEventLoopOrNull() != null) {
 					// another event loop has direct access to this object, this means
 					// an AT object has been shared between actors via Java, signal an error
 					throw new XIllegalOperation("Detected illegal invocation of "+method.getName()+": sharing via Java level of object " + principal_);
 				}
 				
-				ELActor owningActor = (ELActor) EventLoop.toEventLoop(wrappingThread_);
+				ELActor owningActor = (ELActor) owningEventLoop();
 				
 				// if the invoked method is part of an EventListener interface, treat the
 				// invocation as a pure asynchronous message send, if the returntype is void
@@ -214,6 +222,28 @@ public final class Coercer implements InvocationHandler, Serializable {
 	private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
 		in.defaultReadObject();
 		wrappingThread_ = Thread.currentThread();
+		wrappingLoop_ = EventLoop.currentEventLoopOrNull();
+	}
+	
+	/**
+	 * Tests whether the current thread is the owner of the principal, i.e. whether it is
+	 * serving the owning event loop or, if the principal is not owned by an event loop,
+	 * whether it is the owning thread itself.
+	 */
+	private boolean isOwnerThread() {
+		if (wrappingLoop_ != null) {
+			return EventLoop.currentEventLoopOrNull() == wrappingLoop_;
+		} else {
+			return Thread.currentThread() == wrappingThread_;
+		}
+	}
+	
+	private EventLoop owningEventLoop() throws IllegalStateException {
+		if (wrappingLoop_ != null) {
+			return wrappingLoop_;
+		} else {
+			return EventLoop.toEventLoop(wrappingThread_);
+		}
 	}
 	
 	public static ATObject[] convertArguments(Object[] arguments) throws InterpreterException {
@@ -101,6 +101,9 @@ public final class NativeTypeTags {
 	
 //deftype FarReference;
 	public final static NATTypeTag _FARREF_ = NATTypeTag.atValue("FarReference");	
+	
+//deftype Future;
+	public final static NATTypeTag _FUTURE_ = NATTypeTag.atValue("Future");
 
 // abstract grammar
 //deftype AbstractGrammar;
@@ -233,6 +236,9 @@ public final class NativeTypeTags {
 //deftype SerializationError <: Exception;
 	public final static NATTypeTag _SERIALIZATIONERROR_ = NATTypeTag.atValue("SerializationError", _EXCEPTION_);
 
+//deftype MailboxFull <: Exception;
+	public final static NATTypeTag _MAILBOXFULL_ = NATTypeTag.atValue("MailboxFull", _EXCEPTION_);
+
     // misc
     
 
@@ -127,31 +127,34 @@ public abstract class DirectNativeMethod extends NATByRef implements ATMethod {
 	 * Auxiliary method to more easily extract arguments from an ATTable
 	 */
 	protected static ATObject get(ATTable args, int n) throws InterpreterException {
+		if (args instanceof NATTable) {
+			return ((NATTable) args).impl_at(n);
+		}
 		return args.base_at(NATNumber.atValue(n));
 	}
 
 	protected static int getNbr(ATTable args, int n) throws InterpreterException {
-		return args.base_at(NATNumber.atValue(n)).asNativeNumber().javaValue;
+		return get(args, n).asNativeNumber().asInt();
 	}
 	
 	protected static double getFrc(ATTable args, int n) throws InterpreterException {
-		return args.base_at(NATNumber.atValue(n)).asNativeFraction().javaValue;
+		return get(args, n).asNativeFraction().javaValue;
 	}
 	
 	protected static String getTxt(ATTable args, int n) throws InterpreterException {
-		return args.base_at(NATNumber.atValue(n)).asNativeText().javaValue;
+		return get(args, n).asNativeText().javaValue;
 	}
 	
 	protected static boolean getBln(ATTable args, int n) throws InterpreterException {
-		return args.base_at(NATNumber.atValue(n)).asNativeBoolean().javaValue;
+		return get(args, n).asNativeBoolean().javaValue;
 	}
 	
 	protected static Object[] getTab(ATTable args, int n) throws InterpreterException {
-		return args.base_at(NATNumber.atValue(n)).asNativeTable().elements_;
+		return get(args, n).asNativeTable().elements_;
 	}
 	
 	protected static void checkArity(ATTable args, int required) throws InterpreterException {
-		int provided = args.base_length().asNativeNumber().javaValue;
+		int provided = args.base_length().asNativeNumber().asInt();
 		if (provided != required) {
 			throw new XArityMismatch(Evaluator._ANON_MTH_NAM_.toString(), required, provided);
 		}
@@ -159,11 +162,11 @@ public abstract class DirectNativeMethod extends NATByRef implements ATMethod {
 	
 	protected static void checkNullaryArguments(ATSymbol selector, ATTable args) throws InterpreterException {
 		if (args != NATTable.EMPTY)
-			throw new XArityMismatch("access to non-closure field " + selector.toString(), 0, args.base_length().asNativeNumber().javaValue);
+			throw new XArityMismatch("access to non-closure field " + selector.toString(), 0, args.base_length().asNativeNumber().asInt());
 	}
 	
 	protected static ATObject checkUnaryArguments(ATSymbol selector, ATTable args) throws InterpreterException {
-    	int len = args.base_length().asNativeNumber().javaValue;
+    	int len = args.base_length().asNativeNumber().asInt();
 		if (len != 1)
 			throw new XArityMismatch("mutation of field " + selector.toString(), 1, len);
 		return args.base_at(NATNumber.ONE);
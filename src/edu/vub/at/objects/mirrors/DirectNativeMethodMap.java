@@ -0,0 +1,128 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.mirrors;
+
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATMethod;
+import edu.vub.at.objects.grammar.ATSymbol;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+
+/**
+ * A DirectNativeMethodMap maps selectors onto the {@link DirectNativeMethod}s of a native type.
+ * It is populated while its native class is initialized and only read afterwards, such that
+ * it can be shared without synchronization by all actors on this VM.
+ *
+ * Selectors are pooled {@link AGSymbol}s, so the map is an open-addressing hash table keyed
+ * by symbol identity: a lookup neither converts the selector into a string nor hashes its text.
+ */
+public final class DirectNativeMethodMap {
+
+	private ATSymbol[] keys_ = new ATSymbol[16];
+	private ATMethod[] values_ = new ATMethod[16];
+	private int size_ = 0;
+	
+	/**
+	 * Adds a native method to the map. Only to be invoked while initializing the native class.
+	 */
+	public void put(String selector, ATMethod method) {
+		// keep the table at most one quarter full, such that probe sequences remain short
+		if ((size_ + 1) * 4 > keys_.length) {
+			rehash(keys_.length * 2);
+		}
+		if (insert(keys_, values_, AGSymbol.jAlloc(selector), method)) {
+			size_++;
+		}
+	}
+	
+	/**
+	 * @return the native method for the given selector, or null if there is none
+	 */
+	public ATMethod get(ATSymbol selector) throws InterpreterException {
+		if (!(selector instanceof AGSymbol)) {
+			// a symbol implemented by an AmbientTalk object: look up its pooled equivalent
+			selector = AGSymbol.alloc(selector.base_text().asNativeText());
+		}
+		return lookup(selector);
+	}
+	
+	/**
+	 * @return the native method for the given selector, or null if there is none
+	 */
+	public ATMethod get(String selector) {
+		return lookup(AGSymbol.jAlloc(selector));
+	}
+	
+	public boolean containsKey(ATSymbol selector) throws InterpreterException {
+		return get(selector) != null;
+	}
+	
+	public int size() {
+		return size_;
+	}
+	
+	private ATMethod lookup(ATSymbol selector) {
+		ATSymbol[] keys = keys_;
+		int mask = keys.length - 1;
+		for (int i = System.identityHashCode(selector) & mask; keys[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == selector) {
+				return values_[i];
+			}
+		}
+		return null;
+	}
+	
+	private void rehash(int capacity) {
+		ATSymbol[] keys = new ATSymbol[capacity];
+		ATMethod[] values = new ATMethod[capacity];
+		for (int i = 0; i < keys_.length; i++) {
+			if (keys_[i] != null) {
+				insert(keys, values, keys_[i], values_[i]);
+			}
+		}
+		keys_ = keys;
+		values_ = values;
+	}
+	
+	/**
+	 * @return true if the key was not yet present
+	 */
+	private static boolean insert(ATSymbol[] keys, ATMethod[] values, ATSymbol key, ATMethod value) {
+		int mask = keys.length - 1;
+		int i = System.identityHashCode(key) & mask;
+		while (keys[i] != null) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		return true;
+	}
+	
+}
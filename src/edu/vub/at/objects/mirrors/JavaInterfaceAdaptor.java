@@ -32,7 +32,6 @@ import edu.vub.at.exceptions.XArityMismatch;
 import edu.vub.at.exceptions.XIllegalArgument;
 import edu.vub.at.exceptions.XIllegalOperation;
 import edu.vub.at.exceptions.XReflectionFailure;
-import edu.vub.at.exceptions.XSelectorNotFound;
 import edu.vub.at.exceptions.XTypeMismatch;
 import edu.vub.at.exceptions.signals.Signal;
 import edu.vub.at.objects.ATObject;
@@ -69,13 +68,7 @@ public class JavaInterfaceAdaptor {
 	 * @return whether a methods with a matching selector can be found
 	 */
 	public static boolean hasApplicableJavaMethod(Class jClass, String jSelector) {
-		Method[] allMethods = jClass.getMethods();
-		for (int i = 0; i < allMethods.length; i++) {
-			if (allMethods[i].getName().equals(jSelector)) {
-				return true;
-			}
-		}
-		return false;
+		return NativeMethodTable.forClass(jClass).methodsNamed(jSelector).length > 0;
 	}
 	
 	/**
@@ -112,46 +105,12 @@ public class JavaInterfaceAdaptor {
 	 * @param jArguments the AT arguments to pass
 	 * @return the return value of the reflectively invoked method
 	 * 
+	 * The method is invoked by means of its {@link NativeInvoker}.
+	 * 
 	 * TODO: code duplication w.r.t. invokeSymbioticMethod => replace this method by calls to invokeSymbioticMethod?
 	 */
 	public static ATObject invokeNativeATMethod(Method javaMethod, ATObject jReceiver, ATObject[] jArguments) throws InterpreterException {
-		try {
-			// if the native method takes an array as its sole parameter, it is interpreted as taking
-			// a variable number of ambienttalk arguments
-			Class[] params = javaMethod.getParameterTypes();
-			Object[] args;
-			if ((params.length == 1) && params[0].equals(ATObject[].class)) {
-				args= new Object[] { jArguments };
-			} else {
-				if (params.length != jArguments.length) {
-					throw new XArityMismatch("native method "+Reflection.downSelector(javaMethod.getName()), params.length, jArguments.length);
-				}
-				// make sure to properly 'coerce' each argument into the proper AT interface type
-				args = coerceArguments(jArguments, params);
-			}
-			Object rval = javaMethod.invoke(jReceiver, args);
-			if (rval instanceof ATObject) {
-				return (ATObject) rval;
-			} else {
-				return primitiveJavaToATObject(rval);
-			}
-		} catch (IllegalAccessException e) {
-			// the invoked method is not publicly accessible
-			throw new XReflectionFailure("Native method "+Reflection.downSelector(javaMethod.getName()) + " not accessible.", e);
-		} catch (IllegalArgumentException e) {
-			// illegal argument types were supplied
-			throw new XIllegalArgument("Illegal argument for native method "+Reflection.downSelector(javaMethod.getName()) + ": " + e.getMessage(), e);
-		} catch (InvocationTargetException e) {
-			// the invoked method threw an exception
-			if (e.getTargetException() instanceof InterpreterException)
-				throw (InterpreterException) e.getTargetException();
-			else if (e.getTargetException() instanceof Signal) {
-			    throw (Signal) e.getTargetException();	
-			} else {
-				e.printStackTrace();
-				throw new XReflectionFailure("Native method "+Reflection.downSelector(javaMethod.getName())+" threw internal exception", e.getTargetException());
-		    }
-		}
+		return NativeInvoker.forMethod(javaMethod).invoke(jReceiver, jArguments);
 	}
 	
 	/**
@@ -197,15 +156,8 @@ public class JavaInterfaceAdaptor {
 			Class baseInterface, 
 			ATObject receiver,
 			String methodName, ATSymbol atSelector) throws InterpreterException {
-		Method[] applicable = getMethodsForSelector(baseInterface, methodName);
-		switch (applicable.length) {
-			case 0:
-				throw new XSelectorNotFound(atSelector, receiver);
-			case 1:
-				return applicable[0];
-			default:
-				throw new XIllegalOperation("Native method uses overloading: " + atSelector + " in " + baseInterface);
-		}
+		NativeMethodTable table = NativeMethodTable.forClass(baseInterface);
+		return table.select(table.methodsNamed(methodName), receiver, atSelector);
 	}
 	
 	/**
@@ -229,32 +181,6 @@ public class JavaInterfaceAdaptor {
 		return (Method[]) matchingMethods.toArray(new Method[matchingMethods.size()]);
 	}
 	
-	/**
-	 * Since Java uses strict matching when asked for a method, given an array of 
-	 * classes, this often means that the types are overspecified and therefore no
-	 * matches can be found. As a consequence we have our own mechanism to select
-	 * which set of methods is applicable given a selector. Further dispatch needs
-	 * only to be performed when more than a single match exists.
-	 * @param jClass - the class from which the methods will be selected.
-	 * @param selector - the name of the requested method.
-	 * @return an array of applicable methods
-	 */
-	private static Method[] getMethodsForSelector(Class jClass, String selector) {
-		Method[] allMethods = jClass.getMethods();
-		
-		Vector matchingMethods = new Vector();
-		int numMatchingMethods = 0;
-		
-		for (int i = 0; i < allMethods.length; i++) {
-			if (allMethods[i].getName().equals(selector)) {
-				matchingMethods.addElement(allMethods[i]);
-				numMatchingMethods++;
-			}
-		}
-		
-		return (Method[])matchingMethods.toArray(new Method[numMatchingMethods]);
-	}
-	
 	private static Object[] coerceArguments(ATObject[] args, Class[] types) throws XTypeMismatch {
 		Object[] coercedArgs = new Object[args.length];
 		for (int i = 0; i < args.length; i++) {
@@ -280,12 +206,13 @@ public class JavaInterfaceAdaptor {
 	 * Convert an primitive Java value to an AmbientTalk object
 	 * Supported mappings are:
 	 *  int -> NATNumber
+	 *  long -> NATNumber
 	 *  double -> NATFraction
 	 *  char -> NATText
 	 *  boolean -> NATBoolean
 	 *  void -> NIL
 	 *  
-	 *  float, byte, long and short are left as JavaObjects.
+	 *  float, byte and short are left as JavaObjects.
 	 *  They are not 'converted' into AmbientTalk primitives because of the opposite
 	 *  reasons why e.g. numbers cannot be converted automatically to long, short, etc.
 	 *  See the description of the 'atObjectToPrimitiveJava' method.
@@ -318,8 +245,7 @@ public class JavaInterfaceAdaptor {
 			//return NATNumber.atValue(((Byte) jObj).byteValue());
 		// long
 		} else if (jObj instanceof Long) {
-			return JavaObject.wrapperFor(jObj);
-			//return NATFraction.atValue(((Long) jObj).longValue());
+			return NATNumber.atValue(((Long) jObj).longValue());
 		// short
 		} else if (jObj instanceof Short) {
 			return JavaObject.wrapperFor(jObj);
@@ -332,18 +258,20 @@ public class JavaInterfaceAdaptor {
 	/**
 	 * Convert an ambienttalk object to a primitive type.
 	 * Supported mappings are:
-	 *  NATNumber -> int
+	 *  NATNumber -> int (if it fits in an int)
+	 *  NATNumber -> long
 	 *  NATFraction -> double
 	 *  NATText -> char
 	 *  NATBoolean -> boolean
 	 *  ATObject -> void
 	 *  
-	 *  Conversion to float, byte, long and short is not supported.
+	 *  Conversion to float, byte and short is not supported.
 	 *  The reason for this is that otherwise, symbiotic invocations
 	 *  will match with a lot of method signatures, and we would have to keep
 	 *  track of the 'best fitting match'. E.g. given methods m(int) m(long) and m(short)
 	 *  then invoking 'o.m(10)' in AmbientTalk would match all three methods.
-	 *  By disabling conversions from NATNumber to long and short, only one match remains.
+	 *  By disabling conversions from NATNumber to short, only m(int) and m(long) remain,
+	 *  and overloading resolution prefers m(int) for numbers that fit in an int.
 	 *  If conversion to any one of these primitive types is needed, use code such as:
 	 *    
 	 *    <code>jlobby.java.lang.Integer.new(10).longValue();</code>
@@ -351,7 +279,11 @@ public class JavaInterfaceAdaptor {
 	public static final Object atObjectToPrimitiveJava(ATObject atObj, Class type) throws XTypeMismatch, XIllegalArgument {
 		// integer
 		if (type == int.class || type == Integer.class) {
-			return new Integer(atObj.asNativeNumber().javaValue);
+			NATNumber nbr = atObj.asNativeNumber();
+			if (!nbr.isInt()) {
+				throw new XTypeMismatch(Integer.class, atObj);
+			}
+			return new Integer((int) nbr.javaValue);
 		// double
 		} else if (type == double.class || type == Double.class) {
 			return new Double(atObj.asNativeFraction().javaValue);
@@ -385,15 +317,18 @@ public class JavaInterfaceAdaptor {
 			//return Byte.valueOf((byte) atObj.asNativeNumber().javaValue);
 		// long
 		} else if (type == long.class || type == Long.class) {
-			// can only convert wrapped java.lang.Long
+			// wrapped java.lang.Long values remain convertible
 			if (atObj.isJavaObjectUnderSymbiosis()) {
 				Object wrapped = atObj.asJavaObjectUnderSymbiosis().getWrappedObject();
 				if (wrapped instanceof Long) {
 					return wrapped;
 				}
 			}
-			throw new XTypeMismatch(Long.class, atObj);
-			//return Long.valueOf((long) atObj.asNativeFraction().javaValue);
+			NATNumber nbr = atObj.asNativeNumber();
+			if (!nbr.isLong()) {
+				throw new XTypeMismatch(Long.class, atObj);
+			}
+			return new Long(nbr.javaValue);
 		// short
 		} else if (type == short.class || type == Short.class) {
 			// can only convert wrapped java.lang.Short
@@ -185,7 +185,7 @@ public class NATIntrospectiveMirror extends NATByRef {
 	 * @return <b>another</b> (possibly new) mirror object 
 	 */
 	public ATObject meta_newInstance(ATTable initargs) throws InterpreterException {
-    	int len = initargs.base_length().asNativeNumber().javaValue;
+    	int len = initargs.base_length().asNativeNumber().asInt();
 		if (len != 1)
 			throw new XArityMismatch("init method of mirror", 1, len);
 		ATObject reflectee = initargs.base_at(NATNumber.ONE);
@@ -230,7 +230,7 @@ public class NATIntrospectiveMirror extends NATByRef {
 	 * If this fails, try to find a <tt>base_</tt> method in the introspective mirror itself.
 	 */
 	protected boolean hasLocalMethod(ATSymbol atSelector) throws InterpreterException {
-        return Reflection.upRespondsTo(principal_, Reflection.upMetaLevelSelector(atSelector)) ||
+        return Reflection.upMetaLevelRespondsTo(principal_, atSelector) ||
                super.hasLocalMethod(atSelector);
 	}
 	
@@ -240,8 +240,7 @@ public class NATIntrospectiveMirror extends NATByRef {
 	 */
 	protected ATMethod getLocalMethod(ATSymbol selector) throws InterpreterException {
 		try {
-			String methSelector = Reflection.upMetaLevelSelector(selector);
-			return Reflection.upMethodSelection(principal_, methSelector, selector);
+			return Reflection.upMetaLevelMethodSelection(principal_, selector);
 		} catch (XSelectorNotFound e) {
 			e.catchOnlyIfSelectorEquals(selector);
 			return super.getLocalMethod(selector);
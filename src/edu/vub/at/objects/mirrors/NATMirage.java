@@ -68,7 +68,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Set;
-import java.util.Vector;
 
 /**
  * A NATMirage is an object that forwards all meta-operations invoked upon it (at
@@ -143,7 +142,7 @@ public class NATMirage extends NATObject {
 	 * 
 	 */
 	protected NATMirage(FieldMap map,
-			         Vector state,
+			         ATObject[] state,
 			         LinkedList customFields,
 			         MethodDictionary methodDict,
 			         ATObject dynamicParent,
@@ -165,7 +164,7 @@ public class NATMirage extends NATObject {
 	
 	// Called by the default NATObject Cloning algorithm
 	protected NATObject createClone(FieldMap map,
-			Vector state,
+			ATObject[] state,
 			LinkedList customFields,
 			MethodDictionary methodDict,
 			ATObject dynamicParent,
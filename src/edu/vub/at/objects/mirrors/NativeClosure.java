@@ -152,31 +152,34 @@ public class NativeClosure extends NATClosure {
 	 * Auxiliary method to more easily extract arguments from an ATTable
 	 */
 	public ATObject get(ATTable args, int n) throws InterpreterException {
+		if (args instanceof NATTable) {
+			return ((NATTable) args).impl_at(n);
+		}
 		return args.base_at(NATNumber.atValue(n));
 	}
 
 	public int getNbr(ATTable args, int n) throws InterpreterException {
-		return args.base_at(NATNumber.atValue(n)).asNativeNumber().javaValue;
+		return get(args, n).asNativeNumber().asInt();
 	}
 	
 	public double getFrc(ATTable args, int n) throws InterpreterException {
-		return args.base_at(NATNumber.atValue(n)).asNativeFraction().javaValue;
+		return get(args, n).asNativeFraction().javaValue;
 	}
 	
 	public String getTxt(ATTable args, int n) throws InterpreterException {
-		return args.base_at(NATNumber.atValue(n)).asNativeText().javaValue;
+		return get(args, n).asNativeText().javaValue;
 	}
 	
 	public boolean getBln(ATTable args, int n) throws InterpreterException {
-		return args.base_at(NATNumber.atValue(n)).asNativeBoolean().javaValue;
+		return get(args, n).asNativeBoolean().javaValue;
 	}
 	
 	public Object[] getTab(ATTable args, int n) throws InterpreterException {
-		return args.base_at(NATNumber.atValue(n)).asNativeTable().elements_;
+		return get(args, n).asNativeTable().elements_;
 	}
 	
 	public void checkArity(ATTable args, int required) throws InterpreterException {
-		int provided = args.base_length().asNativeNumber().javaValue;
+		int provided = args.base_length().asNativeNumber().asInt();
 		if (provided != required) {
 			throw new XArityMismatch(Evaluator._ANON_MTH_NAM_.toString(), required, provided);
 		}
@@ -184,11 +187,11 @@ public class NativeClosure extends NATClosure {
 	
 	public static void checkNullaryArguments(ATSymbol selector, ATTable args) throws InterpreterException {
 		if (args != NATTable.EMPTY)
-			throw new XArityMismatch("access to non-closure field " + selector.toString(), 0, args.base_length().asNativeNumber().javaValue);
+			throw new XArityMismatch("access to non-closure field " + selector.toString(), 0, args.base_length().asNativeNumber().asInt());
 	}
 	
     public static ATObject checkUnaryArguments(ATSymbol selector, ATTable args) throws InterpreterException {
-    	int len = args.base_length().asNativeNumber().javaValue;
+    	int len = args.base_length().asNativeNumber().asInt();
 		if (len != 1)
 			throw new XArityMismatch("mutation of field " + selector.toString(), 1, len);
 		return args.base_at(NATNumber.ONE);
@@ -206,7 +209,7 @@ public class NativeClosure extends NATClosure {
 		}
 		public ATObject base_apply(ATTable args) throws InterpreterException {
 			if (args != NATTable.EMPTY) {
-				throw new XArityMismatch("accessor for " + name_, 0, args.base_length().asNativeNumber().javaValue);
+				throw new XArityMismatch("accessor for " + name_, 0, args.base_length().asNativeNumber().asInt());
 			} else {
 				return access();
 			}
@@ -229,7 +232,7 @@ public class NativeClosure extends NATClosure {
 			name_ = name;
 		}
 		public ATObject base_apply(ATTable args) throws InterpreterException {
-			int len = args.base_length().asNativeNumber().javaValue;
+			int len = args.base_length().asNativeNumber().asInt();
 			if (len != 1) {
 				throw new XArityMismatch("mutator for " + name_, 1, len);
 			} else {
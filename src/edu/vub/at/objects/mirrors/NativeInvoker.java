@@ -0,0 +1,210 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.mirrors;
+
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.exceptions.XArityMismatch;
+import edu.vub.at.exceptions.XIllegalArgument;
+import edu.vub.at.exceptions.XReflectionFailure;
+import edu.vub.at.exceptions.signals.Signal;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.coercion.Coercer;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A NativeInvoker invokes a single Java method that implements a native AmbientTalk method.
+ * It is created once per method and shared by all actors on this VM.
+ *
+ * The invoker binds methods with up to three parameters to a generated class that implements
+ * one of the Arity interfaces by calling the method directly, such that an invocation neither
+ * re-examines the parameter types of the method nor goes through the access checks and argument
+ * array of {@link Method#invoke}. Other methods, and methods that cannot be bound, e.g. public
+ * methods of non-public classes or methods returning void, are invoked reflectively, so that
+ * they fail exactly as before.
+ *
+ * See {@link JavaInterfaceAdaptor#invokeNativeATMethod(Method, ATObject, ATObject[])} for the
+ * conventions of native methods.
+ */
+final class NativeInvoker {
+	
+	/** maps Java methods to their invoker, read without locking */
+	private static final ConcurrentHashMap<Method, NativeInvoker> _INVOKERS_ = new ConcurrentHashMap<Method, NativeInvoker>();
+	
+	/** a method bound to a receiver of its declaring class, invoked without arguments */
+	interface Arity0 { Object invoke(Object receiver) throws InterpreterException; }
+	
+	/** a method bound to a receiver of its declaring class, invoked with one argument */
+	interface Arity1 { Object invoke(Object receiver, Object arg1) throws InterpreterException; }
+	
+	/** a method bound to a receiver of its declaring class, invoked with two arguments */
+	interface Arity2 { Object invoke(Object receiver, Object arg1, Object arg2) throws InterpreterException; }
+	
+	/** a method bound to a receiver of its declaring class, invoked with three arguments */
+	interface Arity3 { Object invoke(Object receiver, Object arg1, Object arg2, Object arg3) throws InterpreterException; }
+	
+	private static final Class[] _ARITIES_ = { Arity0.class, Arity1.class, Arity2.class, Arity3.class };
+	
+	/**
+	 * Returns the (unique) invoker for the given method, creating it upon first use.
+	 */
+	static NativeInvoker forMethod(Method javaMethod) {
+		NativeInvoker invoker = _INVOKERS_.get(javaMethod);
+		if (invoker == null) {
+			// two threads may create an invoker for the same method, only one of them is kept
+			NativeInvoker existing = _INVOKERS_.putIfAbsent(javaMethod, invoker = new NativeInvoker(javaMethod));
+			if (existing != null) {
+				invoker = existing;
+			}
+		}
+		return invoker;
+	}
+	
+	private final Method method_;
+	
+	private final Class[] parameterTypes_;
+	
+	/** whether the method takes its arguments as a single ATObject[] parameter */
+	private final boolean variadic_;
+	
+	/** an instance of the Arity interface for the number of parameters, or null if the method is invoked reflectively */
+	private final Object binding_;
+	
+	private NativeInvoker(Method javaMethod) {
+		method_ = javaMethod;
+		parameterTypes_ = javaMethod.getParameterTypes();
+		variadic_ = (parameterTypes_.length == 1) && parameterTypes_[0].equals(ATObject[].class);
+		binding_ = bind(javaMethod, parameterTypes_);
+	}
+	
+	private static Object bind(Method javaMethod, Class[] parameterTypes) {
+		Class returnType = javaMethod.getReturnType();
+		if (Modifier.isStatic(javaMethod.getModifiers()) || parameterTypes.length >= _ARITIES_.length || returnType == void.class) {
+			return null;
+		}
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (parameterTypes[i].isPrimitive()) {
+				return null;
+			}
+		}
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle target = lookup.unreflect(javaMethod);
+			if (returnType.isPrimitive()) {
+				// primitive return values are boxed, and converted by primitiveJavaToATObject
+				returnType = MethodType.methodType(returnType).wrap().returnType();
+			}
+			Class arity = _ARITIES_[parameterTypes.length];
+			return LambdaMetafactory.metafactory(lookup, "invoke", MethodType.methodType(arity),
+					MethodType.genericMethodType(parameterTypes.length + 1), target,
+					target.type().changeReturnType(returnType)).getTarget().invoke();
+		} catch (Throwable e) {
+			// e.g. the method is not accessible: it is invoked reflectively instead
+			return null;
+		}
+	}
+	
+	Method method() {
+		return method_;
+	}
+	
+	ATObject invoke(ATObject receiver, ATObject[] arguments) throws InterpreterException {
+		Object[] args;
+		if (variadic_) {
+			// the native method takes a variable number of ambienttalk arguments
+			args = new Object[] { arguments };
+		} else {
+			if (parameterTypes_.length != arguments.length) {
+				throw new XArityMismatch("native method "+Reflection.downSelector(method_.getName()), parameterTypes_.length, arguments.length);
+			}
+			// make sure to properly 'coerce' each argument into the proper AT interface type,
+			// without consulting the coercer for the common case of arguments that already have it
+			args = new Object[arguments.length];
+			for (int i = 0; i < args.length; i++) {
+				args[i] = parameterTypes_[i].isInstance(arguments[i]) ? arguments[i] : Coercer.coerce(arguments[i], parameterTypes_[i]);
+			}
+		}
+		Object rval = (binding_ == null) ? invokeReflectively(receiver, args) : invokeBinding(receiver, args);
+		if (rval instanceof ATObject) {
+			return (ATObject) rval;
+		} else {
+			return JavaInterfaceAdaptor.primitiveJavaToATObject(rval);
+		}
+	}
+	
+	private Object invokeBinding(ATObject receiver, Object[] args) throws InterpreterException {
+		if (!method_.getDeclaringClass().isInstance(receiver)) {
+			throw new XIllegalArgument("Illegal argument for native method "+Reflection.downSelector(method_.getName()) + ": object is not an instance of declaring class");
+		}
+		try {
+			switch (args.length) {
+				case 0: return ((Arity0) binding_).invoke(receiver);
+				case 1: return ((Arity1) binding_).invoke(receiver, args[0]);
+				case 2: return ((Arity2) binding_).invoke(receiver, args[0], args[1]);
+				default: return ((Arity3) binding_).invoke(receiver, args[0], args[1], args[2]);
+			}
+		} catch (Signal s) {
+			throw s;
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			throw new XReflectionFailure("Native method "+Reflection.downSelector(method_.getName())+" threw internal exception", e);
+		} catch (Error e) {
+			e.printStackTrace();
+			throw new XReflectionFailure("Native method "+Reflection.downSelector(method_.getName())+" threw internal exception", e);
+		}
+	}
+	
+	private Object invokeReflectively(ATObject receiver, Object[] args) throws InterpreterException {
+		try {
+			return method_.invoke(receiver, args);
+		} catch (IllegalAccessException e) {
+			// the invoked method is not publicly accessible
+			throw new XReflectionFailure("Native method "+Reflection.downSelector(method_.getName()) + " not accessible.", e);
+		} catch (IllegalArgumentException e) {
+			// illegal argument types were supplied
+			throw new XIllegalArgument("Illegal argument for native method "+Reflection.downSelector(method_.getName()) + ": " + e.getMessage(), e);
+		} catch (InvocationTargetException e) {
+			// the invoked method threw an exception
+			if (e.getTargetException() instanceof InterpreterException)
+				throw (InterpreterException) e.getTargetException();
+			else if (e.getTargetException() instanceof Signal) {
+			    throw (Signal) e.getTargetException();	
+			} else {
+				e.printStackTrace();
+				throw new XReflectionFailure("Native method "+Reflection.downSelector(method_.getName())+" threw internal exception", e.getTargetException());
+		    }
+		}
+	}
+	
+}
@@ -56,6 +56,7 @@ import java.lang.reflect.Method;
 public final class NativeMethod extends NATByRef implements ATMethod {
 
 	private final Method javaMethod_;
+	private final NativeInvoker invoker_;
 	private final ATSymbol name_;
 	// native object from which the java method was selected
 	private final ATObject nativeReceiver_;
@@ -66,7 +67,12 @@ public final class NativeMethod extends NATByRef implements ATMethod {
 	 * @param name the original name of the method as an AmbientTalk symbol
 	 */
 	public NativeMethod(Method javaMethod, ATSymbol name, ATObject jReceiver) {
-		javaMethod_ = javaMethod;
+		this(NativeInvoker.forMethod(javaMethod), name, jReceiver);
+	}
+	
+	NativeMethod(NativeInvoker invoker, ATSymbol name, ATObject jReceiver) {
+		javaMethod_ = invoker.method();
+		invoker_ = invoker;
 		name_ = name;
 		nativeReceiver_ = jReceiver;
 	}
@@ -106,8 +112,7 @@ public final class NativeMethod extends NATByRef implements ATMethod {
 	}
 	
 	public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-		return JavaInterfaceAdaptor.invokeNativeATMethod(javaMethod_, nativeReceiver_,
-						                                 arguments.asNativeTable().elements_);
+		return invoker_.invoke(nativeReceiver_, arguments.asNativeTable().elements_);
 	}
 	
 	public ATObject base_applyInScope(ATTable arguments, ATContext ctx) throws InterpreterException {
@@ -0,0 +1,202 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.mirrors;
+
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.exceptions.XIllegalOperation;
+import edu.vub.at.exceptions.XSelectorNotFound;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.grammar.ATSymbol;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A NativeMethodTable caches the public Java methods of a single class that
+ * implements native AmbientTalk objects. It is built once per class and shared
+ * by all actors on this VM.
+ *
+ * The table indexes the methods of the class by their Java name, and additionally
+ * memoizes the translation of AmbientTalk selectors into <tt>base_</tt> and
+ * <tt>meta_</tt> prefixed methods. The memoized lookups are keyed by the (pooled)
+ * {@link AGSymbol} itself, such that a repeated lookup of e.g. <tt>+</tt> on a
+ * number no longer needs to rewrite the selector or to scan all methods of the class.
+ *
+ * The lookup semantics are exactly those of {@link Reflection#upBaseLevelSelector(ATSymbol)}
+ * followed by a search for a method of that name: the table only avoids recomputing them.
+ */
+public final class NativeMethodTable {
+
+	/** maps Java classes to their method table, shared by all actors, read without locking */
+	private static final ConcurrentHashMap<Class, NativeMethodTable> _TABLES_ = new ConcurrentHashMap<Class, NativeMethodTable>();
+
+	private static final Method[] _NO_METHODS_ = new Method[0];
+
+	/**
+	 * Returns the (unique) method table for the given class, creating it
+	 * upon first use.
+	 */
+	public static NativeMethodTable forClass(Class jClass) {
+		NativeMethodTable table = _TABLES_.get(jClass);
+		if (table == null) {
+			// two threads may build a table for the same class, only one of them is kept
+			NativeMethodTable existing = _TABLES_.putIfAbsent(jClass, table = new NativeMethodTable(jClass));
+			if (existing != null) {
+				table = existing;
+			}
+		}
+		return table;
+	}
+
+	private final Class class_;
+
+	/** maps Java selectors to all public methods of that name, immutable after construction */
+	private final HashMap<String, Method[]> methodsByName_;
+
+	/** memoizes AmbientTalk selector -> methods named base_selector */
+	private final ConcurrentHashMap<ATSymbol, Method[]> baseMethods_ = new ConcurrentHashMap<ATSymbol, Method[]>();
+
+	/** memoizes AmbientTalk selector -> methods named meta_selector */
+	private final ConcurrentHashMap<ATSymbol, Method[]> metaMethods_ = new ConcurrentHashMap<ATSymbol, Method[]>();
+
+	/** memoizes AmbientTalk selector -> invoker of the unique method named base_selector */
+	private final ConcurrentHashMap<ATSymbol, NativeInvoker> baseInvokers_ = new ConcurrentHashMap<ATSymbol, NativeInvoker>();
+
+	/** memoizes AmbientTalk selector -> invoker of the unique method named meta_selector */
+	private final ConcurrentHashMap<ATSymbol, NativeInvoker> metaInvokers_ = new ConcurrentHashMap<ATSymbol, NativeInvoker>();
+
+	private NativeMethodTable(Class jClass) {
+		class_ = jClass;
+		HashMap<String, Vector<Method>> grouped = new HashMap<String, Vector<Method>>();
+		Method[] allMethods = jClass.getMethods();
+		for (int i = 0; i < allMethods.length; i++) {
+			String nam = allMethods[i].getName();
+			Vector<Method> overloads = grouped.get(nam);
+			if (overloads == null) {
+				overloads = new Vector<Method>(1);
+				grouped.put(nam, overloads);
+			}
+			overloads.add(allMethods[i]);
+		}
+		methodsByName_ = new HashMap<String, Method[]>(grouped.size() * 2);
+		for (String nam : grouped.keySet()) {
+			Vector<Method> overloads = grouped.get(nam);
+			methodsByName_.put(nam, overloads.toArray(new Method[overloads.size()]));
+		}
+	}
+
+	/**
+	 * @return all public methods of this table's class named jSelector (possibly an empty array).
+	 * The returned array should not be modified.
+	 */
+	public Method[] methodsNamed(String jSelector) {
+		Method[] methods = methodsByName_.get(jSelector);
+		return (methods == null) ? _NO_METHODS_ : methods;
+	}
+
+	/**
+	 * @return all public methods of this table's class named <tt>base_</tt> + atSelector
+	 */
+	public Method[] baseMethodsFor(ATSymbol atSelector) throws InterpreterException {
+		Method[] methods = baseMethods_.get(atSelector);
+		if (methods == null) {
+			methods = methodsNamed(Reflection.upBaseLevelSelector(atSelector));
+			memoize(baseMethods_, atSelector, methods);
+		}
+		return methods;
+	}
+
+	/**
+	 * @return all public methods of this table's class named <tt>meta_</tt> + atSelector
+	 */
+	public Method[] metaMethodsFor(ATSymbol atSelector) throws InterpreterException {
+		Method[] methods = metaMethods_.get(atSelector);
+		if (methods == null) {
+			methods = methodsNamed(Reflection.upMetaLevelSelector(atSelector));
+			memoize(metaMethods_, atSelector, methods);
+		}
+		return methods;
+	}
+
+	/**
+	 * @return the invoker of the unique method of this table's class named <tt>base_</tt> + atSelector
+	 * @see NativeMethodTable#select(Method[], ATObject, ATSymbol)
+	 */
+	NativeInvoker baseInvokerFor(ATObject receiver, ATSymbol atSelector) throws InterpreterException {
+		NativeInvoker invoker = baseInvokers_.get(atSelector);
+		if (invoker == null) {
+			invoker = NativeInvoker.forMethod(select(baseMethodsFor(atSelector), receiver, atSelector));
+			memoize(baseInvokers_, atSelector, invoker);
+		}
+		return invoker;
+	}
+
+	/**
+	 * @return the invoker of the unique method of this table's class named <tt>meta_</tt> + atSelector
+	 * @see NativeMethodTable#select(Method[], ATObject, ATSymbol)
+	 */
+	NativeInvoker metaInvokerFor(ATObject receiver, ATSymbol atSelector) throws InterpreterException {
+		NativeInvoker invoker = metaInvokers_.get(atSelector);
+		if (invoker == null) {
+			invoker = NativeInvoker.forMethod(select(metaMethodsFor(atSelector), receiver, atSelector));
+			memoize(metaInvokers_, atSelector, invoker);
+		}
+		return invoker;
+	}
+
+	/**
+	 * Selects the unique method from a set of candidate methods.
+	 *
+	 * @throws XSelectorNotFound if there are no candidates
+	 * @throws XIllegalOperation if the native method is overloaded
+	 */
+	public Method select(Method[] applicable, ATObject receiver, ATSymbol atSelector) throws InterpreterException {
+		switch (applicable.length) {
+			case 0:
+				throw new XSelectorNotFound(atSelector, receiver);
+			case 1:
+				return applicable[0];
+			default:
+				throw new XIllegalOperation("Native method uses overloading: " + atSelector + " in " + class_);
+		}
+	}
+
+	/**
+	 * Only pooled symbols are used as keys: they are compared by identity and
+	 * live as long as the VM, such that the memo tables cannot be polluted with
+	 * equal but distinct selector objects.
+	 */
+	private static <T> void memoize(ConcurrentHashMap<ATSymbol, T> memo, ATSymbol atSelector, T value) {
+		if (atSelector instanceof AGSymbol) {
+			memo.put(atSelector, value);
+		}
+	}
+
+}
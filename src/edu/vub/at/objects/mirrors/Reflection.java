@@ -339,6 +339,42 @@ public final class Reflection {
 		return new NativeMethod(m, origSelector, atOrigRcvr);
 	}
 	
+	/**
+	 * Checks whether the given native object implements a method named <tt>base_</tt> + atSelector.
+	 * Equivalent to <tt>upRespondsTo(jRcvr, upBaseLevelSelector(atSelector))</tt>, but uses
+	 * the {@link NativeMethodTable} of the receiver's class to avoid rewriting the selector
+	 * on every lookup.
+	 */
+	public static final boolean upBaseLevelRespondsTo(ATObject jRcvr, ATSymbol atSelector) throws InterpreterException {
+		return NativeMethodTable.forClass(jRcvr.getClass()).baseMethodsFor(atSelector).length > 0;
+	}
+	
+	/**
+	 * Checks whether the given native object implements a method named <tt>meta_</tt> + atSelector.
+	 * @see Reflection#upBaseLevelRespondsTo(ATObject, ATSymbol)
+	 */
+	public static final boolean upMetaLevelRespondsTo(ATObject jRcvr, ATSymbol atSelector) throws InterpreterException {
+		return NativeMethodTable.forClass(jRcvr.getClass()).metaMethodsFor(atSelector).length > 0;
+	}
+	
+	/**
+	 * Selects the method named <tt>base_</tt> + atSelector from the given native object.
+	 * Equivalent to <tt>upMethodSelection(atOrigRcvr, upBaseLevelSelector(atSelector), atSelector)</tt>.
+	 */
+	public static final NativeMethod upBaseLevelMethodSelection(ATObject atOrigRcvr, ATSymbol atSelector) throws InterpreterException {
+		NativeMethodTable table = NativeMethodTable.forClass(atOrigRcvr.getClass());
+		return new NativeMethod(table.baseInvokerFor(atOrigRcvr, atSelector), atSelector, atOrigRcvr);
+	}
+	
+	/**
+	 * Selects the method named <tt>meta_</tt> + atSelector from the given native object.
+	 * Equivalent to <tt>upMethodSelection(atOrigRcvr, upMetaLevelSelector(atSelector), atSelector)</tt>.
+	 */
+	public static final NativeMethod upMetaLevelMethodSelection(ATObject atOrigRcvr, ATSymbol atSelector) throws InterpreterException {
+		NativeMethodTable table = NativeMethodTable.forClass(atOrigRcvr.getClass());
+		return new NativeMethod(table.metaInvokerFor(atOrigRcvr, atSelector), atSelector, atOrigRcvr);
+	}
+	
 	/**
 	 * upInstanceCreation takes an explicit AmbientTalk 'new' invocation and turns it into an
 	 * implicit Java instance creation by calling a constructor. The initargs are upped as well
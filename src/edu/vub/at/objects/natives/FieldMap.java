@@ -28,71 +28,169 @@
 package edu.vub.at.objects.natives;
 
 import edu.vub.at.objects.grammar.ATSymbol;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Instances of this class implement a so-called 'map' for an AmbientTalk object's fields.
  * The terminology stems from the language Self. A 'map' maps variable names to an integer index.
  * This index can be used to index an object's state vector to retrieve the value of a slot.
  * 
- * The advantage of maps lies in their space effiency: clones can share maps, thereby enabling
- * the sharing of variable names (which are immutable).
+ * Maps are immutable and form a transition tree rooted at {@link #EMPTY}, in the style of
+ * the 'hidden classes' of the V8 JavaScript engine: adding a field to a map always yields
+ * the same child map. Hence, objects that define the same fields in the same order share
+ * their map, regardless of whether they are clones of one another. Since maps are never
+ * modified, objects that share a map need not copy it when they add or remove fields.
+ * The transition tree is shared by all actors, hence transitions are stored in concurrent maps.
+ * A map only refers weakly to the maps it transitions to, such that the parts of the tree that
+ * are no longer used by any object (or by any other map derived from them) are reclaimed. The
+ * transitions left behind by reclaimed maps are swept whenever the number of transitions of a
+ * map reaches a power of two, so that the tree is bounded by the maps that are in use.
  * 
- * We implement a custom map from symbols to Java ints ourselves, because the java.util.HashMap
- * requires explicit boxing and unboxing of integers as java.lang.Integers, which is wasteful.
+ * Removing a field yields a new map outside of the transition tree whose parent is the map
+ * from which the field was removed, such that {@link #isDerivedFrom(FieldMap)} still
+ * reflects how the map came about. Only the names of a map are serialized: a deserialized
+ * map is resolved into the transition tree of the receiving VM.
+ * 
+ * Small maps are searched sequentially. Maps with more than {@link #_HASH_THRESHOLD_}
+ * fields additionally contain a hash table from names to indices. We implement this table
+ * ourselves, because the java.util.HashMap requires explicit boxing and unboxing of
+ * integers as java.lang.Integers, which is wasteful.
  * 
  * @author tvc
  */
 public final class FieldMap implements Serializable {
 
-	private static final int _DEFAULT_SIZE_ = 5;
+	private static final long serialVersionUID = -2813624583117052380L;
+
+	/** maps with more fields than this threshold are searched using a hash table */
+	private static final int _HASH_THRESHOLD_ = 8;
 	
-	/*
-	 * Field maps are represented as a simple array of the field's names.
-	 * The indices of the fields are literally the indices of the field's names.
+	private static final ATSymbol[] _NO_NAMES_ = new ATSymbol[0];
+	
+	/**
+	 * The root of the transition tree: the map without fields.
 	 */
+	public static final FieldMap EMPTY = new FieldMap(_NO_NAMES_, null);
 	
-	private ATSymbol[] varNames_;
+	/*
+	 * The names of the fields, the indices of the fields are literally the indices
+	 * of the names in this array. The array is never modified.
+	 */
+	private final ATSymbol[] varNames_;
 	
-	// next free position in the varNames_ array
-	private int free_;
+	/*
+	 * The map from which this map was derived by adding or removing a field, null for the root.
+	 * Not serialized, as it is not needed to resolve the map (see readResolve).
+	 */
+	private final transient FieldMap parent_;
 	
 	/*
-	 * Set when a fieldmap is extended when it was already shared to be able to 
-	 * track that both objects have a common heritage.
+	 * Open addressing hash table storing index+1 of each name (0 denotes a free
+	 * entry), or null if this map is small enough to be searched sequentially.
 	 */
-	private FieldMap origin_ = null;
+	private final transient int[] hashTable_;
 	
-	public FieldMap() {
-		varNames_ = new ATSymbol[_DEFAULT_SIZE_];
-		free_ = 0;
-	}
+	/*
+	 * The transitions from this map: maps the name of a field to add onto the resulting map.
+	 * Created lazily, as most maps are leaves of the transition tree.
+	 */
+	private transient volatile ConcurrentHashMap<ATSymbol, WeakReference<FieldMap>> transitions_;
 	
-	// used for internal cloning purposes only
-	private FieldMap(ATSymbol[] copiedNames, int copiedFree, FieldMap origin) {
-		varNames_ = copiedNames;
-		free_ = copiedFree;
-		origin_ = origin;
+	private FieldMap(ATSymbol[] varNames, FieldMap parent) {
+		varNames_ = varNames;
+		parent_ = parent;
+		hashTable_ = (varNames.length > _HASH_THRESHOLD_) ? buildHashTable(varNames) : null;
 	}
 	
 	/**
-	 * Add a new field to the field map. The field will be assigned
-	 * the index of the map's current size.
+	 * Returns the map that results from adding a new field to this map. The field will
+	 * be assigned the index of the map's current size. Adding the same field to the
+	 * same map always returns the same map.
 	 * 
-	 * If the field already exists, it will not be added twice.
-	 * 
-	 * @return true if the field was added successfully, false if the field already existed
+	 * @return the map extended with the given field, or this map if the field already exists
 	 */
-	public boolean put(ATSymbol nam) {
+	public FieldMap withField(ATSymbol nam) {
 		if (findName(nam) != -1) // if the name is found...
-			return false;
+			return this;
 		
-		if(free_ == varNames_.length) {
-			reAlloc();
+		ConcurrentHashMap<ATSymbol, WeakReference<FieldMap>> transitions = transitions_;
+		if (transitions == null) {
+			synchronized (this) {
+				transitions = transitions_;
+				if (transitions == null) {
+					transitions = new ConcurrentHashMap<ATSymbol, WeakReference<FieldMap>>(4);
+					transitions_ = transitions;
+				}
+			}
+		}
+		WeakReference<FieldMap> ref = transitions.get(nam);
+		FieldMap child = (ref == null) ? null : ref.get();
+		if (child == null) {
+			ATSymbol[] newVarNames = new ATSymbol[varNames_.length + 1];
+			System.arraycopy(varNames_, 0, newVarNames, 0, varNames_.length);
+			newVarNames[varNames_.length] = nam;
+			child = new FieldMap(newVarNames, this);
+			WeakReference<FieldMap> childRef = new WeakReference<FieldMap>(child);
+			while (true) {
+				WeakReference<FieldMap> existing = transitions.putIfAbsent(nam, childRef);
+				if (existing == null) {
+					sweep(transitions);
+					break;
+				}
+				FieldMap existingChild = existing.get();
+				if (existingChild != null) {
+					// another actor added the same transition concurrently
+					child = existingChild;
+					break;
+				}
+				if (transitions.replace(nam, existing, childRef)) {
+					// the previous child was reclaimed
+					break;
+				}
+			}
 		}
-		varNames_[free_++] = nam; // increment free pointer after access
-		return true;
+		return child;
+	}
+	
+	/**
+	 * Removes the transitions to reclaimed maps once the number of transitions
+	 * reaches a power of two, such that sweeping takes amortized constant time.
+	 */
+	private static void sweep(ConcurrentHashMap<ATSymbol, WeakReference<FieldMap>> transitions) {
+		int size = transitions.size();
+		if (size > 1 && (size & (size - 1)) == 0) {
+			for (Iterator<Map.Entry<ATSymbol, WeakReference<FieldMap>>> it = transitions.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<ATSymbol, WeakReference<FieldMap>> transition = it.next();
+				if (transition.getValue().get() == null) {
+					// only removed if no other actor has replaced the transition in the meantime
+					transitions.remove(transition.getKey(), transition.getValue());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the map that results from removing the given field from this map.
+	 * The indices of the fields following the removed field are decremented.
+	 * 
+	 * @return the map without the given field, or this map if the field cannot be found.
+	 */
+	public FieldMap withoutField(ATSymbol nam) {
+		int namIdx = findName(nam);
+		if (namIdx == -1) {
+			return this;
+		}
+		ATSymbol[] newVarNames = new ATSymbol[varNames_.length - 1];
+		System.arraycopy(varNames_, 0, newVarNames, 0, namIdx);
+		System.arraycopy(varNames_, namIdx + 1, newVarNames, namIdx, newVarNames.length - namIdx);
+		return new FieldMap(newVarNames, this);
 	}
 	
 	/**
@@ -101,50 +199,30 @@ public final class FieldMap implements Serializable {
 	 * @return the index of the field or -1 if the field cannot be found.
 	 */
 	public int get(ATSymbol nam) {		
-		int namIdx = findName(nam);
-		return (namIdx >= 0) ? namIdx : -1;
+		return findName(nam);
 	}
 	
 	/**
-	 * Remove the given name from the field map.
-	 * @param nam the name of the field to be removed
-	 * @return the index of the removed field or -1 if the field cannot be found.
+	 * @return the number of fields stored in the map.
 	 */
-	public int remove(ATSymbol nam) {		
-		int namIdx = findName(nam);
-		if (namIdx >= 0) {
-			for (int i = namIdx; i < free_ - 1; i++) {
-				varNames_[i] = varNames_[i+1];
-			}
-			free_--;
-		}
-		return namIdx;
+	public int size() {
+		return varNames_.length;
 	}
 	
 	/**
-	 * Returns all field names.
-	 * @return an array of the field names stored in the map.
+	 * @return the name of the field stored at the given index, or null if the
+	 * map contains less fields.
 	 */
-	public ATSymbol[] listFields() {
-		ATSymbol[] varnames = new ATSymbol[free_];
-		for (int i = 0; i < varnames.length; i++) {
-			varnames[i] = varNames_[i];
-		}
-		return varnames;
+	ATSymbol nameAt(int index) {
+		return (index < varNames_.length) ? varNames_[index] : null;
 	}
 	
 	/**
-	 * Creates a shallow copy of the field map. This operation is performed when a
-	 * new field is added in one object which shares its field map with others. To
-	 * allow tracking the origins of the new fieldMap, we need to store this as its
-	 * progenitor.
-	 */
-	FieldMap copy() {
-		// allocate a copy of the names array
-		ATSymbol[] newVarNames = new ATSymbol[varNames_.length];
-		// copy content into new array
-		System.arraycopy(varNames_, 0, newVarNames, 0, varNames_.length);
-		return new FieldMap(newVarNames, free_, this);
+	 * Returns all field names.
+	 * @return an array of the field names stored in the map.
+	 */
+	public ATSymbol[] listFields() {
+		return (ATSymbol[]) varNames_.clone();
 	}
 	
 	/**
@@ -152,41 +230,76 @@ public final class FieldMap implements Serializable {
 	 * FieldMap from which this one (indirectly) originates. 
 	 */
 	public boolean isDerivedFrom(FieldMap aFieldMap) {
-		return (this == aFieldMap) ||
-			((origin_ != null) && origin_.isDerivedFrom(aFieldMap));
-	}
-	
-	/**
-	 * Doubles the size of the map to make room for extra fields.
-	 */
-	private void reAlloc() {
-		// allocate the new array
-		ATSymbol[] newVarNames = new ATSymbol[free_ * 2];
-		// copy old content into new array
-		System.arraycopy(varNames_, 0, newVarNames, 0, free_);
-		// throw away the old array and replace it by the new one
-		varNames_ = newVarNames;
+		for (FieldMap map = this; map != null; map = map.parent_) {
+			if (map == aFieldMap) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
 	 * Searches for the name of a field in the varNames_ array.
-	 * Performs a simple sequential search, which is usually not a bottleneck
-	 * as maps are supposed to be rather small (< 50 elements).
+	 * Small maps are searched sequentially, larger maps use their hash table.
 	 * @return the index of the field or -1 if not found.
 	 */
 	private int findName(ATSymbol nam) {
-		for (int i = 0; i < free_; i++) {
-			if (varNames_[i] == nam)
-				return i;
+		int[] table = hashTable_;
+		if (table == null) {
+			for (int i = 0; i < varNames_.length; i++) {
+				if (varNames_[i] == nam)
+					return i;
+			}
+			return -1;
+		}
+		int mask = table.length - 1;
+		for (int h = hash(nam) & mask; table[h] != 0; h = (h + 1) & mask) {
+			if (varNames_[table[h] - 1] == nam)
+				return table[h] - 1;
 		}
 		return -1;
 	}
 	
+	private static int[] buildHashTable(ATSymbol[] varNames) {
+		int capacity = Integer.highestOneBit(varNames.length) * 4;
+		int[] table = new int[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < varNames.length; i++) {
+			int h = hash(varNames[i]) & mask;
+			while (table[h] != 0) {
+				h = (h + 1) & mask;
+			}
+			table[h] = i + 1;
+		}
+		return table;
+	}
+	
+	/**
+	 * Names are compared by identity (symbols are pooled), hence they are hashed by identity.
+	 */
+	private static int hash(ATSymbol nam) {
+		int h = System.identityHashCode(nam);
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * After deserialization, the map is replaced by the equivalent map of the
+	 * transition tree of this VM, such that objects with the same fields keep
+	 * sharing their map. The names are resolved first, as symbols are pooled.
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		FieldMap map = EMPTY;
+		for (int i = 0; i < varNames_.length; i++) {
+			map = map.withField(AGSymbol.jAlloc(varNames_[i].toString()));
+		}
+		return map;
+	}
+	
 	public String toString() {
 		StringBuffer buff = new StringBuffer("FieldMap{");
-		if (free_ > 0) {
+		if (varNames_.length > 0) {
 			buff.append(varNames_[0].toString()+":0");
-			for (int i = 1; i < free_; i++) {
+			for (int i = 1; i < varNames_.length; i++) {
 				buff.append(",").append(varNames_[i].toString()+":"+i);
 			}
 		}
@@ -0,0 +1,260 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.natives;
+
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATMethod;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.coercion.NativeTypeTags;
+import edu.vub.at.objects.grammar.ATSymbol;
+import edu.vub.at.objects.mirrors.NativeClosure;
+
+/**
+ * An InlineCache is a small polymorphic cache that is stored in an AST node performing
+ * a lookup (a message send, a function application or a variable reference).
+ *
+ * It caches the result of the local lookup of a selector in plain {@link NATObject}s,
+ * i.e. whether the selector denotes a method (and which one), a native field (and at
+ * which index in the state vector) or neither. Cache entries are guarded by the
+ * identity of the object's (immutable) {@link FieldMap} and by the identity and the
+ * version of its {@link MethodDictionary}. Because clones share both, a single entry
+ * serves all clones of an object. When a field is added or removed, the object's map
+ * changes; when a shared dictionary is copied (e.g. by meta_addMethod or meta_removeSlot),
+ * the guard fails automatically; when it is modified in place, its version changes.
+ *
+ * The cache only short-cuts the lookup in objects whose class is exactly NATObject
+ * (and call frames during lexical lookup). All other objects, in particular mirages
+ * and objects with custom fields, are looked up using the regular impl_ protocol,
+ * such that the semantics of the lookup are unaffected.
+ *
+ * A cache remembers at most a few shapes. Once a lookup site has seen more shapes,
+ * it is megamorphic: the cache then stops remembering and every lookup follows the
+ * regular impl_ protocol, such that a megamorphic site neither allocates nor evicts
+ * entries on every miss.
+ *
+ * Entries are immutable and the entry table is replaced as a whole without locking,
+ * such that an inline cache may be shared by an AST node that is evaluated by multiple
+ * actors. Concurrent misses may overwrite each other's table, in which case an entry is
+ * simply computed again on a later miss.
+ */
+public final class InlineCache {
+
+	/** the maximum number of shapes remembered per cache, beyond which it becomes megamorphic */
+	private static final int _MAX_ENTRIES_ = 4;
+
+	private static final byte _MISS_ = 0;
+	private static final byte _METHOD_ = 1;
+	private static final byte _FIELD_ = 2;
+
+	private static final Entry[] _NO_ENTRIES_ = new Entry[0];
+
+	/** the entry table of a cache that has stopped remembering shapes */
+	private static final Entry[] _MEGAMORPHIC_ = new Entry[0];
+
+	private volatile Entry[] entries_ = _NO_ENTRIES_;
+
+	/**
+	 * Equivalent to <tt>scope.impl_callAccessor(selector, arguments)</tt>
+	 */
+	public ATObject callAccessor(ATObject scope, ATSymbol selector, ATTable arguments) throws InterpreterException {
+		while (true) {
+			if (scope.getClass() == NATObject.class) {
+				NATObject obj = (NATObject) scope;
+				Entry e = lookup(obj, selector);
+				if (e == null) {
+					return obj.impl_callAccessor(selector, arguments);
+				}
+				switch (e.kind_) {
+				  case _METHOD_:
+					  return e.method_.base_apply(arguments, new NATContext(obj, obj));
+				  case _FIELD_:
+					  return applyField(obj.stateVector_[e.index_], selector, arguments);
+				  default:
+					  scope = obj.impl_lexicalParent();
+				}
+			} else if (scope.getClass() == NATCallframe.class) {
+				NATCallframe frame = (NATCallframe) scope;
+				if (frame.customFields_ != null) {
+					return frame.impl_callAccessor(selector, arguments);
+				}
+				int idx = frame.variableMap_.get(selector);
+				if (idx != -1) {
+					return applyField(frame.stateVector_[idx], selector, arguments);
+				}
+				scope = frame.impl_lexicalParent();
+			} else {
+				return scope.impl_callAccessor(selector, arguments);
+			}
+		}
+	}
+
+	/**
+	 * Equivalent to <tt>scope.impl_callField(selector)</tt>
+	 */
+	public ATObject callField(ATObject scope, ATSymbol selector) throws InterpreterException {
+		while (true) {
+			if (scope.getClass() == NATObject.class) {
+				NATObject obj = (NATObject) scope;
+				Entry e = lookup(obj, selector);
+				if (e == null) {
+					return obj.impl_callField(selector);
+				}
+				switch (e.kind_) {
+				  case _METHOD_:
+					  return e.method_.base_apply(NATTable.EMPTY, new NATContext(obj, obj));
+				  case _FIELD_:
+					  return obj.stateVector_[e.index_];
+				  default:
+					  scope = obj.impl_lexicalParent();
+				}
+			} else if (scope.getClass() == NATCallframe.class) {
+				NATCallframe frame = (NATCallframe) scope;
+				if (frame.customFields_ != null) {
+					return frame.impl_callField(selector);
+				}
+				int idx = frame.variableMap_.get(selector);
+				if (idx != -1) {
+					return frame.stateVector_[idx];
+				}
+				scope = frame.impl_lexicalParent();
+			} else {
+				return scope.impl_callField(selector);
+			}
+		}
+	}
+
+	/**
+	 * Equivalent to <tt>receiver.impl_invokeAccessor(receiver, selector, arguments)</tt>
+	 */
+	public ATObject invokeAccessor(ATObject receiver, ATSymbol selector, ATTable arguments) throws InterpreterException {
+		ATObject current = receiver;
+		while (current.getClass() == NATObject.class) {
+			NATObject obj = (NATObject) current;
+			Entry e = lookup(obj, selector);
+			if (e == null) {
+				return obj.impl_invokeAccessor(receiver, selector, arguments);
+			}
+			switch (e.kind_) {
+			  case _METHOD_:
+				  return e.method_.base_apply(arguments, new NATContext(obj, receiver));
+			  case _FIELD_:
+				  return applyField(obj.stateVector_[e.index_], selector, arguments);
+			  default:
+				  current = obj.base_super();
+			}
+		}
+		return current.impl_invokeAccessor(receiver, selector, arguments);
+	}
+
+	/**
+	 * A field accessed as a function is applied if it contains a closure,
+	 * otherwise it behaves as a nullary accessor.
+	 */
+	static ATObject applyField(ATObject fieldValue, ATSymbol selector, ATTable arguments) throws InterpreterException {
+		if (fieldValue.meta_isTaggedAs(NativeTypeTags._CLOSURE_).asNativeBoolean().javaValue) {
+			return fieldValue.asClosure().base_apply(arguments);
+		} else {
+			NativeClosure.checkNullaryArguments(selector, arguments);
+			return fieldValue;
+		}
+	}
+
+	/**
+	 * @return the cache entry describing the local lookup of selector in obj,
+	 * or null if the lookup in obj cannot be cached.
+	 */
+	private Entry lookup(NATObject obj, ATSymbol selector) throws InterpreterException {
+		Entry[] entries = entries_;
+		if (entries == _MEGAMORPHIC_ || obj.customFields_ != null) {
+			return null;
+		}
+		FieldMap map = obj.variableMap_;
+		MethodDictionary dict = obj.methodDictionary_;
+		for (int i = 0; i < entries.length; i++) {
+			Entry e = entries[i];
+			if (e.map_ == map && e.dict_ == dict && e.dictVersion_ == dict.version()) {
+				return e;
+			}
+		}
+
+		// cache miss: perform the local lookup like NATObject.hasLocalMethod/hasLocalField would
+		Entry e;
+		ATObject method = (ATObject) dict.get(selector);
+		if (method != null) {
+			e = new Entry(map, dict, _METHOD_, method.asMethod(), -1);
+		} else {
+			int idx = map.get(selector);
+			e = new Entry(map, dict, (idx == -1) ? _MISS_ : _FIELD_, null, idx);
+		}
+		remember(entries, e);
+		return e;
+	}
+
+	private void remember(Entry[] old, Entry e) {
+		// an entry with the same map and dictionary but an outdated dictionary version is replaced
+		for (int i = 0; i < old.length; i++) {
+			if (old[i].map_ == e.map_ && old[i].dict_ == e.dict_) {
+				Entry[] updated = (Entry[]) old.clone();
+				updated[i] = e;
+				entries_ = updated;
+				return;
+			}
+		}
+		if (old.length < _MAX_ENTRIES_) {
+			Entry[] extended = new Entry[old.length + 1];
+			System.arraycopy(old, 0, extended, 0, old.length);
+			extended[old.length] = e;
+			entries_ = extended;
+		} else {
+			entries_ = _MEGAMORPHIC_;
+		}
+	}
+
+	/**
+	 * An immutable cache entry. The dictionary version is captured
+	 * at the time the entry was computed.
+	 */
+	private static final class Entry {
+		final FieldMap map_;
+		final MethodDictionary dict_;
+		final int dictVersion_;
+		final byte kind_;
+		final ATMethod method_;
+		final int index_;
+
+		Entry(FieldMap map, MethodDictionary dict, byte kind, ATMethod method, int index) {
+			map_ = map;
+			dict_ = dict;
+			dictVersion_ = dict.version();
+			kind_ = kind;
+			method_ = method;
+			index_ = index;
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.natives;
+
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.grammar.ATSymbol;
+
+/**
+ * A LexicalAddress denotes the location of a local variable as predicted by
+ * {@link LexicalAddressing}: the variable is stored at a given index in the call frame
+ * found by skipping a given number of enclosing call frames.
+ *
+ * The address is only a prediction: every load checks that the skipped call frames
+ * have one of the maps predicted for them (which do not contain the variable, such
+ * that they cannot shadow it) and that the target frame stores the variable at the predicted
+ * index. If that is not the case, e.g. because a frame was modified reflectively or
+ * by <tt>eval:in:</tt>, the load fails and the caller reverts to an ordinary lookup.
+ */
+public final class LexicalAddress {
+
+	private final ATSymbol name_;
+	private final int index_;
+	
+	/** for each call frame to skip, innermost first, the maps it may have */
+	private final FieldMap[][] skippedMaps_;
+	
+	LexicalAddress(ATSymbol name, int index, FieldMap[][] skippedMaps) {
+		name_ = name;
+		index_ = index;
+		skippedMaps_ = skippedMaps;
+	}
+	
+	public ATSymbol name() {
+		return name_;
+	}
+	
+	/**
+	 * @return the value of the variable, starting the lookup in the given scope,
+	 * or null if the variable is not (or no longer) stored at this address.
+	 */
+	public ATObject load(ATObject scope) {
+		for (int i = 0; i < skippedMaps_.length; i++) {
+			if (scope.getClass() != NATCallframe.class) {
+				return null;
+			}
+			NATCallframe frame = (NATCallframe) scope;
+			if (frame.customFields_ != null || !isOneOf(frame.variableMap_, skippedMaps_[i])) {
+				return null;
+			}
+			scope = frame.lexicalParent_;
+		}
+		if (scope.getClass() != NATCallframe.class) {
+			return null;
+		}
+		NATCallframe frame = (NATCallframe) scope;
+		if (frame.variableMap_.nameAt(index_) != name_ || frame.customFields_ != null) {
+			return null;
+		}
+		return frame.stateVector_[index_];
+	}
+	
+	private static boolean isOneOf(FieldMap map, FieldMap[] maps) {
+		for (int i = 0; i < maps.length; i++) {
+			if (maps[i] == map) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Equivalent to <tt>scope.impl_callAccessor(name, arguments)</tt> if the variable
+	 * is stored at this address.
+	 * @return the result of the call or null if the variable is not stored at this address.
+	 */
+	public ATObject call(ATObject scope, ATTable arguments) throws InterpreterException {
+		ATObject value = load(scope);
+		if (value == null) {
+			return null;
+		}
+		return InlineCache.applyField(value, name_, arguments);
+	}
+	
+}
@@ -0,0 +1,306 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.natives;
+
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.grammar.ATBegin;
+import edu.vub.at.objects.grammar.ATExpression;
+import edu.vub.at.objects.grammar.ATMessageCreation;
+import edu.vub.at.objects.grammar.ATSymbol;
+import edu.vub.at.objects.natives.grammar.AGApplication;
+import edu.vub.at.objects.natives.grammar.AGAssignVariable;
+import edu.vub.at.objects.natives.grammar.AGAsyncMessageCreation;
+import edu.vub.at.objects.natives.grammar.AGBegin;
+import edu.vub.at.objects.natives.grammar.AGClosureLiteral;
+import edu.vub.at.objects.natives.grammar.AGDefField;
+import edu.vub.at.objects.natives.grammar.AGDefFunction;
+import edu.vub.at.objects.natives.grammar.AGDefTable;
+import edu.vub.at.objects.natives.grammar.AGDefType;
+import edu.vub.at.objects.natives.grammar.AGLocalVariable;
+import edu.vub.at.objects.natives.grammar.AGMessageSend;
+import edu.vub.at.objects.natives.grammar.AGMethodInvocationCreation;
+import edu.vub.at.objects.natives.grammar.AGSelection;
+import edu.vub.at.objects.natives.grammar.AGSplice;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+import edu.vub.at.objects.natives.grammar.AGTabulation;
+
+import java.util.ArrayList;
+
+/**
+ * LexicalAddressing is an analysis performed once per method, before its first application.
+ * It predicts the layout of the call frames created by the method and by the closures
+ * nested in its body and rewrites references to their local variables into
+ * {@link AGLocalVariable}s that load the variable directly from the predicted
+ * (depth, index) location instead of looking it up by name in every enclosing scope.
+ * References to free variables are rewritten into AGLocalVariables without an address,
+ * such that every reference in the body has its own {@link InlineCache}.
+ * 
+ * The layout of a call frame is predicted as follows: parameters are bound first, in order,
+ * then the fields defined by the definitions at the top level of the body, in order.
+ * Since {@link FieldMap}s form a transition tree, the maps that a call frame goes through
+ * while its variables are defined in this order are known in advance. Methods whose
+ * parameters are all mandatory create their call frames with the map of their parameter
+ * names in one step rather than by defining one parameter at a time.
+ * 
+ * The rewritten body is a copy that is only used to evaluate the method: the original
+ * body remains available for reflection, printing and serialization. Because a call frame
+ * may always be changed by means of <tt>eval:in:</tt>, mirrors or <tt>defineField</tt>,
+ * predicted addresses are verified upon every access (see {@link LexicalAddress}).
+ * When the prediction does not hold, the variable is looked up as usual.
+ * 
+ * The analysis can be disabled by setting the system property
+ * <tt>AT_NO_LEXICAL_ADDRESSING</tt> to true.
+ */
+final class LexicalAddressing {
+	
+	private static final String _ENV_AT_NO_LEXICAL_ADDRESSING_ = "AT_NO_LEXICAL_ADDRESSING";
+	
+	static final boolean _ENABLED_ = !Boolean.getBoolean(_ENV_AT_NO_LEXICAL_ADDRESSING_);
+	
+	/**
+	 * The statically known part of a call frame: the names of its variables in the
+	 * predicted order and the maps the frame has while these variables are defined.
+	 */
+	private static final class Scope {
+		final ArrayList<ATSymbol> names_ = new ArrayList<ATSymbol>();
+		final Scope outer_;
+		FieldMap[] maps_;
+		
+		Scope(Scope outer) {
+			outer_ = outer;
+		}
+		
+		void predictMaps() {
+			maps_ = new FieldMap[names_.size() + 1];
+			maps_[0] = FieldMap.EMPTY;
+			for (int i = 0; i < names_.size(); i++) {
+				maps_[i + 1] = maps_[i].withField(names_.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * @return the map of the given parameter names, with which the call frames of a method
+	 * can be created, or null if the parameters are not all mandatory (or are not unique).
+	 */
+	static FieldMap parameterMapFor(ATTable parameters) throws InterpreterException {
+		ATObject[] pars = parameters.asNativeTable().elements_;
+		FieldMap map = FieldMap.EMPTY;
+		for (int i = 0; i < pars.length; i++) {
+			if (pars[i].getClass() != AGSymbol.class) {
+				return null;
+			}
+			FieldMap extended = map.withField(pars[i].asSymbol());
+			if (extended == map) {
+				return null;
+			}
+			map = extended;
+		}
+		return map;
+	}
+	
+	/**
+	 * Analyzes the body of the given method, which is lexically nested in the given scope
+	 * (null if the enclosing scope is unknown), and stores the results in the method.
+	 */
+	static void analyze(NATMethod method, Scope outer) throws InterpreterException {
+		FieldMap parameterMap = parameterMapFor(method.base_parameters());
+		ATBegin body = method.base_bodyExpression();
+		if (_ENABLED_ && body.getClass() == AGBegin.class) {
+			Scope scope = new Scope(outer);
+			predictParameters(scope, method.base_parameters());
+			predictDefinitions(scope, body.base_statements());
+			scope.predictMaps();
+			body = (ATBegin) rewrite(body, scope);
+		}
+		method.setAnalysis(parameterMap, body);
+	}
+	
+	private static void predictParameters(Scope scope, ATTable parameters) throws InterpreterException {
+		ATObject[] pars = parameters.asNativeTable().elements_;
+		for (int i = 0; i < pars.length; i++) {
+			ATObject par = pars[i];
+			if (par.getClass() == AGAssignVariable.class) {
+				// optional parameter
+				par = ((AGAssignVariable) par).base_name();
+			} else if (par.getClass() == AGSplice.class) {
+				// rest parameter
+				par = ((AGSplice) par).base_expression();
+			}
+			if (par.getClass() != AGSymbol.class) {
+				return;
+			}
+			scope.names_.add(par.asSymbol());
+		}
+	}
+	
+	private static void predictDefinitions(Scope scope, ATTable statements) throws InterpreterException {
+		ATObject[] stmts = statements.asNativeTable().elements_;
+		for (int i = 0; i < stmts.length; i++) {
+			Class kind = stmts[i].getClass();
+			if (kind == AGDefField.class) {
+				scope.names_.add(((AGDefField) stmts[i]).base_name());
+			} else if (kind == AGDefFunction.class) {
+				scope.names_.add(((AGDefFunction) stmts[i]).base_selector());
+			} else if (kind == AGDefTable.class) {
+				scope.names_.add(((AGDefTable) stmts[i]).base_name());
+			} else if (kind == AGDefType.class) {
+				scope.names_.add(((AGDefType) stmts[i]).base_typeName());
+			}
+		}
+	}
+	
+	/**
+	 * @return the predicted address of the given variable, or null if it
+	 * is not a local variable of one of the statically known scopes.
+	 */
+	private static LexicalAddress resolve(ATSymbol name, Scope scope) {
+		ArrayList<FieldMap[]> skipped = new ArrayList<FieldMap[]>();
+		for (Scope s = scope; s != null; s = s.outer_) {
+			int index = s.names_.indexOf(name);
+			if (index != -1) {
+				return new LexicalAddress(name, index, skipped.toArray(new FieldMap[skipped.size()][]));
+			}
+			skipped.add(s.maps_);
+		}
+		return null;
+	}
+	
+	/**
+	 * Rewrites references to local variables in the given expression. Expressions
+	 * that are not rewritten are returned as is, such that their subexpressions
+	 * are evaluated in the ordinary way. Quoted expressions and the bodies of
+	 * nested method definitions are never rewritten.
+	 */
+	private static ATObject rewrite(ATObject exp, Scope scope) throws InterpreterException {
+		Class kind = exp.getClass();
+		ATObject result = exp;
+		if (kind == AGSymbol.class) {
+			result = new AGLocalVariable(exp.asSymbol(), resolve(exp.asSymbol(), scope));
+		} else if (kind == NATTable.class) {
+			ATObject[] elements = ((NATTable) exp).elements_;
+			ATObject[] rewritten = rewriteAll(elements, scope);
+			if (rewritten != elements) {
+				result = NATTable.atValue(rewritten);
+			}
+		} else if (kind == AGBegin.class) {
+			ATTable stmts = ((AGBegin) exp).base_statements();
+			ATObject newStmts = rewrite(stmts, scope);
+			if (newStmts != stmts) {
+				result = new AGBegin(newStmts.asTable());
+			}
+		} else if (kind == AGApplication.class) {
+			AGApplication app = (AGApplication) exp;
+			ATObject fun = app.base_function();
+			// free function names are looked up by means of the inline cache of the application
+			if (fun.getClass() != AGSymbol.class || resolve(fun.asSymbol(), scope) != null) {
+				fun = rewrite(fun, scope);
+			}
+			ATObject args = rewrite(app.base_arguments(), scope);
+			if (fun != app.base_function() || args != app.base_arguments()) {
+				result = new AGApplication((ATExpression) fun, args.asTable());
+			}
+		} else if (kind == AGMessageSend.class) {
+			AGMessageSend send = (AGMessageSend) exp;
+			ATObject rcv = rewrite(send.base_receiverExpression(), scope);
+			ATObject msg = rewrite(send.base_messageExpression(), scope);
+			if (rcv != send.base_receiverExpression() || msg != send.base_messageExpression()) {
+				result = new AGMessageSend((ATExpression) rcv, (ATExpression) msg);
+			}
+		} else if (kind == AGMethodInvocationCreation.class || kind == AGAsyncMessageCreation.class) {
+			ATMessageCreation msg = (ATMessageCreation) exp;
+			ATObject args = rewrite(msg.base_arguments(), scope);
+			if (args != msg.base_arguments()) {
+				result = (kind == AGMethodInvocationCreation.class) ?
+						(ATObject) new AGMethodInvocationCreation(msg.base_selector(), args.asTable(), msg.base_annotations()) :
+						(ATObject) new AGAsyncMessageCreation(msg.base_selector(), args.asTable(), msg.base_annotations());
+			}
+		} else if (kind == AGSelection.class) {
+			AGSelection sel = (AGSelection) exp;
+			ATObject rcv = rewrite(sel.base_receiverExpression(), scope);
+			if (rcv != sel.base_receiverExpression()) {
+				result = new AGSelection((ATExpression) rcv, sel.base_selector());
+			}
+		} else if (kind == AGTabulation.class) {
+			AGTabulation tab = (AGTabulation) exp;
+			ATObject tbl = rewrite(tab.base_tableExpression(), scope);
+			ATObject idx = rewrite(tab.base_indexExpression(), scope);
+			if (tbl != tab.base_tableExpression() || idx != tab.base_indexExpression()) {
+				result = new AGTabulation((ATExpression) tbl, (ATExpression) idx);
+			}
+		} else if (kind == AGDefField.class) {
+			AGDefField def = (AGDefField) exp;
+			ATObject val = rewrite(def.base_valueExpression(), scope);
+			if (val != def.base_valueExpression()) {
+				result = new AGDefField(def.base_name(), (ATExpression) val);
+			}
+		} else if (kind == AGAssignVariable.class) {
+			AGAssignVariable ass = (AGAssignVariable) exp;
+			ATObject val = rewrite(ass.base_valueExpression(), scope);
+			if (val != ass.base_valueExpression()) {
+				result = new AGAssignVariable(ass.base_name(), (ATExpression) val);
+			}
+		} else if (kind == AGClosureLiteral.class) {
+			AGClosureLiteral lit = (AGClosureLiteral) exp;
+			NATMethod method;
+			try {
+				method = new NATMethod(Evaluator._LAMBDA_, lit.base_arguments(), lit.base_bodyExpression(), NATTable.EMPTY);
+			} catch (InterpreterException e) {
+				// an illegal parameter list is reported when the literal is evaluated
+				return exp;
+			}
+			method.impl_setLocation(lit.impl_getLocation());
+			analyze(method, scope);
+			result = new AGClosureLiteral(method);
+		}
+		if (result != exp && exp.impl_getLocation() != null) {
+			result.impl_setLocation(exp.impl_getLocation());
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the given array if none of its elements was rewritten, a rewritten copy otherwise
+	 */
+	private static ATObject[] rewriteAll(ATObject[] elements, Scope scope) throws InterpreterException {
+		ATObject[] rewritten = elements;
+		for (int i = 0; i < elements.length; i++) {
+			ATObject element = rewrite(elements[i], scope);
+			if (element != elements[i]) {
+				if (rewritten == elements) {
+					rewritten = (ATObject[]) elements.clone();
+				}
+				rewritten[i] = element;
+			}
+		}
+		return rewritten;
+	}
+	
+}
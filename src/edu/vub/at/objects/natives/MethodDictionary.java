@@ -53,17 +53,24 @@ public class MethodDictionary implements Map, Cloneable, Serializable {
 	
 	private HashMap methods_;
 	
+	/*
+	 * Incremented whenever this dictionary is modified in place, such that
+	 * {@link InlineCache}s can detect whether a cached method is still valid.
+	 */
+	private transient int version_ = 0;
+	
 	public MethodDictionary() {
 		methods_ = new HashMap(_DEFAULT_SIZE_);
 	}
 	
 	// used internally to clone the method dictionary
-	private MethodDictionary(HashMap methods, MethodDictionary parent) {
+	MethodDictionary(HashMap methods, MethodDictionary parent) {
 		this.methods_ = methods;
 		this.parent_ = parent;
 	}
 
 	public void clear() {
+		version_++;
 		methods_.clear();
 	}
 
@@ -92,14 +99,17 @@ public class MethodDictionary implements Map, Cloneable, Serializable {
 	}
 
 	public Object put(Object key, Object value) {
+		version_++;
 		return methods_.put(key, value);
 	}
 
 	public void putAll(Map keyValuePairs) {
+		version_++;
 		methods_.putAll(keyValuePairs);
 	}
 
 	public Object remove(Object key) {
+		version_++;
 		return methods_.remove(key);
 	}
 
@@ -118,7 +128,21 @@ public class MethodDictionary implements Map, Cloneable, Serializable {
 	 * whether method dictionaries have a common origin.
 	 */
 	protected Object clone() {
-		return new MethodDictionary((HashMap)methods_.clone(), this);
+		return new MethodDictionary(copyMethods(), this);
+	}
+	
+	/**
+	 * @return a shallow copy of the methods of this dictionary.
+	 */
+	HashMap copyMethods() {
+		return (HashMap) methods_.clone();
+	}
+	
+	/**
+	 * @return a counter that changes whenever this dictionary is modified in place.
+	 */
+	int version() {
+		return version_;
 	}
 	
 	/**
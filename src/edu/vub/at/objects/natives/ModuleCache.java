@@ -0,0 +1,114 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.natives;
+
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATAbstractGrammar;
+import edu.vub.at.parser.NATParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The module cache stores the abstract syntax trees of the source files loaded by
+ * {@link NATNamespace}s, such that a module that is loaded by many actors is read and parsed
+ * only once. The cache is shared by all actors (and all virtual machines) of the Java VM, which
+ * is safe because abstract grammar is immutable, save for lazily computed caches in its nodes
+ * that are themselves safe to share between actors.
+ * 
+ * Entries are keyed by the canonical path of the file. Each time an entry is used, the
+ * last modification time and the length of the file are compared with those of the parsed
+ * version, such that modified files are parsed again.
+ * 
+ * The cache can be disabled by setting the system property <tt>AT_NO_MODULE_CACHE</tt>.
+ */
+public final class ModuleCache {
+
+	private static final String _ENV_AT_NO_MODULE_CACHE_ = "AT_NO_MODULE_CACHE";
+	
+	private static final boolean _ENABLED_ = !Boolean.getBoolean(_ENV_AT_NO_MODULE_CACHE_);
+	
+	/**
+	 * The parsed version of a file. Entries are created empty and are filled in by the
+	 * first actor that needs them, while other actors that need the same file wait.
+	 */
+	private static final class Entry {
+		
+		private long lastModified_;
+		private long length_;
+		private ATAbstractGrammar source_;
+		
+		public synchronized ATAbstractGrammar parse(File file) throws IOException, InterpreterException {
+			long lastModified = file.lastModified();
+			long length = file.length();
+			if (source_ == null || lastModified != lastModified_ || length != length_) {
+				// if parsing fails, the previous version is invalid all the same
+				source_ = null;
+				source_ = parseFile(file);
+				lastModified_ = lastModified;
+				length_ = length;
+			}
+			return source_;
+		}
+	}
+	
+	/** maps canonical paths (Strings) to entries */
+	private static final ConcurrentHashMap _ENTRIES_ = new ConcurrentHashMap();
+	
+	private ModuleCache() { }
+	
+	/**
+	 * Returns the abstract syntax tree of the given file, which is only parsed if it
+	 * was not parsed before or if it was modified since.
+	 * 
+	 * @throws IOException if the file cannot be read
+	 * @throws InterpreterException if the file cannot be parsed
+	 */
+	public static ATAbstractGrammar parse(File file) throws IOException, InterpreterException {
+		if (!_ENABLED_) {
+			return parseFile(file);
+		}
+		String path = file.getCanonicalPath();
+		Entry entry = (Entry) _ENTRIES_.get(path);
+		if (entry == null) {
+			Entry newEntry = new Entry();
+			entry = (Entry) _ENTRIES_.putIfAbsent(path, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+			}
+		}
+		return entry.parse(file);
+	}
+	
+	private static ATAbstractGrammar parseFile(File file) throws IOException, InterpreterException {
+		String code = Evaluator.loadContentOfFile(file);
+		return NATParser.parse(file.getAbsolutePath(), code);
+	}
+	
+}
@@ -44,7 +44,6 @@ import edu.vub.at.objects.mirrors.NativeClosure;
 
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Vector;
 
 /**
  * NATCallframe is a native implementation of a callframe. A callframe differs from
@@ -56,7 +55,9 @@ import java.util.Vector;
  * Callframes can be regarded as 'field-only' objects. Fields are implemented as follows:
  *  - native fields are implemented efficiently using a 'map': the map datastructure maps
  *    selectors to indices into a state vector, such that field names can be shared efficiently
- *    across clones.
+ *    across clones and across objects that define the same fields (see {@link FieldMap}). The state vector is a plain array, which is shared by an object and its
+ *    clones until either of them modifies its state (objects are confined to the thread of
+ *    their actor, hence their state requires no synchronization).
  *  - custom fields are collected in a linked list. Their lookup and assignment is slower,
  *    and when an object is cloned, the custom field objects are re-instantiated.
  *    The new clone is passed as the sole argument to 'new'.
@@ -66,8 +67,15 @@ import java.util.Vector;
  */
 public class NATCallframe extends NATByRef implements ATObject {
 	
+	private static final ATObject[] _NO_STATE_ = new ATObject[0];
+	
 	protected FieldMap 		variableMap_;
-	protected final Vector	stateVector_;
+	
+	/**
+	 * The values of the native fields, indexed by variableMap_. Only the first
+	 * variableMap_.size() elements are used, the remaining ones are spare capacity.
+	 */
+	protected ATObject[]	stateVector_;
 	
     /**
      * The lexical parent 'scope' of this call frame/object.
@@ -77,26 +85,56 @@ public class NATCallframe extends NATByRef implements ATObject {
 	
 	protected LinkedList customFields_;
 	
+	/*
+	 * Set when the state vector is shared with a clone: it is copied before
+	 * either the original or the clone modifies it.
+	 */
+	private boolean sharesState_ = false;
+	
 	/**
 	 * Default constructor: creates a new call frame with a given scope pointer.
 	 */
 	public NATCallframe(ATObject lexicalParent) {
-		variableMap_   = new FieldMap();
-		stateVector_   = new Vector();
+		variableMap_   = FieldMap.EMPTY;
+		stateVector_   = _NO_STATE_;
+		lexicalParent_ = lexicalParent;
+		customFields_ = null;
+	}
+	
+	/**
+	 * Used internally to create a callframe/object with a given layout. The given
+	 * state vector is owned by the new callframe.
+	 */
+	protected NATCallframe(FieldMap varMap, ATObject[] stateVector, ATObject lexicalParent) {
+		variableMap_ = varMap;
+		stateVector_ = stateVector;
 		lexicalParent_ = lexicalParent;
 		customFields_ = null;
 	}
 	
 	/**
-	 * Used internally for cloning a callframe/object.
+	 * Used internally for cloning a callframe/object. The given state vector
+	 * is shared with the original object until either of them modifies it.
 	 */
-	protected NATCallframe(FieldMap varMap, Vector stateVector, ATObject lexicalParent, LinkedList customFields) {
+	protected NATCallframe(FieldMap varMap, ATObject[] stateVector, ATObject lexicalParent, LinkedList customFields) {
 		variableMap_ = varMap;
 		stateVector_ = stateVector;
+		sharesState_ = true;
 		lexicalParent_ = lexicalParent;
 		customFields_ = customFields;
 	}
 	
+	/**
+	 * Used by methods to create a call frame whose parameters are bound in one step:
+	 * the frame starts out with the given map of parameter names and the arguments as its state.
+	 */
+	NATCallframe(ATObject lexicalParent, FieldMap parameterMap, ATObject[] arguments) {
+		variableMap_ = parameterMap;
+		stateVector_ = (ATObject[]) arguments.clone();
+		lexicalParent_ = lexicalParent;
+		customFields_ = null;
+	}
+	
 	/* ------------------------------------------
 	 * -- Slot accessing and mutating protocol --
 	 * ------------------------------------------ */
@@ -112,12 +150,13 @@ public class NATCallframe extends NATByRef implements ATObject {
 			// field already exists...
 			throw new XDuplicateSlot(name);			
 		} else {
-			boolean fieldAdded = variableMap_.put(name);
-			if (!fieldAdded) {
+			FieldMap extended = variableMap_.withField(name);
+			if (extended == variableMap_) {
 				throw new RuntimeException("Assertion failed: field not added to map while not duplicate");
 			}
+			variableMap_ = extended;
 			// field now defined, add its value to the state vector
-			stateVector_.add(value);
+			addState(value);
 		}
 		return Evaluator.getNil();
 	}
@@ -190,7 +229,7 @@ public class NATCallframe extends NATByRef implements ATObject {
 	}
 
 	public ATTable meta_listFields() throws InterpreterException {
-		ATObject[] nativeFields = new ATObject[stateVector_.size()];
+		ATObject[] nativeFields = new ATObject[variableMap_.size()];
 		ATSymbol[] fieldNames = variableMap_.listFields();
 		// native fields first
 		for (int i = 0; i < fieldNames.length; i++) {
@@ -240,16 +279,13 @@ public class NATCallframe extends NATByRef implements ATObject {
 		return true;
 	}
 	
+	/**
+	 * Call frames cannot be cloned, hence a call frame is only a clone of itself
+	 * (call frames that define the same variables share their map, so comparing
+	 * maps would relate unrelated call frames).
+	 */
 	public ATBoolean meta_isCloneOf(ATObject original) throws InterpreterException {
-		if(	(original instanceof NATCallframe) &
-			! (original instanceof NATObject)) {
-			FieldMap originalVariables = ((NATCallframe)original).variableMap_;
-			
-			return NATBoolean.atValue(
-					variableMap_.isDerivedFrom(originalVariables));
-		} else {
-			return NATBoolean._FALSE_;
-		}
+		return NATBoolean.atValue(original == this);
 	}
 
 	public ATBoolean meta_isRelatedTo(ATObject object) throws InterpreterException {
@@ -292,7 +328,7 @@ public class NATCallframe extends NATByRef implements ATObject {
 	protected ATObject getLocalField(ATSymbol selector) throws InterpreterException {
 		int index = variableMap_.get(selector);
 		if(index != -1) {
-			return (ATObject) (stateVector_.get(index));
+			return stateVector_[index];
 		} else {
 			ATField fld = getLocalCustomField(selector);
 			if (fld != null) {
@@ -328,7 +364,8 @@ public class NATCallframe extends NATByRef implements ATObject {
 		int index = variableMap_.get(selector);
 		if(index != -1) {
 			// field exists, modify the state vector
-			stateVector_.set(index, value);
+			ensureOwnState();
+			stateVector_[index] = value;
 			// ok
 		} else {
 			ATField fld = getLocalCustomField(selector);
@@ -349,11 +386,15 @@ public class NATCallframe extends NATByRef implements ATObject {
 	 * @throws XSelectorNotFound if the field could not be found
 	 */
 	protected ATObject removeLocalField(ATSymbol selector) throws InterpreterException {
-		int index = variableMap_.remove(selector);
+		int index = variableMap_.get(selector);
 		if (index != -1) {
+			variableMap_ = variableMap_.withoutField(selector);
 			// field exists, remove from state vector as well
-			ATObject val = (ATObject) stateVector_.get(index);
-			stateVector_.removeElementAt(index);
+			ATObject val = stateVector_[index];
+			ensureOwnState();
+			int size = variableMap_.size();
+			System.arraycopy(stateVector_, index + 1, stateVector_, index, size - index);
+			stateVector_[size] = null;
 			// ok
 			return val;
 		} else {
@@ -369,6 +410,51 @@ public class NATCallframe extends NATByRef implements ATObject {
 		}
 	}
 
+	/**
+	 * Stores the value of the field that was last added to the variable map,
+	 * growing the state vector if necessary.
+	 */
+	protected final void addState(ATObject value) {
+		int index = variableMap_.size() - 1;
+		if (sharesState_ || index >= stateVector_.length) {
+			ATObject[] grown = new ATObject[Math.max(index * 2, 4)];
+			System.arraycopy(stateVector_, 0, grown, 0, index);
+			stateVector_ = grown;
+			sharesState_ = false;
+		}
+		stateVector_[index] = value;
+	}
+	
+	/**
+	 * Marks the state vector as shared, after which it can be passed to a clone.
+	 * @return the state vector
+	 */
+	protected final ATObject[] shareState() {
+		sharesState_ = true;
+		return stateVector_;
+	}
+	
+	/**
+	 * Replaces the fields of this callframe by those described by the given map,
+	 * whose values are stored in the given state vector, which becomes owned by this callframe.
+	 * Used by {@link ScopeSnapshot} to fill in copies of the objects of a global scope.
+	 */
+	final void replaceState(FieldMap map, ATObject[] state) {
+		variableMap_ = map;
+		stateVector_ = state;
+		sharesState_ = false;
+	}
+	
+	/**
+	 * Copies the state vector if it is still shared with clones.
+	 */
+	private void ensureOwnState() {
+		if (sharesState_) {
+			stateVector_ = (ATObject[]) stateVector_.clone();
+			sharesState_ = false;
+		}
+	}
+	
 	/**
 	 * A call frame has no methods.
 	 */
@@ -41,7 +41,6 @@ import edu.vub.util.TempFieldGenerator;
 
 import java.util.LinkedList;
 import java.util.Set;
-import java.util.Vector;
 
 /**
  * Instances of the class NATMethodInvocation represent first-class method invocations.
@@ -63,7 +62,7 @@ public final class NATDelegation extends NATMessage implements ATMethodInvocatio
      * Copy constructor.
      */
     private NATDelegation(FieldMap map,
-            Vector state,
+            ATObject[] state,
             LinkedList originalCustomFields,
             MethodDictionary methodDict,
             ATObject dynamicParent,
@@ -107,7 +106,7 @@ public final class NATDelegation extends NATMessage implements ATMethodInvocatio
 	}
 	
 	protected NATObject createClone(FieldMap map,
-			Vector state,
+			ATObject[] state,
 			LinkedList originalCustomFields,
 			MethodDictionary methodDict,
 			ATObject dynamicParent,
@@ -29,7 +29,6 @@ package edu.vub.at.objects.natives;
 
 import java.util.LinkedList;
 import java.util.Set;
-import java.util.Vector;
 
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.objects.ATFieldSelection;
@@ -58,7 +57,7 @@ public final class NATFieldSelection extends NATMessage implements ATFieldSelect
      * Copy constructor.
      */
     private NATFieldSelection(FieldMap map,
-            Vector state,
+            ATObject[] state,
             LinkedList originalCustomFields,
             MethodDictionary methodDict,
             ATObject dynamicParent,
@@ -91,7 +90,7 @@ public final class NATFieldSelection extends NATMessage implements ATFieldSelect
 	}
 	
 	protected NATObject createClone(FieldMap map,
-			Vector state,
+			ATObject[] state,
 			LinkedList originalCustomFields,
 			MethodDictionary methodDict,
 			ATObject dynamicParent,
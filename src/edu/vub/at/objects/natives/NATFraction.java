@@ -154,7 +154,7 @@ public final class NATFraction extends NATNumeric implements ATFraction {
 		return other.base_addFraction(this);
 	}
 	public ATNumeric base_addNumber(ATNumber other) throws InterpreterException {
-		return NATFraction.atValue(javaValue + other.asNativeNumber().javaValue);
+		return NATFraction.atValue(javaValue + other.asNativeNumber().getJavaValue());
 	}
 	public ATNumeric base_addFraction(ATFraction other) throws InterpreterException {
 		return NATFraction.atValue(javaValue + other.asNativeFraction().javaValue);
@@ -165,7 +165,7 @@ public final class NATFraction extends NATNumeric implements ATFraction {
 		return other.base_subtractFraction(this);
 	}
 	public ATNumeric base_subtractNumber(ATNumber other) throws InterpreterException {
-		return NATFraction.atValue(other.asNativeNumber().javaValue - javaValue);
+		return NATFraction.atValue(other.asNativeNumber().getJavaValue() - javaValue);
 	}
 	public ATNumeric base_subtractFraction(ATFraction other) throws InterpreterException {
 		return NATFraction.atValue(other.asNativeFraction().javaValue - javaValue);
@@ -176,7 +176,7 @@ public final class NATFraction extends NATNumeric implements ATFraction {
 		return other.base_timesFraction(this);
 	}
 	public ATNumeric base_timesNumber(ATNumber other) throws InterpreterException {
-		return NATFraction.atValue(other.asNativeNumber().javaValue * javaValue);
+		return NATFraction.atValue(other.asNativeNumber().getJavaValue() * javaValue);
 	}
 	public ATNumeric base_timesFraction(ATFraction other) throws InterpreterException {
 		return NATFraction.atValue(other.asNativeFraction().javaValue * javaValue);
@@ -189,7 +189,7 @@ public final class NATFraction extends NATNumeric implements ATFraction {
 	public ATNumeric base_divideNumber(ATNumber other) throws InterpreterException {
 		if (javaValue == 0)
 			throw new XIllegalArgument("Division by zero: " + other);
-		return NATFraction.atValue((other.asNativeNumber().javaValue * 1.0) / javaValue);
+		return NATFraction.atValue((other.asNativeNumber().getJavaValue() * 1.0) / javaValue);
 	}
 	public ATNumeric base_divideFraction(ATFraction other) throws InterpreterException {
 		if (javaValue == 0)
@@ -202,7 +202,7 @@ public final class NATFraction extends NATNumeric implements ATFraction {
 		return other.base_gequalsFraction(this);
 	}
 	public ATNumeric base_gequalsNumber(ATNumber other) throws InterpreterException {
-		int n = other.asNativeNumber().javaValue;
+		double n = other.asNativeNumber().getJavaValue();
 		if (n < javaValue) {
 			return NATNumber.MONE; // -1
 		} else if (n > javaValue) {
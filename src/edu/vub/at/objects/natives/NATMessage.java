@@ -45,7 +45,6 @@ import edu.vub.at.objects.natives.grammar.AGSymbol;
 
 import java.util.LinkedList;
 import java.util.Set;
-import java.util.Vector;
 
 /**
  * Instances of this class represent first-class messages.
@@ -66,7 +65,7 @@ public abstract class NATMessage extends NATObject implements ATMessage {
       private static final long serialVersionUID = -3475956316807558583L;
 
       public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-			int arity = arguments.base_length().asNativeNumber().javaValue;
+			int arity = arguments.base_length().asNativeNumber().asInt();
 			if (arity != 2) {
 				throw new XArityMismatch("sendTo", 2, arity);
 			}
@@ -82,7 +81,7 @@ public abstract class NATMessage extends NATObject implements ATMessage {
 	  private static final long serialVersionUID = -5721508425469755751L;
 		
       public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-			int arity = arguments.base_length().asNativeNumber().javaValue;
+			int arity = arguments.base_length().asNativeNumber().asInt();
 			if (arity != 1) {
 				throw new XArityMismatch("from", 1, arity);
 			}
@@ -91,6 +90,17 @@ public abstract class NATMessage extends NATObject implements ATMessage {
 	};
 	
 	
+	/**
+	 * The fields of a native message: its dynamic parent, selector and arguments.
+	 */
+	private static final FieldMap _FIELDS_ = FieldMap.EMPTY.withField(_SUPER_NAME_).withField(_SELECTOR_).withField(_ARGUMENTS_);
+	
+	/**
+	 * The primitive methods shared by all native messages.
+	 */
+	protected static final SharedMethodDictionary _METHODS_ =
+		new SharedMethodDictionary(NATMessage.class, "_METHODS_", new NATMethod[] { _PRIM_SND_, _PRIM_FRM_ });
+	
     /**
      * Converts the given table of annotations into an ATTypeTag array.
      * Each element of the annotations table is converted into a type.
@@ -120,18 +130,23 @@ public abstract class NATMessage extends NATObject implements ATMessage {
 	 * @param msgType a subtype of the Message type, added by subclasses to mark which kind of native message is created
 	 */
 	protected NATMessage(ATSymbol sel, ATTable arg, ATTable annotations, ATTypeTag msgType) throws InterpreterException {
-		super(annotationsToTypes(msgType, annotations));
-		super.meta_defineField(_SELECTOR_, sel);
-		super.meta_defineField(_ARGUMENTS_, arg);
-		super.meta_addMethod(_PRIM_SND_);
-		super.meta_addMethod(_PRIM_FRM_);
+		this(sel, arg, annotations, msgType, _METHODS_);
+	}
+	
+	/**
+	 * Construct a new message whose primitive methods are given by a dictionary
+	 * shared by all instances of the subclass, which should extend {@link #_METHODS_}.
+	 */
+	protected NATMessage(ATSymbol sel, ATTable arg, ATTable annotations, ATTypeTag msgType,
+			SharedMethodDictionary methods) throws InterpreterException {
+		super(_FIELDS_, new ATObject[] { null, sel, arg }, methods, annotationsToTypes(msgType, annotations));
 	}
 
     /**
      * Copy constructor.
      */
     protected NATMessage(FieldMap map,
-            Vector state,
+            ATObject[] state,
             LinkedList originalCustomFields,
             MethodDictionary methodDict,
             ATObject dynamicParent,
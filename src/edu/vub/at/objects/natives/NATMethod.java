@@ -64,6 +64,14 @@ public class NATMethod extends NATByCopy implements ATMethod {
 	// partial function denoting a parameter binding algorithm specialized for this method's parameter list
 	private final PartialBinder parameterBindingFunction_;
 	
+	/*
+	 * The results of lexical addressing, computed upon the first application of this method:
+	 * the map of parameter names with which call frames of this method start out (null if
+	 * the parameters are not all mandatory) and the body to evaluate in those call frames.
+	 */
+	private transient FieldMap frameMap_;
+	private transient volatile ATBegin addressedBody_;
+	
 	/** construct a new method. This method may raise an exception if the parameter list is illegal. */
 	public NATMethod(ATSymbol name, ATTable parameters, ATBegin body, ATTable annotations) throws InterpreterException {
 		name_ 		= name;
@@ -136,10 +144,32 @@ public class NATMethod extends NATByCopy implements ATMethod {
 	 * @return the value of evaluating the function body
 	 */
 	public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-		NATCallframe cf = new NATCallframe(ctx.base_lexicalScope());
-		ATContext evalCtx = ctx.base_withLexicalEnvironment(cf);
-		PartialBinder.defineParamsForArgs(parameterBindingFunction_, evalCtx, arguments);
-		return body_.meta_eval(evalCtx);
+		ATBegin body = addressedBody_;
+		if (body == null) {
+			LexicalAddressing.analyze(this, null);
+			body = addressedBody_;
+		}
+		FieldMap frameMap = frameMap_;
+		ATObject[] args = arguments.asNativeTable().elements_;
+		ATContext evalCtx;
+		if (frameMap != null && frameMap.size() == args.length) {
+			// all parameters are mandatory: bind them all at once
+			evalCtx = ctx.base_withLexicalEnvironment(new NATCallframe(ctx.base_lexicalScope(), frameMap, args));
+		} else {
+			NATCallframe cf = new NATCallframe(ctx.base_lexicalScope());
+			evalCtx = ctx.base_withLexicalEnvironment(cf);
+			PartialBinder.defineParamsForArgs(parameterBindingFunction_, evalCtx, arguments);
+		}
+		return body.meta_eval(evalCtx);
+	}
+	
+	/**
+	 * Invoked by {@link LexicalAddressing} to store the results of analyzing this method.
+	 */
+	void setAnalysis(FieldMap frameMap, ATBegin addressedBody) {
+		frameMap_ = frameMap;
+		// written last, such that other threads observing the body also observe the map
+		addressedBody_ = addressedBody;
 	}
 	
 	/**
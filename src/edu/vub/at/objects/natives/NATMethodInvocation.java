@@ -40,7 +40,6 @@ import edu.vub.util.TempFieldGenerator;
 
 import java.util.LinkedList;
 import java.util.Set;
-import java.util.Vector;
 
 /**
  * Instances of this class represent first-class method invocations.
@@ -59,7 +58,7 @@ public final class NATMethodInvocation extends NATMessage implements ATMethodInv
      * Copy constructor.
      */
     private NATMethodInvocation(FieldMap map,
-            Vector state,
+            ATObject[] state,
             LinkedList originalCustomFields,
             MethodDictionary methodDict,
             ATObject dynamicParent,
@@ -103,7 +102,7 @@ public final class NATMethodInvocation extends NATMessage implements ATMethodInv
 	}
 	
 	protected NATObject createClone(FieldMap map,
-			Vector state,
+			ATObject[] state,
 			LinkedList originalCustomFields,
 			MethodDictionary methodDict,
 			ATObject dynamicParent,
@@ -42,14 +42,12 @@ import edu.vub.at.objects.grammar.ATSymbol;
 import edu.vub.at.objects.mirrors.NativeClosure;
 import edu.vub.at.objects.mirrors.Reflection;
 import edu.vub.at.objects.natives.grammar.AGSymbol;
-import edu.vub.at.parser.NATParser;
 import edu.vub.util.TempFieldGenerator;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.Set;
-import java.util.Vector;
 
 /**
  * Instances of the class NATNamespace represent namespace objects.
@@ -105,7 +103,7 @@ public final class NATNamespace extends NATObject {
 	 * Private constructor used only for cloning
 	 */
 	private NATNamespace(FieldMap map,
-			  Vector state,
+			  ATObject[] state,
 			  LinkedList customFields,
 			  MethodDictionary methodDict,
 			  ATObject dynamicParent,
@@ -120,6 +118,16 @@ public final class NATNamespace extends NATObject {
 	  name_ = name;
 	}
 	
+	/**
+	 * Constructor used only by {@link ScopeSnapshot} to copy a namespace
+	 * together with the modules that were already loaded into it.
+	 */
+	NATNamespace(NATNamespace original, ATObject[] state, MethodDictionary methods) {
+		super(original, state, methods);
+		path_ = original.path_;
+		name_ = original.name_;
+	}
+	
 	/**
 	 * For a namespace object, doesNotUnderstand triggers the querying of the local file system
 	 * to load files corresponding to the missing selector.
@@ -161,14 +169,13 @@ public final class NATNamespace extends NATObject {
 				NATObject fileScope = createFileScopeFor(this);
 				
 				try {
-                     // load the code from the file
-					String code = Evaluator.loadContentOfFile(src);
+                     // load and parse the code from the file, unless another actor already did so
+					ATAbstractGrammar source = ModuleCache.parse(src);
 				
 				    // construct the proper evaluation context for the code
 				    NATContext ctx = new NATContext(fileScope, fileScope);
 				    
-				    // parse and evaluate the code in the proper context and bind its result to the missing slot
-					ATAbstractGrammar source = NATParser.parse(src.getAbsolutePath(), code);
+				    // evaluate the code in the proper context and bind its result to the missing slot
 					final ATObject result = source.meta_eval(ctx);
 					this.impl_invokeMutator(this, selector.asAssignmentSymbol(), NATTable.of(result));
 					//this.meta_assignField(this, selector, result);
@@ -238,7 +245,7 @@ public final class NATNamespace extends NATObject {
 	}
 	
 	protected NATObject createClone(FieldMap map,
-			  Vector state,
+			  ATObject[] state,
 			  LinkedList customFields,
 			  MethodDictionary methodDict,
 			  ATObject dynamicParent,
@@ -128,7 +128,7 @@ public class NATNil extends NATObject implements ATNil {
 			_EQL_NAME_, NATTable.atValue(new ATObject[] { AGSymbol.jAlloc("comparand")})) {      
 		public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
 			if (!arguments.base_length().equals(NATNumber.ONE)) {
-				throw new XArityMismatch("==", 1, arguments.base_length().asNativeNumber().javaValue);
+				throw new XArityMismatch("==", 1, arguments.base_length().asNativeNumber().asInt());
 			}
 			
 			ATObject comparand = arguments.base_at(NATNumber.ONE);
@@ -160,7 +160,7 @@ public class NATNil extends NATObject implements ATNil {
 	private static final PrimitiveMethod _PRIM_NEQ_ = new PrimitiveMethod(        
 			_NEQ_NAME_, NATTable.of(AGSymbol.jAlloc("other"))) {
       public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
-			int arity = arguments.base_length().asNativeNumber().javaValue;
+			int arity = arguments.base_length().asNativeNumber().asInt();
 			if (arity != 1) {
 				throw new XArityMismatch("!=", 1, arity);
 			}
@@ -46,40 +46,145 @@ import edu.vub.at.objects.ATText;
 import edu.vub.at.objects.coercion.NativeTypeTags;
 import edu.vub.at.objects.grammar.ATSymbol;
 import edu.vub.at.objects.mirrors.DirectNativeMethod;
+import edu.vub.at.objects.mirrors.DirectNativeMethodMap;
 import edu.vub.at.objects.mirrors.Reflection;
+import edu.vub.at.parser.SourceLocation;
 import edu.vub.util.TempFieldGenerator;
 
-import java.util.HashMap;
+import java.math.BigInteger;
 
 /**
  * The native implementation of an AmbientTalk number.
- * A number is implemented by a Java int.
+ * A number is implemented by a Java long. Arithmetic on longs is checked for overflow:
+ * results that do not fit in a long are transparently promoted to a number backed by
+ * a {@link BigInteger}. Such numbers are demoted again as soon as they fit in a long.
  * 
  * @author smostinc
  */
 public final class NATNumber extends NATNumeric implements ATNumber {
 	
-	public static final NATNumber ZERO = new NATNumber(0);
-	public static final NATNumber ONE = new NATNumber(1);
-	public static final NATNumber MONE = new NATNumber(-1);
+	/**
+	 * The upper bound of the range of preallocated numbers can be configured
+	 * by means of this system property.
+	 */
+	private static final String _ENV_AT_NUMBER_CACHE_MAX_ = "AT_NUMBER_CACHE_MAX";
+	
+	private static final int _CACHE_MIN_ = -128;
+	private static final int _CACHE_MAX_ = Math.max(1, Integer.getInteger(_ENV_AT_NUMBER_CACHE_MAX_, 1024).intValue());
+	
+	/**
+	 * Preallocated numbers in the range [_CACHE_MIN_, _CACHE_MAX_], shared by all actors.
+	 * Numbers are immutable and compared by value, so sharing them is safe.
+	 */
+	private static final NATNumber[] _CACHE_ = new NATNumber[_CACHE_MAX_ - _CACHE_MIN_ + 1];
+	
+	static {
+		for (int i = 0; i < _CACHE_.length; i++) {
+			_CACHE_[i] = new NATNumber(i + _CACHE_MIN_);
+		}
+	}
+	
+	public static final NATNumber ZERO = atValue(0);
+	public static final NATNumber ONE = atValue(1);
+	public static final NATNumber MONE = atValue(-1);
 	
-	public final int javaValue;
+	/**
+	 * The value of this number. If the number does not fit in a long,
+	 * this field holds the low-order 64 bits of {@link #bigValue_}.
+	 * Use {@link #asInt()} or {@link #asLong()} for a range-checked conversion.
+	 */
+	public final long javaValue;
+	
+	/**
+	 * The value of this number if it does not fit in a long, null otherwise.
+	 */
+	private final BigInteger bigValue_;
 	
 	/**
-	 * This method currently serves as a hook for number creation.
-	 * Currently number objects are not reused, but this might change in the future.
+	 * This method serves as a hook for number creation.
+	 * Small numbers are not allocated but taken from a cache of preallocated numbers.
 	 */
 	public static final NATNumber atValue(int javaNumber) {
+		if (javaNumber >= _CACHE_MIN_ && javaNumber <= _CACHE_MAX_) {
+			return _CACHE_[javaNumber - _CACHE_MIN_];
+		}
 		return new NATNumber(javaNumber);
 	}
 	
-	private NATNumber(int javaNumber) {
+	public static final NATNumber atValue(long javaNumber) {
+		if (javaNumber >= _CACHE_MIN_ && javaNumber <= _CACHE_MAX_) {
+			return _CACHE_[(int) javaNumber - _CACHE_MIN_];
+		}
+		return new NATNumber(javaNumber);
+	}
+	
+	public static final NATNumber atValue(BigInteger javaNumber) {
+		if (javaNumber.bitLength() < 64) {
+			return atValue(javaNumber.longValue());
+		}
+		return new NATNumber(javaNumber);
+	}
+	
+	private NATNumber(long javaNumber) {
 		javaValue = javaNumber;
+		bigValue_ = null;
+	}
+	
+	private NATNumber(BigInteger javaNumber) {
+		javaValue = javaNumber.longValue();
+		bigValue_ = javaNumber;
+	}
+	
+	/**
+	 * @return the value of this number as a Java int
+	 * @throws XIllegalArgument if the number does not fit in an int
+	 */
+	public int asInt() throws XIllegalArgument {
+		if (bigValue_ != null || javaValue < Integer.MIN_VALUE || javaValue > Integer.MAX_VALUE) {
+			throw new XIllegalArgument("Number out of range of a Java int: " + this.toString());
+		}
+		return (int) javaValue;
+	}
+	
+	/**
+	 * @return the value of this number as a Java long
+	 * @throws XIllegalArgument if the number does not fit in a long
+	 */
+	public long asLong() throws XIllegalArgument {
+		if (bigValue_ != null) {
+			throw new XIllegalArgument("Number out of range of a Java long: " + this.toString());
+		}
+		return javaValue;
+	}
+	
+	/**
+	 * @return true if this number can be converted into a Java int without loss of precision
+	 */
+	public boolean isInt() {
+		return bigValue_ == null && javaValue >= Integer.MIN_VALUE && javaValue <= Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * @return true if this number can be converted into a Java long without loss of precision
+	 */
+	public boolean isLong() {
+		return bigValue_ == null;
+	}
+	
+	/**
+	 * @return the value of this number as a Java BigInteger
+	 */
+	public BigInteger asBigInteger() {
+		return (bigValue_ == null) ? BigInteger.valueOf(javaValue) : bigValue_;
 	}
 
     public ATBoolean base__opeql__opeql_(ATObject comparand) throws XTypeMismatch {
     	if (comparand.isNativeNumber()) {
-    		return NATBoolean.atValue(javaValue == comparand.asNativeNumber().javaValue);
+    		NATNumber other = comparand.asNativeNumber();
+    		if (bigValue_ == null && other.bigValue_ == null) {
+    			return NATBoolean.atValue(javaValue == other.javaValue);
+    		}
+    		return NATBoolean.atValue(asBigInteger().equals(other.asBigInteger()));
     	} else {
     		return NATBoolean._FALSE_;
     	}
@@ -92,11 +197,11 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	public NATNumber asNativeNumber() { return this; }
 	
 	public NATText meta_print() throws InterpreterException {
-        return NATText.atValue(String.valueOf(javaValue));
+        return NATText.atValue(this.toString());
 	}
 	
 	public NATText impl_asCode(TempFieldGenerator objectMap) throws InterpreterException {
-		return NATText.atValue(String.valueOf(javaValue));
+		return NATText.atValue(this.toString());
 	}
 	
     public ATTable meta_typeTags() throws InterpreterException {
@@ -104,9 +209,84 @@ public final class NATNumber extends NATNumeric implements ATNumber {
     }
 	
 	// contract with NATNumeric
-	protected double getJavaValue() { return javaValue; }
+	protected double getJavaValue() {
+		return (bigValue_ == null) ? javaValue : bigValue_.doubleValue();
+	}
+	
+	public int hashCode() {
+		return (bigValue_ == null) ? (int) (javaValue ^ (javaValue >>> 32)) : bigValue_.hashCode();
+	}
+	
+	public String toString() {
+		return (bigValue_ == null) ? String.valueOf(javaValue) : bigValue_.toString();
+	}
+	
+	private boolean isShared() {
+		return bigValue_ == null && javaValue >= _CACHE_MIN_ && javaValue <= _CACHE_MAX_;
+	}
 	
-	public int hashCode() { return javaValue; }
+	// overflow-checked arithmetic: operate on longs, promote to BigInteger on overflow
+	
+	private static NATNumber sum(NATNumber x, NATNumber y) {
+		if (x.bigValue_ == null && y.bigValue_ == null) {
+			long a = x.javaValue;
+			long b = y.javaValue;
+			long r = a + b;
+			// overflow iff both operands have a sign different from the result
+			if (((a ^ r) & (b ^ r)) >= 0) {
+				return atValue(r);
+			}
+		}
+		return atValue(x.asBigInteger().add(y.asBigInteger()));
+	}
+	
+	private static NATNumber difference(NATNumber x, NATNumber y) {
+		if (x.bigValue_ == null && y.bigValue_ == null) {
+			long a = x.javaValue;
+			long b = y.javaValue;
+			long r = a - b;
+			// overflow iff the operands have different signs and the sign of the result differs from a
+			if (((a ^ b) & (a ^ r)) >= 0) {
+				return atValue(r);
+			}
+		}
+		return atValue(x.asBigInteger().subtract(y.asBigInteger()));
+	}
+	
+	private static NATNumber product(NATNumber x, NATNumber y) {
+		if (x.bigValue_ == null && y.bigValue_ == null) {
+			long a = x.javaValue;
+			long b = y.javaValue;
+			long r = a * b;
+			// operands that both fit in 31 bits can never overflow
+			if (((Math.abs(a) | Math.abs(b)) >>> 31 == 0) ||
+				((b == 0 || r / b == a) && !(a == Long.MIN_VALUE && b == -1))) {
+				return atValue(r);
+			}
+		}
+		return atValue(x.asBigInteger().multiply(y.asBigInteger()));
+	}
+	
+	/**
+	 * Preallocated numbers are shared by all number literals in all source files,
+	 * so they do not record a single source location.
+	 */
+	public SourceLocation impl_getLocation() {
+		return isShared() ? null : super.impl_getLocation();
+	}
+	
+	public void impl_setLocation(SourceLocation loc) {
+		if (!isShared()) {
+			super.impl_setLocation(loc);
+		}
+	}
+	
+	/**
+	 * After deserialization, small numbers are replaced by their preallocated instance.
+	 */
+	public ATObject meta_resolve() throws InterpreterException {
+		return (bigValue_ == null) ? atValue(javaValue) : this;
+	}
 	
 	/* -----------------------------------
 	 * - base-level interface to numbers -
@@ -118,7 +298,8 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 * NBR(n).doTimes: { |i| code } => for i = 1 to n do code.eval(i) ; nil
 	 */
 	public ATNil base_doTimes_(ATClosure code) throws InterpreterException {
-		for (int i = 1; i <= javaValue; i++) {
+		long n = this.asLong();
+		for (long i = 1; i <= n; i++) {
 			code.base_apply(NATTable.atValue(new ATObject[] { NATNumber.atValue(i) }));
 		}
 		return Evaluator.getNil();
@@ -140,16 +321,16 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 * Also works if stop > start, in which case it becomes a downTo.
 	 */
 	public ATNil base_to_step_do_(ATNumber end, ATNumber inc, ATClosure code) throws InterpreterException {
-		int stop = end.asNativeNumber().javaValue;
-		int step = inc.asNativeNumber().javaValue;
-		int start = javaValue;
+		long stop = end.asNativeNumber().asLong();
+		long step = inc.asNativeNumber().asLong();
+		long start = this.asLong();
 		if (start > stop) {
 			return Evaluator.getNil();
-			//for (int i = start; i >= stop; i -= step) {
+			//for (long i = start; i >= stop; i -= step) {
 			//	code.base_apply(NATTable.atValue(new ATObject[] { NATNumber.atValue(i) }));
 			//}
 		} else {
-			for (int i = start; i <= stop; i+= step) {
+			for (long i = start; i <= stop; i+= step) {
 				code.base_apply(NATTable.atValue(new ATObject[] { NATNumber.atValue(i) }));
 			}
 		}
@@ -170,16 +351,16 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 *   for i = start; i >= stop; i-- do code.eval(i) ; nil
 	 */
 	public ATNil base_downTo_step_do_(ATNumber end, ATNumber inc, ATClosure code) throws InterpreterException {
-		int stop = end.asNativeNumber().javaValue;
-		int step = inc.asNativeNumber().javaValue;
-		int start = javaValue;
+		long stop = end.asNativeNumber().asLong();
+		long step = inc.asNativeNumber().asLong();
+		long start = this.asLong();
 		if (start > stop) {
-			for (int i = start; i >= stop; i -= step) {
+			for (long i = start; i >= stop; i -= step) {
 				code.base_apply(NATTable.atValue(new ATObject[] { NATNumber.atValue(i) }));
 			}
 		} else {
 			return Evaluator.getNil();
-			//for (int i = start; i <= stop; i+= step) {
+			//for (long i = start; i <= stop; i+= step) {
 			//	code.base_apply(NATTable.atValue(new ATObject[] { NATNumber.atValue(i) }));
 			//}
 		}
@@ -194,16 +375,16 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 *  5 ** 2 => [ 5, 4, 3 ]
 	 */
 	public ATTable base__optms__optms_(ATNumber end) throws InterpreterException {
-		int stop = end.asNativeNumber().javaValue;
-		int start = javaValue;
+		long stop = end.asNativeNumber().asLong();
+		long start = this.asLong();
 		if (start < stop) {
-			ATObject[] tbl = new ATObject[stop - start];
+			ATObject[] tbl = new ATObject[difference(end.asNativeNumber(), this).asInt()];
 			for (int i = 0; i < tbl.length; i++) {
 				tbl[i] = NATNumber.atValue(start + i);
 			}
 			return NATTable.atValue(tbl);
 		} else {
-			ATObject[] tbl = new ATObject[start - stop];
+			ATObject[] tbl = new ATObject[difference(this, end.asNativeNumber()).asInt()];
 			for (int i = 0; i < tbl.length; i++) {
 				tbl[i] = NATNumber.atValue(start - i);
 			}
@@ -221,8 +402,7 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	public ATTable base__optms__optms__optms_(ATNumber end) throws InterpreterException {
 		// x *** y == x ** y+1 iff x < y
 		// x *** y == x ** y-1 iff y > x
-		int stop = end.asNativeNumber().javaValue;
-		if (javaValue <= stop)
+		if (this.base_gequalsNumber(end).asNativeNumber().javaValue >= 0)
 		    return this.base__optms__optms_(end.base_inc().asNumber());
 		else
 			return this.base__optms__optms_(end.base_dec().asNumber());
@@ -234,21 +414,24 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 * NBR(n).inc() => NBR(n+1)
 	 */
 	public ATNumber base_inc() {
-		return NATNumber.atValue(javaValue+1);
+		return sum(this, ONE);
 	}
 	
 	/**
 	 * NBR(n).dec() => NBR(n-1)
 	 */
 	public ATNumber base_dec() {
-		return NATNumber.atValue(javaValue-1);
+		return difference(this, ONE);
 	}
 	
 	/**
 	 * NBR(n).abs() => NBR(abs(n))
 	 */
 	public ATNumber base_abs() {
-		return NATNumber.atValue(Math.abs(javaValue));
+		if (bigValue_ == null && javaValue != Long.MIN_VALUE) {
+			return NATNumber.atValue(Math.abs(javaValue));
+		}
+		return NATNumber.atValue(asBigInteger().abs());
 	}
 	
 	public ATNumber base_ceiling() throws InterpreterException {
@@ -267,9 +450,10 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 * NBR(start) ?? NBR(stop) => FRC(n) where n chosen randomly in [ start, stop [
 	 */
 	public ATFraction base__opque__opque_(ATNumber nbr) throws InterpreterException {
-		int stop = nbr.asNativeNumber().javaValue;
+		double stop = nbr.asNativeNumber().getJavaValue();
+		double start = this.getJavaValue();
 		double rnd = Math.random(); // 0 <= rnd < 1.0
-		double frc = (rnd * (stop - javaValue)) + javaValue;
+		double frc = (rnd * (stop - start)) + start;
 		return NATFraction.atValue(frc);
 	}
 	
@@ -277,14 +461,22 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 * NBR(n) % NBR(r) => NBR(n % r)
 	 */
 	public ATNumber base__oprem_(ATNumber n) throws InterpreterException {
-		return NATNumber.atValue(javaValue % n.asNativeNumber().javaValue);
+		NATNumber d = n.asNativeNumber();
+		if (bigValue_ == null && d.bigValue_ == null) {
+			return NATNumber.atValue(javaValue % d.javaValue);
+		}
+		return NATNumber.atValue(asBigInteger().remainder(d.asBigInteger()));
 	}
 	
 	/**
 	 * NBR(n) /- NBR(d) => NBR(n / d)
 	 */
 	public ATNumber base__opdiv__opmns_(ATNumber n) throws InterpreterException {
-		return NATNumber.atValue(javaValue / n.asNativeNumber().javaValue);
+		NATNumber d = n.asNativeNumber();
+		if (bigValue_ == null && d.bigValue_ == null && !(javaValue == Long.MIN_VALUE && d.javaValue == -1)) {
+			return NATNumber.atValue(javaValue / d.javaValue);
+		}
+		return NATNumber.atValue(asBigInteger().divide(d.asBigInteger()));
 	}
 	
 	// Numeric arithmetic operations
@@ -294,10 +486,10 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 		return other.base_addNumber(this);
 	}
 	public ATNumeric base_addNumber(ATNumber other) throws InterpreterException {
-		return NATNumber.atValue(other.asNativeNumber().javaValue + javaValue);
+		return sum(other.asNativeNumber(), this);
 	}
 	public ATNumeric base_addFraction(ATFraction other) throws InterpreterException {
-		return NATFraction.atValue(other.asNativeFraction().javaValue + javaValue);
+		return NATFraction.atValue(other.asNativeFraction().javaValue + getJavaValue());
 	}
 	
 	// subtraction -
@@ -305,10 +497,10 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 		return other.base_subtractNumber(this);
 	}
 	public ATNumeric base_subtractNumber(ATNumber other) throws InterpreterException {
-		return NATNumber.atValue(other.asNativeNumber().javaValue - javaValue);
+		return difference(other.asNativeNumber(), this);
 	}
 	public ATNumeric base_subtractFraction(ATFraction other) throws InterpreterException {
-		return NATFraction.atValue(other.asNativeFraction().javaValue - javaValue);
+		return NATFraction.atValue(other.asNativeFraction().javaValue - getJavaValue());
 	}
 	
 	// multiplication *
@@ -316,10 +508,10 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 		return other.base_timesNumber(this);
 	}
 	public ATNumeric base_timesNumber(ATNumber other) throws InterpreterException {
-		return NATNumber.atValue(other.asNativeNumber().javaValue * javaValue);
+		return product(other.asNativeNumber(), this);
 	}
 	public ATNumeric base_timesFraction(ATFraction other) throws InterpreterException {
-		return NATFraction.atValue(other.asNativeFraction().javaValue * javaValue);
+		return NATFraction.atValue(other.asNativeFraction().javaValue * getJavaValue());
 	}
 	
 	// division /
@@ -327,14 +519,14 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 		return other.base_divideNumber(this);
 	}
 	public ATNumeric base_divideNumber(ATNumber other) throws InterpreterException {
-		if (javaValue == 0)
+		if (bigValue_ == null && javaValue == 0)
 			throw new XIllegalArgument("Division by zero: " + other);
-		return NATFraction.atValue((other.asNativeNumber().javaValue * 1.0) / javaValue);
+		return NATFraction.atValue(other.asNativeNumber().getJavaValue() / getJavaValue());
 	}
 	public ATNumeric base_divideFraction(ATFraction other) throws InterpreterException {
-		if (javaValue == 0)
+		if (bigValue_ == null && javaValue == 0)
 			throw new XIllegalArgument("Division by zero: " + other);
-		return NATFraction.atValue(other.asNativeFraction().javaValue / javaValue);
+		return NATFraction.atValue(other.asNativeFraction().javaValue / getJavaValue());
 	}
 	
 	// comparison: generalized equality <=>
@@ -342,10 +534,16 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 		return other.base_gequalsNumber(this);
 	}
 	public ATNumeric base_gequalsNumber(ATNumber other) throws InterpreterException {
-		int n = other.asNativeNumber().javaValue;
-		if (n < javaValue) {
+		NATNumber n = other.asNativeNumber();
+		int cmp;
+		if (bigValue_ == null && n.bigValue_ == null) {
+			cmp = (n.javaValue < javaValue) ? -1 : ((n.javaValue > javaValue) ? 1 : 0);
+		} else {
+			cmp = n.asBigInteger().compareTo(asBigInteger());
+		}
+		if (cmp < 0) {
 			return NATNumber.MONE; // -1
-		} else if (n > javaValue) {
+		} else if (cmp > 0) {
 			return NATNumber.ONE;  // +1
 		} else {
 			return NATNumber.ZERO; // 0
@@ -353,9 +551,10 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	}
 	public ATNumeric base_gequalsFraction(ATFraction other) throws InterpreterException {
 		double n = other.asNativeFraction().javaValue;
-		if (n < javaValue) {
+		double self = getJavaValue();
+		if (n < self) {
 			return NATNumber.MONE; // -1
-		} else if (n > javaValue) {
+		} else if (n > self) {
 			return NATNumber.ONE;  // +1
 		} else {
 			return NATNumber.ZERO; // 0
@@ -369,7 +568,7 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 * @return a Java long representation of self.
 	 */
 	public long base_millisec() throws InterpreterException {
-		return javaValue;
+		return this.asLong();
 	}
 	
 	/**
@@ -379,7 +578,7 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 * @return a Java long representation of self * 1000.
 	 */
 	public long base_seconds() throws InterpreterException {
-		return javaValue * 1000;
+		return this.asLong() * 1000;
 	}
 	
 	/**
@@ -390,23 +589,23 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 * @return a Java long representation of self * 1000 * 60.
 	 */
 	public long base_minutes() throws InterpreterException {
-		return javaValue * 60 * 1000;
+		return this.asLong() * 60 * 1000;
 	}
 	
 	/**
 	 * NUM(n).toText() = TXT(String.valueOf(n))
 	 */
 	public ATText base_toText() throws InterpreterException {
-		return NATText.atValue(String.valueOf(javaValue));
+		return NATText.atValue(this.toString());
 	}
 	
 	/**
-	 * This hashmap stores all native methods of native AmbientTalk numbers.
+	 * This map stores all native methods of native AmbientTalk numbers.
 	 * It is populated when this class is loaded, and shared between all
 	 * AmbientTalk actors on this VM. This is safe, since {@link DirectNativeMethod}
 	 * instances are all immutable.
 	 */
-	private static final HashMap<String, ATMethod> _meths = new HashMap<String, ATMethod>();
+	private static final DirectNativeMethodMap _meths = new DirectNativeMethodMap();
 	
 	// initialize NATNumber methods
 	static {
@@ -678,11 +877,11 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	/**
 	 * Overrides the default AmbientTalk native object behavior of extracting native
 	 * methods based on the 'base_' naming convention. Instead, native AT numbers use
-	 * an explicit hashmap of native methods. This is much faster than the default
+	 * an explicit map of native methods. This is much faster than the default
 	 * behavior, which requires reflection.
 	 */
 	protected boolean hasLocalMethod(ATSymbol atSelector) throws InterpreterException {
-		if  (_meths.containsKey(atSelector.base_text().asNativeText().javaValue)) {
+		if  (_meths.containsKey(atSelector)) {
 			return true;
 		} else {
 			return super.hasLocalMethod(atSelector);
@@ -693,7 +892,7 @@ public final class NATNumber extends NATNumeric implements ATNumber {
 	 * @see NATNumber#hasLocalMethod(ATSymbol)
 	 */
 	protected ATMethod getLocalMethod(ATSymbol selector) throws InterpreterException {
-		ATMethod val = _meths.get(selector.base_text().asNativeText().javaValue);
+		ATMethod val = _meths.get(selector);
 		if (val == null) {
 			return super.getLocalMethod(selector);
 			//throw new XSelectorNotFound(selector, this);			
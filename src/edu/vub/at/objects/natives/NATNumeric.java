@@ -27,7 +27,6 @@
  */
 package edu.vub.at.objects.natives;
 
-import java.util.HashMap;
 
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.exceptions.XTypeMismatch;
@@ -42,6 +41,7 @@ import edu.vub.at.objects.ATText;
 import edu.vub.at.objects.coercion.NativeTypeTags;
 import edu.vub.at.objects.grammar.ATSymbol;
 import edu.vub.at.objects.mirrors.DirectNativeMethod;
+import edu.vub.at.objects.mirrors.DirectNativeMethodMap;
 import edu.vub.at.objects.natives.grammar.AGExpression;
 
 /**
@@ -157,12 +157,12 @@ public abstract class NATNumeric extends AGExpression implements ATNumeric {
 	}
 	
 	/**
-	 * This hashmap stores all native methods of native AmbientTalk numerics.
+	 * This map stores all native methods of native AmbientTalk numerics.
 	 * It is populated when this class is loaded, and shared between all
 	 * AmbientTalk actors on this VM. This is safe, since {@link DirectNativeMethod}
 	 * instances are all immutable.
 	 */
-	private static final HashMap<String, ATMethod> _meths = new HashMap<String, ATMethod>();
+	private static final DirectNativeMethodMap _meths = new DirectNativeMethodMap();
 	
 	// initialize NATNumeric methods
 	static {
@@ -261,11 +261,11 @@ public abstract class NATNumeric extends AGExpression implements ATNumeric {
 	/**
 	 * Overrides the default AmbientTalk native object behavior of extracting native
 	 * methods based on the 'base_' naming convention. Instead, native AT numbers use
-	 * an explicit hashmap of native methods. This is much faster than the default
+	 * an explicit map of native methods. This is much faster than the default
 	 * behavior, which requires reflection.
 	 */
 	protected boolean hasLocalMethod(ATSymbol atSelector) throws InterpreterException {
-		if  (_meths.containsKey(atSelector.base_text().asNativeText().javaValue)) {
+		if  (_meths.containsKey(atSelector)) {
 			return true;
 		} else {
 			return super.hasLocalMethod(atSelector);
@@ -276,7 +276,7 @@ public abstract class NATNumeric extends AGExpression implements ATNumeric {
 	 * @see NATNumeric#hasLocalMethod(ATSymbol)
 	 */
 	protected ATMethod getLocalMethod(ATSymbol selector) throws InterpreterException {
-		ATMethod val = _meths.get(selector.base_text().asNativeText().javaValue);
+		ATMethod val = _meths.get(selector);
 		if (val == null) {
 			return super.getLocalMethod(selector);
 			//throw new XSelectorNotFound(selector, this);			
@@ -126,17 +126,13 @@ public class NATObject extends NATCallframe implements ATObject {
 	private static final byte _ISAPARENT_FLAG_ = 1<<0;
 	
 	/**
-	 * This flag determines whether or not the field map of this object is shared by other objects:
-	 *  - 1: the map is shared, so modifications must be performed on a copy
-	 *  - 0: the map is not shared, modifications may be directly performed on it
+	 * This flag determines whether or not the method dictionary of this object is shared by other objects:
+	 *  - 1: the dictionary is shared, so modifications must be performed on a copy
+	 *  - 0: the dictionary is not shared, modifications may be directly performed on it
 	 *  
 	 * This flag is important for maintaining the semantics that clones are self-sufficient objects:
-	 * they share field names and methods only at the implementation-level.
-	 */
-	private static final byte _SHARE_MAP_FLAG_ = 1<<1;
-	
-	/**
-	 * Similar to _SHARE_MAP_FLAG__ but for determining the shared status of the method dictionary.
+	 * they share methods only at the implementation-level. Field maps need no such flag
+	 * as they are immutable (see {@link FieldMap}).
 	 */
 	private static final byte _SHARE_DCT_FLAG_ = 1<<2;
 	
@@ -156,7 +152,7 @@ public class NATObject extends NATCallframe implements ATObject {
 	 * The flags of an AmbientTalk object encode the following boolean information:
 	 *  Format: 0b0000idap where
 	 *   p = parent flag: if set, dynamic parent is 'is-a' parent, otherwise 'shares-a' parent
-	 *   a = shares map flag: if set, the map of this object is shared between clones
+	 *   a = unused
 	 *   d = shares dictionary flag: if set, the method dictionary of this object is shared between clones
 	 *   i = is isolate flag: if set, the object is passed by copy in inter-actor communication
 	 */
@@ -164,7 +160,7 @@ public class NATObject extends NATCallframe implements ATObject {
 	
 	// inherited from NATCallframe:
 	// private FieldMap 	variableMap_;
-	// private Vector	stateVector_;
+	// private ATObject[] stateVector_;
 	// private LinkedList customFields_;
 	
 	/**
@@ -258,8 +254,8 @@ public class NATObject extends NATCallframe implements ATObject {
 				
 		// bind the dynamic parent to the field named 'super'
 		// we don't pass via meta_defineField as this would trigger mirages too early
-		variableMap_.put(_SUPER_NAME_);
-		stateVector_.add(dynamicParent);
+		variableMap_ = variableMap_.withField(_SUPER_NAME_);
+		addState(dynamicParent);
 		
 		if (parentType) { // parentType == _IS_A_)
 			// requested an 'is-a' parent
@@ -282,6 +278,34 @@ public class NATObject extends NATCallframe implements ATObject {
 		}
 	}
 
+	/**
+	 * Constructs a new native ambienttalk object with a fixed layout, whose dynamic parent is nil
+	 * and whose lexical parent is the global scope. The object's fields are described by the given
+	 * map, which must start with the 'super' field, and their values by the given state vector,
+	 * whose first slot is reserved for the dynamic parent. The object initially refers to the
+	 * given dictionary of primitive methods shared by all instances of its native class, which is
+	 * only copied when the object's methods are modified or when it is cloned.
+	 * 
+	 * @param map the fields of the object, starting with {@link #_SUPER_NAME_}
+	 * @param state the values of the fields; the first slot is overwritten with nil
+	 * @param methods the primitive methods shared by all instances of the object's class
+	 * @param tags the type tags attached to this object
+	 */
+	protected NATObject(FieldMap map, ATObject[] state, SharedMethodDictionary methods, ATTypeTag[] tags) {
+		super(map, state, Evaluator.getGlobalLexicalScope());
+		state[0] = Evaluator.getNil();
+		methodDictionary_ = methods;
+		typeTags_ = tags;
+		flags_ = _SHARE_DCT_FLAG_;
+		try {
+			if (isLocallyTaggedAs(NativeTypeTags._ISOLATE_)) {
+				setFlag(_IS_ISOLATE_FLAG_);
+			}
+		} catch (InterpreterException e) {
+			Logging.Actor_LOG.error("Error testing for Isolate type, ignored:", e);
+		}
+	}
+
 	/**
 	 * Constructs a new ambienttalk object as a clone of an existing object.
 	 * 
@@ -292,7 +316,7 @@ public class NATObject extends NATCallframe implements ATObject {
 	 * clone, which only comes into existence when this constructor runs.
 	 */
 	protected NATObject(FieldMap map,
-			         Vector state,
+			         ATObject[] state,
 			         LinkedList originalCustomFields,
 			         MethodDictionary methodDict,
 			         ATObject dynamicParent,
@@ -326,6 +350,18 @@ public class NATObject extends NATCallframe implements ATObject {
 		}
 	}
 	
+	/**
+	 * Constructs a copy of an existing object on behalf of a {@link ScopeSnapshot}.
+	 * The copy shares the map, the type tags and (if the given dictionary is that of the
+	 * original) the method dictionary of the original. The snapshot fills in the given
+	 * state vector and the lexical parent of the copy afterwards.
+	 */
+	NATObject(NATObject original, ATObject[] state, MethodDictionary methods) {
+		super(original.variableMap_, state, null);
+		adoptLayout(original, state, methods);
+		loc_ = original.loc_;
+	}
+	
 	/**
 	 * Initialize a new AmbientTalk object with the given closure.
 	 * 
@@ -412,21 +448,6 @@ public class NATObject extends NATCallframe implements ATObject {
 	 * -- Slot accessing and mutating protocol --
 	 * ------------------------------------------ */
 	
-	/**
-	 * When a new field is defined in an object, it is important to check whether or not
-	 * the field map is shared between clones or not. If it is shared, the map must be cloned first.
-	 * @throws InterpreterException 
-	 */
-	public ATNil meta_defineField(ATSymbol name, ATObject value) throws InterpreterException {
-		if (this.isFlagSet(_SHARE_MAP_FLAG_)) {
-			// copy the variable map
-			variableMap_ = variableMap_.copy();
-			// set the 'shares map' flag to false
-			unsetFlag(_SHARE_MAP_FLAG_);
-		}
-		return super.meta_defineField(name, value);
-	}
-	
 	/* ------------------------------------
 	 * -- Extension and cloning protocol --
 	 * ------------------------------------ */
@@ -456,13 +477,18 @@ public class NATObject extends NATCallframe implements ATObject {
 			dynamicParent = base_super();
 		}
 		
-		// ! set the shares flags of this object *and* of its clone
-		// both this object and the clone now share the map and method dictionary
+		// a native object first takes a private copy of the primitive methods of its class,
+		// such that it is only related to its own clones
+		if (methodDictionary_ instanceof SharedMethodDictionary) {
+			methodDictionary_ = (MethodDictionary) methodDictionary_.clone();
+		}
+		
+		// ! set the shares flag of this object *and* of its clone
+		// both this object and the clone now share the method dictionary (and the immutable map)
 		setFlag(_SHARE_DCT_FLAG_);
-		setFlag(_SHARE_MAP_FLAG_);
 		
 		NATObject clone = this.createClone(variableMap_,
-				          (Vector) stateVector_.clone(), // shallow copy
+				          shareState(), // copied upon first modification
 				          customFields_, // must be re-initialized by clone!
 				          methodDictionary_,
 				          dynamicParent,
@@ -510,12 +536,8 @@ public class NATObject extends NATCallframe implements ATObject {
 		if (this.hasLocalField(name) || this.hasLocalMethod(name)) {
 			throw new XDuplicateSlot(name);
 		} else {
-			// first check whether the method dictionary is shared
-			if (this.isFlagSet(_SHARE_DCT_FLAG_)) {
-				methodDictionary_ = (MethodDictionary) methodDictionary_.clone();
-				this.unsetFlag(_SHARE_DCT_FLAG_);
-			}
-			methodDictionary_.put(name, method);
+			// first make sure the method dictionary is not shared
+			privateMethodDictionary().put(name, method);
 		}
 		return Evaluator.getNil();
 	}
@@ -536,12 +558,6 @@ public class NATObject extends NATCallframe implements ATObject {
 	
 	public ATObject meta_removeSlot(ATSymbol selector) throws InterpreterException {
 		if (this.hasLocalField(selector)) {
-			if (this.isFlagSet(_SHARE_MAP_FLAG_)) {
-				// copy the variable map
-				variableMap_ = variableMap_.copy();
-				// set the 'shares map' flag to false
-				unsetFlag(_SHARE_MAP_FLAG_);
-			}
 			return this.removeLocalField(selector);
 		} else {
 			return this.removeLocalMethod(selector);
@@ -722,7 +738,7 @@ public class NATObject extends NATCallframe implements ATObject {
 	// protected methods, may be adapted by extensions
 	
 	protected NATObject createClone(FieldMap map,
-	         					  Vector state,
+	         					  ATObject[] state,
 	         					  LinkedList originalCustomFields,
 	         					  MethodDictionary methodDict,
 	         					  ATObject dynamicParent,
@@ -749,7 +765,7 @@ public class NATObject extends NATCallframe implements ATObject {
 			MethodDictionary originalMethods = ((NATObject)original).methodDictionary_;
 			FieldMap originalVariables = ((NATObject)original).variableMap_;
 			
-			return NATBoolean.atValue(
+			return NATBoolean.atValue((this == original) ||
 					methodDictionary_.isDerivedFrom(originalMethods) &
 					variableMap_.isDerivedFrom(originalVariables));
 		} else {
@@ -905,8 +921,44 @@ public class NATObject extends NATCallframe implements ATObject {
 	public boolean isTypeTag() throws InterpreterException { return meta_isTaggedAs(NativeTypeTags._TYPETAG_).asNativeBoolean().javaValue; }
 	public boolean isFarReference() throws InterpreterException { return meta_isTaggedAs(NativeTypeTags._FARREF_).asNativeBoolean().javaValue; }
 	
+	/**
+	 * Turns this object into a copy of the given object, whose field values are to be
+	 * stored in the given state vector. If the copy is given the method dictionary of the
+	 * original, the dictionary is shared in the same way as it is shared with a clone.
+	 * Used by {@link ScopeSnapshot}.
+	 */
+	void adoptLayout(NATObject original, ATObject[] state, MethodDictionary methods) {
+		replaceState(original.variableMap_, state);
+		if (methods == original.methodDictionary_ && !original.isFlagSet(_SHARE_DCT_FLAG_)) {
+			original.setFlag(_SHARE_DCT_FLAG_);
+		}
+		methodDictionary_ = methods;
+		flags_ = original.flags_;
+		if (methods == original.methodDictionary_) {
+			setFlag(_SHARE_DCT_FLAG_);
+		} else {
+			unsetFlag(_SHARE_DCT_FLAG_);
+		}
+		typeTags_ = original.typeTags_;
+		freeVariables_ = original.freeVariables_;
+	}
+	
 	// private methods
 	
+	/**
+	 * Returns the method dictionary of this object, after taking a private shallow copy
+	 * if it is shared between clones or with the other instances of a native class.
+	 * The latter dictionaries are immutable, hence they are always copied before their
+	 * first modification, regardless of the shares dictionary flag.
+	 */
+	private MethodDictionary privateMethodDictionary() {
+		if (this.isFlagSet(_SHARE_DCT_FLAG_) || methodDictionary_ instanceof SharedMethodDictionary) {
+			methodDictionary_ = (MethodDictionary) methodDictionary_.clone();
+			this.unsetFlag(_SHARE_DCT_FLAG_);
+		}
+		return methodDictionary_;
+	}
+	
 	private boolean isFlagSet(byte flag) {
 		return (flags_ & flag) != 0;
 	}
@@ -941,13 +993,7 @@ public class NATObject extends NATCallframe implements ATObject {
 		if (result == null) {
 			throw new XSelectorNotFound(selector, this);
 		} else {
-			// if the method dictionary is shared between clones...
-			if (this.isFlagSet(_SHARE_DCT_FLAG_)) {
-				// create a private shallow copy and flag that we're no longer sharing
-				methodDictionary_ = (MethodDictionary) methodDictionary_.clone();
-				this.unsetFlag(_SHARE_DCT_FLAG_);
-			}
-			methodDictionary_.remove(selector);
+			privateMethodDictionary().remove(selector);
 			return result.asMethod();
 		}
 	}
@@ -42,12 +42,12 @@ import edu.vub.at.objects.ATText;
 import edu.vub.at.objects.coercion.NativeTypeTags;
 import edu.vub.at.objects.grammar.ATSymbol;
 import edu.vub.at.objects.mirrors.DirectNativeMethod;
+import edu.vub.at.objects.mirrors.DirectNativeMethodMap;
 import edu.vub.at.objects.mirrors.NativeClosure;
 import edu.vub.at.objects.natives.grammar.AGExpression;
 import edu.vub.at.parser.SourceLocation;
 import edu.vub.util.TempFieldGenerator;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
@@ -137,21 +137,7 @@ public class NATTable extends AGExpression implements ATTable {
 	 */
 	public ATObject meta_eval(ATContext ctx) throws InterpreterException {
 		if (this == EMPTY) return EMPTY;
-		
-		LinkedList result = new LinkedList();
-		int siz = elements_.length;
-		for (int i = 0; i < elements_.length; i++) {
-			if (elements_[i].isSplice()) {
-				ATObject[] tbl = elements_[i].asSplice().base_expression().meta_eval(ctx).asNativeTable().elements_;
-				for (int j = 0; j < tbl.length; j++) {
-					result.add(tbl[j]);
-				}
-				siz += (tbl.length - 1); // -1 because we replace one element by a table of elements
-			} else {
-				result.add(elements_[i].meta_eval(ctx));
-			}
-		}
-		return atValue((ATObject[]) result.toArray(new ATObject[siz]));
+		return Evaluator.evaluateArguments(this, ctx);
 	}
 	
 	/**
@@ -219,6 +205,17 @@ public class NATTable extends AGExpression implements ATTable {
 	public ATObject base_at(ATNumber index) throws InterpreterException {
 		return elements_[extractIndex(index)];
 	}
+	
+	/**
+	 * Equivalent to <tt>base_at(NATNumber.atValue(index))</tt>, used internally
+	 * to index tables without going through AmbientTalk numbers.
+	 * @param index a 1-based index
+	 */
+	public ATObject impl_at(int index) throws XIndexOutOfBounds {
+		if ((index < 1) || (index > elements_.length))
+			throw new XIndexOutOfBounds(index, elements_.length);
+		return elements_[index - 1];
+	}
 
 	public ATObject base_atPut(ATNumber index, ATObject value) throws InterpreterException {
 		elements_[extractIndex(index)] = value;
@@ -321,7 +318,7 @@ public class NATTable extends AGExpression implements ATTable {
 	}
 	
 	protected int extractIndex(ATNumber atIndex) throws InterpreterException {
-		int javaIndex = atIndex.asNativeNumber().javaValue - 1;
+		int javaIndex = atIndex.asNativeNumber().asInt() - 1;
 		if ((javaIndex < 0) || (javaIndex >= elements_.length))
 			throw new XIndexOutOfBounds(javaIndex + 1, elements_.length);
 		else
@@ -374,12 +371,12 @@ public class NATTable extends AGExpression implements ATTable {
 	}
 	
 	/**
-	 * This hashmap stores all native methods of native AmbientTalk tables.
+	 * This map stores all native methods of native AmbientTalk tables.
 	 * It is populated when this class is loaded, and shared between all
 	 * AmbientTalk actors on this VM. This is safe, since {@link DirectNativeMethod}
 	 * instances are all immutable.
 	 */
-	private static final HashMap<String, ATMethod> _meths = new HashMap<String, ATMethod>();
+	private static final DirectNativeMethodMap _meths = new DirectNativeMethodMap();
 	
 	// initialize NATTable methods
 	static {
@@ -508,11 +505,11 @@ public class NATTable extends AGExpression implements ATTable {
 	/**
 	 * Overrides the default AmbientTalk native object behavior of extracting native
 	 * methods based on the 'base_' naming convention. Instead, native AT tables use
-	 * an explicit hashmap of native methods. This is much faster than the default
+	 * an explicit map of native methods. This is much faster than the default
 	 * behavior, which requires reflection.
 	 */
 	protected boolean hasLocalMethod(ATSymbol atSelector) throws InterpreterException {
-		if  (_meths.containsKey(atSelector.base_text().asNativeText().javaValue)) {
+		if  (_meths.containsKey(atSelector)) {
 			return true;
 		} else {
 			return super.hasLocalMethod(atSelector);
@@ -523,7 +520,7 @@ public class NATTable extends AGExpression implements ATTable {
 	 * @see NATTable#hasLocalMethod(ATSymbol)
 	 */
 	protected ATMethod getLocalMethod(ATSymbol selector) throws InterpreterException {
-		ATMethod val = _meths.get(selector.base_text().asNativeText().javaValue);
+		ATMethod val = _meths.get(selector);
 		if (val == null) {
 			return super.getLocalMethod(selector);
 		}
@@ -33,6 +33,7 @@ import edu.vub.at.actors.ATFarReference;
 import edu.vub.at.actors.ATLetter;
 import edu.vub.at.actors.natives.ELActor;
 import edu.vub.at.actors.natives.NATFarReference;
+import edu.vub.at.actors.natives.LocalPacket;
 import edu.vub.at.actors.natives.NATFarReference.NATOutboxLetter;
 import edu.vub.at.actors.natives.NATRemoteFarRef;
 import edu.vub.at.actors.net.SerializationException;
@@ -361,6 +362,11 @@ public abstract class NativeATObject implements ATObject, ATExpression, Serializ
 	 * Delegate the responsibility of serialization to the AT/2 meta-level 
 	 */
 	public Object writeReplace() throws ObjectStreamException {
+		// objects already passed by a local packet that falls back to serialization are not passed twice
+		Object passed = LocalPacket.replacementOf(this);
+		if (passed != null) {
+			return passed;
+		}
 		try {
 			Object o = this.meta_pass();
 			// egb: code for bugFix#53.
@@ -695,7 +701,7 @@ public abstract class NativeATObject implements ATObject, ATExpression, Serializ
     		if (this.meta_isTaggedAs(NativeTypeTags._HASHABLE_).asNativeBoolean().javaValue) {
     			if (this.meta_respondsTo(Evaluator._HASHC_NAME_).asNativeBoolean().javaValue) {
     				try {
-    					return this.base_hashCode().asNativeNumber().javaValue;
+    					return this.base_hashCode().asNativeNumber().hashCode();
     				} catch (InterpreterException e) {
     					// something went wrong when computing the hashcode (AT level)
     					// return 0 in an attempt to signal this to the programmer asap
@@ -1118,10 +1124,10 @@ public abstract class NativeATObject implements ATObject, ATExpression, Serializ
 	/**
 	 * A native Java object has a local method if it implements a
 	 * native Java method corresponding to the selector prefixed by 'base_'.
+	 * The lookup is cached per class, see {@link edu.vub.at.objects.mirrors.NativeMethodTable}.
 	 */
 	protected boolean hasLocalMethod(ATSymbol atSelector) throws InterpreterException {
-        String jSelector = Reflection.upBaseLevelSelector(atSelector);
-        return Reflection.upRespondsTo(this, jSelector);
+        return Reflection.upBaseLevelRespondsTo(this, atSelector);
 	}
 	
 	protected ATObject getLocalField(ATSymbol selector) throws InterpreterException {
@@ -1129,8 +1135,7 @@ public abstract class NativeATObject implements ATObject, ATExpression, Serializ
 	}
 	
 	protected ATMethod getLocalMethod(ATSymbol selector) throws InterpreterException {
-		String methSelector = Reflection.upBaseLevelSelector(selector);
-		return Reflection.upMethodSelection(this, methSelector, selector);
+		return Reflection.upBaseLevelMethodSelection(this, selector);
 	}
 	
 	protected void setLocalField(ATSymbol selector, ATObject value) throws InterpreterException {
@@ -32,6 +32,7 @@ import edu.vub.at.actors.ATFarReference;
 import edu.vub.at.actors.natives.ELActor;
 import edu.vub.at.actors.natives.ELVirtualMachine;
 import edu.vub.at.actors.natives.NATFarReference;
+import edu.vub.at.actors.natives.NATTimerSubscription;
 import edu.vub.at.actors.natives.Packet;
 import edu.vub.at.actors.net.OBJNetwork;
 import edu.vub.at.eval.Evaluator;
@@ -56,6 +57,7 @@ import edu.vub.at.objects.coercion.NativeTypeTags;
 import edu.vub.at.objects.grammar.ATAssignmentSymbol;
 import edu.vub.at.objects.grammar.ATSymbol;
 import edu.vub.at.objects.mirrors.DirectNativeMethod;
+import edu.vub.at.objects.mirrors.DirectNativeMethodMap;
 import edu.vub.at.objects.mirrors.JavaInterfaceAdaptor;
 import edu.vub.at.objects.mirrors.NATMirage;
 import edu.vub.at.objects.mirrors.NATMirrorRoot;
@@ -64,7 +66,6 @@ import edu.vub.at.parser.NATParser;
 import edu.vub.at.util.logging.Logging;
 
 import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -686,6 +687,21 @@ public final class OBJLexicalRoot extends NATByCopy {
 		return new NATFarReference.NATExpiredSubscription(farReference.asNativeFarReference(), listener);
 	}
 	
+	/**
+	 * The <tt>when: milliseconds elapsed: closure</tt> construct.
+	 * Triggers the zero-arity closure in the current actor once the given number of
+	 * milliseconds has elapsed. The timeout is managed by the timer wheel of the VM,
+	 * such that outstanding timeouts do not require a thread of their own.
+	 * 
+	 * @param milliseconds the delay after which to trigger the closure
+	 * @param closure a zero-arity closure to invoke once the delay has elapsed
+	 * @return a subscription object whose <tt>cancel</tt> method can be used to cancel the timeout.
+	 * A closure that was already scheduled for execution by the current actor is not cancelled.
+	 */
+	public ATObject base_when_elapsed_(ATNumber milliseconds, ATClosure closure) throws InterpreterException {
+		return new NATTimerSubscription(ELActor.currentActor(), closure, milliseconds.asNativeNumber().asLong());
+	}
+	
 
 	/**
 	 * The <tt>retract: farReference</tt> construct. 
@@ -1758,12 +1774,12 @@ public final class OBJLexicalRoot extends NATByCopy {
 	}
 	
 	/**
-	 * This hashmap stores all native top-level lexical methods.
+	 * This map stores all native top-level lexical methods.
 	 * It is populated when this class is loaded, and shared between all
 	 * AmbientTalk actors on this VM. This is safe, since {@link DirectNativeMethod}
 	 * instances are all immutable.
 	 */
-	public static final HashMap<String, ATMethod> _meths = new HashMap<String, ATMethod>();
+	public static final DirectNativeMethodMap _meths = new DirectNativeMethodMap();
 
 	static {
 		_meths.put("nil", new DirectNativeMethod("nil") {
@@ -2001,6 +2017,17 @@ public final class OBJLexicalRoot extends NATByCopy {
 				return _INSTANCE_.base_when_takenOffline_(farReference, listener);
 			}
 		});
+		_meths.put("when:elapsed:", new DirectNativeMethod("when:elapsed:") {
+			public ATObject base_apply(ATTable args, ATContext ctx) throws InterpreterException {
+				if (ctx.base_receiver() != _INSTANCE_) {
+					throw new XIllegalOperation("native top-level method invoked on illegal object: "+ctx.base_receiver());
+				}
+				checkArity(args, 2);
+				ATNumber milliseconds = get(args, 1).asNumber();
+				ATClosure closure = get(args, 2).asClosure();
+				return _INSTANCE_.base_when_elapsed_(milliseconds, closure);
+			}
+		});
 		_meths.put("retract:", new DirectNativeMethod("retract:") {
 			public ATObject base_apply(ATTable args, ATContext ctx) throws InterpreterException {
 				if (ctx.base_receiver() != _INSTANCE_) {
@@ -2516,11 +2543,11 @@ public final class OBJLexicalRoot extends NATByCopy {
 	/**
 	 * Overrides the default AmbientTalk native object behavior of extracting native
 	 * methods based on the 'base_' naming convention. Instead, the lexical root uses
-	 * an explicit hashmap of native methods. This is much faster than the default
+	 * an explicit map of native methods. This is much faster than the default
 	 * behavior, which requires reflection.
 	 */
 	protected boolean hasLocalMethod(ATSymbol atSelector) throws InterpreterException {
-		if  (_meths.containsKey(atSelector.base_text().asNativeText().javaValue)) {
+		if  (_meths.containsKey(atSelector)) {
 			return true;
 		} else {
 			return super.hasLocalMethod(atSelector);
@@ -2531,7 +2558,7 @@ public final class OBJLexicalRoot extends NATByCopy {
 	 * @see OBJLexicalRoot#hasLocalMethod(ATSymbol)
 	 */
 	protected ATMethod getLocalMethod(ATSymbol selector) throws InterpreterException {
-		ATMethod val = _meths.get(selector.base_text().asNativeText().javaValue);
+		ATMethod val = _meths.get(selector);
 		if (val == null) {
 			return super.getLocalMethod(selector);
 			//throw new XSelectorNotFound(selector, this);			
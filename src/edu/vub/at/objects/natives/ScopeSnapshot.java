@@ -0,0 +1,419 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.natives;
+
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.eval.Import.DelegateMethod;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.exceptions.XIllegalOperation;
+import edu.vub.at.objects.ATAbstractGrammar;
+import edu.vub.at.objects.ATMethod;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.grammar.ATSymbol;
+import edu.vub.at.objects.natives.grammar.AGDefFunction;
+import edu.vub.at.util.logging.Logging;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * A scope snapshot is a template of the global scope and the lobby of an actor, taken right
+ * after the actor has evaluated the initialisation code of its virtual machine. Actors that
+ * are spawned afterwards copy the template into their own global scope and lobby, rather than
+ * evaluating the initialisation code once more, which is considerably faster.
+ * 
+ * The template is a deep copy of the graph of objects reachable from the global scope and the
+ * lobby, which is never exposed to an actor. Hence, every actor obtains its own private copy
+ * of the objects defined by the initialisation code, and actors remain isolated. Only the state
+ * of the objects is copied: the maps and the method dictionaries of the copies are shared with
+ * the template, the latter in the same copy-on-write fashion as between an object and its clones.
+ * Immutable values such as numbers, text, symbols, type tags, methods and abstract grammar are
+ * shared as well, except for methods with custom annotations, which refer to the copies of their
+ * annotations. The nil object, the mirror root, the jlobby root and the values of the fields
+ * initialised by {@link edu.vub.at.actors.natives.SharedActorField}s are replaced by those of the
+ * copying actor.
+ * 
+ * Snapshots only support the kinds of objects whose state is fully known to this class: plain
+ * objects, namespaces, call frames, closures over such objects, tables and imported methods.
+ * If the global scope refers to any other object (e.g. a far reference, a mirage, a Java object
+ * or an object with custom fields), no snapshot is taken and actors evaluate the initialisation
+ * code themselves, as before. Neither is a snapshot taken if the initialisation code affects the
+ * actor outside of its global scope, see {@link edu.vub.at.actors.natives.ELActor#noteExternalEffect()}.
+ * 
+ * Snapshots can be disabled by setting the system property <tt>AT_NO_SCOPE_SNAPSHOT</tt>.
+ */
+public final class ScopeSnapshot {
+
+	private static final String _ENV_AT_NO_SCOPE_SNAPSHOT_ = "AT_NO_SCOPE_SNAPSHOT";
+	
+	/** whether actors may be initialised from a snapshot */
+	public static final boolean _ENABLED_ = !Boolean.getBoolean(_ENV_AT_NO_SCOPE_SNAPSHOT_);
+	
+	/**
+	 * Stands for an object of the snapshotting actor that is replaced by
+	 * the corresponding object of a copying actor.
+	 */
+	private static final class Placeholder extends NATByCopy {
+		
+		private final String description_;
+		
+		private Placeholder(String description) {
+			description_ = description;
+		}
+		
+		public NATText meta_print() throws InterpreterException {
+			return NATText.atValue("<snapshot placeholder:" + description_ + ">");
+		}
+	}
+	
+	private static final Placeholder _NIL_ = new Placeholder("nil");
+	private static final Placeholder _MIRROR_ROOT_ = new Placeholder("defaultMirror");
+	private static final Placeholder _JLOBBY_ROOT_ = new Placeholder("jlobby");
+	
+	/**
+	 * Raised when the global scope refers to an object that cannot be copied.
+	 */
+	private static final class XUnsupportedObject extends Exception {
+		
+		private static final long serialVersionUID = 4126839750122473211L;
+
+		private XUnsupportedObject(Object object) {
+			super("cannot copy an instance of " + object.getClass().getName());
+		}
+	}
+	
+	/** the names of the shared fields, with their placeholders in the template */
+	private final ATSymbol[] sharedNames_;
+	private final Placeholder[] sharedPlaceholders_;
+	
+	/** the values of the shared fields in the snapshotting actor, which is null once the snapshot is taken */
+	private ATObject[] sharedValues_;
+	
+	/** whether the shared fields had a value in the snapshotting actor */
+	private final boolean[] sharedUsed_;
+	
+	/** the layout of nil and the jlobby root before the initialisation code, which may not modify them */
+	private final FieldMap nilMap_;
+	private final MethodDictionary nilMethods_;
+	private final int nilMethodsVersion_;
+	private final FieldMap jlobbyMap_;
+	private final MethodDictionary jlobbyMethods_;
+	private final int jlobbyMethodsVersion_;
+	
+	/** the template, which is null until the snapshot is taken */
+	private NATObject globalScope_;
+	private NATObject lobby_;
+	
+	/**
+	 * Prepares a snapshot of the global scope of the current actor, which is to be
+	 * taken after the actor has evaluated its initialisation code by means of {@link #capture()}.
+	 * This constructor must be invoked by the actor before evaluating the initialisation
+	 * code, but after it has initialised its shared fields.
+	 * 
+	 * @param sharedNames the names of the fields defined by the shared actor fields
+	 */
+	public ScopeSnapshot(ATSymbol[] sharedNames) throws InterpreterException {
+		NATObject globalScope = Evaluator.getGlobalLexicalScope();
+		sharedNames_ = sharedNames;
+		sharedPlaceholders_ = new Placeholder[sharedNames.length];
+		sharedValues_ = new ATObject[sharedNames.length];
+		sharedUsed_ = new boolean[sharedNames.length];
+		for (int i = 0; i < sharedNames.length; i++) {
+			sharedPlaceholders_[i] = new Placeholder(sharedNames[i].toString());
+			if (globalScope.hasLocalField(sharedNames[i])) {
+				sharedValues_[i] = globalScope.getLocalField(sharedNames[i]);
+				sharedUsed_[i] = true;
+			}
+		}
+		NATObject nil = Evaluator.getNil();
+		nilMap_ = nil.variableMap_;
+		nilMethods_ = nil.methodDictionary_;
+		nilMethodsVersion_ = nilMethods_.version();
+		NATObject jlobby = Evaluator.getJLobbyRoot();
+		jlobbyMap_ = jlobby.variableMap_;
+		jlobbyMethods_ = jlobby.methodDictionary_;
+		jlobbyMethodsVersion_ = jlobbyMethods_.version();
+	}
+	
+	/**
+	 * Takes the snapshot of the global scope and the lobby of the current actor.
+	 * 
+	 * @return true if the snapshot was taken, false if the global scope refers to
+	 * objects that cannot be copied
+	 */
+	public boolean capture() throws InterpreterException {
+		NATObject nil = Evaluator.getNil();
+		NATObject jlobby = Evaluator.getJLobbyRoot();
+		if (nil.variableMap_ != nilMap_ || nil.methodDictionary_ != nilMethods_ || nilMethods_.version() != nilMethodsVersion_
+				|| jlobby.variableMap_ != jlobbyMap_ || jlobby.methodDictionary_ != jlobbyMethods_
+				|| jlobbyMethods_.version() != jlobbyMethodsVersion_) {
+			Logging.Init_LOG.info("no snapshot of the global scope: nil or jlobby was modified");
+			return false;
+		}
+		
+		Copier copier = new Copier();
+		copier.map(nil, _NIL_);
+		copier.map(Evaluator.getMirrorRoot(), _MIRROR_ROOT_);
+		copier.map(jlobby, _JLOBBY_ROOT_);
+		for (int i = 0; i < sharedValues_.length; i++) {
+			if (sharedValues_[i] != null) {
+				copier.map(sharedValues_[i], sharedPlaceholders_[i]);
+			}
+		}
+		try {
+			NATObject globalScope = (NATObject) copier.copy(Evaluator.getGlobalLexicalScope());
+			NATObject lobby = (NATObject) copier.copy(Evaluator.getLobbyNamespace());
+			copier.copyPending();
+			globalScope_ = globalScope;
+			lobby_ = lobby;
+			sharedValues_ = null;
+			return true;
+		} catch (XUnsupportedObject e) {
+			Logging.Init_LOG.info("no snapshot of the global scope: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	 * Copies the snapshot into the global scope and the lobby of the current actor,
+	 * which must have initialised its shared fields already.
+	 * 
+	 * @return true if the snapshot was copied, false if the actor lacks one of the
+	 * shared fields, in which case its global scope remains untouched
+	 */
+	public boolean instantiate() throws InterpreterException {
+		NATObject globalScope = Evaluator.getGlobalLexicalScope();
+		Copier copier = new Copier();
+		copier.map(_NIL_, Evaluator.getNil());
+		copier.map(_MIRROR_ROOT_, Evaluator.getMirrorRoot());
+		copier.map(_JLOBBY_ROOT_, Evaluator.getJLobbyRoot());
+		for (int i = 0; i < sharedNames_.length; i++) {
+			if (globalScope.hasLocalField(sharedNames_[i])) {
+				copier.map(sharedPlaceholders_[i], globalScope.getLocalField(sharedNames_[i]));
+			} else if (sharedUsed_[i]) {
+				return false;
+			}
+		}
+		try {
+			copier.copyInto(globalScope_, globalScope);
+			copier.copyInto(lobby_, Evaluator.getLobbyNamespace());
+			copier.copyPending();
+			return true;
+		} catch (XUnsupportedObject e) {
+			// impossible: the template only consists of copyable objects
+			throw new XIllegalOperation("Corrupt snapshot of the global scope: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Copies a graph of objects, where the copies of objects that refer to other objects
+	 * are allocated first and filled in afterwards, such that cycles are preserved and the
+	 * depth of the graph does not affect the depth of the Java stack.
+	 */
+	private static final class Copier {
+		
+		/** maps the originals (by identity) onto their copies */
+		private final IdentityHashMap copies_ = new IdentityHashMap();
+		
+		/** the originals whose copies still need to be filled in */
+		private final LinkedList pending_ = new LinkedList();
+		
+		public void map(ATObject original, ATObject copy) {
+			copies_.put(original, copy);
+		}
+		
+		/**
+		 * Turns the given existing object into a copy of the given original.
+		 */
+		public void copyInto(NATObject original, NATObject copy) throws XUnsupportedObject {
+			copy.adoptLayout(original, new ATObject[original.stateVector_.length], copyMethods(original.methodDictionary_));
+			copies_.put(original, copy);
+			pending_.add(original);
+		}
+		
+		/**
+		 * @return the copy of the given object, which may not be filled in yet
+		 */
+		public ATObject copy(ATObject original) throws XUnsupportedObject {
+			if (original == null) {
+				return null;
+			}
+			ATObject copy = (ATObject) copies_.get(original);
+			if (copy != null) {
+				return copy;
+			}
+			Class kind = original.getClass();
+			if (kind == NATObject.class || kind == NATNamespace.class) {
+				NATObject object = (NATObject) original;
+				if (object.customFields_ != null) {
+					throw new XUnsupportedObject(original);
+				}
+				ATObject[] state = new ATObject[object.stateVector_.length];
+				MethodDictionary methods = copyMethods(object.methodDictionary_);
+				if (kind == NATObject.class) {
+					copy = new NATObject(object, state, methods);
+				} else {
+					copy = new NATNamespace((NATNamespace) object, state, methods);
+				}
+			} else if (kind == NATCallframe.class) {
+				NATCallframe frame = (NATCallframe) original;
+				if (frame.customFields_ != null) {
+					throw new XUnsupportedObject(original);
+				}
+				copy = new NATCallframe(frame.variableMap_, new ATObject[frame.stateVector_.length], null);
+			} else if (kind == NATTable.class) {
+				copy = NATTable.atValue(new ATObject[((NATTable) original).elements_.length]);
+			} else if (kind == NATClosure.class) {
+				// closures are immutable, hence they are copied right away
+				NATClosure closure = (NATClosure) original;
+				if (closure.context_.getClass() != NATContext.class) {
+					throw new XUnsupportedObject(closure.context_);
+				}
+				NATContext context = (NATContext) closure.context_;
+				NATClosure copiedClosure = new NATClosure(copyMethod(closure.method_),
+						new NATContext(copy(context.base_lexicalScope()), copy(context.base_receiver())));
+				if (closure.impl_getLocation() != null) {
+					copiedClosure.impl_setLocation(closure.impl_getLocation());
+				}
+				copies_.put(original, copiedClosure);
+				return copiedClosure;
+			} else if (original instanceof NATMethod) {
+				return copyMethod((NATMethod) original);
+			} else if (isImmutable(original)) {
+				return original;
+			} else {
+				throw new XUnsupportedObject(original);
+			}
+			copies_.put(original, copy);
+			pending_.add(original);
+			return copy;
+		}
+		
+		/**
+		 * Fills in the copies of all objects encountered so far, which may
+		 * in turn encounter further objects to be copied.
+		 */
+		public void copyPending() throws XUnsupportedObject {
+			while (!pending_.isEmpty()) {
+				ATObject original = (ATObject) pending_.removeLast();
+				ATObject copy = (ATObject) copies_.get(original);
+				if (original instanceof NATCallframe) {
+					NATCallframe originalFrame = (NATCallframe) original;
+					NATCallframe copiedFrame = (NATCallframe) copy;
+					ATObject[] state = originalFrame.stateVector_;
+					ATObject[] copiedState = copiedFrame.stateVector_;
+					for (int i = 0; i < state.length; i++) {
+						copiedState[i] = copy(state[i]);
+					}
+					copiedFrame.lexicalParent_ = copy(originalFrame.lexicalParent_);
+				} else {
+					ATObject[] elements = ((NATTable) original).elements_;
+					ATObject[] copiedElements = ((NATTable) copy).elements_;
+					for (int i = 0; i < elements.length; i++) {
+						copiedElements[i] = copy(elements[i]);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * @return the given method dictionary if it only contains methods that can be shared,
+		 * otherwise a copy in which the imported methods delegate to the copies of their delegates
+		 */
+		private MethodDictionary copyMethods(MethodDictionary methods) throws XUnsupportedObject {
+			MethodDictionary copy = methods;
+			for (Iterator it = methods.entrySet().iterator(); it.hasNext();) {
+				Map.Entry entry = (Map.Entry) it.next();
+				ATMethod method = (ATMethod) entry.getValue();
+				ATMethod copiedMethod = copyMethod(method);
+				if (copiedMethod != method) {
+					if (copy == methods) {
+						copy = (MethodDictionary) methods.clone();
+					}
+					copy.put(entry.getKey(), copiedMethod);
+				}
+			}
+			return copy;
+		}
+		
+		/**
+		 * @return the given method if it can be shared, otherwise its copy
+		 */
+		private ATMethod copyMethod(ATMethod method) throws XUnsupportedObject {
+			if (method.getClass() == NATMethod.class) {
+				try {
+					ATTable annotations = method.base_annotations();
+					if (AGDefFunction.isSharable(annotations.asNativeTable().elements_)) {
+						return method;
+					}
+					// custom annotations are objects of the actor, hence the copy refers to their copies
+					ATMethod copy = (ATMethod) copies_.get(method);
+					if (copy == null) {
+						NATMethod copiedMethod = new NATMethod(method.base_name(), method.base_parameters(),
+								method.base_bodyExpression(), (ATTable) copy(annotations));
+						copiedMethod.impl_setLocation(method.impl_getLocation());
+						copy = copiedMethod;
+						copies_.put(method, copy);
+					}
+					return copy;
+				} catch (InterpreterException e) {
+					throw new XUnsupportedObject(method);
+				}
+			} else if (method instanceof DelegateMethod) {
+				DelegateMethod delegateMethod = (DelegateMethod) method;
+				ATMethod copy = (ATMethod) copies_.get(method);
+				if (copy == null) {
+					try {
+						copy = delegateMethod.withDelegate(copy(delegateMethod.getDelegate()));
+					} catch (InterpreterException e) {
+						throw new XUnsupportedObject(method);
+					}
+					copies_.put(method, copy);
+				}
+				return copy;
+			} else {
+				throw new XUnsupportedObject(method);
+			}
+		}
+		
+		/**
+		 * @return whether the given object is an immutable value that can be shared between actors
+		 */
+		private static boolean isImmutable(ATObject object) {
+			// mutable tables and methods are handled before, the rest of the grammar
+			// are numbers, text, the empty table and abstract syntax trees
+			return (object instanceof ATAbstractGrammar)
+				|| (object instanceof NATBoolean)
+				|| (object instanceof NATTypeTag)
+				|| (object == OBJLexicalRoot._INSTANCE_);
+		}
+	}
+	
+}
@@ -0,0 +1,142 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.natives;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.Map;
+
+/**
+ * A method dictionary holding the primitive methods of a native kind of object, shared
+ * by all of its instances. The dictionary is stored in a static field of the native class
+ * and is never modified: {@link NATObject} copies it before the first method is added to or
+ * removed from an object referring to it. Hence, the mutators of the dictionary are never
+ * invoked by the interpreter, they merely guard it against native code bypassing its owner.
+ * 
+ * A copy of a shared dictionary does not remember its origin, such that objects which
+ * merely happen to be instances of the same native class are not considered clones of
+ * one another. Conversely, a shared dictionary is not considered to be derived from
+ * any dictionary, not even from itself.
+ * 
+ * When serialized, a shared dictionary is replaced by the name of its static field, which
+ * is read again upon deserialization.
+ */
+public final class SharedMethodDictionary extends MethodDictionary {
+
+	private static final long serialVersionUID = 4632214185364197931L;
+
+	private final Class owner_;
+	
+	private final String name_;
+	
+	/**
+	 * Creates a dictionary with the given methods which will be stored in the static field
+	 * <tt>name</tt> of the class <tt>owner</tt>.
+	 */
+	public SharedMethodDictionary(Class owner, String name, NATMethod[] methods) {
+		this(owner, name, null, methods);
+	}
+	
+	private SharedMethodDictionary(Class owner, String name, SharedMethodDictionary inherited, NATMethod[] methods) {
+		super();
+		owner_ = owner;
+		name_ = name;
+		if (inherited != null) {
+			super.putAll(inherited);
+		}
+		for (int i = 0; i < methods.length; i++) {
+			super.put(methods[i].base_name(), methods[i]);
+		}
+	}
+	
+	/**
+	 * Creates a dictionary containing the methods of this dictionary together with the given
+	 * methods, to be stored in the static field <tt>name</tt> of the class <tt>owner</tt>.
+	 */
+	public SharedMethodDictionary extend(Class owner, String name, NATMethod[] methods) {
+		return new SharedMethodDictionary(owner, name, this, methods);
+	}
+	
+	public void clear() {
+		throw new UnsupportedOperationException("shared method dictionaries are immutable");
+	}
+	
+	public Object put(Object key, Object value) {
+		throw new UnsupportedOperationException("shared method dictionaries are immutable");
+	}
+	
+	public void putAll(Map keyValuePairs) {
+		throw new UnsupportedOperationException("shared method dictionaries are immutable");
+	}
+	
+	public Object remove(Object key) {
+		throw new UnsupportedOperationException("shared method dictionaries are immutable");
+	}
+	
+	protected Object clone() {
+		return new MethodDictionary(copyMethods(), null);
+	}
+	
+	public boolean isDerivedFrom(MethodDictionary aMethodDictionary) {
+		return false;
+	}
+	
+	private Object writeReplace() throws ObjectStreamException {
+		return new Reference(owner_, name_);
+	}
+	
+	/**
+	 * The serialized form of a shared method dictionary.
+	 */
+	private static final class Reference implements Serializable {
+		
+		private static final long serialVersionUID = -1578364223453436390L;
+
+		private final Class owner_;
+		
+		private final String name_;
+		
+		Reference(Class owner, String name) {
+			owner_ = owner;
+			name_ = name;
+		}
+		
+		private Object readResolve() throws ObjectStreamException {
+			try {
+				Field field = owner_.getDeclaredField(name_);
+				field.setAccessible(true);
+				return (SharedMethodDictionary) field.get(null);
+			} catch (Exception e) {
+				throw new InvalidObjectException("unknown shared method dictionary " + owner_.getName() + "." + name_);
+			}
+		}
+		
+	}
+
+}
@@ -36,6 +36,7 @@ import edu.vub.at.objects.ATObject;
 import edu.vub.at.objects.ATTable;
 import edu.vub.at.objects.grammar.ATApplication;
 import edu.vub.at.objects.grammar.ATExpression;
+import edu.vub.at.objects.natives.InlineCache;
 import edu.vub.at.objects.natives.NATTable;
 import edu.vub.at.objects.natives.NATText;
 import edu.vub.util.TempFieldGenerator;
@@ -52,6 +53,12 @@ public final class AGApplication extends AGExpression implements ATApplication {
 	private final ATExpression funExp_;
 	private final ATTable arguments_;
 	
+	/** caches the lookup of funExp_ if it is a symbol, created lazily */
+	private transient volatile InlineCache cache_;
+	
+	/** whether arguments_ contains a spliced argument, determined at first evaluation */
+	private transient byte splices_;
+	
 	public AGApplication(ATExpression fun, ATTable arg) {
 		funExp_ = fun;
 		arguments_ = arg;
@@ -72,12 +79,28 @@ public final class AGApplication extends AGExpression implements ATApplication {
 	public ATObject meta_eval(ATContext ctx) throws InterpreterException {
 		// calls of the form f(x) are transformed into ctx.lex.call(`f, [x])
 		if(funExp_.isSymbol()) {
-			NATTable args = Evaluator.evaluateArguments(arguments_.asNativeTable(), ctx);
+			NATTable args = evaluateArguments(ctx);
+			ATObject result = null;
+			InvocationStack stack = InvocationStack.getInvocationStack();
+			try {
+				stack.functionCalled(this, null, args);
+				result = getCache().callAccessor(ctx.base_lexicalScope(), funExp_.asSymbol(), args);
+			} finally {
+				stack.funcallReturned(result);
+			}
+			return result;
+		// calls of local functions whose location was resolved in advance
+		} else if (funExp_ instanceof AGLocalVariable) {
+			AGLocalVariable local = (AGLocalVariable) funExp_;
+			NATTable args = evaluateArguments(ctx);
 			ATObject result = null;
 			InvocationStack stack = InvocationStack.getInvocationStack();
 			try {
 				stack.functionCalled(this, null, args);
-				result = ctx.base_lexicalScope().impl_callAccessor(funExp_.asSymbol(), args);
+				result = local.impl_callLocal(ctx, args);
+				if (result == null) {
+					result = getCache().callAccessor(ctx.base_lexicalScope(), local.base_name(), args);
+				}
 			} finally {
 				stack.funcallReturned(result);
 			}
@@ -85,7 +108,7 @@ public final class AGApplication extends AGExpression implements ATApplication {
 		// calls of the form (expr)(x) are transformed into expr.eval(ctx).apply([x])
 		} else {
 			ATClosure clo = funExp_.meta_eval(ctx).asClosure();
-			NATTable args = Evaluator.evaluateArguments(arguments_.asNativeTable(), ctx);
+			NATTable args = evaluateArguments(ctx);
 			ATObject result = null;
 			InvocationStack stack = InvocationStack.getInvocationStack();
 			try {
@@ -98,6 +121,32 @@ public final class AGApplication extends AGExpression implements ATApplication {
 		}
 	}
 
+	/**
+	 * Evaluates the arguments, checking for spliced arguments only the first time.
+	 */
+	private NATTable evaluateArguments(ATContext ctx) throws InterpreterException {
+		NATTable args = arguments_.asNativeTable();
+		byte splices = splices_;
+		if (splices == _SPLICES_UNKNOWN_) {
+			splices = Evaluator.containsSplice(args) ? _SPLICES_ : _NO_SPLICES_;
+			splices_ = splices;
+		}
+		if (splices == _NO_SPLICES_) {
+			return Evaluator.evaluateUnsplicedArguments(args, ctx);
+		} else {
+			return Evaluator.evaluateSplicedArguments(args, ctx);
+		}
+	}
+	
+	private InlineCache getCache() {
+		InlineCache cache = cache_;
+		if (cache == null) {
+			cache = new InlineCache();
+			cache_ = cache;
+		}
+		return cache;
+	}
+
 	/**
 	 * Quoting an application results in a new quoted application.
 	 * 
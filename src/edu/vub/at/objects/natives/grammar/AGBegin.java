@@ -37,10 +37,10 @@ import edu.vub.at.objects.ATTable;
 import edu.vub.at.objects.grammar.ATBegin;
 import edu.vub.at.objects.grammar.ATStatement;
 import edu.vub.at.objects.mirrors.NativeClosure;
-import edu.vub.at.objects.natives.NATNumber;
 import edu.vub.at.objects.natives.NATText;
 import edu.vub.util.TempFieldGenerator;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
@@ -56,8 +56,9 @@ public final class AGBegin extends NATAbstractGrammar implements ATBegin {
 	
 	private final ATTable statements_;
 	
-	// contains a cached version of the expression's free variables
-	private Set freeVars_;
+	// contains a cached, unmodifiable version of the expression's free variables, which
+	// may be shared by actors that evaluate the same (e.g. cached) code
+	private volatile Set freeVars_;
 	
 	public AGBegin(ATTable statements) {
 	  statements_ = statements;
@@ -77,15 +78,15 @@ public final class AGBegin extends NATAbstractGrammar implements ATBegin {
 	 * requires a minimal form of explicit continuations.
 	 */
 	public ATObject meta_eval(ATContext ctx) throws InterpreterException {
-		NATNumber siz = statements_.base_length().asNativeNumber();
-		int lastIdx = siz.javaValue;
-		if (lastIdx == 0) {
+		ATObject[] stmts = statements_.asNativeTable().elements_;
+		int lastIdx = stmts.length - 1;
+		if (lastIdx < 0) {
 			return Evaluator.getNil();
 		}
-		for (int i = 1; i < lastIdx; i++) {
-			statements_.base_at(NATNumber.atValue(i)).meta_eval(ctx);
+		for (int i = 0; i < lastIdx; i++) {
+			stmts[i].meta_eval(ctx);
 		}
-		return statements_.base_at(NATNumber.atValue(lastIdx)).meta_eval(ctx);
+		return stmts[lastIdx].meta_eval(ctx);
 	}
 
 	/**
@@ -116,22 +117,26 @@ public final class AGBegin extends NATAbstractGrammar implements ATBegin {
 	 * FV({ stmt1; stmt2; ... }) = FV(stmt1) U FV(stmt2) U ... \ (IV(stmt1) U IV(stmt2) U ...) }
 	 */
 	public Set impl_freeVariables() throws InterpreterException {
-		if (freeVars_ == null) {
-			freeVars_ = new HashSet();
+		Set freeVars = freeVars_;
+		if (freeVars == null) {
+			final Set fv = new HashSet();
 			final Set boundVars = new HashSet();
 			statements_.base_each_(new NativeClosure(this) {
 				public ATObject base_apply(ATTable args) throws InterpreterException {
 					ATAbstractGrammar stmt = this.get(args, 1).asAbstractGrammar();
-					freeVars_.addAll(stmt.impl_freeVariables());
+					fv.addAll(stmt.impl_freeVariables());
 					if (stmt.isDefinition()) {
 						boundVars.addAll(stmt.asDefinition().impl_introducedVariables());					
 					}
 					return stmt;
 				}
 			});
-			freeVars_.removeAll(boundVars);
+			fv.removeAll(boundVars);
+			freeVars = Collections.unmodifiableSet(fv);
+			freeVars_ = freeVars;
 		}
-		return freeVars_;
+		// callers that need to modify the returned set should copy it
+		return freeVars;
 	}
 	
 	
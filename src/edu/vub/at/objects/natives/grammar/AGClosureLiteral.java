@@ -41,6 +41,7 @@ import edu.vub.at.objects.natives.NATTable;
 import edu.vub.at.objects.natives.NATText;
 import edu.vub.util.TempFieldGenerator;
 
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -53,13 +54,24 @@ public final class AGClosureLiteral extends AGExpression implements ATClosureLit
 	protected final ATTable arguments_;
 	protected final ATBegin body_;
 	
-	private NATMethod preprocessedMethod_;
+	/** created upon first evaluation and shared by all evaluations, also in other actors */
+	private volatile NATMethod preprocessedMethod_;
 	
 	public AGClosureLiteral(ATTable args, ATBegin body) throws InterpreterException {
 		arguments_ = args;
 		body_ = body;
 	}
 	
+	/**
+	 * Used by lexical addressing to copy a closure literal whose method
+	 * has already been created and analyzed in its enclosing scope.
+	 */
+	public AGClosureLiteral(NATMethod preprocessedMethod) {
+		arguments_ = preprocessedMethod.base_parameters();
+		body_ = preprocessedMethod.base_bodyExpression();
+		preprocessedMethod_ = preprocessedMethod;
+	}
+	
 	public ATTable base_arguments() { return arguments_; }
 
 	public ATBegin base_bodyExpression() { return body_; }
@@ -77,11 +89,14 @@ public final class AGClosureLiteral extends AGExpression implements ATClosureLit
 		// with quoted parameters: a quoted parameter would result in an illegal parameter
 		// exception while actually the block was defined in the context of a quotation,
 		// so at runtime the block would have never been evaluated (but quoted instead)
-		if (preprocessedMethod_ == null) {
-			preprocessedMethod_ = new NATMethod(Evaluator._LAMBDA_, arguments_, body_, NATTable.EMPTY);
-			preprocessedMethod_.impl_setLocation(this.impl_getLocation());
+		NATMethod method = preprocessedMethod_;
+		if (method == null) {
+			method = new NATMethod(Evaluator._LAMBDA_, arguments_, body_, NATTable.EMPTY);
+			method.impl_setLocation(this.impl_getLocation());
+			// only published once it is completely initialized
+			preprocessedMethod_ = method;
 		}
-		return new NATClosure(preprocessedMethod_, ctx);
+		return new NATClosure(method, ctx);
 	}
 
 	/**
@@ -128,7 +143,7 @@ public final class AGClosureLiteral extends AGExpression implements ATClosureLit
 	 * FV({ |args| body }) = FV(optionalArgExps) U (FV(body) \ { args })
 	 */
 	public Set impl_freeVariables() throws InterpreterException {
-		Set fvBody = body_.impl_freeVariables();
+		Set fvBody = new HashSet(body_.impl_freeVariables());
 		Evaluator.processFreeVariables(fvBody, arguments_);
 		return fvBody;
 	}
@@ -63,7 +63,17 @@ public final class AGDefExternalMethod extends AGDefinition implements ATDefExte
 	private final ATBegin		bodyStmts_;
 	private final ATExpression	annotationExps_;
 
-	private ATMethod preprocessedMethod_;
+	/**
+	 * Created upon first evaluation and shared by all subsequent evaluations, also in other
+	 * actors, unless the method is annotated with objects other than native type tags.
+	 */
+	private volatile ATMethod preprocessedMethod_;
+	
+	/**
+	 * The preprocessed method of the actor that last evaluated this definition,
+	 * if the method is annotated with objects other than native type tags.
+	 */
+	private transient volatile AGDefFunction.ActorMethod actorMethod_;
 	
 	public AGDefExternalMethod(ATSymbol rcv, ATSymbol sel, ATTable args, ATBegin bdy, ATExpression ann)
 	       throws InterpreterException {
@@ -111,7 +121,11 @@ public final class AGDefExternalMethod extends AGDefinition implements ATDefExte
 		// with quoted parameters: a quoted parameter would result in an illegal parameter
 		// exception while actually the external method was defined in the context of a quotation,
 		// so at runtime the external definition would have never been evaluated (but quoted instead)
-		if (preprocessedMethod_ == null) {
+		ATMethod method = preprocessedMethod_;
+		if (method == null) {
+			method = AGDefFunction.ActorMethod.get(actorMethod_);
+		}
+		if (method == null) {
 			ATObject oneOrMoreAnnotation = annotationExps_.meta_eval(ctx);
 			ATTable  annotationTable;
 			
@@ -123,14 +137,20 @@ public final class AGDefExternalMethod extends AGDefinition implements ATDefExte
 			
 			NATMethod preprocessedMethod = new NATMethod(selectorExp_, argumentExps_, bodyStmts_, annotationTable);
 			preprocessedMethod.impl_setLocation(this.impl_getLocation());
-			preprocessedMethod_ = preprocessedMethod;
-
+			method = preprocessedMethod;
+			
 			ATObject[] annotations = annotationTable.asNativeTable().elements_;
 			
 			for (int i = 0; i < annotations.length; i++) {
 				ATTypeTag theAnnotation = annotations[i].asTypeTag();
 				
-				preprocessedMethod_ = theAnnotation.base_annotateMethod(preprocessedMethod_);
+				method = theAnnotation.base_annotateMethod(method);
+			}
+			
+			if (AGDefFunction.isSharable(annotations)) {
+				preprocessedMethod_ = method;
+			} else {
+				actorMethod_ = new AGDefFunction.ActorMethod(method);
 			}
 		}
 		
@@ -140,7 +160,7 @@ public final class AGDefExternalMethod extends AGDefinition implements ATDefExte
 			
 		} else {
 			NATClosureMethod extMethod = new NATClosureMethod(ctx.base_lexicalScope(),
-                    preprocessedMethod_);
+                    method);
 
 			receiver.meta_addMethod(extMethod);
 			return extMethod;
@@ -188,7 +208,7 @@ public final class AGDefExternalMethod extends AGDefinition implements ATDefExte
 	 *   { o } U FV(anns) U FV(optionalArgExps) U (FV(body) \ { args }) 
 	 */
 	public Set impl_freeVariables() throws InterpreterException {
-		Set fvBody = bodyStmts_.impl_freeVariables();
+		Set fvBody = new HashSet(bodyStmts_.impl_freeVariables());
 		Evaluator.processFreeVariables(fvBody, argumentExps_);
 		fvBody.add(rcvNam_);
 		fvBody.addAll(annotationExps_.impl_freeVariables());
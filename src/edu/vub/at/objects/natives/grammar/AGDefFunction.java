@@ -42,8 +42,10 @@ import edu.vub.at.objects.grammar.ATExpression;
 import edu.vub.at.objects.grammar.ATSymbol;
 import edu.vub.at.objects.natives.NATClosure;
 import edu.vub.at.objects.natives.NATMethod;
+import edu.vub.at.objects.natives.NATObject;
 import edu.vub.at.objects.natives.NATTable;
 import edu.vub.at.objects.natives.NATText;
+import edu.vub.at.objects.natives.NATTypeTag;
 import edu.vub.util.TempFieldGenerator;
 
 import java.util.HashSet;
@@ -62,7 +64,17 @@ public final class AGDefFunction extends AGDefinition implements ATDefMethod {
 	private final ATBegin bodyStmts_;
 	private final ATExpression	annotationExps_;
 
-	private ATMethod preprocessedMethod_;
+	/**
+	 * Created upon first evaluation and shared by all subsequent evaluations, also in other
+	 * actors, unless the method is annotated with objects other than native type tags.
+	 */
+	private volatile ATMethod preprocessedMethod_;
+	
+	/**
+	 * The preprocessed method of the actor that last evaluated this definition,
+	 * if the method is annotated with objects other than native type tags.
+	 */
+	private transient volatile ActorMethod actorMethod_;
 	
 	public AGDefFunction(ATSymbol sel, ATTable args, ATBegin bdy, ATExpression ann) 
 			throws InterpreterException {
@@ -109,7 +121,11 @@ public final class AGDefFunction extends AGDefinition implements ATDefMethod {
 		// with quoted parameters: a quoted parameter would result in an illegal parameter
 		// exception while actually the function was defined in the context of a quotation,
 		// so at runtime the function definition would have never been evaluated (but quoted instead)
-		if (preprocessedMethod_ == null) {
+		ATMethod method = preprocessedMethod_;
+		if (method == null) {
+			method = ActorMethod.get(actorMethod_);
+		}
+		if (method == null) {
 			ATObject oneOrMoreAnnotation = annotationExps_.meta_eval(ctx);
 			ATTable  annotationTable;
 			
@@ -121,27 +137,69 @@ public final class AGDefFunction extends AGDefinition implements ATDefMethod {
 			
 			NATMethod preprocessedMethod = new NATMethod(selectorExp_, argumentExps_, bodyStmts_, annotationTable);
 			preprocessedMethod.impl_setLocation(this.impl_getLocation());
-			preprocessedMethod_ = preprocessedMethod;
+			method = preprocessedMethod;
 			
 			ATObject[] annotations = annotationTable.asNativeTable().elements_;
 			
 			for (int i = 0; i < annotations.length; i++) {
 				ATTypeTag theAnnotation = annotations[i].asTypeTag();
 				
-				preprocessedMethod_ = theAnnotation.base_annotateMethod(preprocessedMethod_);
+				method = theAnnotation.base_annotateMethod(method);
+			}
+			
+			if (isSharable(annotations)) {
+				preprocessedMethod_ = method;
+			} else {
+				actorMethod_ = new ActorMethod(method);
 			}
 		}
 		ATObject current = ctx.base_lexicalScope();
 		if (current.isCallFrame()) {
-			NATClosure clo = new NATClosure(preprocessedMethod_, ctx);
+			NATClosure clo = new NATClosure(method, ctx);
 			current.meta_defineField(selectorExp_, clo);
 			return clo;
 		} else {
-			current.meta_addMethod(preprocessedMethod_);
+			current.meta_addMethod(method);
 			return current.meta_select(current, selectorExp_);
 		}
 	}
 
+	/**
+	 * A preprocessed method can be shared by all evaluations of a definition if its annotations
+	 * are native type tags, which are immutable and do not alter the method they annotate.
+	 * Custom annotations are objects that belong to the actor that evaluated the definition.
+	 */
+	public static boolean isSharable(ATObject[] annotations) {
+		for (int i = 0; i < annotations.length; i++) {
+			if (!(annotations[i] instanceof NATTypeTag)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * A preprocessed method that is only reused by the actor that created it, which is
+	 * identified by its global scope. Hence, custom annotations only annotate a method
+	 * once per actor, rather than upon every evaluation of its definition.
+	 */
+	static final class ActorMethod {
+		
+		private final NATObject owner_ = Evaluator.getGlobalLexicalScope();
+		private final ATMethod method_;
+		
+		ActorMethod(ATMethod method) {
+			method_ = method;
+		}
+		
+		/**
+		 * @return the method of the given entry if it was created by the current actor, null otherwise
+		 */
+		static ATMethod get(ActorMethod entry) {
+			return (entry != null && entry.owner_ == Evaluator.getGlobalLexicalScope()) ? entry.method_ : null;
+		}
+	}
+	
 	/**
 	 * Quoting a function definition results in a new quoted function definition.
 	 * 
@@ -186,7 +244,7 @@ public final class AGDefFunction extends AGDefinition implements ATDefMethod {
 	 *   = FV(annotations) U FV(optionalArgExps) U (FV(body) \ { args } \ { f })
 	 */
 	public Set impl_freeVariables() throws InterpreterException {
-		Set fvBody = bodyStmts_.impl_freeVariables();
+		Set fvBody = new HashSet(bodyStmts_.impl_freeVariables());
 		fvBody.remove(selectorExp_);
 		Evaluator.processFreeVariables(fvBody, argumentExps_);
 		fvBody.addAll(annotationExps_.impl_freeVariables());
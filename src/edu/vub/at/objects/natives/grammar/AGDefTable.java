@@ -91,7 +91,7 @@ public final class AGDefTable extends AGDefinition implements ATDefTable {
 	public ATObject meta_eval(ATContext ctx) throws InterpreterException {
 		int siz = 0;
 		try {
-			siz = sizExp_.meta_eval(ctx).asNativeNumber().javaValue;
+			siz = sizExp_.meta_eval(ctx).asNativeNumber().asInt();
 		} catch (XTypeMismatch e) {
 			throw new XIllegalIndex(e.getMessage());
 		}
@@ -147,7 +147,7 @@ public final class AGDefTable extends AGDefinition implements ATDefTable {
 	 * FV(def t[idx] { body }) = FV(idx) U (FV(body) \ { t })
 	 */
 	public Set impl_freeVariables() throws InterpreterException {
-		Set fvBody = initExp_.impl_freeVariables();
+		Set fvBody = new HashSet(initExp_.impl_freeVariables());
 		fvBody.remove(tblName_);
 		fvBody.addAll(sizExp_.impl_freeVariables());
 		return fvBody;
@@ -44,6 +44,14 @@ import edu.vub.util.TempFieldGenerator;
  */
 public abstract class AGExpression extends NATAbstractGrammar implements ATExpression {
 	
+	/**
+	 * Expressions that pass arguments remember whether those contain a spliced argument.
+	 * The initial (and deserialized) state of such a transient byte field is unknown.
+	 */
+	protected static final byte _SPLICES_UNKNOWN_ = 0;
+	protected static final byte _NO_SPLICES_ = 1;
+	protected static final byte _SPLICES_ = 2;
+	
 	public ATExpression asExpression() { return this; }
 
     public ATTable meta_typeTags() throws InterpreterException {
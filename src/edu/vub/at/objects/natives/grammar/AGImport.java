@@ -64,7 +64,7 @@ public class AGImport extends NATAbstractGrammar implements ATImport {
 	 * For efficiency purposes, the table form of the alias mapping is preprocessed
 	 * into a hashtable format.
 	 */
-	private Hashtable aliasedSymbols_; // maps ATSymbols to ATSymbols
+	private volatile Hashtable aliasedSymbols_; // maps ATSymbols to ATSymbols, written after excludedSymbols_
 	
 	/**
 	 * For efficiency purposes, the table form of the excluded symbols is preprocessed
@@ -99,11 +99,18 @@ public class AGImport extends NATAbstractGrammar implements ATImport {
 	 *   NIL
 	 */
 	public ATObject meta_eval(ATContext ctx) throws InterpreterException {
-		if (aliasedSymbols_ == null) {
-			aliasedSymbols_ = Import.preprocessAliases(aliasDeclarations_.asTable());
-			excludedSymbols_ = Import.preprocessExcludes(excludesDeclarations_.asTable());	
+		// the preprocessed tables are never modified, such that they can be shared by all actors
+		Hashtable aliases = aliasedSymbols_;
+		HashSet excludes;
+		if (aliases == null) {
+			aliases = Import.preprocessAliases(aliasDeclarations_.asTable());
+			excludes = Import.preprocessExcludes(excludesDeclarations_.asTable());
+			excludedSymbols_ = excludes;
+			aliasedSymbols_ = aliases;
+		} else {
+			excludes = excludedSymbols_;
 		}
-		return Import.performImport(importedObjectExp_.meta_eval(ctx), ctx, aliasedSymbols_, excludedSymbols_);
+		return Import.performImport(importedObjectExp_.meta_eval(ctx), ctx, aliases, excludes);
 	}
 
 	/**
@@ -0,0 +1,126 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.natives.grammar;
+
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATContext;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.grammar.ATSymbol;
+import edu.vub.at.objects.natives.InlineCache;
+import edu.vub.at.objects.natives.LexicalAddress;
+import edu.vub.at.objects.natives.NATText;
+import edu.vub.util.TempFieldGenerator;
+
+import java.util.Set;
+
+/**
+ * An AGLocalVariable is a variable reference whose location in the enclosing call frames
+ * has been resolved in advance by the lexical addressing pass over method bodies.
+ * It never occurs in parse trees produced by the parser: it only occurs in the copies
+ * of method bodies that are evaluated by {@link edu.vub.at.objects.natives.NATMethod}.
+ * 
+ * References to free variables, whose location cannot be predicted, have no address.
+ * 
+ * If the variable has no address or is no longer stored at its address, the reference is
+ * evaluated as an ordinary variable reference, using an {@link InlineCache} that is owned
+ * by this occurrence of the variable.
+ */
+public final class AGLocalVariable extends AGExpression {
+
+	private final ATSymbol name_;
+	private final LexicalAddress address_;
+	
+	/** caches the lookup of name_ when it is not found at address_, created lazily */
+	private transient volatile InlineCache cache_;
+	
+	public AGLocalVariable(LexicalAddress address) {
+		this(address.name(), address);
+	}
+	
+	/**
+	 * @param address the predicted address of the variable, or null for a free variable
+	 */
+	public AGLocalVariable(ATSymbol name, LexicalAddress address) {
+		name_ = name;
+		address_ = address;
+	}
+	
+	public ATSymbol base_name() { return name_; }
+	
+	/**
+	 * AGLOCAL(nam,adr).eval(ctx) = adr.load(ctx.scope) or ctx.scope.lookup(nam)
+	 */
+	public ATObject meta_eval(ATContext ctx) throws InterpreterException {
+		ATObject scope = ctx.base_lexicalScope();
+		ATObject value = (address_ == null) ? null : address_.load(scope);
+		if (value == null) {
+			return getCache().callField(scope, name_);
+		}
+		return value;
+	}
+	
+	/**
+	 * Calls the function stored in this variable, used to evaluate <tt>nam(args)</tt>.
+	 * 
+	 * @return the result of the call or null if the variable is no longer stored at its address,
+	 * in which case the caller should perform an ordinary call
+	 */
+	public ATObject impl_callLocal(ATContext ctx, ATTable arguments) throws InterpreterException {
+		return (address_ == null) ? null : address_.call(ctx.base_lexicalScope(), arguments);
+	}
+	
+	private InlineCache getCache() {
+		InlineCache cache = cache_;
+		if (cache == null) {
+			cache = new InlineCache();
+			cache_ = cache;
+		}
+		return cache;
+	}
+
+	public ATObject meta_quote(ATContext ctx) throws InterpreterException {
+		return name_.meta_quote(ctx);
+	}
+	
+	public NATText meta_print() throws InterpreterException {
+		return name_.meta_print();
+	}
+	
+	public NATText impl_asUnquotedCode(TempFieldGenerator objectMap) throws InterpreterException {
+		return name_.impl_asUnquotedCode(objectMap);
+	}
+	
+	public Set impl_freeVariables() throws InterpreterException {
+		return name_.impl_freeVariables();
+	}
+	
+	public Set impl_quotedFreeVariables() throws InterpreterException {
+		return name_.impl_quotedFreeVariables();
+	}
+	
+}
@@ -55,6 +55,9 @@ public abstract class AGMessageCreation extends AGExpression implements ATMessag
 	private final ATTable arguments_;
 	private final ATExpression annotations_;
 	
+	/** whether arguments_ contains a spliced argument, determined at first evaluation */
+	private transient byte splices_;
+	
 	public AGMessageCreation(ATSymbol sel, ATTable args, ATExpression annotations) {
 		selector_ = sel;
 		arguments_ = args;
@@ -90,7 +93,7 @@ public abstract class AGMessageCreation extends AGExpression implements ATMessag
 	 * @return a first-class method invocation
 	 */
 	public ATObject meta_eval(ATContext ctx) throws InterpreterException {
-		NATTable evaluatedArgs = Evaluator.evaluateArguments(arguments_.asNativeTable(), ctx);
+		NATTable evaluatedArgs = evaluateArguments(ctx);
 		ATObject annotations = annotations_.meta_eval(ctx);
 		ATMessage msg = this.createMessage(ctx,
 				                  selector_,
@@ -101,6 +104,23 @@ public abstract class AGMessageCreation extends AGExpression implements ATMessag
 	    return msg;
 	}
 	
+	/**
+	 * Evaluates the arguments, checking for spliced arguments only the first time.
+	 */
+	private NATTable evaluateArguments(ATContext ctx) throws InterpreterException {
+		NATTable args = arguments_.asNativeTable();
+		byte splices = splices_;
+		if (splices == _SPLICES_UNKNOWN_) {
+			splices = Evaluator.containsSplice(args) ? _SPLICES_ : _NO_SPLICES_;
+			splices_ = splices;
+		}
+		if (splices == _NO_SPLICES_) {
+			return Evaluator.evaluateUnsplicedArguments(args, ctx);
+		} else {
+			return Evaluator.evaluateSplicedArguments(args, ctx);
+		}
+	}
+	
 	/**
 	 * Quoting a message creation element returns a new quoted message creation element.
 	 */
@@ -35,6 +35,10 @@ import edu.vub.at.objects.ATObject;
 import edu.vub.at.objects.ATTable;
 import edu.vub.at.objects.grammar.ATExpression;
 import edu.vub.at.objects.grammar.ATMessageSend;
+import edu.vub.at.objects.grammar.ATSymbol;
+import edu.vub.at.objects.natives.InlineCache;
+import edu.vub.at.objects.natives.NATMethodInvocation;
+import edu.vub.at.objects.natives.NATObject;
 import edu.vub.at.objects.natives.NATText;
 import edu.vub.at.parser.SourceLocation;
 import edu.vub.util.TempFieldGenerator;
@@ -51,6 +55,9 @@ public final class AGMessageSend extends AGExpression implements ATMessageSend {
 	private final ATExpression rcvExp_;
 	private final ATExpression message_;
 	
+	/** caches the method lookup for synchronous method invocations, created lazily */
+	private transient volatile InlineCache cache_;
+	
 	public AGMessageSend(ATExpression rcv, ATExpression msg) {
 		rcvExp_ = rcv;
 		message_ = msg;
@@ -77,13 +84,32 @@ public final class AGMessageSend extends AGExpression implements ATMessageSend {
 		ATTable args = msg.base_arguments();
 		try {
 			stack.methodInvoked(this, rcvr, args);
-			result = msg.base_sendTo(rcvr, ctx.base_receiver());
+			if (msg instanceof NATMethodInvocation && rcvr.getClass() == NATObject.class) {
+				// fast path, equivalent to rcvr.meta_invoke(rcvr, msg) for ordinary objects
+				ATSymbol selector = msg.base_selector();
+				if (selector.isAssignmentSymbol()) {
+					result = rcvr.impl_invokeMutator(rcvr, selector.asAssignmentSymbol(), args);
+				} else {
+					result = getCache().invokeAccessor(rcvr, selector, args);
+				}
+			} else {
+				result = msg.base_sendTo(rcvr, ctx.base_receiver());
+			}
 		} finally {
 			stack.methodReturned(result);
 		}
 		return result;
 	}
 
+	private InlineCache getCache() {
+		InlineCache cache = cache_;
+		if (cache == null) {
+			cache = new InlineCache();
+			cache_ = cache;
+		}
+		return cache;
+	}
+
 	/**
 	 * Quoting a message send returns a new quoted message send.
 	 * 
@@ -27,6 +27,7 @@
  */
 package edu.vub.at.objects.symbiosis;
 
+import edu.vub.at.actors.eventloops.EventLoopLocal;
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.exceptions.XArityMismatch;
 import edu.vub.at.exceptions.XDuplicateSlot;
@@ -80,11 +81,11 @@ import com.thoughtworks.xstream.core.util.ObjectIdDictionary;
 public final class JavaClass extends NATObject implements ATTypeTag {
 	
 	/**
-	 * A thread-local hashmap pooling all of the JavaClass wrappers for
+	 * An event loop local hashmap pooling all of the JavaClass wrappers for
 	 * the current actor, referring to them using SOFT references, such
 	 * that unused wrappers can be GC-ed when running low on memory.
 	 */
-	private static final ThreadLocal _JAVACLASS_POOL_ = new ThreadLocal() {
+	private static final EventLoopLocal _JAVACLASS_POOL_ = new EventLoopLocal() {
         protected synchronized Object initialValue() {
             return new ObjectIdDictionary();
         }
@@ -126,7 +127,7 @@ public final class JavaClass extends NATObject implements ATTypeTag {
 
 		public ATObject base_apply(ATTable arguments, ATContext ctx) throws InterpreterException {
 			if (!arguments.base_length().equals(NATNumber.ONE)) {
-				throw new XArityMismatch("isSubtypeOf", 1, arguments.base_length().asNativeNumber().javaValue);
+				throw new XArityMismatch("isSubtypeOf", 1, arguments.base_length().asNativeNumber().asInt());
 			}
 			return ctx.base_lexicalScope().asJavaClassUnderSymbiosis().base_isSubtypeOf(arguments.base_at(NATNumber.ONE).asTypeTag());
 		}
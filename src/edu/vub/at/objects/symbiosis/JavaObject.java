@@ -27,6 +27,7 @@
  */
 package edu.vub.at.objects.symbiosis;
 
+import edu.vub.at.actors.eventloops.EventLoopLocal;
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.exceptions.XDuplicateSlot;
 import edu.vub.at.exceptions.XIllegalOperation;
@@ -69,7 +70,7 @@ public final class JavaObject extends NATObject implements ATObject {
 
 	
 	/**
-	 * A thread-local identity hashmap pooling all of the JavaObject wrappers for
+	 * An event loop local identity hashmap pooling all of the JavaObject wrappers for
 	 * the current actor, referring to them using SOFT references, such
 	 * that unused wrappers can be GC-ed when running low on memory.
 	 * 
@@ -79,7 +80,7 @@ public final class JavaObject extends NATObject implements ATObject {
 	 * the same wrapper, which is obviously unwanted. Using an identity hashmap
 	 * avoids this.
 	 */
-	private static final ThreadLocal _JAVAOBJECT_POOL_ = new ThreadLocal() {
+	private static final EventLoopLocal _JAVAOBJECT_POOL_ = new EventLoopLocal() {
         protected synchronized Object initialValue() {
             return new ObjectIdDictionary();
         }
@@ -50,7 +50,6 @@ import edu.vub.util.TempFieldGenerator;
 
 import java.util.LinkedList;
 import java.util.Set;
-import java.util.Vector;
 
 /**
  * A JavaPackage represents (part of) a Java package name and serves the same purpose
@@ -117,7 +116,7 @@ public final class JavaPackage extends NATObject {
 	 * @param freeVars 
 	 */
 	private JavaPackage(FieldMap map,
-			  		   Vector state,
+			  		   ATObject[] state,
 			  		   LinkedList customFields,
 			  		   MethodDictionary methodDict,
 			  		   ATObject dynamicParent,
@@ -179,7 +178,7 @@ public final class JavaPackage extends NATObject {
 	}
 	
 	protected NATObject createClone(FieldMap map,
-			  					Vector state,
+			  					ATObject[] state,
 			  					LinkedList customFields,
 			  					MethodDictionary methodDict,
 			  					ATObject dynamicParent,
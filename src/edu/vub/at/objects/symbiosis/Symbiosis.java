@@ -28,7 +28,9 @@
 package edu.vub.at.objects.symbiosis;
 
 import edu.vub.at.actors.eventloops.BlockingFuture;
+import edu.vub.at.actors.natives.ELActor;
 import edu.vub.at.actors.natives.NATAsyncMessage;
+import edu.vub.at.actors.natives.NATFuture;
 import edu.vub.at.eval.Evaluator;
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.exceptions.XArityMismatch;
@@ -45,6 +47,7 @@ import edu.vub.at.objects.ATObject;
 import edu.vub.at.objects.ATTable;
 import edu.vub.at.objects.ATTypeTag;
 import edu.vub.at.objects.coercion.Coercer;
+import edu.vub.at.objects.coercion.NativeTypeTags;
 import edu.vub.at.objects.mirrors.JavaInterfaceAdaptor;
 import edu.vub.at.objects.mirrors.NativeClosure;
 import edu.vub.at.objects.mirrors.Reflection;
@@ -190,7 +193,13 @@ public final class Symbiosis {
 				    }
 				    case 1: {
 				    	// just one method left, invoke it
-						return invokeUniqueSymbioticMethod(symbiont, (Method) matchingMethods.getFirst(), actuals);
+				    	Method match = matchingMethods.getFirst();
+				    	params = match.getParameterTypes();
+				    	if (!((params.length == 1) && params[0].equals(ATObject[].class))) {
+				    		// the actuals may have been converted for a method that was discarded
+				    		actuals = atArgsToJavaArgs(atArgs, params);
+				    	}
+						return invokeUniqueSymbioticMethod(symbiont, match, actuals);
 				    }
 				    default: {
 				    	// more than one method left: overloading resolution failed
@@ -214,11 +223,13 @@ public final class Symbiosis {
 	 */
 	private static boolean addOrReplaceLessSpecific(LinkedList<Method> methods, Method candidate) {
 		for (int j = 0; j < methods.size(); j++) {
-			if (isMoreSpecificThan(candidate, methods.get(j))) {
+			if (isMoreSpecificThan(candidate, methods.get(j)) ||
+				prefersIntOverLong(candidate.getParameterTypes(), methods.get(j).getParameterTypes())) {
 				methods.set(j, candidate);
 				return true;
 			}
-			if (isMoreSpecificThan(methods.get(j), candidate)) {
+			if (isMoreSpecificThan(methods.get(j), candidate) ||
+				prefersIntOverLong(methods.get(j).getParameterTypes(), candidate.getParameterTypes())) {
 				return false;
 			}
 		}
@@ -247,6 +258,32 @@ public final class Symbiosis {
 		return moreSpecific;
 	}
 
+	/**
+	 * Indicates whether an overloaded method or constructor taking the given candidate parameter
+	 * types should be preferred over one taking the other parameter types. Since AmbientTalk numbers
+	 * convert to both int and long, overloads that differ only in taking an int where the other
+	 * takes a long both match numbers that fit in an int. As in Java, the int variant is chosen.
+	 * 
+	 * @return true if candidate takes an int wherever other takes a long and is otherwise equal
+	 */
+	private static boolean prefersIntOverLong(Class[] candidate, Class[] other) {
+		if (candidate.length != other.length) {
+			return false;
+		}
+		boolean narrower = false;
+		for (int i = 0; i < candidate.length; i++) {
+			if (candidate[i] != other[i]) {
+				if ((candidate[i] == int.class || candidate[i] == Integer.class) &&
+					(other[i] == long.class || other[i] == Long.class)) {
+					narrower = true;
+				} else {
+					return false;
+				}
+			}
+		}
+		return narrower;
+	}
+
 	/**
 	 * Creates a new instance of a Java class.
 	 * 
@@ -318,6 +355,26 @@ public final class Symbiosis {
 			}
 		}
 		
+		// discard constructors taking a long where another matching constructor takes an int
+		for (int i = 0; i < ctors.length && matchingCtors > 1; i++) {
+			for (int j = 0; j < ctors.length; j++) {
+				if (ctors[i] != null && ctors[j] != null &&
+					prefersIntOverLong(ctors[i].getParameterTypes(), ctors[j].getParameterTypes())) {
+					ctors[j] = null;
+					matchingCtors--;
+				}
+			}
+		}
+		if (matchingCtors == 1) {
+			for (int i = 0; i < ctors.length; i++) {
+				if (ctors[i] != null && ctors[i] != matchingCtor) {
+					// the actuals were converted for a constructor that was discarded
+					matchingCtor = ctors[i];
+					actuals = atArgsToJavaArgs(atArgs, matchingCtor.getParameterTypes());
+				}
+			}
+		}
+		
 		if (matchingCtors != 1) {
 			// no constructors left or more than one constructor left? overloading resolution failed
 			throw new XSymbiosisFailure(constructor.class_, ctors, atArgs, matchingCtors);
@@ -369,6 +426,7 @@ public final class Symbiosis {
 	 * @param value the AmbientTalk value which will be converted into its Java equivalent to be written int he field
 	 */
 	public static void writeField(Object toObject, Field f, ATObject value) throws InterpreterException {
+		ELActor.noteExternalEffect();
 		try {
 			f.set(toObject, Symbiosis.ambientTalkToJava(value, f.getType()));
 		} catch (IllegalArgumentException e) {
@@ -539,6 +597,7 @@ public final class Symbiosis {
 	 * null = nil
 	 * ATObject obj = obj
 	 * int n = Number(n)
+	 * long n = Number(n)
 	 * double d = Fraction(d)
 	 * boolean b = Boolean(b)
 	 * String s = Text(s)
@@ -593,6 +652,7 @@ public final class Symbiosis {
 	 * to the following rules:
 	 * <pre>
 	 * Number n -> int = n.javaValue
+	 * Number n -> long = n.javaValue
 	 * Fraction f -> double = f.javaValue
 	 * Boolean b -> boolean = b.javaValue
 	 * Text t -> String = t.javaValue
@@ -687,7 +747,7 @@ public final class Symbiosis {
 	 *   def notifyResolved(val) { ... };
 	 * }
 	 */
-	private static final ATTypeTag _FUTURE_ = NATTypeTag.atValue("Future");
+	private static final ATTypeTag _FUTURE_ = NativeTypeTags._FUTURE_;
 	private static final ATTypeTag _METAMESSAGE_ = NATTypeTag.atValue("MetaMessage");
 	private static final ATTypeTag _ONEWAYMESSAGE_ = NATTypeTag.atValue("OneWayMessage");
 	
@@ -722,6 +782,10 @@ public final class Symbiosis {
 	 * Converts an AmbientTalk future to a Java future of type targetType.
 	 */
 	public static BlockingFuture ambientTalkFutureToJavaFuture(ATObject atFuture, Class targetType) throws InterpreterException {
+		if (atFuture instanceof NATFuture) {
+			// native futures resolve the Java future directly, without a listener turn
+			return ((NATFuture) atFuture).asBlockingFuture(targetType);
+		}
 		final BlockingFuture delayed = new BlockingFuture();
 		ATTable annotations = NATTable.of(_METAMESSAGE_, _ONEWAYMESSAGE_);
 		ATObject listener = new NATResolutionListener(delayed, targetType);
@@ -735,6 +799,7 @@ public final class Symbiosis {
 	}
 	
 	private static ATObject invokeUniqueSymbioticMethod(Object symbiont, Method javaMethod, Object[] jArgs) throws InterpreterException {
+		ELActor.noteExternalEffect();
 		try {
 			return Symbiosis.javaToAmbientTalk(javaMethod.invoke(symbiont, jArgs));
 		} catch (IllegalAccessException e) {
@@ -777,6 +842,7 @@ public final class Symbiosis {
 	}
 	
 	private static ATObject invokeUniqueSymbioticConstructor(Constructor ctor, Object[] jArgs) throws InterpreterException {
+		ELActor.noteExternalEffect();
 		try {
 			return Symbiosis.javaToAmbientTalk(ctor.newInstance(jArgs));
 		} catch (IllegalAccessException e) {
@@ -31,9 +31,21 @@ package edu.vub.at;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import edu.vub.at.actors.eventloops.EventLoopTest;
+import edu.vub.at.actors.eventloops.EventQueueTest;
+import edu.vub.at.actors.eventloops.TimerWheelTest;
 import edu.vub.at.actors.natives.ActorTest;
+import edu.vub.at.actors.natives.FarReferencesThreadPoolTest;
+import edu.vub.at.actors.natives.LocalPacketTest;
+import edu.vub.at.actors.natives.NativeFutureTest;
+import edu.vub.at.actors.natives.NativeMessageTest;
+import edu.vub.at.actors.natives.PacketCodecTest;
+import edu.vub.at.actors.natives.ScopeSnapshotTest;
 import edu.vub.at.actors.natives.SerializationTest;
+import edu.vub.at.actors.net.cmd.WireFormatTest;
+import edu.vub.at.actors.net.comm.NIOTransportTest;
 import edu.vub.at.objects.mirrors.CoercionTest;
+import edu.vub.at.objects.mirrors.DirectNativeMethodMapTest;
 import edu.vub.at.objects.mirrors.InvocationTest;
 import edu.vub.at.objects.mirrors.MirageTest;
 import edu.vub.at.objects.mirrors.MirrorTest;
@@ -42,6 +54,7 @@ import edu.vub.at.objects.mirrors.ReflectionTest;
 import edu.vub.at.objects.natives.CustomFieldsTest;
 import edu.vub.at.objects.natives.EscapeTest;
 import edu.vub.at.objects.natives.ExceptionHandlingTest;
+import edu.vub.at.objects.natives.InlineCacheTest;
 import edu.vub.at.objects.natives.LexicalRootTest;
 import edu.vub.at.objects.natives.NATNamespaceTest;
 import edu.vub.at.objects.natives.NATObjectClosureTest;
@@ -52,6 +65,7 @@ import edu.vub.at.objects.natives.TypeTagTest;
 import edu.vub.at.objects.natives.UniformAccessTest;
 import edu.vub.at.objects.natives.grammar.TestEval;
 import edu.vub.at.objects.natives.grammar.TestFreeVariableCapturing;
+import edu.vub.at.objects.natives.grammar.TestLexicalAddressing;
 import edu.vub.at.objects.natives.grammar.TestParameterBinding;
 import edu.vub.at.objects.symbiosis.SymbiosisTest;
 import edu.vub.at.trace.TraceTest;
@@ -95,6 +109,20 @@ public class InterpreterTests {
 		suite.addTestSuite(CoercionTest.class);
 		suite.addTestSuite(ActorTest.class);
 		suite.addTestSuite(TraceTest.class);
+		suite.addTestSuite(InlineCacheTest.class);
+		suite.addTestSuite(TestLexicalAddressing.class);
+		suite.addTestSuite(DirectNativeMethodMapTest.class);
+		suite.addTestSuite(EventLoopTest.class);
+		suite.addTestSuite(EventQueueTest.class);
+		suite.addTestSuite(LocalPacketTest.class);
+		suite.addTestSuite(NativeMessageTest.class);
+		suite.addTestSuite(NativeFutureTest.class);
+		suite.addTestSuite(TimerWheelTest.class);
+		suite.addTestSuite(ScopeSnapshotTest.class);
+		suite.addTestSuite(NIOTransportTest.class);
+		suite.addTestSuite(WireFormatTest.class);
+		suite.addTestSuite(PacketCodecTest.class);
+		suite.addTestSuite(FarReferencesThreadPoolTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,191 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.eventloops;
+
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests event loops scheduled on the shared scheduler pool: events must be processed
+ * one at a time, in FIFO order and within a valid current event loop.
+ */
+public class EventLoopTest extends TestCase {
+
+	private static final int _EVENTS_ = 1000;
+	
+	/**
+	 * A pooled event loop which makes events process themselves and keeps track of
+	 * the number of events processed concurrently.
+	 */
+	private static class PooledEventLoop extends EventLoop {
+		
+		private int active_ = 0;
+		private boolean overlapped_ = false;
+		
+		public PooledEventLoop(String name) {
+			super(name, true);
+		}
+		
+		public void handle(Event event) {
+			synchronized (this) {
+				if (++active_ > 1) {
+					overlapped_ = true;
+				}
+			}
+			try {
+				event.process(this);
+			} finally {
+				synchronized (this) {
+					active_--;
+				}
+			}
+		}
+		
+		public void event(Event event) {
+			receive(event);
+		}
+		
+		public Object sync_event(Callable callable) throws Exception {
+			return receiveAndWait("sync_event", callable);
+		}
+		
+		public BlockingFuture sync_event_future(Callable callable) throws Exception {
+			return receiveAndReturnFuture("sync_event", callable);
+		}
+		
+	}
+	
+	/**
+	 * Tests whether a pooled event loop processes its events in FIFO order, without
+	 * overlapping turns, even when other pooled event loops are competing for the pool.
+	 */
+	public void testPooledFIFOProcessing() throws Exception {
+		final PooledEventLoop loop = new PooledEventLoop("fifo");
+		PooledEventLoop other = new PooledEventLoop("other");
+		final Vector processed = new Vector();
+		loop.start();
+		other.start();
+		for (int i = 0; i < _EVENTS_; i++) {
+			final Integer n = new Integer(i);
+			loop.event(new Event("event " + i) {
+				public void process(Object owner) {
+					processed.add(n);
+				}
+			});
+			other.event(new Event("noise " + i) {
+				public void process(Object owner) { }
+			});
+		}
+		// a synchronous event is processed after all previously received events
+		loop.sync_event(new Callable() {
+			public Object call(Object owner) { return null; }
+		});
+		other.sync_event(new Callable() {
+			public Object call(Object owner) { return null; }
+		});
+		assertEquals(_EVENTS_, processed.size());
+		for (int i = 0; i < _EVENTS_; i++) {
+			assertEquals(new Integer(i), processed.get(i));
+		}
+		assertFalse(loop.overlapped_);
+	}
+	
+	/**
+	 * Tests whether events received before a pooled event loop is started are only
+	 * processed once it is started.
+	 */
+	public void testPooledStart() throws Exception {
+		final PooledEventLoop loop = new PooledEventLoop("start");
+		final Vector processed = new Vector();
+		loop.event(new Event("early") {
+			public void process(Object owner) {
+				processed.add(owner);
+			}
+		});
+		Thread.sleep(50);
+		assertTrue(processed.isEmpty());
+		loop.start();
+		loop.sync_event(new Callable() {
+			public Object call(Object owner) { return null; }
+		});
+		assertEquals(1, processed.size());
+		assertSame(loop, processed.get(0));
+	}
+	
+	/**
+	 * Tests whether the current event loop is accessible within the turn of a pooled
+	 * event loop, and inaccessible outside of it.
+	 */
+	public void testPooledCurrentEventLoop() throws Exception {
+		final PooledEventLoop loop = new PooledEventLoop("current");
+		loop.start();
+		Object current = loop.sync_event(new Callable() {
+			public Object call(Object owner) {
+				return EventLoop.currentEventLoop();
+			}
+		});
+		assertSame(loop, current);
+		assertNull(EventLoop.currentEventLoopOrNull());
+		try {
+			EventLoop.currentEventLoop();
+			fail("expected an IllegalStateException outside of an event loop");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Tests whether a pooled event loop performing a synchronous operation on itself
+	 * is detected, and whether pooled event loops may synchronously wait on one another.
+	 */
+	public void testPooledSynchronousEvents() throws Exception {
+		final PooledEventLoop loop = new PooledEventLoop("self");
+		final PooledEventLoop other = new PooledEventLoop("other");
+		loop.start();
+		other.start();
+		Object result = loop.sync_event(new Callable() {
+			public Object call(Object owner) throws Exception {
+				try {
+					loop.sync_event_future(new Callable() {
+						public Object call(Object owner) { return null; }
+					});
+					return "no deadlock detected";
+				} catch (RuntimeException e) {
+					// expected
+				}
+				return other.sync_event(new Callable() {
+					public Object call(Object owner) {
+						return EventLoop.currentEventLoop();
+					}
+				});
+			}
+		});
+		assertSame(other, result);
+	}
+	
+}
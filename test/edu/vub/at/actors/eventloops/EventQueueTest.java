@@ -0,0 +1,137 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.eventloops;
+
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the ordering guarantees of the multi-producer, single-consumer event queue.
+ */
+public class EventQueueTest extends TestCase {
+
+	private static final int _SENDERS_ = 8;
+	private static final int _EVENTS_ = 10000;
+	
+	private static class NumberedEvent extends Event {
+		public final int sender;
+		public final int number;
+		
+		public NumberedEvent(int sender, int number) {
+			super("event " + number + " of " + sender);
+			this.sender = sender;
+			this.number = number;
+		}
+		
+		public void process(Object owner) { }
+	}
+	
+	/**
+	 * Tests whether prioritized events precede all other events, the most recently
+	 * prioritized event first, and whether flushed events can be merged back in order.
+	 */
+	public void testPrioritizedEvents() throws Exception {
+		EventQueue queue = new EventQueue();
+		assertTrue(queue.isEmpty());
+		queue.enqueue(new NumberedEvent(0, 1));
+		queue.enqueue(new NumberedEvent(0, 2));
+		queue.enqueueFirst(new NumberedEvent(0, 3));
+		queue.enqueueFirst(new NumberedEvent(0, 4));
+		assertFalse(queue.isEmpty());
+		
+		Vector contents = queue.flush();
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+		assertEquals(4, contents.size());
+		int[] expected = new int[] { 4, 3, 1, 2 };
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], ((NumberedEvent) contents.get(i)).number);
+		}
+		
+		queue.enqueue(new NumberedEvent(0, 5));
+		queue.merge(contents);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], ((NumberedEvent) queue.dequeue()).number);
+		}
+		assertEquals(5, ((NumberedEvent) queue.dequeue()).number);
+		assertTrue(queue.isEmpty());
+	}
+	
+	/**
+	 * Tests whether events of concurrent senders are all dequeued, in the order in
+	 * which each sender enqueued them, by a consumer that blocks on an empty queue.
+	 */
+	public void testConcurrentSenders() throws Exception {
+		final EventQueue queue = new EventQueue();
+		Thread[] senders = new Thread[_SENDERS_];
+		for (int s = 0; s < _SENDERS_; s++) {
+			final int sender = s;
+			senders[s] = new Thread() {
+				public void run() {
+					for (int i = 0; i < _EVENTS_; i++) {
+						queue.enqueue(new NumberedEvent(sender, i));
+					}
+				}
+			};
+			senders[s].start();
+		}
+		int[] next = new int[_SENDERS_];
+		for (int i = 0; i < _SENDERS_ * _EVENTS_; i++) {
+			NumberedEvent event = (NumberedEvent) queue.dequeue();
+			assertEquals(next[event.sender], event.number);
+			next[event.sender]++;
+		}
+		for (int s = 0; s < _SENDERS_; s++) {
+			senders[s].join();
+		}
+		assertTrue(queue.isEmpty());
+	}
+	
+	/**
+	 * Tests whether a consumer blocked on an empty queue can be interrupted.
+	 */
+	public void testInterruptedDequeue() throws Exception {
+		final EventQueue queue = new EventQueue();
+		final boolean[] interrupted = new boolean[] { false };
+		Thread consumer = new Thread() {
+			public void run() {
+				try {
+					queue.dequeue();
+				} catch (InterruptedException e) {
+					interrupted[0] = true;
+				}
+			}
+		};
+		consumer.start();
+		Thread.sleep(50);
+		consumer.interrupt();
+		consumer.join(5000);
+		assertTrue(interrupted[0]);
+	}
+	
+}
@@ -0,0 +1,137 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.eventloops;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests whether the timer wheel runs timeouts after their delay, spanning several
+ * revolutions of the wheel, and whether cancelled timeouts are never run.
+ */
+public class TimerWheelTest extends TestCase {
+	
+	private static final int _TIMEOUTS_ = 200000;
+	
+	private TimerWheel wheel_;
+	
+	public void setUp() {
+		wheel_ = new TimerWheel("test timer wheel");
+	}
+	
+	/**
+	 * Tests whether a timeout does not expire before its delay, including delays
+	 * longer than one revolution of the wheel.
+	 */
+	public void testDelay() throws Exception {
+		final long[] delays = new long[] { 0, 5, 20, 700, 1100 };
+		final CountDownLatch done = new CountDownLatch(delays.length);
+		final AtomicInteger early = new AtomicInteger(0);
+		for (int i = 0; i < delays.length; i++) {
+			final long delay = delays[i];
+			final long start = System.nanoTime();
+			wheel_.schedule(new Runnable() {
+				public void run() {
+					if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < delay) {
+						early.incrementAndGet();
+					}
+					done.countDown();
+				}
+			}, delay);
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(0, early.get());
+	}
+	
+	/**
+	 * Tests whether many outstanding timeouts, half of which are cancelled, are handled
+	 * by the single timer thread, and whether cancelled timeouts are removed from the wheel.
+	 */
+	public void testManyTimeouts() throws Exception {
+		final AtomicInteger expired = new AtomicInteger(0);
+		final CountDownLatch done = new CountDownLatch(_TIMEOUTS_ / 2);
+		Runnable task = new Runnable() {
+			public void run() {
+				expired.incrementAndGet();
+				done.countDown();
+			}
+		};
+		TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[_TIMEOUTS_];
+		for (int i = 0; i < _TIMEOUTS_; i++) {
+			timeouts[i] = wheel_.schedule(task, 100 + (i % 1000));
+			if (i % 2 == 0) {
+				assertTrue(timeouts[i].cancel());
+			}
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 100 && wheel_.getOutstanding() > 0; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(0, wheel_.getOutstanding());
+		assertEquals(_TIMEOUTS_ / 2, expired.get());
+		for (int i = 0; i < _TIMEOUTS_; i++) {
+			assertEquals(i % 2 == 0, timeouts[i].isCancelled());
+			assertEquals(i % 2 != 0, timeouts[i].isExpired());
+			assertFalse(timeouts[i].cancel());
+		}
+	}
+	
+	/**
+	 * Tests whether the timer thread parks until the next non-empty bucket rather than
+	 * waking up every tick while a timeout is outstanding.
+	 */
+	public void testParksUntilNextTimeout() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		wheel_.schedule(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		}, 300);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue("woke up " + wheel_.getWakeups() + " times", wheel_.getWakeups() < 10);
+	}
+	
+	/**
+	 * Tests whether delays too large to be represented in nanoseconds do not expire.
+	 */
+	public void testHugeDelay() throws Exception {
+		final AtomicInteger expired = new AtomicInteger(0);
+		TimerWheel.Timeout timeout = wheel_.schedule(new Runnable() {
+			public void run() {
+				expired.incrementAndGet();
+			}
+		}, Long.MAX_VALUE);
+		Thread.sleep(50);
+		assertEquals(0, expired.get());
+		assertEquals(1, wheel_.getOutstanding());
+		assertTrue(timeout.cancel());
+	}
+	
+}
@@ -28,9 +28,20 @@
 package edu.vub.at.actors.natives;
 
 import edu.vub.at.AmbientTalkTest;
+import edu.vub.at.actors.net.comm.Address;
 import edu.vub.at.eval.Evaluator;
+import edu.vub.at.exceptions.XIllegalArgument;
 import edu.vub.at.exceptions.XIllegalOperation;
+import edu.vub.at.exceptions.XMailboxFull;
 import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.natives.NATBoolean;
+import edu.vub.at.objects.natives.NATNumber;
+import edu.vub.at.objects.natives.NATTable;
+import edu.vub.at.objects.natives.NATText;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+import edu.vub.at.parser.NATParser;
+
+import java.net.InetAddress;
 
 /**
  * The Actorscript tests several aspects of actor creation, most notably actor creation,
@@ -64,4 +75,111 @@ public class ActorTest extends AmbientTalkTest {
 		evalAndTestException("a.x", XIllegalOperation.class);
 	}
 	
+	/**
+	 * Tests whether letters scheduled in a single turn are all served in order,
+	 * even if there are more of them than can be served at the end of one event.
+	 */
+	public void testServeInOrder() throws Exception {
+		evalInActor("def served := 0; def ordered := true;" +
+				    "def counter := object: { def m(i) { if: !(i == served) then: { ordered := false }; served := served + 1 } };" +
+				    "0.to: 499 do: { |i| counter<-m(i) }");
+		for (int i = 0; i < 100 && evalInActor("served").asNativeNumber().javaValue < 500; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(500, evalInActor("served").asNativeNumber().javaValue);
+		assertEquals(NATBoolean._TRUE_, evalInActor("ordered"));
+	}
+	
+	/**
+	 * Tests the parsing of mailbox limits: non-positive capacities are unbounded
+	 * and unknown overflow policies are refused.
+	 */
+	public void testMailboxLimits() throws Exception {
+		MailboxLimit limit = MailboxLimit.atValue(NATNumber.atValue(10), AGSymbol.jAlloc("dropOldest"));
+		assertTrue(limit.isBounded());
+		assertEquals(MailboxLimit._DROP_OLDEST_, limit.getPolicy());
+		assertTrue(limit.admits(9));
+		assertFalse(limit.admits(10));
+		assertFalse(MailboxLimit.atValue(NATNumber.atValue(0), AGSymbol.jAlloc("raise")).isBounded());
+		try {
+			MailboxLimit.atValue(NATNumber.atValue(10), AGSymbol.jAlloc("ignore"));
+			fail("expected an XIllegalArgument exception");
+		} catch (XIllegalArgument e) { }
+	}
+	
+	/**
+	 * Tests whether the outbox of a disconnected far reference applies its overflow policy.
+	 */
+	public void testOutboxLimit() throws Exception {
+		NATLocalFarRef ref = (NATLocalFarRef) evalInActor("def a := actor: { def m(x) { x } }");
+		ref.disconnected();
+		evalInActor("reflectOnActor().limitOutbox(a, 2, `dropNewest); 1.to: 5 do: { |i| a<-m(i) }");
+		assertEquals(2, evalInActor("reflectOnActor().outboxSize(a)").asNativeNumber().javaValue);
+		assertEquals(1, evalInActor("(retract: a)[1].arguments[1]").asNativeNumber().javaValue);
+		
+		evalInActor("reflectOnActor().limitOutbox(a, 2, `dropOldest); 1.to: 5 do: { |i| a<-m(i) }");
+		assertEquals(4, evalInActor("(retract: a)[1].arguments[1]").asNativeNumber().javaValue);
+		
+		evalInActor("reflectOnActor().limitOutbox(a, 1, `raise); a<-m(1)");
+		try {
+			ELActor.currentActor().sync_event_eval(NATParser._INSTANCE_.base_parse(NATText.atValue("a<-m(2)")));
+			fail("expected an XMailboxFull exception");
+		} catch (XMailboxFull e) { }
+		assertEquals(1, evalInActor("reflectOnActor().outboxSize(a)").asNativeNumber().javaValue);
+	}
+	
+	/**
+	 * Tests whether the mailbox of an actor is empty once all messages have been served.
+	 */
+	public void testMailboxSize() throws Exception {
+		evalInActor("reflectOnActor().limitMailbox(100, `block)");
+		assertEquals(0, evalInActor("reflectOnActor().mailboxSize()").asNativeNumber().javaValue);
+	}
+	
+	/**
+	 * Tests whether a full mailbox whose policy is to block never blocks the thread accepting
+	 * messages of remote virtual machines: messages of senders that are bounded by credits
+	 * are accepted, other messages are dropped.
+	 */
+	public void testRemoteAcceptNeverBlocks() throws Exception {
+		NATLocalFarRef ref = (NATLocalFarRef) evalInActor(
+				"def sleeper := actor: { def sleep(ms) { jlobby.java.lang.Thread.sleep(ms) } }");
+		ELActor receiver = ref.getFarHost();
+		receiver.setMailboxLimit(MailboxLimit.atValue(NATNumber.ONE, AGSymbol.jAlloc("block")));
+		evalInActor("sleeper<-sleep(1000)");
+		for (int i = 0; i < 100 && receiver.getMailboxSize() > 0; i++) {
+			Thread.sleep(10);
+		}
+		
+		Address sender = new Address(InetAddress.getLoopbackAddress(), 0, "test");
+		Packet message = new Packet(NATTable.of(Evaluator.getNil(), new NATAsyncMessage(
+				AGSymbol.jAlloc("=="), NATTable.of(Evaluator.getNil()), NATTable.EMPTY)));
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 3; i++) {
+			receiver.event_remoteAccept(sender, message, 100);
+		}
+		receiver.event_remoteAccept(sender, message, 0);
+		assertTrue(System.currentTimeMillis() - start < 500);
+		assertEquals(3, receiver.getMailboxSize());
+		
+		for (int i = 0; i < 300 && receiver.getMailboxSize() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, receiver.getMailboxSize());
+	}
+	
+	/**
+	 * Tests whether when:elapsed: triggers its closure in the actor, unless it is cancelled.
+	 */
+	public void testWhenElapsed() throws Exception {
+		evalInActor("def elapsed := []; when: 30 elapsed: { elapsed := elapsed + [2] };" +
+				    "(when: 10 elapsed: { elapsed := elapsed + [0] }).cancel();" +
+				    "when: 0 elapsed: { elapsed := elapsed + [1] }");
+		for (int i = 0; i < 100 && evalInActor("elapsed.length").asNativeNumber().javaValue < 2; i++) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(50);
+		assertEquals("[1, 2]", evalInActor("elapsed").meta_print().javaValue);
+	}
+	
 }
@@ -269,6 +269,51 @@ public class DistributionTest extends TestCase {
 			fail("Service DiscoveryBus notification has failed to arrive within " + _TIMEOUT_ /1000 + " sec.");
 	}
 	
+	/**
+	 * Sends a burst of messages over a remote far reference, which are transmitted in
+	 * batches, and checks that the receiver processes all of them in the order in which
+	 * they were sent.
+	 * @throws Exception
+	 */
+	public synchronized void testMessageOrder() throws Exception {
+		
+		setTestResult(false);
+		
+		ELActor sender = setUpActor(virtual1_);
+		ELActor receiver = setUpActor(virtual2_);
+		
+		setUpSuccessTrigger(receiver);
+		
+		sender.sync_event_eval(
+				NATParser.parse("DistributionTest#testMessageOrder()",
+						"deftype Counter; \n" +
+						"when: Counter discovered: { | ref |" +
+						"  def i := 0; \n" +
+						"  while: { i < 500 } do: { ref<-add(i); i := i + 1 }; \n" +
+						"  ref<-done(500); \n" +
+						"} \n;"));
+		
+		receiver.sync_event_eval(
+				NATParser.parse("DistributionTest#testMessageOrder()",
+						"deftype Counter; \n" +
+						"export: (object: { \n" +
+						"  def expected := 0; \n" +
+						"  def ordered := true; \n" +
+						"  def add(i) { if: (i == expected) then: { expected := expected + 1 } else: { ordered := false } }; \n" +
+						"  def done(n) { if: (ordered.and: { expected == n }) then: { success() } } \n" +
+						"}) as: Counter"));
+		
+		virtual1_.event_goOnline();
+		virtual2_.event_goOnline();
+		
+		try {
+			this.wait( _TIMEOUT_ );
+		} catch (InterruptedException e) {};
+		
+		if(! getTestResult())
+			fail("Messages have not all arrived in order within " + _TIMEOUT_ /1000 + " sec.");
+	}
+	
 	/**
 	 * Uses the when: discovered: and export: as: constructs to make an object on one virtual
 	 * machine accessible to another virtual machine. After a first discovery, it forces a
@@ -0,0 +1,429 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import java.net.InetAddress;
+import java.util.Vector;
+
+import edu.vub.at.actors.id.ATObjectID;
+import edu.vub.at.actors.id.ActorID;
+import edu.vub.at.actors.id.VirtualMachineID;
+import edu.vub.at.actors.net.cmd.VMCommand;
+import edu.vub.at.actors.net.comm.Address;
+import edu.vub.at.actors.net.comm.CommunicationBus;
+import edu.vub.at.actors.net.comm.NetworkException;
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.ATTypeTag;
+import edu.vub.at.objects.natives.NATTable;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests how a {@link FarReferencesThreadPool} schedules the transmissions of remote far
+ * references, by means of a communication bus that can hold back or fail transmissions.
+ */
+public class FarReferencesThreadPoolTest extends TestCase {
+
+	public static void main(String[] args) {
+		junit.swingui.TestRunner.run(FarReferencesThreadPoolTest.class);
+	}
+	
+	private static final String _TEST_GROUP_NAME_ = "AmbientTalkTest";
+	
+	private static final int _TIMEOUT_ = 10000;
+	
+	/**
+	 * A communication bus that records the commands it is asked to transmit,
+	 * without transmitting them.
+	 */
+	private static class ScriptedBus extends CommunicationBus {
+		
+		/** the descriptions of the commands transmitted, in order */
+		private final Vector sent_ = new Vector();
+		
+		/** the times in milliseconds at which transmissions were attempted */
+		private final Vector attempts_ = new Vector();
+		
+		/** whether transmissions are held back until {@link #release()} */
+		private boolean holding_ = false;
+		
+		/** the number of subsequent transmissions that fail */
+		private int failures_ = 0;
+		
+		private int inFlight_ = 0;
+		private int peakInFlight_ = 0;
+		
+		ScriptedBus(ELVirtualMachine host) {
+			super(host, _TEST_GROUP_NAME_, ELVirtualMachine._DEFAULT_IP_ADDRESS_);
+		}
+		
+		public synchronized void sendSynchronousUnicast(VMCommand msg, Address recipientVM) throws NetworkException {
+			attempts_.add(new Long(System.nanoTime() / 1000000));
+			if (failures_ > 0) {
+				failures_--;
+				notifyAll();
+				throw new NetworkException("transmission of " + msg + " failed");
+			}
+			inFlight_++;
+			peakInFlight_ = Math.max(peakInFlight_, inFlight_);
+			notifyAll();
+			try {
+				while (holding_) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				throw new NetworkException("interrupted while transmitting " + msg, e);
+			} finally {
+				inFlight_--;
+			}
+			sent_.add(msg.toString());
+			notifyAll();
+		}
+		
+		synchronized void hold() {
+			holding_ = true;
+		}
+		
+		synchronized void release() {
+			holding_ = false;
+			notifyAll();
+		}
+		
+		synchronized void fail(int times) {
+			failures_ = times;
+			notifyAll();
+		}
+		
+		synchronized void awaitInFlight(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + _TIMEOUT_;
+			while (inFlight_ < count && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+			assertEquals(count, inFlight_);
+		}
+		
+		/** @return the number of transmissions attempted so far, at least the given number */
+		synchronized int awaitAttempts(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + _TIMEOUT_;
+			while (attempts_.size() < count && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+			assertTrue(attempts_.size() >= count);
+			return attempts_.size();
+		}
+		
+		synchronized Vector awaitSent(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + _TIMEOUT_;
+			while (sent_.size() < count && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+			assertEquals(count, sent_.size());
+			return new Vector(sent_);
+		}
+		
+		synchronized long attemptAt(int index) {
+			return ((Long) attempts_.get(index)).longValue();
+		}
+		
+		synchronized int getPeakInFlight() {
+			return peakInFlight_;
+		}
+	}
+	
+	private ELVirtualMachine virtual_;
+	private ELActor actor_;
+	private ScriptedBus bus_;
+	private FarReferencesThreadPool pool_;
+	private int port_ = 40000;
+	
+	protected void setUp() throws Exception {
+		virtual_ = new ELVirtualMachine(Evaluator.getNil(), new SharedActorField[] { },
+				_TEST_GROUP_NAME_, ELVirtualMachine._DEFAULT_IP_ADDRESS_, System.out);
+		actor_ = virtual_.createEmptyActor().getFarHost();
+		bus_ = new ScriptedBus(virtual_);
+		pool_ = new FarReferencesThreadPool(virtual_, bus_);
+	}
+	
+	protected void tearDown() throws Exception {
+		bus_.fail(0);
+		bus_.release();
+		virtual_.stopProcessing();
+	}
+	
+	/** @return the id of a new remote VM, which is known to be connected */
+	private VirtualMachineID createRemoteVM() throws Exception {
+		VirtualMachineID id = new VirtualMachineID();
+		virtual_.vmAddressBook_.addEntry(id, new Address(InetAddress.getLoopbackAddress(), port_++, _TEST_GROUP_NAME_));
+		return id;
+	}
+	
+	private NATRemoteFarRef createReference(VirtualMachineID host, String name) {
+		return createReference(host, new ActorID(), name);
+	}
+	
+	private NATRemoteFarRef createReference(VirtualMachineID host, ActorID actor, String name) {
+		return new NATRemoteFarRef(new ATObjectID(host, actor, name), actor_, new ATTypeTag[0], true, pool_);
+	}
+	
+	private void send(NATRemoteFarRef reference, String message) throws InterpreterException {
+		reference.meta_receive(new NATAsyncMessage(AGSymbol.jAlloc(message), NATTable.EMPTY, NATTable.EMPTY));
+	}
+	
+	private void assertTransmitted(String message, Object command) {
+		assertTrue(command + " does not transmit " + message, command.toString().indexOf(message) != -1);
+	}
+	
+	private void awaitIdle() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + _TIMEOUT_;
+		while (pool_.getLaneCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, pool_.getLaneCount());
+	}
+	
+	/**
+	 * Retracts the letters of the given reference on a separate thread,
+	 * which stores the result in the given vector.
+	 */
+	private Thread retractLater(final NATRemoteFarRef reference, final Vector result) {
+		Thread retract = new Thread("retract") {
+			public void run() {
+				try {
+					result.add(pool_.sync_event_retractUnsentMessages(reference));
+				} catch (InterpreterException e) {
+					result.add(e);
+				}
+			}
+		};
+		retract.start();
+		return retract;
+	}
+	
+	/**
+	 * Tests whether the references to the same VM are served in the order in which
+	 * their messages were sent.
+	 */
+	public void testLaneOrder() throws Exception {
+		VirtualMachineID remote = createRemoteVM();
+		NATRemoteFarRef a = createReference(remote, "a");
+		NATRemoteFarRef b = createReference(remote, "b");
+		
+		bus_.hold();
+		send(a, "a1");
+		bus_.awaitInFlight(1);
+		send(b, "b1");
+		send(a, "a2");
+		assertEquals(2, pool_.getLaneDepth(remote));
+		bus_.release();
+		
+		Vector sent = bus_.awaitSent(3);
+		assertTransmitted("a1", sent.get(0));
+		assertTransmitted("b1", sent.get(1));
+		assertTransmitted("a2", sent.get(2));
+		awaitIdle();
+	}
+	
+	/**
+	 * Tests whether a reference has at most one serve event pending, which
+	 * transmits all letters queued in the meantime in a single batch.
+	 */
+	public void testOneServePerReference() throws Exception {
+		VirtualMachineID remote = createRemoteVM();
+		NATRemoteFarRef a = createReference(remote, "a");
+		NATRemoteFarRef b = createReference(remote, "b");
+		
+		bus_.hold();
+		send(a, "a1");
+		bus_.awaitInFlight(1);
+		for (int i = 2; i <= 5; i++) {
+			send(a, "a" + i);
+		}
+		send(b, "b1");
+		send(b, "b2");
+		assertEquals(2, pool_.getLaneDepth(remote));
+		bus_.release();
+		
+		Vector sent = bus_.awaitSent(3);
+		assertTransmitted("a1", sent.get(0));
+		assertTransmitted("4 messages", sent.get(1));
+		assertTransmitted("2 messages", sent.get(2));
+		awaitIdle();
+		assertEquals(3, bus_.awaitSent(3).size());
+	}
+	
+	/**
+	 * Tests whether a retract waits for the batch of the reference in transmission,
+	 * and only retracts the letters that were not taken from the outbox.
+	 */
+	public void testRetractBehindBatchInFlight() throws Exception {
+		VirtualMachineID remote = createRemoteVM();
+		NATRemoteFarRef a = createReference(remote, "a");
+		
+		bus_.hold();
+		send(a, "a1");
+		bus_.awaitInFlight(1);
+		send(a, "a2");
+		send(a, "a3");
+		
+		Vector result = new Vector();
+		Thread retract = retractLater(a, result);
+		retract.join(200);
+		assertTrue("retract did not wait for the batch in flight", result.isEmpty());
+		
+		bus_.release();
+		retract.join(_TIMEOUT_);
+		assertEquals(1, result.size());
+		assertEquals(2, ((ATTable) result.get(0)).base_length().asNativeNumber().javaValue);
+		
+		awaitIdle();
+		Vector sent = bus_.awaitSent(1);
+		assertTransmitted("a1", sent.get(0));
+	}
+	
+	/**
+	 * Tests whether a retract does not wait for the transmission of another reference
+	 * to the same VM, while that transmission is retried.
+	 */
+	public void testRetractBehindOtherReference() throws Exception {
+		VirtualMachineID remote = createRemoteVM();
+		NATRemoteFarRef a = createReference(remote, "a");
+		NATRemoteFarRef b = createReference(remote, "b");
+		
+		bus_.fail(Integer.MAX_VALUE);
+		send(b, "b1");
+		bus_.awaitAttempts(1);
+		send(a, "a1");
+		
+		Vector result = new Vector();
+		Thread retract = retractLater(a, result);
+		retract.join(_TIMEOUT_);
+		assertEquals(1, result.size());
+		assertEquals(1, ((ATTable) result.get(0)).base_length().asNativeNumber().javaValue);
+		
+		bus_.fail(0);
+		Vector sent = bus_.awaitSent(1);
+		assertTransmitted("b1", sent.get(0));
+		awaitIdle();
+	}
+	
+	/**
+	 * Tests whether a failed transmission is retried after a delay that doubles with every
+	 * consecutive failure, while the lane holds back the other events for the same VM.
+	 */
+	public void testRetryBackoff() throws Exception {
+		VirtualMachineID remote = createRemoteVM();
+		NATRemoteFarRef a = createReference(remote, "a");
+		NATRemoteFarRef b = createReference(remote, "b");
+		
+		bus_.fail(2);
+		send(a, "a1");
+		bus_.awaitAttempts(1);
+		send(b, "b1");
+		
+		Vector sent = bus_.awaitSent(2);
+		assertTransmitted("a1", sent.get(0));
+		assertTransmitted("b1", sent.get(1));
+		// the timer wheel has a resolution of one millisecond
+		assertTrue(bus_.attemptAt(1) - bus_.attemptAt(0) >= FarReferencesThreadPool._MIN_RETRY_DELAY_ - 1);
+		assertTrue(bus_.attemptAt(2) - bus_.attemptAt(1) >= 2 * FarReferencesThreadPool._MIN_RETRY_DELAY_ - 1);
+		awaitIdle();
+		
+		// the delay is reset by a successful transmission, otherwise the next one would be 4 times as long
+		bus_.fail(1);
+		send(a, "a2");
+		sent = bus_.awaitSent(3);
+		assertTransmitted("a2", sent.get(2));
+		assertTrue(bus_.attemptAt(5) - bus_.attemptAt(4) < 4 * FarReferencesThreadPool._MIN_RETRY_DELAY_);
+		awaitIdle();
+	}
+	
+	/**
+	 * Tests whether no more than AT_SENDER_THREADS transmissions take place at once,
+	 * even if messages are sent to more VMs.
+	 */
+	public void testSenderThreadBound() throws Exception {
+		int references = FarReferencesThreadPool._SENDER_THREADS_ + 2;
+		
+		bus_.hold();
+		for (int i = 0; i < references; i++) {
+			send(createReference(createRemoteVM(), "r" + i), "m" + i);
+		}
+		bus_.awaitInFlight(FarReferencesThreadPool._SENDER_THREADS_);
+		Thread.sleep(100);
+		assertEquals(FarReferencesThreadPool._SENDER_THREADS_, bus_.getPeakInFlight());
+		assertEquals(references, pool_.getLaneCount());
+		assertTrue(pool_.getSenderThreadCount() <= FarReferencesThreadPool._SENDER_THREADS_);
+		bus_.release();
+		
+		bus_.awaitSent(references);
+		awaitIdle();
+		assertEquals(FarReferencesThreadPool._SENDER_THREADS_, bus_.getPeakInFlight());
+	}
+	
+	/**
+	 * Tests whether actors with the same id on different VMs have separate credits,
+	 * which are only returned by the VM hosting the actor.
+	 */
+	public void testCreditsPerVM() throws Exception {
+		if (FarReferencesThreadPool._CREDIT_WINDOW_ == 0) {
+			return; // credit-based flow control is disabled
+		}
+		ActorID id = new ActorID(42);
+		VirtualMachineID first = createRemoteVM();
+		VirtualMachineID second = createRemoteVM();
+		NATRemoteFarRef a = createReference(first, id, "a");
+		NATRemoteFarRef b = createReference(second, id, "b");
+		
+		// exhaust the credits of the actor on the first VM
+		for (int i = 0; i < FarReferencesThreadPool._CREDIT_WINDOW_; i++) {
+			send(a, "a" + i);
+		}
+		awaitIdle();
+		int transmissions = bus_.awaitAttempts(1);
+		send(a, "late");
+		
+		// the actor with the same id on the second VM is not affected
+		send(b, "b1");
+		awaitIdle();
+		Vector sent = bus_.awaitSent(transmissions + 1);
+		assertTransmitted("b1", sent.lastElement());
+		
+		// credits returned by the second VM do not apply to the first one
+		pool_.grantCredit(second, id, 1);
+		pool_.resetCredits(second);
+		awaitIdle();
+		assertEquals(transmissions + 1, bus_.awaitSent(transmissions + 1).size());
+		
+		pool_.grantCredit(first, id, 1);
+		sent = bus_.awaitSent(transmissions + 2);
+		assertTransmitted("late", sent.lastElement());
+		awaitIdle();
+	}
+}
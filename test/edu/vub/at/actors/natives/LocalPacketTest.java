@@ -0,0 +1,155 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import java.util.List;
+import java.util.UUID;
+
+import edu.vub.at.AmbientTalkTest;
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.exceptions.XIllegalOperation;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.ATTypeTag;
+import edu.vub.at.objects.coercion.NativeTypeTags;
+import edu.vub.at.objects.natives.NATNumber;
+import edu.vub.at.objects.natives.NATObject;
+import edu.vub.at.objects.natives.NATTable;
+import edu.vub.at.objects.natives.NATText;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+import edu.vub.at.objects.symbiosis.JavaObject;
+
+/**
+ * Tests whether copying objects into a {@link LocalPacket} has the same
+ * effect as serializing them into a {@link Packet}.
+ */
+public class LocalPacketTest extends AmbientTalkTest {
+	
+	private static final AGSymbol _X_ = AGSymbol.jAlloc("x");
+	private static final AGSymbol _T_ = AGSymbol.jAlloc("t");
+	private static final AGSymbol _SELF_ = AGSymbol.jAlloc("me");
+	
+	private ATObject copy(ATObject object) throws InterpreterException {
+		return new LocalPacket("test", object).unpack();
+	}
+	
+	/**
+	 * Isolates are copied, such that changes to the original after
+	 * it was packed are not visible in the copy.
+	 */
+	public void testIsolateCopy() throws InterpreterException {
+		ATObject isolate = evalAndReturn("isolate: { def x := 1; def t := [1, 2]; def inc() { x := x + 1 } }");
+		LocalPacket packet = new LocalPacket("isolate", isolate);
+		isolate.impl_invokeAccessor(isolate, AGSymbol.jAlloc("inc"), NATTable.EMPTY);
+		isolate.impl_invokeAccessor(isolate, _T_, NATTable.EMPTY).asNativeTable().elements_[0] = NATNumber.atValue(5);
+		
+		ATObject copy = packet.unpack();
+		assertNotSame(isolate, copy);
+		assertTrue(copy.meta_isTaggedAs(NativeTypeTags._ISOLATE_).asNativeBoolean().javaValue);
+		assertEquals(1, copy.impl_invokeAccessor(copy, _X_, NATTable.EMPTY).asNativeNumber().javaValue);
+		assertEquals("[1, 2]", copy.impl_invokeAccessor(copy, _T_, NATTable.EMPTY).toString());
+		copy.impl_invokeAccessor(copy, AGSymbol.jAlloc("inc"), NATTable.EMPTY);
+		assertEquals(2, copy.impl_invokeAccessor(copy, _X_, NATTable.EMPTY).asNativeNumber().javaValue);
+		assertEquals(2, isolate.impl_invokeAccessor(isolate, _X_, NATTable.EMPTY).asNativeNumber().javaValue);
+	}
+	
+	/**
+	 * Cycles and shared references within the graph are preserved.
+	 */
+	public void testCycles() throws InterpreterException {
+		ATObject isolate = evalAndReturn("def i := isolate: { def me := nil }; i.me := i; i");
+		ATTable copy = copy(NATTable.of(isolate, isolate)).asNativeTable();
+		ATObject first = copy.base_at(NATNumber.ONE);
+		assertNotSame(isolate, first);
+		assertSame(first, copy.base_at(NATNumber.atValue(2)));
+		assertSame(first, first.impl_invokeAccessor(first, _SELF_, NATTable.EMPTY));
+	}
+	
+	/**
+	 * Immutable values are shared, mutable tables are copied and nil is resolved.
+	 */
+	public void testSharedValues() throws InterpreterException {
+		NATText text = NATText.atValue("text");
+		ATTable table = NATTable.of(_X_, text, NATNumber.atValue(Integer.MAX_VALUE));
+		ATTable copy = copy(NATTable.of(table, Evaluator.getNil())).asNativeTable();
+		ATTable copiedTable = copy.base_at(NATNumber.ONE).asNativeTable();
+		assertNotSame(table, copiedTable);
+		assertSame(_X_, copiedTable.base_at(NATNumber.ONE));
+		assertSame(text, copiedTable.base_at(NATNumber.atValue(2)));
+		assertEquals(Integer.MAX_VALUE, copiedTable.base_at(NATNumber.atValue(3)).asNativeNumber().javaValue);
+		assertSame(Evaluator.getNil(), copy.base_at(NATNumber.atValue(2)));
+	}
+	
+	/**
+	 * By-reference objects are passed as far references, which resolve
+	 * to the object itself in its own actor, as with a serialized packet.
+	 */
+	public void testByReference() throws InterpreterException {
+		NATObject object = new NATObject();
+		assertSame(object, copy(object));
+		assertSame(object, new Packet("test", object).unpack());
+	}
+	
+	/**
+	 * Coercers cannot be copied field by field and are serialized instead.
+	 */
+	public void testFallback() throws InterpreterException {
+		NATObject isolate = new NATObject(new ATTypeTag[] { NativeTypeTags._ISOLATE_, NativeTypeTags._TABLE_ });
+		ATTable coercer = isolate.asTable();
+		ATObject obj = copy(NATTable.of(coercer, _X_)).asNativeTable().base_at(NATNumber.ONE);
+		assertTrue(obj instanceof ATTable);
+		assertNotSame(coercer, obj);
+	}
+	
+	/**
+	 * Java objects of classes that cannot be made accessible, such as those of the
+	 * JDK, are serialized instead.
+	 */
+	public void testInaccessibleJavaObjects() throws InterpreterException {
+		UUID id = UUID.randomUUID();
+		Object copy = ((JavaObject) copy(JavaObject.wrapperFor(id))).getWrappedObject();
+		assertNotSame(id, copy);
+		assertEquals(id, copy);
+		
+		List list = List.of(new Integer(1), new Integer(2));
+		copy = ((JavaObject) copy(JavaObject.wrapperFor(list))).getWrappedObject();
+		assertEquals(list, copy);
+	}
+	
+	public void testUnpackOnce() throws InterpreterException {
+		LocalPacket packet = new LocalPacket("test", NATTable.of(_X_));
+		packet.unpack();
+		try {
+			packet.unpack();
+			fail("expected an illegal operation");
+		} catch (XIllegalOperation e) {
+			// expected
+		}
+	}
+	
+}
@@ -0,0 +1,125 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import edu.vub.at.AmbientTalkTest;
+import edu.vub.at.actors.eventloops.BlockingFuture;
+import edu.vub.at.actors.eventloops.Callable;
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.symbiosis.Symbiosis;
+
+/**
+ * Tests the native implementation of futures: message buffering, resolution listeners,
+ * resolution by other actors and Java futures waiting on a native future.
+ */
+public class NativeFutureTest extends AmbientTalkTest {
+	
+	private static boolean initialized_ = false;
+	
+	private BlockingFuture javaFuture_;
+	
+	/**
+	 * Waits until the given expression, evaluated in the test actor, yields the expected text.
+	 */
+	private void awaitPrinted(String expected, String expression) throws Exception {
+		for (int i = 0; i < 100 && !expected.equals(evalInActor(expression).meta_print().javaValue); i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(expected, evalInActor(expression).meta_print().javaValue);
+	}
+	
+	public void setUp() throws Exception {
+		if (initialized_) {
+			evalInActor("log := []");
+			return;
+		}
+		initialized_ = true;
+		evalInActor("deftype MetaMessage;" +
+				    "def log := [];" +
+				    "def target := object: { def m(i) { log := log + [i] } };" +
+				    "def makeListener() { object: { def outcome := nil; def notifyResolved(v) { outcome := v }; def notifyRuined(e) { outcome := `ruined } } }");
+	}
+	
+	/**
+	 * Tests whether messages sent to an unresolved future are forwarded in order to its value.
+	 */
+	public void testBufferedMessages() throws Exception {
+		ATObject future = evalInActor("def [f1, r1] := reflectOnActor().createFuture(); f1<-m(1); f1<-m(2); f1");
+		assertTrue(future instanceof NATFuture);
+		assertTrue(Symbiosis.isAmbientTalkFuture(future));
+		evalInActor("r1.resolve(target); f1<-m(3)");
+		awaitPrinted("[1, 2, 3]", "log");
+	}
+	
+	/**
+	 * Tests whether listeners registered before and after resolution are notified.
+	 */
+	public void testResolutionListeners() throws Exception {
+		evalInActor("def [f2, r2] := reflectOnActor().createFuture(); def l1 := makeListener(); def l2 := makeListener();" +
+				    "f2<-addResolutionListener(l1)@MetaMessage; r2.resolve(5); f2<-addResolutionListener(l2)@MetaMessage");
+		awaitPrinted("5", "l1.outcome");
+		awaitPrinted("5", "l2.outcome");
+		
+		evalInActor("def [g, s] := reflectOnActor().createFuture(); def l3 := makeListener();" +
+			        "g<-addResolutionListener(l3)@MetaMessage; g<-m(1); s.ruin(`boom); s.resolve(6)");
+		awaitPrinted("ruined", "l3.outcome");
+		// messages sent to a ruined future are discarded
+		assertEquals("[]", evalInActor("log").meta_print().javaValue);
+	}
+	
+	/**
+	 * Tests whether a future is resolved by another actor through a far reference to its resolver,
+	 * and whether a future resolved with another future takes on its outcome.
+	 */
+	public void testRemoteResolution() throws Exception {
+		evalInActor("def [f3, r3] := reflectOnActor().createFuture(); def [g3, s3] := reflectOnActor().createFuture();" +
+				    "def l := makeListener(); f3<-addResolutionListener(l)@MetaMessage; r3.resolve(g3); f3<-m(8);" +
+				    "def resolver := actor: { def resolve(res, v) { res<-resolve(v) } };" +
+				    "resolver<-resolve(s3, target)");
+		awaitPrinted("[8]", "log");
+		assertTrue(evalInActor("l.outcome == target").asNativeBoolean().javaValue);
+	}
+	
+	/**
+	 * Tests whether a Java thread can wait for the outcome of a native future.
+	 */
+	public void testBlockingFuture() throws Exception {
+		final NATFuture future = (NATFuture) evalInActor("def [f4, r4] := reflectOnActor().createFuture(); f4");
+		ELActor.currentActor().sync_event_performTest(new Callable() {
+			public Object call(Object actor) throws Exception {
+				javaFuture_ = future.asBlockingFuture(String.class);
+				return Evaluator.getNil();
+			}
+		});
+		assertFalse(javaFuture_.isDetermined());
+		evalInActor("r4.resolve(\"done\")");
+		assertEquals("done", javaFuture_.get());
+		assertTrue(future.isResolved());
+	}
+	
+}
@@ -0,0 +1,147 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import edu.vub.at.AmbientTalkTest;
+import edu.vub.at.actors.natives.NATActorMirror.NATLetter;
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.coercion.NativeTypeTags;
+import edu.vub.at.objects.natives.NATMethodInvocation;
+import edu.vub.at.objects.natives.NATNumber;
+import edu.vub.at.objects.natives.NATTable;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+
+import java.util.LinkedList;
+
+/**
+ * Tests whether native messages and letters, which share the primitive methods
+ * of their class, still behave as self-sufficient AmbientTalk objects.
+ */
+public class NativeMessageTest extends AmbientTalkTest {
+	
+	private static final AGSymbol _FOO_ = AGSymbol.jAlloc("foo");
+	private static final AGSymbol _M_ = AGSymbol.jAlloc("m");
+	private static final AGSymbol _CANCEL_ = AGSymbol.jAlloc("cancel");
+	
+	private boolean isTrue(ATObject bool) throws InterpreterException {
+		return bool.asNativeBoolean().javaValue;
+	}
+	
+	private NATAsyncMessage message(int arg) throws InterpreterException {
+		return new NATAsyncMessage(_FOO_, NATTable.of(NATNumber.atValue(arg)), NATTable.EMPTY);
+	}
+	
+	/**
+	 * Distinct messages are not clones of one another, but their clones are.
+	 */
+	public void testCloneRelation() throws InterpreterException {
+		NATAsyncMessage m1 = message(1);
+		NATAsyncMessage m2 = message(2);
+		assertTrue(isTrue(m1.meta_isCloneOf(m1)));
+		assertFalse(isTrue(m1.meta_isCloneOf(m2)));
+		assertFalse(isTrue(m2.meta_isCloneOf(m1)));
+		
+		ATObject c1 = m1.meta_clone();
+		assertTrue(c1 instanceof NATAsyncMessage);
+		assertTrue(isTrue(c1.meta_isCloneOf(m1)));
+		assertTrue(isTrue(m1.meta_isCloneOf(c1)));
+		assertFalse(isTrue(c1.meta_isCloneOf(m2)));
+		assertFalse(isTrue(m2.meta_isCloneOf(c1)));
+	}
+	
+	/**
+	 * Adding a method to one message does not affect any other message.
+	 */
+	public void testExtension() throws InterpreterException {
+		NATAsyncMessage m1 = message(1);
+		NATAsyncMessage m2 = message(2);
+		ATObject method = evalAndReturn("(reflect: object: { def m() { 42 } }).grabMethod(`m)");
+		m1.meta_addMethod(method.asMethod());
+		assertTrue(isTrue(m1.meta_respondsTo(_M_)));
+		assertFalse(isTrue(m2.meta_respondsTo(_M_)));
+		assertFalse(isTrue(message(3).meta_respondsTo(_M_)));
+		assertEquals(42, m1.impl_invokeAccessor(m1, _M_, NATTable.EMPTY).asNativeNumber().javaValue);
+		assertEquals(2, m2.base_arguments().base_at(NATNumber.ONE).asNativeNumber().javaValue);
+	}
+	
+	/**
+	 * Removing a primitive method from a message, or from a clone of a message,
+	 * copies the methods shared by all messages rather than modifying them.
+	 */
+	public void testRemovePrimitiveMethod() throws InterpreterException {
+		AGSymbol sendTo = AGSymbol.jAlloc("sendTo");
+		NATAsyncMessage m1 = message(1);
+		NATAsyncMessage m2 = message(2);
+		m1.meta_removeSlot(sendTo);
+		assertFalse(isTrue(m1.meta_respondsTo(sendTo)));
+		assertTrue(isTrue(m2.meta_respondsTo(sendTo)));
+		
+		ATObject c2 = m2.meta_clone();
+		c2.meta_removeSlot(sendTo);
+		assertFalse(isTrue(c2.meta_respondsTo(sendTo)));
+		assertTrue(isTrue(m2.meta_respondsTo(sendTo)));
+		assertTrue(isTrue(message(3).meta_respondsTo(sendTo)));
+	}
+	
+	/**
+	 * A serialized message is restored with the primitive methods of its class.
+	 */
+	public void testSerialization() throws InterpreterException {
+		NATAsyncMessage m = message(1);
+		ATObject copy = new Packet("message", m).unpack();
+		assertTrue(copy instanceof NATAsyncMessage);
+		assertTrue(copy.meta_isTaggedAs(NativeTypeTags._ISOLATE_).asNativeBoolean().javaValue);
+		assertTrue(isTrue(copy.meta_respondsTo(AGSymbol.jAlloc("process"))));
+		assertTrue(isTrue(copy.meta_respondsTo(AGSymbol.jAlloc("sendTo"))));
+		assertFalse(isTrue(copy.meta_isCloneOf(m)));
+		assertEquals(_FOO_, copy.asAsyncMessage().base_selector());
+	}
+	
+	/**
+	 * Cancelling a letter, or a clone of it, removes the original letter from its mailbox.
+	 */
+	public void testLetterCancel() throws InterpreterException {
+		LinkedList mailbox = new LinkedList();
+		NATLetter l1 = new NATLetter(mailbox, Evaluator.getNil(), message(1));
+		NATLetter l2 = new NATLetter(mailbox, Evaluator.getNil(), message(2));
+		mailbox.add(l1);
+		mailbox.add(l2);
+		
+		ATObject clone = l2.meta_clone();
+		assertFalse(isTrue(clone.meta_isCloneOf(l1)));
+		clone.meta_invoke(clone, new NATMethodInvocation(_CANCEL_, NATTable.EMPTY, NATTable.EMPTY));
+		assertEquals(1, mailbox.size());
+		assertSame(l1, mailbox.getFirst());
+		
+		l1.base_cancel();
+		assertTrue(mailbox.isEmpty());
+		assertEquals(2, l2.base_message().base_arguments().base_at(NATNumber.ONE).asNativeNumber().javaValue);
+	}
+
+}
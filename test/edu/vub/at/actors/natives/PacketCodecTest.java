@@ -0,0 +1,140 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import edu.vub.at.AmbientTalkTest;
+import edu.vub.at.eval.Evaluator;
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.exceptions.XIOProblem;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.coercion.NativeTypeTags;
+import edu.vub.at.objects.natives.NATBoolean;
+import edu.vub.at.objects.natives.NATNumber;
+import edu.vub.at.objects.natives.NATTable;
+import edu.vub.at.objects.natives.NATText;
+import edu.vub.at.objects.natives.NATTypeTag;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * Tests the encoding of packet payloads by the {@link PacketCodec}.
+ */
+public class PacketCodecTest extends AmbientTalkTest {
+	
+	private static final AGSymbol _X_ = AGSymbol.jAlloc("x");
+	
+	private ATObject decode(byte[] payload) throws InterpreterException {
+		return new Packet("test", payload).unpack();
+	}
+	
+	private byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream stream = new ObjectOutputStream(out);
+		stream.writeObject(object);
+		stream.close();
+		return out.toByteArray();
+	}
+	
+	private ATObject message() throws InterpreterException {
+		ATObject isolate = evalAndReturn("isolate: { def x := 1; def t := [1, 2.5, `foo]; def inc(n) { x := x + n } }");
+		return new NATAsyncMessage(AGSymbol.jAlloc("update"), NATTable.of(isolate, NATText.atValue("text")), NATTable.EMPTY);
+	}
+	
+	/**
+	 * Isolates, including their methods, survive a round trip through the codec.
+	 */
+	public void testRoundTrip() throws Exception {
+		ATObject isolate = evalAndReturn("isolate: { def x := 1; def inc(n) { x := x + n } }");
+		byte[] payload = PacketCodec.serialize(isolate);
+		assertTrue(PacketCodec.isEncoded(payload));
+		
+		ATObject copy = decode(payload);
+		assertNotSame(isolate, copy);
+		copy.impl_invokeAccessor(copy, AGSymbol.jAlloc("inc"), NATTable.of(NATNumber.atValue(2)));
+		assertEquals(3, copy.impl_invokeAccessor(copy, _X_, NATTable.EMPTY).asNativeNumber().javaValue);
+		assertEquals(1, isolate.impl_invokeAccessor(isolate, _X_, NATTable.EMPTY).asNativeNumber().javaValue);
+	}
+	
+	/**
+	 * Singletons are written as tokens that resolve to the singletons of the receiver.
+	 */
+	public void testWellKnownObjects() throws Exception {
+		ATTable table = NATTable.atValue(new ATObject[] {
+				Evaluator.getNil(), NATBoolean._TRUE_, NATBoolean._FALSE_, NATTable.EMPTY,
+				NATTypeTag.OBJRootType._INSTANCE_, NativeTypeTags._ISOLATE_, NativeTypeTags._TEXT_ });
+		ATTable copy = decode(PacketCodec.serialize(table)).asNativeTable();
+		ATObject[] elements = copy.asNativeTable().elements_;
+		assertSame(Evaluator.getNil(), elements[0]);
+		assertSame(NATBoolean._TRUE_, elements[1]);
+		assertSame(NATBoolean._FALSE_, elements[2]);
+		assertSame(NATTable.EMPTY, elements[3]);
+		assertSame(NATTypeTag.OBJRootType._INSTANCE_, elements[4]);
+		assertSame(NativeTypeTags._ISOLATE_, elements[5]);
+		assertSame(NativeTypeTags._TEXT_, elements[6]);
+	}
+	
+	/**
+	 * Encoded messages are considerably smaller than their plain serialized form.
+	 */
+	public void testCompactness() throws Exception {
+		ATObject message = message();
+		int plain = serialize(message).length;
+		int encoded = PacketCodec.serialize(message).length;
+		assertTrue("encoded " + encoded + " bytes, serialized " + plain + " bytes", encoded * 2 < plain);
+	}
+	
+	/**
+	 * Payloads of VMs that do not use the codec can still be decoded.
+	 */
+	public void testPlainPayload() throws Exception {
+		ATObject isolate = evalAndReturn("isolate: { def x := 1 }");
+		byte[] payload = serialize(NATTable.of(isolate, NATText.atValue("text")));
+		assertFalse(PacketCodec.isEncoded(payload));
+		ATObject[] copy = decode(payload).asNativeTable().elements_;
+		assertEquals(1, copy[0].impl_invokeAccessor(copy[0], _X_, NATTable.EMPTY).asNativeNumber().javaValue);
+		assertEquals("text", copy[1].asNativeText().javaValue);
+	}
+	
+	/**
+	 * A payload encoded with different class tables is rejected.
+	 */
+	public void testIncompatibleTables() throws Exception {
+		byte[] payload = PacketCodec.serialize(NATNumber.atValue(42));
+		payload[3] ^= 0x01; // corrupt the fingerprint
+		try {
+			decode(payload);
+			fail("expected the packet to be rejected");
+		} catch (XIOProblem e) {
+			// expected
+		}
+	}
+	
+}
@@ -0,0 +1,171 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.natives;
+
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.parser.NATParser;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests whether actors initialised from a snapshot of the global scope of
+ * another actor obtain a private copy of the objects defined by the init code.
+ */
+public class ScopeSnapshotTest extends TestCase {
+
+	public static void main(String[] args) {
+		junit.swingui.TestRunner.run(ScopeSnapshotTest.class);
+	}
+	
+	private static final String _TEST_GROUP_NAME_ = "AmbientTalkTest";
+	
+	private static final String _INIT_CODE_ =
+		"def counter := object: { def n := 0; def inc() { n := n + 1 } };\n" +
+		"def getCounter() { counter };\n" +
+		"def makeAdder(x) { { |y| x + y } };\n" +
+		"def add5 := makeAdder(5);\n" +
+		"def history := [1, 2, 3];\n" +
+		"def cyclic := object: { def next := nil }; cyclic.next := cyclic;\n" +
+		"def trait := object: { def greet() { \"hi\" } };\n" +
+		"def host := object: { import trait };\n";
+	
+	private ELVirtualMachine virtual_;
+	
+	protected void tearDown() throws Exception {
+		if (virtual_ != null) {
+			virtual_.event_goOffline();
+			virtual_.stopProcessing();
+		}
+	}
+	
+	private ELVirtualMachine setUpVirtualMachine(String initCode) throws InterpreterException {
+		virtual_ = new ELVirtualMachine(NATParser.parse("ScopeSnapshotTest", initCode), new SharedActorField[] { },
+				_TEST_GROUP_NAME_, ELVirtualMachine._DEFAULT_IP_ADDRESS_, System.out);
+		return virtual_;
+	}
+	
+	private ATObject evalIn(ELActor actor, String code) throws InterpreterException {
+		return actor.sync_event_eval(NATParser.parse("ScopeSnapshotTest", code));
+	}
+	
+	private long evalNumberIn(ELActor actor, String code) throws InterpreterException {
+		return evalIn(actor, code).asNativeNumber().javaValue;
+	}
+	
+	/**
+	 * Tests whether the first actor takes a snapshot and whether actors that copy it
+	 * do not observe each other's modifications.
+	 */
+	public void testIsolatedCopies() throws InterpreterException {
+		ELVirtualMachine vm = setUpVirtualMachine(_INIT_CODE_);
+		ELActor first = vm.createEmptyActor().getFarHost();
+		assertEquals(1, evalNumberIn(first, "counter.inc()"));
+		assertNotNull(vm.getScopeSnapshot());
+		
+		ELActor second = vm.createEmptyActor().getFarHost();
+		ELActor third = vm.createEmptyActor().getFarHost();
+		assertEquals(0, evalNumberIn(second, "counter.n"));
+		assertEquals(2, evalNumberIn(second, "counter.inc(); counter.inc()"));
+		assertEquals(10, evalNumberIn(second, "history[1] := 10; history[1]"));
+		assertEquals(1, evalNumberIn(first, "counter.n"));
+		assertEquals(0, evalNumberIn(third, "counter.n"));
+		assertEquals(1, evalNumberIn(third, "history[1]"));
+	}
+	
+	/**
+	 * Tests whether copied closures, imports and cycles refer to the copies
+	 * in the global scope of the copying actor.
+	 */
+	public void testCopiedGraph() throws InterpreterException {
+		ELVirtualMachine vm = setUpVirtualMachine(_INIT_CODE_);
+		evalIn(vm.createEmptyActor().getFarHost(), "nil");
+		assertNotNull(vm.getScopeSnapshot());
+		ELActor copy = vm.createEmptyActor().getFarHost();
+		assertEquals(6, evalNumberIn(copy, "add5(1)"));
+		assertEquals("hi", evalIn(copy, "host.greet()").asNativeText().javaValue);
+		assertTrue(evalIn(copy, "(cyclic.next == cyclic).and: { getCounter() == counter }").asNativeBoolean().javaValue);
+		// the copies may still be extended with fields and methods
+		assertEquals(2, evalNumberIn(copy, "def counter.dec() { self.n := self.n - 1 }; counter.inc(); counter.inc(); counter.inc(); counter.dec()"));
+	}
+	
+	/**
+	 * Tests whether actors evaluate the init code themselves if the global
+	 * scope refers to objects that cannot be copied.
+	 */
+	public void testUnsupportedObjects() throws InterpreterException {
+		ELVirtualMachine vm = setUpVirtualMachine("def system := jlobby.java.lang.System; def n := 42");
+		evalIn(vm.createEmptyActor().getFarHost(), "nil");
+		assertNull(vm.getScopeSnapshot());
+		assertEquals(42, evalNumberIn(vm.createEmptyActor().getFarHost(), "n"));
+	}
+	
+	/**
+	 * Tests whether actors evaluate the init code themselves if it affects the
+	 * actor outside of its global scope, as copying a snapshot would not repeat the effect.
+	 */
+	public void testExternalEffects() throws Exception {
+		String[] effects = new String[] {
+			"jlobby.java.lang.System.getProperty(\"user.dir\")",
+			"when: 100000 elapsed: { nil }",
+			"deftype Service; export: (object: { nil }) as: Service",
+		};
+		for (int i = 0; i < effects.length; i++) {
+			ELVirtualMachine vm = setUpVirtualMachine("def n := 42; " + effects[i]);
+			evalIn(vm.createEmptyActor().getFarHost(), "nil");
+			assertNull(effects[i], vm.getScopeSnapshot());
+			assertEquals(42, evalNumberIn(vm.createEmptyActor().getFarHost(), "n"));
+			tearDown();
+			virtual_ = null;
+		}
+	}
+	
+	/**
+	 * Tests whether methods annotated with custom type tags refer to the copies of
+	 * their annotations, which are objects of the snapshotting actor.
+	 */
+	public void testCustomAnnotations() throws InterpreterException {
+		ELVirtualMachine vm = setUpVirtualMachine(
+				"deftype Probe;\n" +
+				"def TypeTag := (tagsOf: Probe)[1];\n" +
+				"def Counted := object: {\n" +
+				"  def count := 0;\n" +
+				"  def typeName := `Counted;\n" +
+				"  def superTypes := [];\n" +
+				"  def isSubtypeOf(t) { false };\n" +
+				"  def annotateMessage(m) { m };\n" +
+				"  def annotateMethod(m) { count := count + 1; m }\n" +
+				"} taggedAs: [TypeTag];\n" +
+				"def host := object: { def m() @Counted { 1 } };\n");
+		evalIn(vm.createEmptyActor().getFarHost(), "nil");
+		assertNotNull(vm.getScopeSnapshot());
+		ELActor copy = vm.createEmptyActor().getFarHost();
+		assertEquals(1, evalNumberIn(copy, "host.m()"));
+		assertTrue(evalIn(copy, "(reflect: host).grabMethod(`m).annotations[1] == Counted").asNativeBoolean().javaValue);
+	}
+	
+}
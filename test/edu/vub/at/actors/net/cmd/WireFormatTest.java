@@ -0,0 +1,155 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.net.cmd;
+
+import edu.vub.at.actors.id.ATObjectID;
+import edu.vub.at.actors.id.ActorID;
+import edu.vub.at.actors.id.VirtualMachineID;
+import edu.vub.at.actors.natives.Packet;
+import edu.vub.at.objects.natives.NATNumber;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the encoding and decoding of command objects in the binary wire format.
+ */
+public class WireFormatTest extends TestCase {
+
+	public static void main(String[] args) {
+		junit.swingui.TestRunner.run(WireFormatTest.class);
+	}
+	
+	private final ATObjectID objectId_ = new ATObjectID(new VirtualMachineID(), new ActorID(), "test object");
+	
+	/**
+	 * Decoding and re-encoding a command with a binary representation should
+	 * reproduce the same bytes.
+	 */
+	private void assertRoundTrip(VMCommand cmd) throws IOException {
+		byte[] encoded = WireFormat.encode(cmd);
+		VMCommand decoded = WireFormat.decode(encoded);
+		assertEquals(cmd.getClass(), decoded.getClass());
+		assertEquals(cmd.toString(), decoded.toString());
+		if (cmd.getOpcode() != WireFormat._OP_SERIALIZED_) {
+			assertTrue(Arrays.equals(encoded, WireFormat.encode(decoded)));
+		}
+	}
+	
+	public void testRoundTrip() throws Exception {
+		Packet packet = new Packet("42", NATNumber.atValue(42));
+		assertRoundTrip(new CMDTransmitATMessage(new ActorID(), packet, 16));
+		assertRoundTrip(new CMDGrantCredit(new ActorID(), 8));
+		assertRoundTrip(new CMDHandshake(new VirtualMachineID()));
+		assertRoundTrip(new CMDObjectTakenOffline(objectId_));
+		assertRoundTrip(new CMDObjectDisconnected(objectId_));
+		assertRoundTrip(new CMDObjectReconnected(objectId_));
+		assertRoundTrip(new CMDObjectReconnected(new ATObjectID(new VirtualMachineID(), new ActorID(), null)));
+		assertRoundTrip(new CMDProvideService(packet, new Packet("43", NATNumber.atValue(43))));
+		assertRoundTrip(new CMDRequireService(packet));
+		assertRoundTrip(new CMDTransmitATMessages(new ActorID(), new Packet[] { packet, new Packet("43", NATNumber.atValue(43)) }, 16));
+		
+		// commands without an opcode are embedded in serialized form
+		HashSet topics = new HashSet();
+		topics.add("topic");
+		assertRoundTrip(new CMDInitRequireServices(topics));
+	}
+	
+	/**
+	 * The payload of an AmbientTalk message is transmitted as is, and only
+	 * deserialized when its packet is unpacked.
+	 */
+	public void testMessagePayload() throws Exception {
+		Packet packet = new Packet("42", NATNumber.atValue(42));
+		CMDTransmitATMessage cmd = new CMDTransmitATMessage(new ActorID(), packet, 16);
+		byte[] encoded = WireFormat.encode(cmd);
+		
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(serialized);
+		out.writeObject(cmd);
+		out.close();
+		assertTrue(encoded.length < serialized.size());
+		
+		assertTrue(contains(encoded, packet.getPayload()));
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		WireFormat.writePacket(new DataOutputStream(bytes), packet);
+		Packet decoded = WireFormat.readPacket(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(packet.toString(), decoded.toString());
+		assertEquals(42, decoded.unpack().asNativeNumber().javaValue);
+	}
+	
+	private static boolean contains(byte[] bytes, byte[] part) {
+		for (int i = 0; i + part.length <= bytes.length; i++) {
+			int j = 0;
+			while (j < part.length && bytes[i + j] == part[j]) {
+				j++;
+			}
+			if (j == part.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void testUnsupportedVersion() throws IOException {
+		byte[] encoded = WireFormat.encode(new CMDGrantCredit(new ActorID(), 8));
+		encoded[0] = (byte) (WireFormat._VERSION_ + 1);
+		try {
+			WireFormat.decode(encoded);
+			fail("expected a command in an unknown version to be rejected");
+		} catch (IOException e) {
+			// expected exception: success
+		}
+	}
+	
+	public void testCorruptLength() throws IOException {
+		byte[] encoded = WireFormat.encode(new CMDRequireService(new Packet("42", new byte[] { 1, 2, 3 })));
+		byte[] truncated = new byte[encoded.length - 1];
+		System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+		try {
+			WireFormat.decode(truncated);
+			fail("expected a truncated command to be rejected");
+		} catch (IOException e) {
+			// expected exception: success
+		}
+	}
+	
+	public void testNegotiate() {
+		assertEquals(WireFormat._SERIALIZED_, WireFormat.negotiate(WireFormat._SERIALIZED_));
+		assertEquals(WireFormat._ANNOUNCED_VERSION_, WireFormat.negotiate(WireFormat._VERSION_ + 1));
+	}
+	
+}
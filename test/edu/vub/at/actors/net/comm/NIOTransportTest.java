@@ -0,0 +1,263 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.actors.net.comm;
+
+import edu.vub.at.actors.natives.ELVirtualMachine;
+import edu.vub.at.actors.net.cmd.VMCommand;
+import edu.vub.at.actors.net.cmd.WireFormat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the framing of command objects by the {@link NIOTransport} and the
+ * exchange of frames over a loopback connection served by its I/O thread.
+ */
+public class NIOTransportTest extends TestCase {
+
+	public static void main(String[] args) {
+		junit.swingui.TestRunner.run(NIOTransportTest.class);
+	}
+	
+	/** commands received by the transport under test */
+	private static final Vector received_ = new Vector();
+	
+	private static class CMDTest extends VMCommand {
+		private static final long serialVersionUID = 1L;
+		public final int index_;
+		public final byte[] payload_;
+		public CMDTest(int index) {
+			this(index, 0);
+		}
+		public CMDTest(int index, int size) {
+			super("test(" + index + ")");
+			index_ = index;
+			payload_ = new byte[size];
+		}
+		public void uponReceiptBy(ELVirtualMachine remoteHost, Address senderAddress) {
+			synchronized (received_) {
+				received_.add(this);
+				received_.notifyAll();
+			}
+		}
+	}
+	
+	private NIOTransport transport_;
+	
+	public void setUp() throws Exception {
+		received_.clear();
+		transport_ = new NIOTransport(new CommunicationBus(null, "AmbientTalkTest", ELVirtualMachine._DEFAULT_IP_ADDRESS_));
+	}
+	
+	public void tearDown() {
+		transport_.stopTransport();
+	}
+	
+	/**
+	 * Frames may arrive in arbitrary chunks: feeding them byte by byte should
+	 * yield the same commands as feeding them all at once, whatever their format.
+	 */
+	public void testFragmentedFrames() throws IOException {
+		ByteBuffer all = ByteBuffer.allocate(4096);
+		for (int i = 0; i < 3; i++) {
+			all.put(NIOTransport.encodeFrame(new CMDTest(i), (i % 2 == 0) ? WireFormat._SERIALIZED_ : WireFormat._VERSION_));
+		}
+		all.flip();
+		
+		NIOTransport.FrameReader reader = new NIOTransport.FrameReader();
+		Vector commands = new Vector();
+		while (all.hasRemaining()) {
+			ByteBuffer chunk = ByteBuffer.allocate(1);
+			chunk.put(all.get());
+			chunk.flip();
+			VMCommand cmd = reader.next(chunk);
+			if (cmd != null) {
+				commands.add(cmd);
+			}
+			assertFalse(chunk.hasRemaining());
+		}
+		assertEquals(3, commands.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i, ((CMDTest) commands.get(i)).index_);
+		}
+	}
+	
+	public void testInvalidFrameLength() {
+		ByteBuffer frame = ByteBuffer.allocate(4);
+		frame.putInt(-1);
+		frame.flip();
+		try {
+			new NIOTransport.FrameReader().next(frame);
+			fail("expected a corrupt frame to be rejected");
+		} catch (IOException e) {
+			// expected exception: success
+		}
+	}
+	
+	/**
+	 * The commands of the frames preceding a corrupt frame in the same chunk
+	 * are decoded before the corrupt frame is rejected.
+	 */
+	public void testFramesBeforeCorruptFrame() throws IOException {
+		ByteBuffer all = ByteBuffer.allocate(4096);
+		all.put(NIOTransport.encodeFrame(new CMDTest(0), WireFormat._SERIALIZED_));
+		all.put(NIOTransport.encodeFrame(new CMDTest(1), WireFormat._VERSION_));
+		all.putInt(-1);
+		all.flip();
+		
+		NIOTransport.FrameReader reader = new NIOTransport.FrameReader();
+		assertEquals(0, ((CMDTest) reader.next(all)).index_);
+		assertEquals(1, ((CMDTest) reader.next(all)).index_);
+		try {
+			reader.next(all);
+			fail("expected a corrupt frame to be rejected");
+		} catch (IOException e) {
+			// expected exception: success
+		}
+	}
+	
+	/**
+	 * Commands sent over a channel connection are received in order by the I/O
+	 * thread serving the other end of the connection, also when the sender switches
+	 * to the binary wire format halfway.
+	 */
+	public void testLoopbackConnection() throws Exception {
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(localhost, 0));
+		Socket client = SocketChannel.open(server.socket().getLocalSocketAddress()).socket();
+		Socket accepted = server.accept().socket();
+		server.close();
+		
+		Address peer = new Address(localhost, accepted.getPort(), "AmbientTalkTest");
+		transport_.start();
+		NIOTransport.ChannelConnection receiver = transport_.createConnection(peer, accepted);
+		NIOTransport.ChannelConnection sender = transport_.createConnection(peer, client);
+		transport_.register(receiver);
+		
+		int count = 500;
+		for (int i = 0; i < count; i++) {
+			if (i == count / 2) {
+				sender.wireVersion_ = WireFormat._VERSION_;
+			}
+			if (i % 2 == 0) {
+				sender.send(new CMDTest(i));
+			} else {
+				sender.sendSynchronously(new CMDTest(i));
+			}
+		}
+		
+		synchronized (received_) {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (received_.size() < count && System.currentTimeMillis() < deadline) {
+				received_.wait(100);
+			}
+		}
+		assertEquals(count, received_.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, ((CMDTest) received_.get(i)).index_);
+		}
+		
+		sender.close();
+		try {
+			sender.send(new CMDTest(count));
+			fail("expected sending over a closed connection to fail");
+		} catch (IOException e) {
+			// expected exception: success
+		}
+		receiver.close();
+	}
+	
+	/**
+	 * A sender is blocked while the write queue of a connection whose peer does not read
+	 * is full, and resumes once the peer reads again.
+	 */
+	public void testQueueLimit() throws Exception {
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(localhost, 0));
+		Socket client = SocketChannel.open(server.socket().getLocalSocketAddress()).socket();
+		Socket accepted = server.accept().socket();
+		server.close();
+		
+		Address peer = new Address(localhost, accepted.getPort(), "AmbientTalkTest");
+		transport_.start();
+		NIOTransport.ChannelConnection receiver = transport_.createConnection(peer, accepted);
+		final NIOTransport.ChannelConnection sender = transport_.createConnection(peer, client);
+		transport_.register(sender);
+		
+		// the frames exceed both the socket buffers and the limit of the write queue
+		final int count = 32;
+		final int size = NIOTransport._MAX_QUEUED_BYTES_ / 4;
+		final Vector failures = new Vector();
+		Thread sending = new Thread() {
+			public void run() {
+				try {
+					for (int i = 0; i < count; i++) {
+						sender.send(new CMDTest(i, size));
+					}
+				} catch (IOException e) {
+					failures.add(e);
+				}
+			}
+		};
+		sending.start();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (sending.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(sending.isAlive());
+		assertTrue(sender.getQueuedBytes() > 0);
+		assertTrue(sender.getQueuedBytes() <= NIOTransport._MAX_QUEUED_BYTES_);
+		
+		transport_.register(receiver);
+		sending.join(30000);
+		assertFalse(sending.isAlive());
+		assertTrue(failures.isEmpty());
+		synchronized (received_) {
+			deadline = System.currentTimeMillis() + 30000;
+			while (received_.size() < count && System.currentTimeMillis() < deadline) {
+				received_.wait(100);
+			}
+		}
+		assertEquals(count, received_.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, ((CMDTest) received_.get(i)).index_);
+		}
+		sender.close();
+		receiver.close();
+	}
+	
+}
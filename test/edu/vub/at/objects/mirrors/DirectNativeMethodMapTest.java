@@ -0,0 +1,78 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.mirrors;
+
+import edu.vub.at.exceptions.InterpreterException;
+import edu.vub.at.objects.ATContext;
+import edu.vub.at.objects.ATMethod;
+import edu.vub.at.objects.ATObject;
+import edu.vub.at.objects.ATTable;
+import edu.vub.at.objects.natives.grammar.AGSymbol;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the identity-keyed map of native methods used by native types.
+ */
+public class DirectNativeMethodMapTest extends TestCase {
+
+	private static ATMethod method(String name) {
+		return new DirectNativeMethod(name) {
+			public ATObject base_apply(ATTable args, ATContext ctx) throws InterpreterException {
+				return null;
+			}
+		};
+	}
+	
+	public void testLookup() throws InterpreterException {
+		DirectNativeMethodMap map = new DirectNativeMethodMap();
+		ATMethod at = method("at:");
+		map.put("at:", at);
+		assertSame(at, map.get(AGSymbol.jAlloc("at:")));
+		assertSame(at, map.get("at:"));
+		assertTrue(map.containsKey(AGSymbol.jAlloc("at:")));
+		assertNull(map.get(AGSymbol.jAlloc("at:put:")));
+		assertFalse(map.containsKey(AGSymbol.jAlloc("at:put:")));
+	}
+	
+	public void testGrowth() throws InterpreterException {
+		DirectNativeMethodMap map = new DirectNativeMethodMap();
+		ATMethod[] methods = new ATMethod[100];
+		for (int i = 0; i < methods.length; i++) {
+			methods[i] = method("m" + i);
+			map.put("m" + i, methods[i]);
+		}
+		// redefining a selector replaces its method
+		map.put("m0", methods[1]);
+		assertEquals(100, map.size());
+		assertSame(methods[1], map.get(AGSymbol.jAlloc("m0")));
+		for (int i = 1; i < methods.length; i++) {
+			assertSame(methods[i], map.get(AGSymbol.jAlloc("m" + i)));
+		}
+	}
+	
+}
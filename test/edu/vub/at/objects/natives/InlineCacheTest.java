@@ -0,0 +1,119 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.natives;
+
+import edu.vub.at.AmbientTalkTest;
+import edu.vub.at.exceptions.XSelectorNotFound;
+
+/**
+ * Tests whether the inline caches stored in message sends, applications and
+ * variable references are invalidated when the shape of the looked up objects changes.
+ */
+public class InlineCacheTest extends AmbientTalkTest {
+
+	public static void main(String[] args) {
+		junit.swingui.TestRunner.run(InlineCacheTest.class);
+	}
+
+	public void setUp() throws Exception {
+		evalAndReturn(
+				"def proto := object: { def x := 1; def m() { 1 } };" +
+				"def send(o) { o.m() };" +
+				"def read(o) { o.x }");
+	}
+
+	/**
+	 * Tests whether a cached method lookup is invalidated when a clone adds
+	 * a method that shadows a method of its parent.
+	 */
+	public void testMethodAddedToParentOfClone() throws Exception {
+		evalAndReturn("def child := extend: proto with: { nil }");
+		evalAndCompareTo("send(child)", "1");
+		evalAndReturn("(reflect: child).defineField(`m, { 2 })");
+		evalAndCompareTo("send(child)", "2");
+	}
+
+	/**
+	 * Tests whether clones share cache entries but diverge after a meta-level change.
+	 */
+	public void testClonesDiverge() throws Exception {
+		evalAndReturn("def c1 := clone: proto; def c2 := clone: proto");
+		evalAndCompareTo("[send(c1), send(c2)]", "[1, 1]");
+		evalAndReturn("(reflect: c2).removeSlot(`m)");
+		evalAndReturn("(reflect: c2).addMethod((reflect: object: { def m() { 3 } }).grabMethod(`m))");
+		evalAndCompareTo("[send(c1), send(c2), send(proto)]", "[1, 3, 1]");
+	}
+
+	/**
+	 * Tests whether cached field indices remain valid after a field is removed in place.
+	 */
+	public void testFieldRemovedInPlace() throws Exception {
+		evalAndReturn("def o := object: { def a := 5; def x := 6 }");
+		evalAndCompareTo("read(o)", "6");
+		evalAndReturn("(reflect: o).removeSlot(`a)");
+		evalAndCompareTo("read(o)", "6");
+		evalAndReturn("(reflect: o).removeSlot(`x)");
+		evalAndTestException("read(o)", XSelectorNotFound.class);
+	}
+
+	/**
+	 * Tests whether cached variable lookups see newly defined variables shadowing outer ones.
+	 */
+	public void testShadowingVariable() throws Exception {
+		evalAndReturn("def y := 1; def scope := object: { def get() { y } }");
+		evalAndCompareTo("scope.get()", "1");
+		evalAndReturn("(reflect: scope).defineField(`y, 2)");
+		evalAndCompareTo("scope.get()", "2");
+	}
+
+	/**
+	 * Tests whether a send that has seen more shapes than its cache remembers
+	 * still invokes the right methods.
+	 */
+	public void testMegamorphicSend() throws Exception {
+		evalAndReturn("def shapes := [1,2,3,4,5,6].map: { |i| " +
+				"def o := object: { def m() { i } }; (reflect: o).defineField(`f, i); o }");
+		evalAndCompareTo("shapes.map: { |o| send(o) }", "[1, 2, 3, 4, 5, 6]");
+		evalAndReturn("(reflect: shapes[2]).removeSlot(`m)");
+		evalAndReturn("(reflect: shapes[2]).addMethod((reflect: object: { def m() { 7 } }).grabMethod(`m))");
+		evalAndCompareTo("shapes.map: { |o| send(o) }", "[1, 7, 3, 4, 5, 6]");
+	}
+
+	/**
+	 * Tests whether two references to the same free variable in different scopes
+	 * do not share their cached lookup.
+	 */
+	public void testFreeVariableOccurrences() throws Exception {
+		evalAndReturn("def a := object: { def z := 1; def get() { z } };" +
+				"def b := object: { def z := 2; def get() { z } }");
+		evalAndCompareTo("[a.get(), b.get(), a.get()]", "[1, 2, 1]");
+		evalAndReturn("(reflect: a).removeSlot(`z)");
+		evalAndReturn("def z := 3");
+		evalAndCompareTo("[a.get(), b.get()]", "[3, 2]");
+	}
+
+}
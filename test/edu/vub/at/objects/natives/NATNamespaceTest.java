@@ -3,6 +3,7 @@ package edu.vub.at.objects.natives;
 import edu.vub.at.eval.Evaluator;
 import edu.vub.at.exceptions.InterpreterException;
 import edu.vub.at.exceptions.XSelectorNotFound;
+import edu.vub.at.objects.ATAbstractGrammar;
 import edu.vub.at.objects.ATObject;
 import edu.vub.at.objects.natives.grammar.AGAssignmentSymbol;
 import edu.vub.at.objects.natives.grammar.AGSymbol;
@@ -194,4 +195,20 @@ public class NATNamespaceTest extends TestCase {
 		}
 	}
 	
+	/**
+	 * Tests whether loaded files are parsed only once, unless they are modified.
+	 */
+	public void testModuleCache() throws Exception {
+		ATAbstractGrammar first = ModuleCache.parse(at_test_file1_at);
+		assertSame(first, ModuleCache.parse(at_test_file1_at));
+		assertSame(first, ModuleCache.parse(new File("/tmp/at/../at/test/file1.at")));
+		
+		FileWriter fw = new FileWriter(at_test_file1_at);
+		fw.write("def x := 2; \n x");
+		fw.close();
+		ATAbstractGrammar modified = ModuleCache.parse(at_test_file1_at);
+		assertNotSame(first, modified);
+		assertEquals("def x := 2; x", modified.meta_print().javaValue);
+	}
+	
 }
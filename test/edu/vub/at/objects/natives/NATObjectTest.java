@@ -107,5 +107,29 @@ public class NATObjectTest extends AmbientTalkTest {
 		
 	
 	}
+	
+	/**
+	 * Tests whether an object and its clone no longer share field values once either
+	 * of them assigns, adds or removes a field.
+	 */
+	public void testCloneStateIsCopiedOnWrite() throws Exception {
+		AGSymbol x = AGSymbol.jAlloc("x");
+		AGSymbol y = AGSymbol.jAlloc("y");
+		original.meta_defineField(x, NATNumber.ONE);
+		original.meta_defineField(y, NATNumber.atValue(2));
+		
+		NATObject clone = (NATObject) original.meta_clone();
+		NATObject cloneOfClone = (NATObject) clone.meta_clone();
+		clone.impl_invokeMutator(clone, x.asAssignmentSymbol(), NATTable.of(NATNumber.atValue(10)));
+		assertEquals(NATNumber.ONE, original.impl_invokeAccessor(original, x, NATTable.EMPTY));
+		assertEquals(NATNumber.atValue(10), clone.impl_invokeAccessor(clone, x, NATTable.EMPTY));
+		assertEquals(NATNumber.ONE, cloneOfClone.impl_invokeAccessor(cloneOfClone, x, NATTable.EMPTY));
+		
+		original.meta_removeSlot(x);
+		original.meta_defineField(AGSymbol.jAlloc("z"), NATNumber.atValue(3));
+		assertEquals(NATNumber.atValue(2), original.impl_invokeAccessor(original, y, NATTable.EMPTY));
+		assertEquals(NATNumber.atValue(2), clone.impl_invokeAccessor(clone, y, NATTable.EMPTY));
+		assertEquals(NATNumber.ONE, cloneOfClone.impl_invokeAccessor(cloneOfClone, x, NATTable.EMPTY));
+	}
 
 }
@@ -225,6 +225,52 @@ public class PrimitivesTest extends AmbientTalkTest {
 		}
 	}
 
+	/**
+	 * Small numbers are shared, but numbers are compared by value regardless of their range.
+	 */
+	public void testNumberCache() {
+		try {
+			assertSame(NATNumber.atValue(42), NATNumber.ONE.base_inc().asNativeNumber().base_timesNumber(NATNumber.atValue(21)));
+			assertSame(NATNumber.ZERO, NATNumber.atValue(0));
+			assertEquals(NATNumber.atValue(1000000), NATNumber.atValue(999999).base_inc());
+			evalAndCompareTo("1000000 == 999999 + 1", NATBoolean._TRUE_);
+			evalAndCompareTo("-129 == -128 - 1", NATBoolean._TRUE_);
+			evalAndCompareTo("[1000000, 5].contains(999999 + 1)", NATBoolean._TRUE_);
+			evalAndCompareTo("def sum := 0; 1.to: 2000 do: { |i| sum := sum + i }; sum", "2001000");
+		} catch (InterpreterException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Arithmetic overflowing a Java long is promoted to arbitrary precision and
+	 * demoted again when the result fits in a long.
+	 */
+	public void testLongPrimitives() {
+		try {
+			NATNumber max = NATNumber.atValue(Long.MAX_VALUE);
+			NATNumber big = max.base_inc().asNativeNumber();
+			assertFalse(big.isLong());
+			assertEquals("9223372036854775808", big.meta_print().javaValue);
+			assertEquals(max, big.base_dec());
+			assertTrue(big.base_dec().asNativeNumber().isLong());
+			assertEquals("-9223372036854775809", NATNumber.atValue(Long.MIN_VALUE).base_dec().meta_print().javaValue);
+			assertEquals("9223372036854775808", NATNumber.atValue(Long.MIN_VALUE).base_abs().meta_print().javaValue);
+			assertEquals("9223372036854775808", NATNumber.atValue(Long.MIN_VALUE).base__opdiv__opmns_(NATNumber.MONE).meta_print().javaValue);
+			assertEquals(NATNumber.atValue(4294967296L), NATNumber.atValue(65536).base__optms_(NATNumber.atValue(65536)));
+			
+			// number literals are parsed as ints, so larger numbers are computed
+			evalAndCompareTo("2147483647 + 1", "2147483648");
+			evalAndCompareTo("def x := 65536 * 65536; x * x", "18446744073709551616");
+			evalAndCompareTo("x := x * x; x /- (65536 * 65536) == (65536 * 65536)", NATBoolean._TRUE_);
+			evalAndCompareTo("x - 1 > (x /- 2)", NATBoolean._TRUE_);
+			evalAndCompareTo("x % 10", "6");
+			evalAndCompareTo("(0 - x) < 0", NATBoolean._TRUE_);
+		} catch (InterpreterException e) {
+			fail(e.getMessage());
+		}
+	}
+
 	public void testFractionPrimitives() {
 		try {
 			// 1.4.round() => 1
@@ -3,6 +3,11 @@ package edu.vub.at.objects.natives;
 import edu.vub.at.AmbientTalkTestCase;
 import edu.vub.at.objects.natives.grammar.AGSymbol;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 /**
  * @author tvc
  *
@@ -29,16 +34,17 @@ public class TestFieldMap extends AmbientTalkTestCase {
 	 *   b -> 7 ]
 	 */
 	protected void setUp() throws Exception {
-		map_ = new FieldMap();
-		assertTrue(map_.put(AGSymbol.jAlloc("x")));
-		map_.put(AGSymbol.jAlloc("y"));
-		map_.put(AGSymbol.jAlloc("z"));
-		map_.put(AGSymbol.jAlloc("u"));
-		assertTrue(map_.put(AGSymbol.jAlloc("v")));
-		map_.put(AGSymbol.jAlloc("w"));
-		map_.put(AGSymbol.jAlloc("a"));
-		map_.put(AGSymbol.jAlloc("b"));
-		assertFalse(map_.put(AGSymbol.jAlloc("x")));
+		map_ = FieldMap.EMPTY.withField(AGSymbol.jAlloc("x"));
+		assertNotSame(FieldMap.EMPTY, map_);
+		map_ = map_.withField(AGSymbol.jAlloc("y"));
+		map_ = map_.withField(AGSymbol.jAlloc("z"));
+		map_ = map_.withField(AGSymbol.jAlloc("u"));
+		FieldMap withV = map_.withField(AGSymbol.jAlloc("v"));
+		assertNotSame(map_, withV);
+		map_ = withV.withField(AGSymbol.jAlloc("w"));
+		map_ = map_.withField(AGSymbol.jAlloc("a"));
+		map_ = map_.withField(AGSymbol.jAlloc("b"));
+		assertSame(map_, map_.withField(AGSymbol.jAlloc("x")));
 	}
 
 	public void testMap() {
@@ -55,7 +61,10 @@ public class TestFieldMap extends AmbientTalkTestCase {
 	
 	public void testRemoval() {
 		assertEquals(2, map_.get(AGSymbol.jAlloc("z")));
-		assertEquals(2, map_.remove(AGSymbol.jAlloc("z")));
+		FieldMap original = map_;
+		map_ = map_.withoutField(AGSymbol.jAlloc("z"));
+		assertEquals(2, original.get(AGSymbol.jAlloc("z")));
+		assertTrue(map_.isDerivedFrom(original));
 
 		assertEquals(0, map_.get(AGSymbol.jAlloc("x")));
 		assertEquals(1, map_.get(AGSymbol.jAlloc("y")));
@@ -66,7 +75,63 @@ public class TestFieldMap extends AmbientTalkTestCase {
 		assertEquals(5, map_.get(AGSymbol.jAlloc("a")));
 		assertEquals(6, map_.get(AGSymbol.jAlloc("b")));
 		
-		assertEquals(-1, map_.remove(AGSymbol.jAlloc("foo")));
+		assertSame(map_, map_.withoutField(AGSymbol.jAlloc("foo")));
+	}
+	
+	/**
+	 * Tests whether adding the same fields in the same order yields the same map.
+	 */
+	public void testTransitionsAreShared() {
+		FieldMap other = FieldMap.EMPTY;
+		String[] names = { "x", "y", "z", "u", "v", "w", "a", "b" };
+		for (int i = 0; i < names.length; i++) {
+			other = other.withField(AGSymbol.jAlloc(names[i]));
+		}
+		assertSame(map_, other);
+		assertTrue(map_.isDerivedFrom(FieldMap.EMPTY));
+		assertFalse(FieldMap.EMPTY.isDerivedFrom(map_));
+		assertNotSame(map_, FieldMap.EMPTY.withField(AGSymbol.jAlloc("y")).withField(AGSymbol.jAlloc("x")));
+	}
+	
+	/**
+	 * Tests lookup in maps that are large enough to be searched using a hash table.
+	 */
+	public void testLargeMap() {
+		FieldMap large = map_;
+		for (int i = 0; i < 40; i++) {
+			large = large.withField(AGSymbol.jAlloc("f" + i));
+		}
+		assertEquals(48, large.size());
+		assertEquals(0, large.get(AGSymbol.jAlloc("x")));
+		assertEquals(7, large.get(AGSymbol.jAlloc("b")));
+		for (int i = 0; i < 40; i++) {
+			assertEquals(8 + i, large.get(AGSymbol.jAlloc("f" + i)));
+		}
+		assertEquals(-1, large.get(AGSymbol.jAlloc("c")));
+		
+		FieldMap smaller = large.withoutField(AGSymbol.jAlloc("f0"));
+		assertEquals(-1, smaller.get(AGSymbol.jAlloc("f0")));
+		assertEquals(8, smaller.get(AGSymbol.jAlloc("f1")));
+		assertEquals(46, smaller.get(AGSymbol.jAlloc("f39")));
+	}
+	
+	/**
+	 * Tests whether only the names of a map are serialized, rather than the names of
+	 * all the maps it was derived from, and whether it is resolved upon deserialization.
+	 */
+	public void testSerialization() throws Exception {
+		FieldMap large = map_;
+		for (int i = 0; i < 200; i++) {
+			large = large.withField(AGSymbol.jAlloc("s" + i));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(large);
+		out.close();
+		// about 30 bytes per name, the maps from which it was derived would add about 100K
+		assertTrue("serialized map too large: " + bytes.size(), bytes.size() < 20000);
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertSame(large, in.readObject());
 	}
 
 }
@@ -278,6 +278,23 @@ public class TestEval extends AmbientTalkTest {
 		evalAndCompareTo("self.m(1,@[2,3])", "3");
 	}
 	
+	/**
+	 * Arguments are evaluated from left to right, whatever the number of arguments,
+	 * and repeated evaluation of the same call yields fresh argument tables.
+	 */
+	public void testArgumentEvaluationOrder() throws InterpreterException {
+		evalAndReturn("def order := []; def arg(n) { order := order + [n]; n }");
+		evalAndReturn("def args(@a) { a }");
+		evalAndCompareTo("args()", "[]");
+		evalAndCompareTo("args(arg(1))", "[1]");
+		evalAndCompareTo("args(arg(1), arg(2))", "[1, 2]");
+		evalAndCompareTo("args(arg(1), arg(2), arg(3))", "[1, 2, 3]");
+		evalAndCompareTo("args(arg(1), arg(2), arg(3), arg(4))", "[1, 2, 3, 4]");
+		evalAndCompareTo("args(arg(1), @[arg(2), arg(3)], arg(4))", "[1, 2, 3, 4]");
+		evalAndCompareTo("order", "[1, 1, 2, 1, 2, 3, 1, 2, 3, 4, 1, 2, 3, 4]");
+		evalAndCompareTo("def tables := []; 1.to: 3 do: { |i| tables := tables + [args(i, i)] }; tables", "[[1, 1], [2, 2], [3, 3]]");
+	}
+	
 	public void testVariableArguments() throws InterpreterException {
 		// def m(x,y,@z) { [x, y, z] }
 		NATMethod m = new NATMethod(atM_, NATTable.atValue(new ATObject[] { atX_, atY_, new AGSplice(atZ_) }),
@@ -318,4 +335,20 @@ public class TestEval extends AmbientTalkTest {
 		evalAndCompareTo("({})()", "nil");
 	}
 	
+	/** test whether a custom annotation annotates a method once, rather than upon every evaluation of its definition */
+	public void testCustomAnnotationAppliedOnce() throws InterpreterException {
+		evalAndCompareTo(
+				"deftype Probe;" +
+				"def Counted := object: {" +
+				"  def count := 0;" +
+				"  def typeName := `Counted;" +
+				"  def superTypes := [];" +
+				"  def isSubtypeOf(t) { false };" +
+				"  def annotateMessage(m) { m };" +
+				"  def annotateMethod(m) { count := count + 1; m }" +
+				"} taggedAs: [ (tagsOf: Probe)[1] ];" +
+				"def make() { def o := object: { def m() @Counted { 1 } }; def o.n() @Counted { 2 }; o };" +
+				"make(); make(); make().m() + make().n() + Counted.count", "5");
+	}
+	
 }
@@ -0,0 +1,90 @@
+/**
+ * AmbientTalk/2 Project
+ * (c) Software Languages Lab, 2006 - 2010
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+**/
+package edu.vub.at.objects.natives.grammar;
+
+import edu.vub.at.AmbientTalkTest;
+import edu.vub.at.exceptions.XArityMismatch;
+
+/**
+ * Tests whether evaluating method bodies whose local variable references were resolved
+ * in advance by lexical addressing yields the same results as an ordinary lookup,
+ * in particular when call frames are modified at runtime.
+ */
+public class TestLexicalAddressing extends AmbientTalkTest {
+
+	public static void main(String[] args) {
+		junit.swingui.TestRunner.run(TestLexicalAddressing.class);
+	}
+	
+	public void testParametersAndDefinitions() {
+		evalAndReturn("def addressed(a, b) { def c := a + b; def d(x) { x + c }; [a, b, c, d(1)] }");
+		evalAndCompareTo("addressed(1, 2)", "[1, 2, 3, 4]");
+		evalAndCompareTo("addressed(3, 4)", "[3, 4, 7, 8]");
+		evalAndTestException("addressed(1)", XArityMismatch.class);
+	}
+	
+	public void testOptionalParameters() {
+		evalAndReturn("def optional(a, b := a + 1, @rest) { def c := b; [a, c, rest] }");
+		evalAndCompareTo("optional(1)", "[1, 2, []]");
+		evalAndCompareTo("optional(1, 5, 6)", "[1, 5, [6]]");
+	}
+	
+	/**
+	 * A reference to a local variable that precedes its definition refers to the outer variable.
+	 */
+	public void testReferenceBeforeDefinition() {
+		evalAndReturn("def v := 10; def early() { def r := v; def v := 20; [r, v] }");
+		evalAndCompareTo("early()", "[10, 20]");
+	}
+	
+	public void testNestedClosures() {
+		evalAndReturn("def adder(n) { { |x| { |y| x + y + n } } }");
+		evalAndCompareTo("adder(1)(2)(3)", "6");
+		evalAndCompareTo("adder(4)(5)(6)", "15");
+	}
+	
+	/**
+	 * Tests whether a variable defined by eval:in: in a nested call frame shadows
+	 * the variable of the enclosing method the reference was resolved to.
+	 */
+	public void testShadowingByEvalIn() {
+		evalAndReturn("def shadowed(n) { { |x| eval: `{def n := 100} in: { nil }.context.lexicalScope; [x, n] } }");
+		evalAndCompareTo("shadowed(5)(7)", "[7, 100]");
+		evalAndCompareTo("shadowed(5)(8)", "[8, 100]");
+	}
+	
+	/**
+	 * Tests whether a variable removed from a call frame by means of a mirror is
+	 * still found after the remaining variables have shifted.
+	 */
+	public void testSlotRemovedReflectively() {
+		evalAndReturn("def removed(a, b) { (reflect: { nil }.context.lexicalScope).removeSlot(`a); b }");
+		evalAndCompareTo("removed(1, 2)", "2");
+		evalAndCompareTo("removed(3, 4)", "4");
+	}
+	
+}
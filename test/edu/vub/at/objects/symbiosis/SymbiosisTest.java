@@ -798,6 +798,38 @@ public class SymbiosisTest extends AmbientTalkTest {
 		assertEquals("(cs)", cs_result.asNativeText().javaValue);
 	}
 	
+	/**
+	 * AmbientTalk numbers convert to both Java ints and longs. Numbers that fit in an int
+	 * select the int overload, larger numbers select the long overload.
+	 */
+	public String longOverload(int i) { return "(int)"; }
+	public String longOverload(long l) { return "(long)"; }
+	public long longIdentity(long l) { return l; }
+	
+	public void testLongConversion() throws InterpreterException {
+		ATObject int_result = atTestObject.impl_invoke(atTestObject, AGSymbol.jAlloc("longOverload"), NATTable.of(NATNumber.ONE));
+		assertEquals("(int)", int_result.asNativeText().javaValue);
+		
+		NATNumber big = NATNumber.atValue(Long.MAX_VALUE);
+		ATObject long_result = atTestObject.impl_invoke(atTestObject, AGSymbol.jAlloc("longOverload"), NATTable.of(big));
+		assertEquals("(long)", long_result.asNativeText().javaValue);
+		
+		// longs are returned as native numbers, not as wrapped java.lang.Long objects
+		ATObject identity = atTestObject.impl_invoke(atTestObject, AGSymbol.jAlloc("longIdentity"), NATTable.of(big));
+		assertTrue(identity.isNativeNumber());
+		assertEquals(Long.MAX_VALUE, identity.asNativeNumber().javaValue);
+		assertEquals(new Long(5), Symbiosis.ambientTalkToJava(NATNumber.atValue(5), long.class));
+		assertEquals(NATNumber.atValue(5), Symbiosis.javaToAmbientTalk(new Long(5)));
+		
+		// numbers beyond the range of a long do not convert
+		try {
+			atTestObject.impl_invoke(atTestObject, AGSymbol.jAlloc("longIdentity"), NATTable.of(big.base_inc()));
+			fail("expected a symbiosis failure");
+		} catch (XTypeMismatch e) {
+			// expected exception: success
+		}
+	}
+	
 	/**
 	 * Tests whether Java interface types are correctly treated as AT/2 types.
 	 * Test cases: interface java.util.Set extends java.util.Collection
@@ -872,12 +904,12 @@ public class SymbiosisTest extends AmbientTalkTest {
 		
 		// try calling ZERO
 		JavaObject zero = enumTest.impl_invoke(enumTest, AGSymbol.jAlloc("ZERO"), NATTable.EMPTY).asJavaObjectUnderSymbiosis();
-		int zeroValue = zero.impl_invoke(zero, AGSymbol.jAlloc("ordinal"), NATTable.EMPTY).asNativeNumber().javaValue;
+		int zeroValue = zero.impl_invoke(zero, AGSymbol.jAlloc("ordinal"), NATTable.EMPTY).asNativeNumber().asInt();
 		assertEquals(0, zeroValue);
 		
 		// check the ordinal value of TWO by using the valueOf method. Also compare it to the 'regular' way of obtaining TWO.
 		ATObject twoObj = enumTest.impl_invoke(enumTest, AGSymbol.jAlloc("valueOf"), NATTable.of(NATText.atValue("TWO")));
-		int twoValue = twoObj.impl_invoke(twoObj, AGSymbol.jAlloc("ordinal"), NATTable.EMPTY).asNativeNumber().javaValue;
+		int twoValue = twoObj.impl_invoke(twoObj, AGSymbol.jAlloc("ordinal"), NATTable.EMPTY).asNativeNumber().asInt();
 		assertEquals(2, twoValue);
 		assertEquals(twoObj, enumTest.impl_invoke(enumTest, AGSymbol.jAlloc("TWO"), NATTable.EMPTY));
 	}
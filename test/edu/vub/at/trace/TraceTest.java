@@ -45,7 +45,9 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.HashSet;
 
 import junit.framework.TestCase;
 
@@ -183,6 +185,36 @@ public class TraceTest extends TestCase {
 		assertOutputEquals("stacktrace.json");
 	}
 	
+	/**
+	 * A captured invocation stack retains the invocations active at the time of capture,
+	 * even after they have returned.
+	 */
+	public void testCapturedStack() throws InterpreterException {
+		AGMethodInvocationCreation inv = new AGMethodInvocationCreation(
+				  AGSymbol.jAlloc("name"),
+	              NATTable.of(AGSymbol.jAlloc("arg")),
+			      NATTable.EMPTY);
+		inv.impl_setLocation(new SourceLocation(42, 0, "foo.at"));
+		InvocationStack stack = InvocationStack.getInvocationStack();
+		// deep enough to require the stack to grow
+		for (int i = 0; i < 100; i++) {
+			stack.methodInvoked(inv, Evaluator.getNil(), NATTable.of(NATNumber.ONE));
+		}
+		InvocationStack captured = InvocationStack.captureInvocationStack();
+		for (int i = 0; i < 100; i++) {
+			stack.methodReturned(null);
+		}
+		
+		StringWriter live = new StringWriter();
+		stack.printStackTrace(new PrintWriter(live));
+		assertEquals("", live.toString());
+		
+		StringWriter trace = new StringWriter();
+		captured.printStackTrace(new PrintWriter(trace));
+		assertTrue(trace.toString().indexOf("foo.at") != -1);
+		assertEquals(100, captured.generateTrace(new HashSet()).calls.length);
+	}
+	
 	public void testTwoComments() throws IOException {
 		log_.comment("comment1");
 		log_.comment("comment2");